@@ -19,6 +19,9 @@ public class BridgeConstants {
 
     public static final String X_FORWARDED_FOR_HEADER = "X-Forwarded-For";
 
+    /** Sent by clients that retry writes, so a retried write is only applied once */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     public static final String CUSTOM_DATA_HEALTH_CODE_SUFFIX = "_code";
 
     public static final String CUSTOM_DATA_CONSENT_SIGNATURE_SUFFIX = "_consent_signature";
@@ -36,6 +39,9 @@ public class BridgeConstants {
     
     public static final int BRIDGE_VIEW_EXPIRE_IN_SECONDS = 5 * 60 * 60;
 
+    /** Cached participant options are removed when they change, and expire soon in case a removal was missed. */
+    public static final int BRIDGE_PARTICIPANT_OPTIONS_EXPIRE_IN_SECONDS = 30 * 60;
+
     public static final String SCHEDULE_STRATEGY_PACKAGE = "org.sagebionetworks.bridge.models.schedules.";
 
     public static final String ASSETS_HOST = "assets.sagebridge.org";
@@ -2,10 +2,14 @@ package org.sagebionetworks.bridge.cache;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.dao.ParticipantOption;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.accounts.User;
@@ -17,6 +21,7 @@ import org.sagebionetworks.bridge.redis.RedisKey;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -26,6 +31,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @Component
 public class CacheProvider {
 
+    private static final int PARTICIPANT_OPTIONS_VERSION_EXPIRE_IN_SECONDS =
+            2 * BridgeConstants.BRIDGE_PARTICIPANT_OPTIONS_EXPIRE_IN_SECONDS;
+
     private ObjectMapper bridgeObjectMapper;
     private JedisOps jedisOps;
 
@@ -178,6 +186,79 @@ public class CacheProvider {
         }
     }
 
+    /**
+     * The version of the cached options of a participant, or null if their options haven't changed recently. Options
+     * are cached under their version, and each change sets a new version, so read the version before reading the
+     * options from the table: options read before a change are then cached under a version that is no longer read.
+     */
+    public String getParticipantOptionsVersion(String healthCode) {
+        try {
+            return jedisOps.get(RedisKey.PARTICIPANT_OPTIONS_VERSION.getRedisKey(healthCode));
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+
+    /**
+     * Caches all the options of a participant, as returned by ParticipantOptionsDao.getAllParticipantOptions, under
+     * the version that was read before they were.
+     */
+    public void setParticipantOptions(String healthCode, String version, Map<ParticipantOption,String> options) {
+        try {
+            String ser = bridgeObjectMapper.writeValueAsString(options);
+            String redisKey = getParticipantOptionsKey(healthCode, version);
+            String result = jedisOps.setex(redisKey, BridgeConstants.BRIDGE_PARTICIPANT_OPTIONS_EXPIRE_IN_SECONDS,
+                    ser);
+            if (!"OK".equals(result)) {
+                throw new BridgeServiceException("Participant options storage error");
+            }
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+
+    /**
+     * The cached options of a participant at the given version, or null if they aren't cached.
+     */
+    public Map<ParticipantOption,String> getParticipantOptions(String healthCode, String version) {
+        try {
+            String ser = jedisOps.get(getParticipantOptionsKey(healthCode, version));
+            if (ser != null) {
+                return bridgeObjectMapper.readValue(ser, new TypeReference<HashMap<ParticipantOption,String>>() {});
+            }
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+        return null;
+    }
+
+    /**
+     * Sets a new version of the options of a participant, so the cached options are no longer read. The version
+     * outlives the options cached before it was set, so they can't be read again when it expires.
+     */
+    public void removeParticipantOptions(String healthCode) {
+        try {
+            String redisKey = RedisKey.PARTICIPANT_OPTIONS_VERSION.getRedisKey(healthCode);
+            String result = jedisOps.setex(redisKey, PARTICIPANT_OPTIONS_VERSION_EXPIRE_IN_SECONDS,
+                    BridgeUtils.generateGuid());
+            if (!"OK".equals(result)) {
+                throw new BridgeServiceException("Participant options storage error");
+            }
+        } catch(Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+
+    private String getParticipantOptionsKey(String healthCode, String version) {
+        // Until the options first change, there's no version, and the key is the health code alone
+        String key = (version == null) ? healthCode : (healthCode + RedisKey.SEPARATOR + version);
+        return RedisKey.PARTICIPANT_OPTIONS.getRedisKey(key);
+    }
+
     public String getString(String cacheKey) {
         try {
             return jedisOps.get(cacheKey);
@@ -208,6 +289,35 @@ public class CacheProvider {
         }
     }
 
+    /**
+     * Sets the value only if the key does not exist, expiring it after the given number of seconds.
+     *
+     * @return true if the value was set, false if the key already existed
+     */
+    public boolean setStringIfAbsent(String cacheKey, String value, int expireInSeconds) {
+        try {
+            return "OK".equals(jedisOps.setnxex(cacheKey, expireInSeconds, value));
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+
+    /**
+     * Sets the value, expiring it after the given number of seconds rather than after the view expiration.
+     */
+    public void setString(String cacheKey, String value, int expireInSeconds) {
+        try {
+            String result = jedisOps.setex(cacheKey, expireInSeconds, value);
+            if (!"OK".equals(result)) {
+                throw new BridgeServiceException("View storage error");
+            }
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+
     private void promptToStartRedisIfLocal(Throwable e) {
         if (BridgeConfigFactory.getConfig().isLocal()) {
             throw new BridgeServiceException(
@@ -1,7 +1,17 @@
 package org.sagebionetworks.bridge.cache;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.redis.RedisKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,77 +21,286 @@ import org.springframework.stereotype.Component;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.base.Joiner;
 import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
 
+/**
+ * Caches the JSON of views in Redis.
+ * <p>
+ * Views are grouped by their type and the first identifier of their key (all the versions of one survey, for example),
+ * and each group has a generation that is part of the Redis key of its views. Removing a view sets a new, unique
+ * generation, which invalidates every view of the group with one write; the old entries expire on their own.
+ * <p>
+ * A missing view is built once at a time. Requests on this server wait for the request that is building it, and a
+ * short lock in Redis makes other servers wait as well. So that a popular view doesn't expire under load, a read may
+ * refresh the view before it expires, with a probability that grows as the expiration nears and with how long the
+ * view took to build (the "XFetch" algorithm). Requests that arrive during a refresh get the current view.
+ */
 @Component
 public class ViewCache {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(ViewCache.class);
-    
+
+    /** The longest a server holds the lock to build a view. */
+    static final int LOADING_LOCK_EXPIRE_IN_SECONDS = 10;
+
+    /** How long to wait for another server to build a view, before building it anyway. */
+    static final long LOADING_WAIT_MILLIS = 1000L;
+
+    private static final long LOADING_POLL_MILLIS = 50L;
+
+    /**
+     * Generations are unique, so a view kept alive by early refreshes can't be read again once its generation is
+     * replaced. When a generation expires, reads fall back to the key without a generation, so generations outlive
+     * the views cached under that key before the first removal.
+     */
+    private static final int GENERATION_EXPIRE_IN_SECONDS = 2 * BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS;
+
     public final class ViewCacheKey<T> {
         private final String key;
+        private final String generationKey;
         public ViewCacheKey(String key) {
+            this(key, null);
+        }
+        ViewCacheKey(String key, String generationKey) {
             this.key = key;
+            this.generationKey = generationKey;
         }
         String getKey() {
             return key;
         }
+        String getGenerationKey() {
+            return generationKey;
+        }
     };
-    
+
+    private final ConcurrentMap<String, SettableFuture<String>> loading = new ConcurrentHashMap<>();
+
     private CacheProvider cache;
-    
+
     @Autowired
     public void setCacheProvider(CacheProvider cacheProvider) {
         this.cache = cacheProvider;
     }
-    
+
     /**
-     * Get the JSON for the viewCacheKey, or if nothing has been cached, call the supplier, 
+     * Get the JSON for the viewCacheKey, or if nothing has been cached, call the supplier,
      * cache the JSON representation of the object returned, and return that JSON.
      * @param key
      * @param supplier
      * @return
      */
     public <T> String getView(ViewCacheKey<T> key, Supplier<T> supplier) {
-        try {
-            String value = cache.getString(key.getKey());
-            if (value == null) {
-                value = cacheView(key, supplier);
-            } else {
-                logger.debug("Retrieving " +key.getKey()+"' JSON from cache");
-            }
-            return value;
-        } catch(JsonProcessingException e) {
-            throw new BridgeServiceException(e);
+        String storageKey = getStorageKey(key);
+        CachedView cached = CachedView.parse(cache.getString(storageKey));
+        if (cached == null) {
+            return loadView(storageKey, supplier, null);
         }
+        double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+        if (cached.shouldRefresh(DateUtils.getCurrentMillisFromEpoch(), random)) {
+            logger.debug("Refreshing '" + storageKey + "' JSON before it expires");
+            return loadView(storageKey, supplier, cached.getJson());
+        }
+        logger.debug("Retrieving " + storageKey + "' JSON from cache");
+        return cached.getJson();
     }
 
     /**
-     * Remove the JSON for the view represented by the viewCacheKey.
+     * Remove the JSON for the view represented by the viewCacheKey. This removes all the views
+     * that share the type and first identifier of the key.
      * @param key
      */
     public <T> void removeView(ViewCacheKey<T> key) {
-        logger.debug("Deleting JSON for '" +key.getKey() +"'");
-        cache.removeString(key.getKey());
+        if (key.getGenerationKey() == null) {
+            logger.debug("Deleting JSON for '" +key.getKey() +"'");
+            cache.removeString(key.getKey());
+        } else {
+            logger.debug("Deleting JSON for '" +key.getGenerationKey() +"'");
+            cache.setString(key.getGenerationKey(), BridgeUtils.generateGuid(), GENERATION_EXPIRE_IN_SECONDS);
+        }
     }
-    
+
     /**
-     * Create a viewCacheKey for a particular type of entity, and the set of identifiers 
-     * that will identify that entity.
+     * Create a viewCacheKey for a particular type of entity, and the set of identifiers
+     * that will identify that entity. Keys with the same type and first identifier are
+     * removed together.
      * @param clazz
      * @param identifiers
      * @return
      */
     public <T> ViewCacheKey<T> getCacheKey(Class<T> clazz, String... identifiers) {
         String id = Joiner.on(":").join(identifiers);
-        return new ViewCacheKey<T>(RedisKey.VIEW.getRedisKey(id + ":" + clazz.getName()));
+        String generationKey = (identifiers.length == 0) ? null :
+            RedisKey.VIEW_GENERATION.getRedisKey(identifiers[0] + ":" + clazz.getName());
+        return new ViewCacheKey<T>(RedisKey.VIEW.getRedisKey(id + ":" + clazz.getName()), generationKey);
+    }
+
+    private <T> String getStorageKey(ViewCacheKey<T> key) {
+        if (key.getGenerationKey() == null) {
+            return key.getKey();
+        }
+        // Until a view is first removed, there's no generation, and the key is the one used before generations
+        // were introduced.
+        String generation = cache.getString(key.getGenerationKey());
+        if (generation == null) {
+            return key.getKey();
+        }
+        // The generation goes before the suffix, so the key stays in the view domain
+        return RedisKey.VIEW.getRedisKey(RedisKey.VIEW.getOriginalKey(key.getKey()) + RedisKey.SEPARATOR + generation);
+    }
+
+    /**
+     * Builds the view, unless another request on this server is already building it. In that case, waits for that
+     * request, or returns the stale JSON if there is any.
+     */
+    private <T> String loadView(String storageKey, Supplier<T> supplier, String staleJson) {
+        SettableFuture<String> future = SettableFuture.create();
+        SettableFuture<String> inProgress = loading.putIfAbsent(storageKey, future);
+        if (inProgress != null) {
+            return (staleJson != null) ? staleJson : waitFor(inProgress);
+        }
+        try {
+            String json = loadViewWithLock(storageKey, supplier, staleJson);
+            future.set(json);
+            return json;
+        } catch(RuntimeException | Error e) {
+            future.setException(e);
+            throw e;
+        } finally {
+            loading.remove(storageKey, future);
+        }
+    }
+
+    /**
+     * Builds the view, unless another server is already building it. In that case, returns the stale JSON if there
+     * is any, or else waits a short while for the other server to cache the view.
+     */
+    private <T> String loadViewWithLock(String storageKey, Supplier<T> supplier, String staleJson) {
+        String lockKey = RedisKey.VIEW_LOCK.getRedisKey(storageKey);
+        String lock = BridgeUtils.generateGuid();
+        boolean locked = cache.setStringIfAbsent(lockKey, lock, LOADING_LOCK_EXPIRE_IN_SECONDS);
+        if (!locked) {
+            if (staleJson != null) {
+                return staleJson;
+            }
+            String json = waitForOtherServer(storageKey);
+            if (json != null) {
+                return json;
+            }
+            logger.debug("Timed out waiting for '" + storageKey + "' JSON, building it");
+        }
+        try {
+            return cacheView(storageKey, supplier);
+        } finally {
+            if (locked && lock.equals(cache.getString(lockKey))) {
+                cache.removeString(lockKey);
+            }
+        }
+    }
+
+    private String waitForOtherServer(String storageKey) {
+        for (long waited = 0L; waited < LOADING_WAIT_MILLIS; waited += LOADING_POLL_MILLIS) {
+            try {
+                Thread.sleep(LOADING_POLL_MILLIS);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BridgeServiceException(e);
+            }
+            CachedView cached = CachedView.parse(cache.getString(storageKey));
+            if (cached != null) {
+                return cached.getJson();
+            }
+        }
+        return null;
     }
-    
-    private <T> String cacheView(ViewCacheKey<T> key, Supplier<T> supplier) throws JsonProcessingException {
-        logger.debug("Caching JSON for " +key.getKey()+"'");
+
+    private String waitFor(Future<String> future) {
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(e);
+        } catch(ExecutionException e) {
+            // Same exception the supplier threw for the request building the view
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private <T> String cacheView(String storageKey, Supplier<T> supplier) {
+        logger.debug("Caching JSON for " + storageKey + "'");
+        long start = System.nanoTime();
         T object = supplier.get();
-        String value = BridgeObjectMapper.get().writeValueAsString(object);
-        cache.setString(key.getKey(), value);
-        return value;
+        try {
+            String json = BridgeObjectMapper.get().writeValueAsString(object);
+            long buildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long expiresOn = DateUtils.getCurrentMillisFromEpoch()
+                    + TimeUnit.SECONDS.toMillis(BridgeConstants.BRIDGE_VIEW_EXPIRE_IN_SECONDS);
+            cache.setString(storageKey, new CachedView(json, expiresOn, buildMillis).toString());
+            return json;
+        } catch(JsonProcessingException e) {
+            throw new BridgeServiceException(e);
+        }
+    }
+
+    /**
+     * The JSON of a view, as stored in Redis with a header line that records when the view expires and how long it
+     * took to build. Views cached before the header was introduced have no header, and are never refreshed early.
+     */
+    static final class CachedView {
+        private static final String HEADER_START = "#";
+        private static final char HEADER_END = '\n';
+
+        private final String json;
+        private final Long expiresOn;
+        private final long buildMillis;
+
+        CachedView(String json, Long expiresOn, long buildMillis) {
+            this.json = json;
+            this.expiresOn = expiresOn;
+            this.buildMillis = buildMillis;
+        }
+
+        static CachedView parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            int headerEnd = value.indexOf(HEADER_END);
+            if (value.startsWith(HEADER_START) && headerEnd > 0) {
+                String[] header = value.substring(HEADER_START.length(), headerEnd).split(",");
+                try {
+                    return new CachedView(value.substring(headerEnd + 1), Long.parseLong(header[0]),
+                            Long.parseLong(header[1]));
+                } catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    logger.warn("Ignoring malformed header of cached view: " + value.substring(0, headerEnd));
+                }
+            }
+            return new CachedView(value, null, 0L);
+        }
+
+        String getJson() {
+            return json;
+        }
+
+        /**
+         * Decides if this read should refresh the view. The view is refreshed early when the time now, moved
+         * forward by the build time scaled by -log(random), reaches the expiration. Slow views and views close to
+         * expiring are therefore likely to be refreshed, but only by a few of the requests reading them.
+         *
+         * @param now
+         *      the time now, in milliseconds from the epoch
+         * @param random
+         *      a random number in (0, 1]
+         */
+        boolean shouldRefresh(long now, double random) {
+            if (expiresOn == null) {
+                return false;
+            }
+            return (now - buildMillis * Math.log(random)) >= expiresOn;
+        }
+
+        @Override
+        public String toString() {
+            return HEADER_START + expiresOn + "," + buildMillis + HEADER_END + json;
+        }
     }
-    
 }
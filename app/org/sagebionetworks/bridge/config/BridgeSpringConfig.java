@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.MissingResourceException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Resource;
 
@@ -24,6 +25,7 @@ import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
 import org.sagebionetworks.bridge.dynamodb.DynamoUtils;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.s3.S3Helper;
+import org.sagebionetworks.bridge.upload.ColumnProjectionHandler;
 import org.sagebionetworks.bridge.upload.DecryptHandler;
 import org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2;
 import org.sagebionetworks.bridge.upload.ParseJsonHandler;
@@ -51,6 +53,7 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.stormpath.sdk.api.ApiKey;
@@ -238,16 +241,36 @@ public class BridgeSpringConfig {
         return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("async.worker.thread.count"));
     }
 
+    @Bean(name = "sessionExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService sessionExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("session.worker.thread.count"));
+    }
+
+    @Bean(name = "uploadStatusExecutorService")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService uploadStatusExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("upload.status.worker.thread.count"));
+    }
+
     @Bean(name = "supportEmail")
     @Resource(name = "bridgeConfig")
     public String supportEmail(BridgeConfig bridgeConfig) {
         return bridgeConfig.getProperty("support.email");
     }
 
+    /**
+     * Encryptors are kept for a day after their study's last upload, and are reloaded in the background an hour
+     * after they were loaded, so that new certificates are picked up without an upload waiting on S3. The statistics
+     * of the cache are logged by UploadArchiveService.
+     */
     @Bean(name = "cmsEncryptorCache")
     @Autowired
     public LoadingCache<String, CmsEncryptor> cmsEncryptorCache(CmsEncryptorCacheLoader cacheLoader) {
-        return CacheBuilder.newBuilder().build(cacheLoader);
+        ExecutorService reloadExecutor = asyncExecutorService(bridgeConfig());
+        return CacheBuilder.newBuilder().maximumSize(500).expireAfterAccess(1, TimeUnit.DAYS)
+                .refreshAfterWrite(1, TimeUnit.HOURS).recordStats()
+                .build(CacheLoader.asyncReloading(cacheLoader, reloadExecutor));
     }
 
     @Bean(name = "healthDataAttachmentDdbMapper")
@@ -309,9 +332,10 @@ public class BridgeSpringConfig {
     public List<UploadValidationHandler> uploadValidationHandlerList(S3DownloadHandler s3DownloadHandler,
             DecryptHandler decryptHandler, UnzipHandler unzipHandler, ParseJsonHandler parseJsonHandler,
             IosSchemaValidationHandler2 iosSchemaValidationHandler2, TranscribeConsentHandler transcribeConsentHandler,
-            UploadArtifactsHandler uploadArtifactsHandler) {
+            UploadArtifactsHandler uploadArtifactsHandler, ColumnProjectionHandler columnProjectionHandler) {
         return ImmutableList.of(s3DownloadHandler, decryptHandler, unzipHandler, parseJsonHandler,
-                iosSchemaValidationHandler2, transcribeConsentHandler, uploadArtifactsHandler);
+                iosSchemaValidationHandler2, transcribeConsentHandler, uploadArtifactsHandler,
+                columnProjectionHandler);
     }
 
     @Bean(name = "uploadSchemaDdbMapper")
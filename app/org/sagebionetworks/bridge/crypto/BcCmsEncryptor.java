@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
 import java.security.PrivateKey;
+import java.security.SecureRandom;
 import java.security.Security;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
@@ -25,21 +26,43 @@ import org.bouncycastle.cms.jcajce.JceKeyTransRecipientInfoGenerator;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.OutputEncryptor;
 
+/**
+ * Encrypts and decrypts with one certificate and private key. The recipient info generator and the encoded
+ * certificate are built once, when the encryptor is constructed, so an encryptor should be reused for all the uploads
+ * of a study. The recipient ID and recipient aren't safe to share between threads, so each decryption builds its own.
+ * This is thread-safe.
+ */
 public final class BcCmsEncryptor implements CmsEncryptor {
 
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
     private final CMSEnvelopedDataGenerator generator;
-    private final X509Certificate cert;
+    private final JceCMSContentEncryptorBuilder encryptorBuilder;
+    private final X509CertificateHolder certHolder;
     private final PrivateKey privateKey;
 
     public BcCmsEncryptor(X509Certificate cert, PrivateKey privateKey) throws CertificateEncodingException {
         checkNotNull(cert);
         checkNotNull(privateKey);
-        Security.addProvider(new BouncyCastleProvider());
         generator = new CMSEnvelopedDataGenerator();
         RecipientInfoGenerator recipientInfoGenerator =
                 new JceKeyTransRecipientInfoGenerator(cert).setProvider(BcCmsConstants.PROVIDER);
         generator.addRecipientInfoGenerator(recipientInfoGenerator);
-        this.cert = cert;
+
+        // Each message needs its own content encryptor, since that holds the message's key, but the builder and
+        // its source of randomness can be shared.
+        encryptorBuilder = new JceCMSContentEncryptorBuilder(BcCmsConstants.ENCRYPTOR_ALGO_ID)
+                .setProvider(BcCmsConstants.PROVIDER).setSecureRandom(new SecureRandom());
+
+        try {
+            certHolder = new X509CertificateHolder(cert.getEncoded());
+        } catch (IOException e) {
+            throw new CertificateEncodingException(e);
+        }
         this.privateKey = privateKey;
     }
 
@@ -47,8 +70,7 @@ public final class BcCmsEncryptor implements CmsEncryptor {
     public byte[] encrypt(byte[] bytes) throws CMSException, IOException {
         checkNotNull(bytes);
         CMSTypedData cmsData = new CMSProcessableByteArray(bytes);
-        OutputEncryptor encryptor = new JceCMSContentEncryptorBuilder(BcCmsConstants.ENCRYPTOR_ALGO_ID)
-                .setProvider(BcCmsConstants.PROVIDER).build();
+        OutputEncryptor encryptor = encryptorBuilder.build();
         CMSEnvelopedData envelopedData = generator.generate(cmsData, encryptor);
         byte[] encrypted = envelopedData.getEncoded();
         return encrypted;
@@ -58,9 +80,11 @@ public final class BcCmsEncryptor implements CmsEncryptor {
     public byte[] decrypt(byte[] bytes) throws CMSException, CertificateEncodingException, IOException {
         checkNotNull(bytes);
         CMSEnvelopedData envelopedData = new CMSEnvelopedData(bytes);
-        X509CertificateHolder certHolder = new X509CertificateHolder(cert.getEncoded());
         RecipientId recipientId = new KeyTransRecipientId(certHolder.getIssuer(), certHolder.getSerialNumber());
         RecipientInformation recInfo = envelopedData.getRecipientInfos().get(recipientId);
+        if (recInfo == null) {
+            throw new CMSException("Data is not encrypted for this encryptor's certificate");
+        }
         Recipient recipient = new JceKeyTransEnvelopedRecipient(privateKey);
         byte[] decrypted = recInfo.getContent(recipient);
         return decrypted;
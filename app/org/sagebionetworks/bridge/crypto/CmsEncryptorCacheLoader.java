@@ -6,8 +6,12 @@ import java.io.IOException;
 import java.security.PrivateKey;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.cache.CacheLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
@@ -20,6 +24,7 @@ import org.sagebionetworks.bridge.s3.S3Helper;
  */
 @Component
 public class CmsEncryptorCacheLoader extends CacheLoader<String, CmsEncryptor> {
+    private static final Logger logger = LoggerFactory.getLogger(CmsEncryptorCacheLoader.class);
     private static final String PEM_FILENAME_FORMAT = "%s.pem";
 
     // These constants are package-scoped to make them accessible to unit tests.
@@ -39,6 +44,7 @@ public class CmsEncryptorCacheLoader extends CacheLoader<String, CmsEncryptor> {
     /** {@inheritDoc} */
     @Override
     public CmsEncryptor load(@Nonnull String studyId) throws CertificateEncodingException, IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
         String pemFileName = String.format(PEM_FILENAME_FORMAT, studyId);
 
         // download certificate
@@ -49,6 +55,9 @@ public class CmsEncryptorCacheLoader extends CacheLoader<String, CmsEncryptor> {
         String privKeyPem = s3CmsHelper.readS3FileAsString(PRIV_KEY_BUCKET, pemFileName);
         PrivateKey privKey = PemUtils.loadPrivateKeyFromPem(privKeyPem);
 
-        return new BcCmsEncryptor(cert, privKey);
+        CmsEncryptor encryptor = new BcCmsEncryptor(cert, privKey);
+        logger.info("Loaded CMS encryptor for study " + studyId + " in " + stopwatch.elapsed(TimeUnit.MILLISECONDS)
+                + " ms");
+        return encryptor;
     }
 }
@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.dao;
 
 import javax.annotation.Nonnull;
+import java.util.Iterator;
 import java.util.List;
 
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
@@ -47,6 +48,17 @@ public interface HealthDataDao {
      */
     List<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate);
 
+    /**
+     * DAO method used by worker apps to stream all health data records uploaded for a specific date. Unlike
+     * {@link #getRecordsForUploadDate}, records are loaded lazily in batches as the iterator is consumed, so memory
+     * use doesn't grow with the number of records uploaded that day.
+     *
+     * @param uploadDate
+     *         upload date in YYYY-MM-DD format, must be non-null, non-empty, and must represent a valid date
+     * @return iterator over all health records uploaded on that date
+     */
+    Iterator<HealthDataRecord> getRecordIteratorForUploadDate(@Nonnull String uploadDate);
+
     /**
      * Gets a builder instance, used for building prototype health data records. This is generally used by worker apps
      * to unpack uploads.
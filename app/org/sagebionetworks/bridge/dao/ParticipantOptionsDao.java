@@ -15,6 +15,14 @@ public interface ParticipantOptionsDao {
      * @param value
      */
     public void setOption(StudyIdentifier studyIdentifier, String healthCode, ParticipantOption option, String value);
+
+    /**
+     * Set several options for a participant at once. Options with a null value are removed.
+     * @param studyIdentifier
+     * @param healthCode
+     * @param options
+     */
+    public void setOptions(StudyIdentifier studyIdentifier, String healthCode, Map<ParticipantOption,String> options);
      
     /**
      * Get an option for a participant. Returns defaultValue (which can be null for a specific 
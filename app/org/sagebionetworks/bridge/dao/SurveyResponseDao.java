@@ -3,17 +3,24 @@ package org.sagebionetworks.bridge.dao;
 import java.util.List;
 
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponse;
 
 public interface SurveyResponseDao {
 
-    public SurveyResponse createSurveyResponse(GuidCreatedOnVersionHolder survey, String healthCode,
-            List<SurveyAnswer> answers, String identifier);
+    public SurveyResponse createSurveyResponse(Survey survey, String healthCode, List<SurveyAnswer> answers,
+            String identifier);
     
     public SurveyResponse getSurveyResponse(String healthCode, String identifier);
     
-    public SurveyResponse appendSurveyAnswers(SurveyResponse response, List<SurveyAnswer> answers);
+    /**
+     * Appends a batch of answers to the response in one conditional write. The survey is only used to determine whether
+     * the response is complete; it is not read again. A batch whose idempotency key has already been applied to the
+     * response is ignored, so clients can safely retry. The key may be null.
+     */
+    public SurveyResponse appendSurveyAnswers(SurveyResponse response, Survey survey, List<SurveyAnswer> answers,
+            String idempotencyKey);
     
     public void deleteSurveyResponses(String healthCode);
     
@@ -3,14 +3,34 @@ package org.sagebionetworks.bridge.dao;
 import java.util.List;
 
 import org.joda.time.DateTime;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.schedules.Task;
+import org.sagebionetworks.bridge.models.schedules.TaskUpdateResult;
 
 public interface TaskDao {
     
     /**
-     * Get a user's tasks up to a target timestamp. This returns all tasks that are not expired, deleted 
-     * or finished, as well as future tasks that are scheduled but should not be started yet. Tasks are 
-     * not necessarily saved in the database, however.
+     * Archives tasks before they are deleted by {@link TaskDao#deleteExpiredTasks}.
+     */
+    public interface TaskArchiver {
+        /**
+         * Archive the tasks. The tasks are only deleted if this returns without throwing an exception. 
+         * This is called from several threads at once, so it must be thread-safe.
+         * @param tasks
+         */
+        public void archive(List<Task> tasks);
+    }
+    
+    /**
+     * Get a user's tasks up to a target timestamp. This returns all tasks scheduled by the target timestamp 
+     * that are not expired, deleted or finished, as well as future tasks that are scheduled but should not 
+     * be started yet. Tasks are read from an index that is eventually consistent, so tasks saved just before 
+     * this call may not be returned.
+     * <p>
+     * The target timestamp filters the tasks that are read, but does not limit the read: every task that 
+     * isn't hidden yet is read, and billed, up to the materialization horizon, which is later than any 
+     * target timestamp.
+     * </p>
      * 
      * @param healthCode
      * @param endsOn
@@ -18,6 +38,22 @@ public interface TaskDao {
      */
     public List<Task> getTasks(String healthCode, DateTime endsOn);
     
+    /**
+     * Get a page of the tasks that {@link TaskDao#getTasks(String, DateTime)} returns. Pages are ordered 
+     * by the time the tasks are hidden, the soonest first, rather than by the time they are scheduled. A 
+     * page may have fewer tasks than the page size even if it isn't the last page, since tasks scheduled 
+     * after the target timestamp are filtered out of each page.
+     * 
+     * @param healthCode
+     * @param endsOn
+     * @param offsetKey
+     *      the offset key of the previous page, or null for the first page
+     * @param pageSize
+     *      the maximum number of tasks in the page
+     * @return the page, with the offset key of the next page, or a null offset key if this is the last page
+     */
+    public PagedResourceList<Task> getTasks(String healthCode, DateTime endsOn, String offsetKey, int pageSize);
+    
     /**
      * Have any of the tasks for this run key been created?
      * @param healthCode
@@ -35,12 +71,15 @@ public interface TaskDao {
     
     /**
      * Update the startedOn or finishedOn timestamps of the tasks in the collection. Tasks in this 
-     * collection should also have a GUID. All other fields are ignored. 
+     * collection should also have a GUID. All other fields are ignored. The tasks are loaded and 
+     * saved in batches, and a task that isn't found or fails to save doesn't stop the others 
+     * from being updated.
      * 
      * @param healthCode
      * @param tasks
+     * @return the result of each update, one per task GUID, in the order of the collection
      */
-    public void updateTasks(String healthCode, List<Task> tasks);
+    public List<TaskUpdateResult> updateTasks(String healthCode, List<Task> tasks);
     
     /**
      * Physically delete all the task records for this user. This method should only be called as a 
@@ -51,4 +90,17 @@ public interface TaskDao {
      */
     public void deleteTasks(String healthCode);
     
+    /**
+     * Physically delete the tasks of all users that expired before the given time and are no longer 
+     * shown to the user, a batch at a time. Each batch is passed to the archiver before it is deleted. 
+     * Tasks that are started but not finished are shown until they are finished, so they are kept.
+     * 
+     * @param expiredBefore
+     * @param batchSize
+     *      the number of tasks passed to the archiver at a time
+     * @param archiver
+     * @return the number of tasks deleted
+     */
+    public int deleteExpiredTasks(DateTime expiredBefore, int batchSize, TaskArchiver archiver);
+    
 }
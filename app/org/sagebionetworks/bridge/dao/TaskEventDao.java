@@ -1,5 +1,6 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
@@ -7,8 +8,17 @@ import org.sagebionetworks.bridge.models.tasks.TaskEvent;
 
 public interface TaskEventDao {
 
+    /**
+     * Save the event, unless an event with the same key and a later or equal timestamp has already been saved.
+     */
     public void publishEvent(TaskEvent event);
     
+    /**
+     * Save several events, with the same rule as publishEvent. Of several events with the same key, only the latest 
+     * is saved.
+     */
+    public void publishEvents(List<TaskEvent> events);
+    
     public Map<String, DateTime> getTaskEventMap(String healthCode);
     
     public void deleteTaskEvents(String healthCode);
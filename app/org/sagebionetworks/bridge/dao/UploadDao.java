@@ -3,6 +3,7 @@ package org.sagebionetworks.bridge.dao;
 import javax.annotation.Nonnull;
 import java.util.List;
 
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
@@ -41,6 +42,30 @@ public interface UploadDao {
      */
     List<? extends Upload> getFailedUploadsForDates(@Nonnull String startDate, @Nonnull String endDate);
 
+    /**
+     * <p>
+     * Gets a page of the failed uploads between the specified dates, inclusive, in YYYY-MM-DD format. Failed uploads
+     * are the same as for {@link #getFailedUploadsForDates}. They are listed date by date, and the same caveats
+     * apply.
+     * </p>
+     * <p>
+     * A page can have fewer uploads than the page size, even when there are more pages. The last page is the one
+     * without an offset key.
+     * </p>
+     *
+     * @param startDate
+     *         start date, inclusive, in YYYY-MM-DD format
+     * @param endDate
+     *         end date, inclusive, in YYYY-MM-DD format
+     * @param offsetKey
+     *         offset key of the previous page, or null for the first page
+     * @param pageSize
+     *         most uploads to return
+     * @return page of failed uploads
+     */
+    PagedResourceList<? extends Upload> getFailedUploads(@Nonnull String startDate, @Nonnull String endDate,
+            String offsetKey, int pageSize);
+
     /**
      * Gets the upload metadata associated with this upload.
      *
@@ -0,0 +1,39 @@
+package org.sagebionetworks.bridge.dao;
+
+import javax.annotation.Nonnull;
+
+/** Finds repeated uploads of the same file by the same participant. */
+public interface UploadDedupeDao {
+    /**
+     * Gets the ID of the last upload registered for the file, if it was registered at or after the given time.
+     *
+     * @param healthCode
+     *         health code of the participant uploading the file
+     * @param contentMd5
+     *         base64-encoded MD5 of the file
+     * @param filename
+     *         name of the file
+     * @param registeredAfter
+     *         earliest registration to consider, in milliseconds from the epoch
+     * @return the upload ID, or null if there is no such upload
+     */
+    String getDuplicateUploadId(@Nonnull String healthCode, @Nonnull String contentMd5, @Nonnull String filename,
+            long registeredAfter);
+
+    /**
+     * Registers the upload as the last upload of the file, replacing any upload registered before.
+     *
+     * @param healthCode
+     *         health code of the participant uploading the file
+     * @param contentMd5
+     *         base64-encoded MD5 of the file
+     * @param filename
+     *         name of the file
+     * @param uploadId
+     *         ID of the upload
+     * @param registeredOn
+     *         time of the registration, in milliseconds from the epoch
+     */
+    void registerUpload(@Nonnull String healthCode, @Nonnull String contentMd5, @Nonnull String filename,
+            @Nonnull String uploadId, long registeredOn);
+}
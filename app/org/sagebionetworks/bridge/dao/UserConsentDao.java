@@ -1,5 +1,7 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.Set;
+
 import org.sagebionetworks.bridge.models.accounts.UserConsent;
 import org.sagebionetworks.bridge.models.studies.StudyConsent;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
@@ -44,4 +46,11 @@ public interface UserConsentDao {
      * @return
      */
     long getNumberOfParticipants(StudyIdentifier studyIdentifier);
+
+    /**
+     * Get the health codes of the participants who have consented to the study. This scans the whole table.
+     * @param studyIdentifier
+     * @return
+     */
+    Set<String> getParticipantHealthCodes(StudyIdentifier studyIdentifier);
 }
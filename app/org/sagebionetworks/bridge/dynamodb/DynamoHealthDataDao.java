@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
+import java.util.Iterator;
 import java.util.List;
 
 import org.sagebionetworks.bridge.BridgeUtils;
@@ -86,6 +87,12 @@ public class DynamoHealthDataDao implements HealthDataDao {
         return uploadDateIndex.query(HealthDataRecord.class, "uploadDate", uploadDate);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Iterator<HealthDataRecord> getRecordIteratorForUploadDate(@Nonnull String uploadDate) {
+        return uploadDateIndex.queryIterator(HealthDataRecord.class, "uploadDate", uploadDate);
+    }
+
     /** {@inheritDoc} */
     @Override
     public HealthDataRecordBuilder getRecordBuilder() {
@@ -2,13 +2,24 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import javax.annotation.Nonnull;
 
+import java.beans.Introspector;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.KeyPair;
 import com.amazonaws.services.dynamodbv2.document.Index;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
@@ -19,8 +30,14 @@ import org.sagebionetworks.bridge.json.BridgeObjectMapper;
  * class also encapsulates logic to re-query tables to get full table entries.
  */
 public class DynamoIndexHelper {
+    /** DynamoDB caps a single BatchGetItem call at 100 keys. */
+    static final int BATCH_LOAD_SIZE = 100;
+
     private Index index;
     private DynamoDBMapper mapper;
+    private Class<?> tableClass;
+    private KeyAttribute hashKey;
+    private KeyAttribute rangeKey;
 
     /** DynamoDB index. THis is used to query the global secondary index. This is configured by Spring. */
     public void setIndex(Index index) {
@@ -35,6 +52,27 @@ public class DynamoIndexHelper {
         this.mapper = mapper;
     }
 
+    /**
+     * DynamoDB table class. The hash and range key attributes are read off of the class's DynamoDB annotations once,
+     * so that index hits can be turned into table keys without converting each item into an object. This is
+     * configured by Spring.
+     */
+    public void setTableClass(Class<?> tableClass) {
+        this.tableClass = tableClass;
+        this.hashKey = null;
+        this.rangeKey = null;
+        for (Method method : tableClass.getMethods()) {
+            if (method.isAnnotationPresent(DynamoDBHashKey.class)) {
+                hashKey = new KeyAttribute(method, method.getAnnotation(DynamoDBHashKey.class).attributeName());
+            } else if (method.isAnnotationPresent(DynamoDBRangeKey.class)) {
+                rangeKey = new KeyAttribute(method, method.getAnnotation(DynamoDBRangeKey.class).attributeName());
+            }
+        }
+        if (hashKey == null) {
+            throw new IllegalArgumentException(tableClass.getName() + " has no DynamoDB hash key");
+        }
+    }
+
     /**
      * Queries the global secondary index with the specified key name and value. Only the attributes projected onto the
      * index will be returned. (Generally, this is only the table index keys and the index keys.) This is generally
@@ -79,23 +117,59 @@ public class DynamoIndexHelper {
      *         expected result type
      * @return list of query results
      */
-    @SuppressWarnings("unchecked")
     public <T> List<T> query(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
             @Nonnull Object indexKeyValue) {
-        // In general, we only project keys onto global secondary indices, to save storage space. This means the
-        // objects we get back aren't full fledged objects. However, we can use them as "key objects" to re-query
-        // the DDB table to get full results.
-        //
-        // First step is to query the index to get these "key objects".
-        List<T> recordKeyList = queryKeys(clazz, indexKeyName, indexKeyValue);
-
-        // Using the "key objects", batch query DDB to get full records. For some reason, batchLoad() returns a map.
-        // Flatten that map into a list.
-        //
-        // Also, for some reason, batchLoad() takes a List<Object>, not a List<T> or List<?>. Fortunately, Java type
-        // erasure means we can safely cast this to a List<Object>.
-        Map<String, List<Object>> resultMap = mapper.batchLoad((List<Object>) recordKeyList);
-        List<T> recordList = new ArrayList<>();
+        return Lists.newArrayList(queryIterator(clazz, indexKeyName, indexKeyValue));
+    }
+
+    /**
+     * <p>
+     * Queries the global secondary index with the specified key name and value, returning full table rows lazily.
+     * Like {@link #query}, this re-queries DynamoDB to get the full rows, but it does so in batches of at most
+     * {@value #BATCH_LOAD_SIZE} keys as the iterator is consumed, and the index itself is paged as it is read. Only
+     * one page of index hits and one batch of rows are held in memory at a time, regardless of the size of the
+     * result.
+     * </p>
+     * <p>
+     * Rows are returned in the order DynamoDB returns them from each batch load, which is not necessarily index
+     * order.
+     * </p>
+     *
+     * @param clazz
+     *         expected result class
+     * @param indexKeyName
+     *         index key name to query on
+     * @param indexKeyValue
+     *         index key value to query on
+     * @param <T>
+     *         expected result type
+     * @return iterator over query results
+     */
+    public <T> Iterator<T> queryIterator(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
+            @Nonnull Object indexKeyValue) {
+        // In general, we only project keys onto global secondary indices, to save storage space. This means the items
+        // we get back from the index only hold the table keys, which we use to re-query the DDB table for full rows.
+        Iterator<Item> itemIter = queryHelper(indexKeyName, indexKeyValue).iterator();
+        return new BatchLoadIterator<>(clazz, itemIter);
+    }
+    /**
+     * This abstracts away the call to index.query(), which returns an ItemCollection. While ItemCollection implements
+     * Iterable, it overrides iterator() to return an IteratorSupport, which is not publicly exposed. This makes
+     * index.query() nearly impossible to mock. So we abstract it away into a method that we can mock.
+     */
+    protected Iterable<Item> queryHelper(@Nonnull String indexKeyName, @Nonnull Object indexKeyValue) {
+        return index.query(indexKeyName, indexKeyValue);
+    }
+
+    /**
+     * Batch loads the full rows for the given table keys. For some reason, batchLoad() returns a map. Flatten that map
+     * into a list.
+     */
+    private <T> List<T> batchLoad(Class<? extends T> clazz, List<KeyPair> keyList) {
+        Map<Class<?>, List<KeyPair>> keysByClass = ImmutableMap.<Class<?>, List<KeyPair>>of(tableClass, keyList);
+        Map<String, List<Object>> resultMap = mapper.batchLoad(keysByClass);
+
+        List<T> recordList = new ArrayList<>(keyList.size());
         for (List<Object> resultList : resultMap.values()) {
             for (Object oneResult : resultList) {
                 if (!clazz.isInstance(oneResult)) {
@@ -104,20 +178,79 @@ public class DynamoIndexHelper {
                             "DynamoDB returned objects of type %s instead of %s",
                             oneResult.getClass().getName(), clazz.getName()));
                 }
-
-                recordList.add((T) oneResult);
+                recordList.add(clazz.cast(oneResult));
             }
         }
-
         return recordList;
     }
 
+    /** Reads the table key straight off of an index item. */
+    private KeyPair getKeyPair(Item item) {
+        KeyPair keyPair = new KeyPair().withHashKey(hashKey.getValue(item));
+        if (rangeKey != null) {
+            keyPair.setRangeKey(rangeKey.getValue(item));
+        }
+        return keyPair;
+    }
+
     /**
-     * This abstracts away the call to index.query(), which returns an ItemCollection. While ItemCollection implements
-     * Iterable, it overrides iterator() to return an IteratorSupport, which is not publicly exposed. This makes
-     * index.query() nearly impossible to mock. So we abstract it away into a method that we can mock.
+     * Iterator that pulls index hits a batch at a time, batch loads the full rows for that batch, and hands them out
+     * before moving on to the next batch.
      */
-    protected Iterable<Item> queryHelper(@Nonnull String indexKeyName, @Nonnull Object indexKeyValue) {
-        return index.query(indexKeyName, indexKeyValue);
+    private class BatchLoadIterator<T> extends AbstractIterator<T> {
+        private final Class<? extends T> clazz;
+        private final Iterator<Item> itemIter;
+        private Iterator<T> batchIter = Collections.emptyIterator();
+
+        BatchLoadIterator(Class<? extends T> clazz, Iterator<Item> itemIter) {
+            this.clazz = clazz;
+            this.itemIter = itemIter;
+        }
+
+        @Override
+        protected T computeNext() {
+            while (!batchIter.hasNext()) {
+                if (!itemIter.hasNext()) {
+                    return endOfData();
+                }
+
+                List<KeyPair> keyList = new ArrayList<>(BATCH_LOAD_SIZE);
+                while (itemIter.hasNext() && keyList.size() < BATCH_LOAD_SIZE) {
+                    keyList.add(getKeyPair(itemIter.next()));
+                }
+                List<T> batch = DynamoIndexHelper.this.<T>batchLoad(clazz, keyList);
+                batchIter = batch.iterator();
+            }
+            return batchIter.next();
+        }
+    }
+
+    /**
+     * A key attribute of the table. The DynamoDB mapper sets key values on key objects through their setters, so
+     * numeric values from the index are narrowed to the type the getter declares.
+     */
+    private static class KeyAttribute {
+        private final String name;
+        private final Class<?> type;
+
+        KeyAttribute(Method getter, String attributeName) {
+            if (!Strings.isNullOrEmpty(attributeName)) {
+                this.name = attributeName;
+            } else {
+                String propertyName = getter.getName().startsWith("is") ? getter.getName().substring(2)
+                        : getter.getName().substring(3);
+                this.name = Introspector.decapitalize(propertyName);
+            }
+            this.type = getter.getReturnType();
+        }
+
+        Object getValue(Item item) {
+            if (type == int.class || type == Integer.class) {
+                return item.getInt(name);
+            } else if (type == long.class || type == Long.class) {
+                return item.getLong(name);
+            }
+            return item.get(name);
+        }
     }
-}
\ No newline at end of file
+}
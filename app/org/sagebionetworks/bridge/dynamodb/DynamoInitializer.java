@@ -10,8 +10,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.joda.time.LocalDate;
 import org.sagebionetworks.bridge.config.BridgeConfig;
@@ -30,11 +32,14 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateGlobalSecondaryIndexAction;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
 import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
 import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
 import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexUpdate;
+import com.amazonaws.services.dynamodbv2.model.IndexStatus;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ListTablesResult;
@@ -48,6 +53,7 @@ import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
@@ -389,6 +395,9 @@ public class DynamoInitializer {
             return ScalarAttributeType.S;
         } else if (LocalDate.class.equals(clazz)) {
             return ScalarAttributeType.S;
+        } else if (clazz.isEnum()) {
+            // Enums are marshalled to their names
+            return ScalarAttributeType.S;
         } else if (Long.class.equals(clazz)) {
             return ScalarAttributeType.N;
         } else if (long.class.equals(clazz)) {
@@ -428,6 +437,13 @@ public class DynamoInitializer {
             } else {
                 final TableDescription existingTable = existingTables.get(table.getTableName());
                 compareSchema(table, existingTable);
+                for (UpdateTableRequest updateTableRequest : getCreateGlobalIndexRequests(table, existingTable)) {
+                    // DynamoDB creates one index at a time on a table, and only on an active table
+                    waitForActive(table);
+                    logger.info("Creating global index " + updateTableRequest.getGlobalSecondaryIndexUpdates().get(0)
+                            .getCreate().getIndexName() + " on table " + table.getTableName());
+                    DYNAMO.updateTable(updateTableRequest);
+                }
             }
             waitForActive(table);
         }
@@ -494,6 +510,47 @@ public class DynamoInitializer {
         return request;
     }
 
+    /**
+     * Gets the requests that add the global indices of the annotated table that the existing table doesn't have yet,
+     * one index per request. DynamoDB fills a new index from the existing items in the background, and the index
+     * can't be queried until it is done.
+     */
+    static List<UpdateTableRequest> getCreateGlobalIndexRequests(TableDescription table,
+            TableDescription existingTable) {
+        Set<String> existingIndexNames = new HashSet<>();
+        if (existingTable.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndexDescription existingIndex : existingTable.getGlobalSecondaryIndexes()) {
+                existingIndexNames.add(existingIndex.getIndexName());
+            }
+        }
+        List<UpdateTableRequest> requests = new ArrayList<>();
+        for (GlobalSecondaryIndexDescription index : table.getGlobalSecondaryIndexes()) {
+            if (existingIndexNames.contains(index.getIndexName())) {
+                continue;
+            }
+            // The request defines the attributes of the new index keys
+            List<AttributeDefinition> attributes = new ArrayList<>();
+            for (AttributeDefinition attribute : table.getAttributeDefinitions()) {
+                for (KeySchemaElement key : index.getKeySchema()) {
+                    if (key.getAttributeName().equals(attribute.getAttributeName())) {
+                        attributes.add(attribute);
+                    }
+                }
+            }
+            CreateGlobalSecondaryIndexAction createIndex = new CreateGlobalSecondaryIndexAction()
+                    .withIndexName(index.getIndexName())
+                    .withKeySchema(index.getKeySchema())
+                    .withProjection(index.getProjection())
+                    .withProvisionedThroughput(new ProvisionedThroughput(
+                            index.getProvisionedThroughput().getReadCapacityUnits(),
+                            index.getProvisionedThroughput().getWriteCapacityUnits()));
+            requests.add(new UpdateTableRequest().withTableName(table.getTableName())
+                    .withAttributeDefinitions(attributes)
+                    .withGlobalSecondaryIndexUpdates(new GlobalSecondaryIndexUpdate().withCreate(createIndex)));
+        }
+        return requests;
+    }
+
     /**
      * Compares hash key, range key of the two tables. Throws an exception if there is difference.
      */
@@ -529,12 +586,13 @@ public class DynamoInitializer {
     }
 
     /**
-     * Wait for the table to become ACTIVE.
+     * Wait for the table and all its global secondary indices to become ACTIVE. An index added to an existing table
+     * can't be queried until DynamoDB has backfilled it from the table, and only one index can be created at a time.
      */
     private static void waitForActive(TableDescription table) {
         DescribeTableResult describeResult = DYNAMO.describeTable(new DescribeTableRequest(table.getTableName()));
         table = describeResult.getTable();
-        while (!TableStatus.ACTIVE.name().equalsIgnoreCase(table.getTableStatus())) {
+        while (!isActive(table)) {
             try {
                 Thread.sleep(200L);
             } catch (InterruptedException e) {
@@ -545,6 +603,20 @@ public class DynamoInitializer {
         }
     }
 
+    static boolean isActive(TableDescription table) {
+        if (!TableStatus.ACTIVE.name().equalsIgnoreCase(table.getTableStatus())) {
+            return false;
+        }
+        if (table.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndexDescription index : table.getGlobalSecondaryIndexes()) {
+                if (!IndexStatus.ACTIVE.name().equalsIgnoreCase(index.getIndexStatus())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Wait for the table to be deleted.
      */
@@ -0,0 +1,209 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * <p>
+ * Full table scan, split into segments that are read in parallel. This is used for admin and reporting reads that
+ * have to look at every row of a table. Each segment pages through its part of the table on its own thread and hands
+ * every item to a {@link Callback} as soon as its page arrives, so results are never all held in memory by the scan
+ * itself.
+ * </p>
+ * <p>
+ * Reads across all segments are throttled to a shared budget of read capacity units per second, so a scan doesn't
+ * starve the request path of provisioned throughput. That also makes scans too slow for the request path, which
+ * should read with the mapper. A scan can be cancelled from any thread; segments stop after the page they are
+ * working on. If a segment fails (including by the callback throwing), the scan is cancelled as soon as the failure
+ * is seen, and the exception is rethrown from {@link #scan} without waiting for the other segments to stop.
+ * </p>
+ * <p>
+ * Segments of all scans run on one shared pool of daemon threads, which are reused between scans.
+ * </p>
+ * <p>
+ * Use {@link DynamoUtils#getParallelScan} to get a scan configured with the default segment count and capacity.
+ * </p>
+ */
+public class DynamoParallelScan<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynamoParallelScan.class);
+
+    private static final ExecutorService SEGMENT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("dynamo-parallel-scan-%d").setDaemon(true).build());
+
+    /** Receives scanned items. This is called from several threads at once, so it must be thread-safe. */
+    public interface Callback<T> {
+        void accept(T item);
+    }
+
+    private final DynamoDBMapper mapper;
+    private final Class<T> clazz;
+    private final DynamoDBScanExpression scanExpression;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private int totalSegments = 1;
+    private double capacityUnitsPerSecond = 0;
+
+    /**
+     * @param mapper
+     *         mapper for the table to scan
+     * @param clazz
+     *         mapped class of the table
+     * @param scanExpression
+     *         scan filters to apply. Segment, start key and consumed capacity settings are managed by this class.
+     */
+    public DynamoParallelScan(DynamoDBMapper mapper, Class<T> clazz, DynamoDBScanExpression scanExpression) {
+        this.mapper = checkNotNull(mapper);
+        this.clazz = checkNotNull(clazz);
+        this.scanExpression = checkNotNull(scanExpression);
+    }
+
+    /** Number of segments to split the table into. Each segment is read on its own thread. */
+    public DynamoParallelScan<T> withTotalSegments(int totalSegments) {
+        checkArgument(totalSegments > 0, "totalSegments must be positive");
+        this.totalSegments = totalSegments;
+        return this;
+    }
+
+    /** Read capacity units per second shared by all segments. Zero or less means no limit. */
+    public DynamoParallelScan<T> withCapacityUnitsPerSecond(double capacityUnitsPerSecond) {
+        this.capacityUnitsPerSecond = capacityUnitsPerSecond;
+        return this;
+    }
+
+    /** Stops the scan. Segments finish the page they are reading, but no further items are passed to the callback. */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Scans the table, passing every matching item to the callback, and blocks until all segments are done or the
+     * scan is cancelled.
+     *
+     * @param callback
+     *         receives each item, called concurrently from the segment threads
+     * @return number of items passed to the callback
+     */
+    public long scan(final Callback<? super T> callback) {
+        checkNotNull(callback);
+
+        final RateLimiter rateLimiter = (capacityUnitsPerSecond > 0) ? RateLimiter.create(capacityUnitsPerSecond)
+                : null;
+        final AtomicLong count = new AtomicLong();
+
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(SEGMENT_EXECUTOR);
+        List<Future<Void>> futures = new ArrayList<>(totalSegments);
+        try {
+            for (int i = 0; i < totalSegments; i++) {
+                final int segment = i;
+                futures.add(completionService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        scanSegment(segment, rateLimiter, callback, count);
+                        return null;
+                    }
+                }));
+            }
+            // Segments are awaited in the order they finish, so the first failure cancels the others
+            for (int i = 0; i < totalSegments; i++) {
+                waitForSegment(completionService);
+            }
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return count.get();
+    }
+
+    private void scanSegment(int segment, RateLimiter rateLimiter, Callback<? super T> callback, AtomicLong count) {
+        DynamoDBScanExpression segmentScan = copyScanExpression(segment);
+        Map<String, AttributeValue> startKey = null;
+        int permits = 1;
+        do {
+            if (rateLimiter != null) {
+                rateLimiter.acquire(permits);
+            }
+            segmentScan.setExclusiveStartKey(startKey);
+            ScanResultPage<T> page = mapper.scanPage(clazz, segmentScan);
+            for (T item : page.getResults()) {
+                if (cancelled.get()) {
+                    return;
+                }
+                callback.accept(item);
+                count.incrementAndGet();
+            }
+            permits = getPermits(page.getConsumedCapacity());
+            startKey = page.getLastEvaluatedKey();
+        } while (startKey != null && !cancelled.get());
+    }
+
+    private void waitForSegment(CompletionService<Void> completionService) {
+        try {
+            completionService.take().get();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(e);
+        } catch (ExecutionException e) {
+            cancel();
+            logger.error("Scan of " + clazz.getSimpleName() + " failed, cancelling remaining segments", e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new BridgeServiceException(e.getCause());
+        }
+    }
+
+    private DynamoDBScanExpression copyScanExpression(int segment) {
+        DynamoDBScanExpression copy = new DynamoDBScanExpression();
+        copy.setScanFilter(scanExpression.getScanFilter());
+        copy.setConditionalOperator(scanExpression.getConditionalOperator());
+        copy.setFilterExpression(scanExpression.getFilterExpression());
+        copy.setExpressionAttributeNames(scanExpression.getExpressionAttributeNames());
+        copy.setExpressionAttributeValues(scanExpression.getExpressionAttributeValues());
+        copy.setProjectionExpression(scanExpression.getProjectionExpression());
+        copy.setLimit(scanExpression.getLimit());
+        copy.setSegment(segment);
+        copy.setTotalSegments(totalSegments);
+        copy.setReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        return copy;
+    }
+
+    /** Permits to take before the next page, the capacity the last page actually consumed (rounded up). */
+    private static int getPermits(ConsumedCapacity consumedCapacity) {
+        if (consumedCapacity == null || consumedCapacity.getCapacityUnits() == null) {
+            return 1;
+        }
+        return Math.max(1, (int)Math.ceil(consumedCapacity.getCapacityUnits()));
+    }
+}
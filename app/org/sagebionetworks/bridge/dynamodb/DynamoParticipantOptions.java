@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.sagebionetworks.bridge.dao.ParticipantOption;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 
@@ -22,6 +23,7 @@ public class DynamoParticipantOptions {
     private String healthCode; // hash
     private String studyKey; // range
     private Map<String,String> options = Maps.newHashMap();
+    private boolean hasData;
     
     @DynamoDBAttribute
     public String getStudyKey() {
@@ -44,6 +46,36 @@ public class DynamoParticipantOptions {
     public void setOptions(Map<String,String> options) {
         this.options = options;
     }
+    /*
+     * Each option is kept in its own attribute, named after the option. The data attribute holds the same options as
+     * JSON, for servers of earlier releases. When an item has a data attribute, it's read instead of the attributes.
+     */
+    @DynamoDBAttribute(attributeName="SHARING_SCOPE")
+    public String getSharingScope() {
+        return options.get(ParticipantOption.SHARING_SCOPE.name());
+    }
+    public void setSharingScope(String sharingScope) {
+        setOptionAttribute(ParticipantOption.SHARING_SCOPE, sharingScope);
+    }
+    @DynamoDBAttribute(attributeName="EMAIL_NOTIFICATIONS")
+    public String getEmailNotifications() {
+        return options.get(ParticipantOption.EMAIL_NOTIFICATIONS.name());
+    }
+    public void setEmailNotifications(String emailNotifications) {
+        setOptionAttribute(ParticipantOption.EMAIL_NOTIFICATIONS, emailNotifications);
+    }
+    @DynamoDBAttribute(attributeName="EXTERNAL_IDENTIFIER")
+    public String getExternalIdentifier() {
+        return options.get(ParticipantOption.EXTERNAL_IDENTIFIER.name());
+    }
+    public void setExternalIdentifier(String externalIdentifier) {
+        setOptionAttribute(ParticipantOption.EXTERNAL_IDENTIFIER, externalIdentifier);
+    }
+    private void setOptionAttribute(ParticipantOption option, String value) {
+        if (!hasData) {
+            options.put(option.name(), value);
+        }
+    }
     @DynamoDBAttribute
     public String getData() {
         try {
@@ -56,6 +88,7 @@ public class DynamoParticipantOptions {
         try {
             TypeReference<HashMap<String,Object>> typeRef = new TypeReference<HashMap<String,Object>>() {};
             options = BridgeObjectMapper.get().readValue(data, typeRef);
+            hasData = true;
         } catch (IOException e) {
             throw new BridgeServiceException(e);
         }
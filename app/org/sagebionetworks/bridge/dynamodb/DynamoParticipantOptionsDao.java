@@ -1,10 +1,15 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import org.sagebionetworks.bridge.dao.ParticipantOption;
 import org.sagebionetworks.bridge.dao.ParticipantOptionsDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -18,15 +23,51 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+/**
+ * <p>
+ * Each option of a participant is kept in its own attribute, named after the option. Options used to be kept together
+ * as JSON in the data attribute, which is the only attribute servers of earlier releases read and write. Until those
+ * servers can no longer be running (during a rolling deploy or after a rollback), every change writes all the option
+ * attributes and the data attribute together, in one UpdateItem that is conditional on the data being unchanged since
+ * the item was read. Items are migrated to option attributes the first time they change.
+ * </p>
+ * <p>
+ * When an item has a data attribute, it holds all the options and is read instead of the option attributes, since an
+ * earlier server may have changed it without changing the attributes. Once no earlier servers remain, the data
+ * attribute can be dropped, and options changed with updates of only the changed attributes.
+ * </p>
+ */
 @Component
 public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
 
+    static final String HEALTH_CODE_ATTRIBUTE = "healthDataCode";
+    static final String STUDY_KEY_ATTRIBUTE = "studyKey";
+    static final String DATA_ATTRIBUTE = "data";
+    // "data" is a reserved word in expressions, so all attributes are referred to by names
+    private static final String DATA_NAME = "#data";
+    private static final String HEALTH_CODE_NAME = "#healthCode";
+    private static final String STUDY_KEY_NAME = "#studyKey";
+    /** Updates that keep failing their condition are attempted this many times. */
+    static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    private AmazonDynamoDB client;
+    private String tableName;
     private DynamoDBMapper mapper;
 
     @Autowired
     public void setDynamoDbClient(AmazonDynamoDB client) {
+        this.client = client;
+        this.tableName = DynamoUtils.getTableName(DynamoParticipantOptions.class);
         DynamoDBMapperConfig mapperConfig = new DynamoDBMapperConfig.Builder().withSaveBehavior(SaveBehavior.UPDATE)
                 .withConsistentReads(ConsistentReads.CONSISTENT)
                 .withTableNameOverride(DynamoUtils.getTableNameOverride(DynamoParticipantOptions.class)).build();
@@ -40,28 +81,20 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
 
     @Override
     public void setOption(StudyIdentifier studyIdentifier, String healthCode, ParticipantOption option, String value) {
-        DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
-        keyObject.setHealthCode(healthCode);
-        
-        DynamoParticipantOptions options = mapper.load(keyObject);
-        if (options == null) {
-            options = new DynamoParticipantOptions();
-        }
-        options.setStudyKey(studyIdentifier.getIdentifier());
-        options.setHealthCode(healthCode);
-        options.getOptions().put(option.name(), value);
-        mapper.save(options);
+        setOptions(studyIdentifier, healthCode, Collections.singletonMap(option, value));
+    }
+
+    @Override
+    public void setOptions(StudyIdentifier studyIdentifier, String healthCode, Map<ParticipantOption,String> options) {
+        updateOptions(healthCode, studyIdentifier.getIdentifier(), options);
     }
     
     @Override
     public String getOption(String healthCode, ParticipantOption option) {
-        DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
-        keyObject.setHealthCode(healthCode);
-        
         String value = option.getDefaultValue();
-        DynamoParticipantOptions options = mapper.load(keyObject);
-        if (options != null && options.getOptions().get(option.name()) != null) {
-            value = options.getOptions().get(option.name());
+        Map<String,String> options = loadOptions(healthCode);
+        if (options != null && options.get(option.name()) != null) {
+            value = options.get(option.name());
         }
         return value;
     }
@@ -71,43 +104,168 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
         DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
         keyObject.setHealthCode(healthCode);
         
-        DynamoParticipantOptions options = mapper.load(keyObject);
-        if (options != null) {
-            mapper.delete(options);    
-        }
+        // Deleting an item that doesn't exist is not an error, so there's no need to load it first
+        mapper.delete(keyObject);
     }
 
     @Override
     public void deleteOption(String healthCode, ParticipantOption option) {
-        DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
-        keyObject.setHealthCode(healthCode);
-        
-        DynamoParticipantOptions options = mapper.load(keyObject);
-        if (options != null) {
-            options.getOptions().remove(option.name());
-            mapper.save(options);
+        updateOptions(healthCode, null, Collections.<ParticipantOption,String>singletonMap(option, null));
+    }
+
+    /**
+     * Sets the options with values and removes the options with null values. A null study key means the update only
+     * removes options, and doesn't create the item if it doesn't exist.
+     */
+    private void updateOptions(String healthCode, String studyKey, Map<ParticipantOption,String> changes) {
+        if (changes.isEmpty()) {
+            return;
         }
+        for (int attempt = 0; attempt < MAX_UPDATE_ATTEMPTS; attempt++) {
+            Map<String,AttributeValue> item = getItem(healthCode);
+            if (item == null && studyKey == null) {
+                return;
+            }
+            // Write out all the options, so items are migrated and the attributes match the data
+            Map<ParticipantOption,String> options = Maps.newEnumMap(ParticipantOption.class);
+            Map<String,String> oldOptions = (item == null) ? Collections.<String,String>emptyMap() : toOptions(item);
+            for (ParticipantOption option : ParticipantOption.values()) {
+                options.put(option, oldOptions.get(option.name()));
+            }
+            options.putAll(changes);
+            AttributeValue oldData = (item == null) ? null : item.get(DATA_ATTRIBUTE);
+            try {
+                client.updateItem(getUpdateRequest(healthCode, studyKey, options, oldData));
+                return;
+            } catch (ConditionalCheckFailedException e) {
+                // The item changed in the meantime
+            }
+        }
+        throw new ConcurrentModificationException("Participant options were changed concurrently, try again.");
+    }
+
+    /**
+     * An UpdateItem that sets or removes the attributes of the given options, and sets the data attribute to the same
+     * options as JSON. It's conditional on the data attribute having the old data, or not existing if there's no old
+     * data.
+     */
+    private UpdateItemRequest getUpdateRequest(String healthCode, String studyKey,
+            Map<ParticipantOption,String> options, AttributeValue oldData) {
+        List<String> sets = Lists.newArrayList();
+        List<String> removes = Lists.newArrayList();
+        Map<String,String> names = Maps.newHashMap();
+        Map<String,AttributeValue> values = Maps.newHashMap();
+        Map<String,String> data = Maps.newHashMap();
+
+        if (studyKey != null) {
+            names.put(STUDY_KEY_NAME, STUDY_KEY_ATTRIBUTE);
+            values.put(":studyKey", new AttributeValue().withS(studyKey));
+            sets.add(STUDY_KEY_NAME + " = :studyKey");
+        }
+        for (Map.Entry<ParticipantOption,String> option : options.entrySet()) {
+            String name = "#" + option.getKey().name();
+            names.put(name, option.getKey().name());
+            if (option.getValue() == null) {
+                removes.add(name);
+            } else {
+                values.put(":" + option.getKey().name(), new AttributeValue().withS(option.getValue()));
+                sets.add(name + " = :" + option.getKey().name());
+                data.put(option.getKey().name(), option.getValue());
+            }
+        }
+        names.put(DATA_NAME, DATA_ATTRIBUTE);
+        try {
+            values.put(":data", new AttributeValue().withS(BridgeObjectMapper.get().writeValueAsString(data)));
+        } catch (JsonProcessingException e) {
+            throw new BridgeServiceException(e);
+        }
+        sets.add(DATA_NAME + " = :data");
+
+        String condition;
+        if (oldData != null) {
+            values.put(":oldData", oldData);
+            condition = DATA_NAME + " = :oldData";
+        } else if (studyKey == null) {
+            names.put(HEALTH_CODE_NAME, HEALTH_CODE_ATTRIBUTE);
+            condition = "attribute_exists(" + HEALTH_CODE_NAME + ") AND attribute_not_exists(" + DATA_NAME + ")";
+        } else {
+            condition = "attribute_not_exists(" + DATA_NAME + ")";
+        }
+
+        StringBuilder expression = new StringBuilder("SET ").append(Joiner.on(", ").join(sets));
+        if (!removes.isEmpty()) {
+            expression.append(" REMOVE ").append(Joiner.on(", ").join(removes));
+        }
+
+        return new UpdateItemRequest().withTableName(tableName)
+                .withKey(ImmutableMap.of(HEALTH_CODE_ATTRIBUTE, new AttributeValue().withS(healthCode)))
+                .withUpdateExpression(expression.toString()).withConditionExpression(condition)
+                .withExpressionAttributeNames(names).withExpressionAttributeValues(values);
     }
 
     @Override
     public Map<ParticipantOption,String> getAllParticipantOptions(String healthCode) {
-        DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
-        keyObject.setHealthCode(healthCode);
-        
         Map<ParticipantOption,String> map = Maps.newHashMap();
-        DynamoParticipantOptions options = mapper.load(keyObject);
+        Map<String,String> options = loadOptions(healthCode);
         if (options == null) {
             return map;
         }
         for (ParticipantOption opt : ParticipantOption.values()) {
             String value = opt.getDefaultValue();
-            if (options.getOptions().get(opt.name()) != null) {
-                value = options.getOptions().get(opt.name());
+            if (options.get(opt.name()) != null) {
+                value = options.get(opt.name());
             }
             map.put(opt, value);
         }        
         return map;
     }
+
+    /**
+     * All the options of a participant are read with one consistent GetItem that only projects the option attributes
+     * and the data attribute. Returns null if the participant has no options record.
+     */
+    private Map<String,String> loadOptions(String healthCode) {
+        Map<String,AttributeValue> item = getItem(healthCode);
+        return (item == null) ? null : toOptions(item);
+    }
+
+    private Map<String,AttributeValue> getItem(String healthCode) {
+        Map<String,String> names = Maps.newHashMap();
+        List<String> projection = Lists.newArrayList(DATA_NAME);
+        names.put(DATA_NAME, DATA_ATTRIBUTE);
+        for (ParticipantOption option : ParticipantOption.values()) {
+            projection.add("#" + option.name());
+            names.put("#" + option.name(), option.name());
+        }
+        GetItemRequest request = new GetItemRequest().withTableName(tableName)
+                .withKey(ImmutableMap.of(HEALTH_CODE_ATTRIBUTE, new AttributeValue().withS(healthCode)))
+                .withProjectionExpression(Joiner.on(", ").join(projection))
+                .withExpressionAttributeNames(names)
+                .withConsistentRead(true);
+        return client.getItem(request).getItem();
+    }
+
+    /** Options from the data attribute if the item has one, otherwise from the option attributes. */
+    private static Map<String,String> toOptions(Map<String,AttributeValue> item) {
+        Map<String,String> options = Maps.newHashMap();
+        AttributeValue data = item.get(DATA_ATTRIBUTE);
+        if (data != null && data.getS() != null) {
+            try {
+                options.putAll(BridgeObjectMapper.get().<Map<String,String>>readValue(data.getS(),
+                        new TypeReference<Map<String,String>>() {}));
+            } catch (IOException e) {
+                throw new BridgeServiceException(e);
+            }
+            return options;
+        }
+        for (ParticipantOption option : ParticipantOption.values()) {
+            AttributeValue value = item.get(option.name());
+            if (value != null && value.getS() != null) {
+                options.put(option.name(), value.getS());
+            }
+        }
+        return options;
+    }
     
     @Override
     public OptionLookup getOptionForAllStudyParticipants(StudyIdentifier studyIdentifier, ParticipantOption option) {
@@ -120,12 +278,18 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
         condition.withAttributeValueList(new AttributeValue().withS(studyIdentifier.getIdentifier()));
         scan.addFilterCondition("studyKey", condition);
         
-        List<DynamoParticipantOptions> mappings = mapper.scan(DynamoParticipantOptions.class, scan);
-        
-        OptionLookup map = new OptionLookup(option.getDefaultValue());
-        for (DynamoParticipantOptions mapping : mappings) {
-            map.put(mapping.getHealthCode(), mapping.getOptions().get(option.name()));
-        }
+        final String optionName = option.name();
+        final OptionLookup map = new OptionLookup(option.getDefaultValue());
+        DynamoParallelScan<DynamoParticipantOptions> parallelScan = DynamoUtils.getParallelScan(mapper,
+                DynamoParticipantOptions.class, scan);
+        parallelScan.scan(new DynamoParallelScan.Callback<DynamoParticipantOptions>() {
+            @Override
+            public void accept(DynamoParticipantOptions mapping) {
+                synchronized (map) {
+                    map.put(mapping.getHealthCode(), mapping.getOptions().get(optionName));
+                }
+            }
+        });
         return map;
     }
 
@@ -15,6 +15,7 @@ import org.sagebionetworks.bridge.models.surveys.SurveyQuestion;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMarshalling;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
@@ -36,6 +37,9 @@ public class DynamoSurvey implements Survey {
     private boolean published;
     private boolean deleted;
     private Integer schemaRevision;
+    private String elementsKey;
+    private Integer elementCount;
+    private List<String> elementKeys;
     private List<SurveyElement> elements;
     
     public DynamoSurvey() {
@@ -65,6 +69,9 @@ public class DynamoSurvey implements Survey {
         setPublished(survey.isPublished());
         setDeleted(survey.isDeleted());
         setSchemaRevision(survey.getSchemaRevision());
+        setElementsKey(survey.getElementsKey());
+        setElementCount(survey.getElementCount());
+        setElementKeys(survey.getElementKeys());
         for (SurveyElement element : survey.getElements()) {
             elements.add(SurveyElementFactory.fromDynamoEntity(element));
         }
@@ -184,6 +191,53 @@ public class DynamoSurvey implements Survey {
         this.schemaRevision = schemaRevision;
     }
 
+    /**
+     * The hash key of this survey's elements in the element table, for surveys saved before elements were listed by
+     * {@link #getElementKeys}. Null for surveys saved before that, whose elements are keyed by the survey's GUID and
+     * createdOn timestamp.
+     */
+    @DynamoDBAttribute
+    @JsonIgnore
+    public String getElementsKey() {
+        return elementsKey;
+    }
+
+    public void setElementsKey(String elementsKey) {
+        this.elementsKey = elementsKey;
+    }
+
+    /**
+     * The number of elements stored under the elements key, for surveys saved before elements were listed by
+     * {@link #getElementKeys}. Fewer stored elements means a later save has replaced this record and removed them, so
+     * the survey should be read again. Null for surveys saved before elements were keyed by save.
+     */
+    @DynamoDBAttribute
+    @JsonIgnore
+    public Integer getElementCount() {
+        return elementCount;
+    }
+
+    public void setElementCount(Integer elementCount) {
+        this.elementCount = elementCount;
+    }
+
+    /**
+     * The keys of this survey's elements in the element table, in the order of the elements. A save only writes the
+     * elements it adds or changes, under keys no other save uses, and keeps the keys of the others, so this record
+     * commits the whole set at once and readers never see a partly written set of elements. Null for surveys saved
+     * before elements were listed here.
+     */
+    @DynamoDBAttribute
+    @DynamoDBMarshalling(marshallerClass = StringListMarshaller.class)
+    @JsonIgnore
+    public List<String> getElementKeys() {
+        return elementKeys;
+    }
+
+    public void setElementKeys(List<String> elementKeys) {
+        this.elementKeys = elementKeys;
+    }
+
     @Override
     @DynamoDBIgnore
     public List<SurveyElement> getElements() {
@@ -227,6 +281,9 @@ public class DynamoSurvey implements Survey {
         result = prime * result + Objects.hashCode(published);
         result = prime * result + Objects.hashCode(deleted);
         result = prime * result + Objects.hashCode(schemaRevision);
+        result = prime * result + Objects.hashCode(elementsKey);
+        result = prime * result + Objects.hashCode(elementCount);
+        result = prime * result + Objects.hashCode(elementKeys);
         result = prime * result + Objects.hashCode(elements);
         return result;
     }
@@ -249,6 +306,9 @@ public class DynamoSurvey implements Survey {
                 && Objects.equals(this.published, that.published)
                 && Objects.equals(this.deleted, that.deleted)
                 && Objects.equals(this.schemaRevision, that.schemaRevision)
+                && Objects.equals(this.elementsKey, that.elementsKey)
+                && Objects.equals(this.elementCount, that.elementCount)
+                && Objects.equals(this.elementKeys, that.elementKeys)
                 && Objects.equals(this.elements, that.elements);
     }
 
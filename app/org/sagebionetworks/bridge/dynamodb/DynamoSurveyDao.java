@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import javax.annotation.Resource;
 
@@ -22,6 +23,8 @@ import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyElement;
 import org.sagebionetworks.bridge.models.surveys.SurveyElementFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
@@ -35,9 +38,14 @@ import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 @Component
 public class DynamoSurveyDao implements SurveyDao {
+    private static final Logger logger = LoggerFactory.getLogger(DynamoSurveyDao.class);
+
+    private static final int MAX_READ_ATTEMPTS = 5;
+    private static final long READ_RETRY_DELAY_MILLIS = 50L;
 
     Comparator<DynamoSurvey> VERSIONED_ON_DESC_SORTER = new Comparator<DynamoSurvey>() {
         @Override public int compare(DynamoSurvey o1, DynamoSurvey o2) {
@@ -124,12 +132,24 @@ public class DynamoSurveyDao implements SurveyDao {
         }
         
         Survey getOne(boolean exceptionIfEmpty) {
-            List<Survey> surveys = getAll(exceptionIfEmpty);
-            if (!surveys.isEmpty()) {
-                attachSurveyElements(surveys.get(0));
-                return surveys.get(0);
+            // If the elements are missing, a later save replaced them after the survey record was read; reading the
+            // survey record again will pick up the new elements.
+            for (int i=0; i < MAX_READ_ATTEMPTS; i++) {
+                if (i > 0) {
+                    sleepBeforeRetry(i);
+                }
+                List<Survey> surveys = getAll(exceptionIfEmpty);
+                if (surveys.isEmpty()) {
+                    return null;
+                }
+                DynamoSurvey survey = (DynamoSurvey)surveys.get(0);
+                List<SurveyElement> elements = loadElements(survey);
+                if (elements != null) {
+                    survey.setElements(elements);
+                    return survey;
+                }
             }
-            return null;
+            throw new ConcurrentModificationException(new DynamoSurvey(surveyGuid, createdOn));
         }
 
         private List<DynamoSurvey> query() {
@@ -187,22 +207,6 @@ public class DynamoSurveyDao implements SurveyDao {
             condition.withAttributeValueList(new AttributeValue().withS(equalTo));
             return condition;
         }
-        
-        private void attachSurveyElements(Survey survey) {
-            DynamoSurveyElement template = new DynamoSurveyElement();
-            template.setSurveyKeyComponents(survey.getGuid(), survey.getCreatedOn());
-            
-            DynamoDBQueryExpression<DynamoSurveyElement> query = new DynamoDBQueryExpression<DynamoSurveyElement>();
-            query.withHashKeyValues(template);
-            
-            QueryResultPage<DynamoSurveyElement> page = surveyElementMapper.queryPage(DynamoSurveyElement.class, query);
-
-            List<SurveyElement> elements = Lists.newArrayList();
-            for (DynamoSurveyElement element : page.getResults()) {
-                elements.add(SurveyElementFactory.fromDynamoEntity(element));
-            }
-            survey.setElements(elements);
-        }
     }
 
     private DynamoDBMapper surveyMapper;
@@ -229,7 +233,7 @@ public class DynamoSurveyDao implements SurveyDao {
         survey.setModifiedOn(time);
         survey.setPublished(false);
         survey.setDeleted(false);
-        return saveSurvey(survey);
+        return saveSurvey(survey, null);
     }
 
     @Override
@@ -259,12 +263,15 @@ public class DynamoSurveyDao implements SurveyDao {
         if (existing.isPublished()) {
             throw new PublishedSurveyException(survey);
         }
+        // Fail before any elements are written, rather than when the survey record is saved.
+        if (!Objects.equals(existing.getVersion(), survey.getVersion())) {
+            throw new ConcurrentModificationException(survey);
+        }
         existing.setIdentifier(survey.getIdentifier());
         existing.setName(survey.getName());
-        existing.setElements(survey.getElements());
         existing.setModifiedOn(DateUtils.getCurrentMillisFromEpoch());
         
-        return saveSurvey(survey);
+        return saveSurvey(survey, (DynamoSurvey)existing);
     }
     
     @Override
@@ -283,7 +290,7 @@ public class DynamoSurveyDao implements SurveyDao {
         for (SurveyElement element : copy.getElements()) {
             element.setGuid(BridgeUtils.generateGuid());
         }
-        return saveSurvey(copy);
+        return saveSurvey(copy, null);
     }
 
     @Override
@@ -301,7 +308,7 @@ public class DynamoSurveyDao implements SurveyDao {
             }
         }
         existing.setDeleted(true);
-        saveSurvey(existing);
+        saveSurvey(existing, (DynamoSurvey)existing);
     }
 
     @Override
@@ -358,42 +365,209 @@ public class DynamoSurveyDao implements SurveyDao {
         return new QueryBuilder().setSurvey(keys.getGuid()).setCreatedOn(keys.getCreatedOn()).getOne(true);
     }
     
-    private Survey saveSurvey(Survey survey) {
-        deleteAllElements(survey.getGuid(), survey.getCreatedOn());
-        
-        List<DynamoSurveyElement> dynamoElements = Lists.newArrayList();
+    /**
+     * Returns the stored elements of the survey, or null if some are missing because a later save has replaced them
+     * since the survey record was read. Surveys saved before their element keys were listed read every element under
+     * their elements key.
+     */
+    private List<SurveyElement> loadElements(DynamoSurvey survey) {
+        if (survey.getElementKeys() == null) {
+            return getCommittedElements(survey, queryElements(getElementsKey(survey)));
+        }
+        List<Object> keys = Lists.newArrayList();
+        for (String elementKey : Sets.newHashSet(survey.getElementKeys())) {
+            keys.add(toElementKey(elementKey));
+        }
+        Map<String,DynamoSurveyElement> storedElements = Maps.newHashMap();
+        if (!keys.isEmpty()) {
+            for (List<Object> results : surveyElementMapper.batchLoad(keys).values()) {
+                for (Object result : results) {
+                    DynamoSurveyElement element = (DynamoSurveyElement)result;
+                    storedElements.put(getElementKey(element), element);
+                }
+            }
+        }
+        return getCommittedElements(survey.getElementKeys(), storedElements);
+    }
+    
+    /**
+     * Returns the stored elements of the survey, or null if some are missing because a later save has replaced them
+     * since the survey record was read.
+     */
+    static List<SurveyElement> getCommittedElements(DynamoSurvey survey, List<DynamoSurveyElement> storedElements) {
+        Integer elementCount = survey.getElementCount();
+        if (elementCount != null && storedElements.size() != elementCount) {
+            return null;
+        }
+        List<SurveyElement> elements = Lists.newArrayList();
+        for (DynamoSurveyElement element : storedElements) {
+            elements.add(SurveyElementFactory.fromDynamoEntity(element));
+        }
+        return elements;
+    }
+    
+    /**
+     * Returns the stored elements with the given keys, in the order of the keys, or null if some are missing because
+     * a later save has replaced them since the survey record was read.
+     */
+    static List<SurveyElement> getCommittedElements(List<String> elementKeys,
+            Map<String,DynamoSurveyElement> storedElements) {
+        List<SurveyElement> elements = Lists.newArrayList();
+        for (String elementKey : elementKeys) {
+            DynamoSurveyElement element = storedElements.get(elementKey);
+            if (element == null) {
+                return null;
+            }
+            elements.add(SurveyElementFactory.fromDynamoEntity(element));
+        }
+        return elements;
+    }
+    
+    /** The hash key of the survey's elements. Surveys saved before elements keys use the survey keys. */
+    static String getElementsKey(DynamoSurvey survey) {
+        if (survey.getElementsKey() != null) {
+            return survey.getElementsKey();
+        }
+        return survey.getGuid() + ":" + Long.toString(survey.getCreatedOn());
+    }
+    
+    /**
+     * The keys of the survey's stored elements, in the order of its elements. Surveys saved before their element keys
+     * were listed stored their elements in order under their elements key.
+     */
+    static List<String> getElementKeys(DynamoSurvey survey) {
+        if (survey.getElementKeys() != null) {
+            return survey.getElementKeys();
+        }
+        List<String> elementKeys = Lists.newArrayList();
         for (int i=0; i < survey.getElements().size(); i++) {
-            SurveyElement element = survey.getElements().get(i);
-            element.setSurveyKeyComponents(survey.getGuid(), survey.getCreatedOn());
-            element.setOrder(i);
+            elementKeys.add(getElementsKey(survey) + ":" + i);
+        }
+        return elementKeys;
+    }
+    
+    /** The key of a stored element: its hash key and its range key (the order), separated by a colon. */
+    static String getElementKey(DynamoSurveyElement element) {
+        return element.getSurveyCompoundKey() + ":" + element.getOrder();
+    }
+    
+    private static DynamoSurveyElement toElementKey(String elementKey) {
+        int separator = elementKey.lastIndexOf(':');
+        DynamoSurveyElement key = new DynamoSurveyElement();
+        key.setSurveyCompoundKey(elementKey.substring(0, separator));
+        key.setOrder(Integer.parseInt(elementKey.substring(separator + 1)));
+        return key;
+    }
+    
+    /**
+     * Saves the survey record with a conditional write. Only the elements that are added, or that differ from the
+     * stored element with the same GUID, are written, under a hash key that no other save uses, so neither readers
+     * nor a concurrent save can see them until the survey record that lists them is committed. Elements that are
+     * unchanged, even if they have moved, keep their stored rows. If the commit fails, the new elements are deleted
+     * again; if it succeeds, the stored elements the survey no longer lists are deleted.
+     */
+    private Survey saveSurvey(Survey survey, DynamoSurvey existing) {
+        DynamoSurvey dynamoSurvey = (DynamoSurvey)survey;
+        
+        List<String> existingKeys = Lists.newArrayList();
+        Map<String,Integer> existingIndexes = Maps.newHashMap();
+        if (existing != null) {
+            existingKeys = getElementKeys(existing);
+            for (int i=0; i < existing.getElements().size(); i++) {
+                existingIndexes.put(existing.getElements().get(i).getGuid(), i);
+            }
+        }
+        String writeKey = survey.getGuid() + ":" + Long.toString(survey.getCreatedOn()) + ":" +
+                BridgeUtils.generateGuid();
+        
+        List<String> elementKeys = Lists.newArrayList();
+        List<DynamoSurveyElement> newElements = Lists.newArrayList();
+        for (SurveyElement surveyElement : survey.getElements()) {
+            DynamoSurveyElement element = (DynamoSurveyElement)surveyElement;
             if (element.getGuid() == null) {
                 element.setGuid(BridgeUtils.generateGuid());
             }
-            dynamoElements.add((DynamoSurveyElement)element);
+            Integer index = existingIndexes.get(element.getGuid());
+            if (index != null && isSameElement((DynamoSurveyElement)existing.getElements().get(index), element)) {
+                elementKeys.add(existingKeys.get(index));
+            } else {
+                element.setSurveyCompoundKey(writeKey);
+                element.setOrder(newElements.size());
+                newElements.add(element);
+                elementKeys.add(getElementKey(element));
+            }
+        }
+        if (!newElements.isEmpty()) {
+            List<FailedBatch> failures = surveyElementMapper.batchSave(newElements);
+            if (!failures.isEmpty()) {
+                deleteElements(newElements);
+                BridgeUtils.ifFailuresThrowException(failures);
+            }
         }
         
-        List<FailedBatch> failures = surveyElementMapper.batchSave(dynamoElements);
-        BridgeUtils.ifFailuresThrowException(failures);
-        
+        dynamoSurvey.setElementKeys(elementKeys);
+        dynamoSurvey.setElementsKey(null);
+        dynamoSurvey.setElementCount(null);
         try {
             surveyMapper.save(survey);    
         } catch(ConditionalCheckFailedException throwable) {
+            deleteElements(newElements);
             throw new ConcurrentModificationException(survey);
         } catch(Throwable t) {
+            deleteElements(newElements);
             throw new BridgeServiceException(t);
         }
+        
+        List<DynamoSurveyElement> removedElements = Lists.newArrayList();
+        for (String elementKey : Sets.difference(Sets.newHashSet(existingKeys), Sets.newHashSet(elementKeys))) {
+            removedElements.add(toElementKey(elementKey));
+        }
+        deleteElements(removedElements);
         return survey;
     }
     
-    private void deleteAllElements(String surveyGuid, long createdOn) {
+    /**
+     * Deletes elements that aren't part of any committed survey record. If this fails, the elements are left behind
+     * under keys no survey record lists, which readers never load, so the failure is only logged.
+     */
+    private void deleteElements(List<DynamoSurveyElement> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+        try {
+            List<FailedBatch> failures = surveyElementMapper.batchDelete(elements);
+            if (!failures.isEmpty()) {
+                logger.warn("Failed to delete " + failures.size() + " batches of replaced survey elements");
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to delete replaced survey elements: " + ex.getMessage(), ex);
+        }
+    }
+    
+    private boolean isSameElement(DynamoSurveyElement stored, DynamoSurveyElement element) {
+        return Objects.equals(stored.getGuid(), element.getGuid())
+                && Objects.equals(stored.getIdentifier(), element.getIdentifier())
+                && Objects.equals(stored.getType(), element.getType())
+                && Objects.equals(stored.getData(), element.getData());
+    }
+    
+    private List<DynamoSurveyElement> queryElements(String elementsKey) {
         DynamoSurveyElement template = new DynamoSurveyElement();
-        template.setSurveyKeyComponents(surveyGuid, createdOn);
+        template.setSurveyCompoundKey(elementsKey);
         
         DynamoDBQueryExpression<DynamoSurveyElement> query = new DynamoDBQueryExpression<DynamoSurveyElement>();
         query.withHashKeyValues(template);
         
         QueryResultPage<DynamoSurveyElement> page = surveyElementMapper.queryPage(DynamoSurveyElement.class, query);
-        List<FailedBatch> failures = surveyElementMapper.batchDelete(page.getResults());
-        BridgeUtils.ifFailuresThrowException(failures);
+        return page.getResults();
+    }
+    
+    private static void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(READ_RETRY_DELAY_MILLIS << (attempt - 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(ex);
+        }
     }
 }
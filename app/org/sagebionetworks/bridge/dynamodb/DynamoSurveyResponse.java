@@ -20,6 +20,7 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -30,6 +31,7 @@ import com.google.common.collect.Lists;
 public final class DynamoSurveyResponse implements SurveyResponse {
 
     private static final String ANSWERS_PROPERTY = "answers";
+    private static final String APPLIED_KEYS_PROPERTY = "appliedKeys";
     
     private String healthCode;
     private String identifier;
@@ -41,6 +43,7 @@ public final class DynamoSurveyResponse implements SurveyResponse {
     private Long completedOn;
     private Long version;
     private List<SurveyAnswer> answers = Lists.newArrayList();
+    private List<String> appliedKeys = Lists.newArrayList();
     
     @Override
     @JsonIgnore
@@ -141,6 +144,16 @@ public final class DynamoSurveyResponse implements SurveyResponse {
     }
     @Override
     @DynamoDBIgnore
+    @JsonIgnore
+    public List<String> getAppliedKeys() {
+        return appliedKeys;
+    }
+    @Override
+    public void setAppliedKeys(List<String> appliedKeys) {
+        this.appliedKeys = appliedKeys;
+    }
+    @Override
+    @DynamoDBIgnore
     public Status getStatus() {
         if (startedOn == null && completedOn == null) {
             return Status.UNSTARTED;
@@ -156,10 +169,19 @@ public final class DynamoSurveyResponse implements SurveyResponse {
     public ObjectNode getData() {
         ObjectNode data = JsonNodeFactory.instance.objectNode();
         data.set(ANSWERS_PROPERTY, BridgeObjectMapper.get().valueToTree(answers));
+        if (appliedKeys != null && !appliedKeys.isEmpty()) {
+            data.set(APPLIED_KEYS_PROPERTY, BridgeObjectMapper.get().valueToTree(appliedKeys));
+        }
         return data;
     }
     public void setData(ObjectNode data) {
         this.answers = JsonUtils.asEntityList(data, ANSWERS_PROPERTY, SurveyAnswer.class);
+        this.appliedKeys = Lists.newArrayList();
+        if (data.has(APPLIED_KEYS_PROPERTY)) {
+            for (JsonNode key : data.get(APPLIED_KEYS_PROPERTY)) {
+                appliedKeys.add(key.asText());
+            }
+        }
     }
     @Override
     public int hashCode() {
@@ -171,6 +193,7 @@ public final class DynamoSurveyResponse implements SurveyResponse {
         result = prime * result + Objects.hashCode(startedOn);
         result = prime * result + Objects.hashCode(completedOn);
         result = prime * result + Objects.hashCode(answers);
+        result = prime * result + Objects.hashCode(appliedKeys);
         result = prime * result + Objects.hashCode(version);
         return result;
     }
@@ -185,6 +208,7 @@ public final class DynamoSurveyResponse implements SurveyResponse {
         return (Objects.equals(healthCode, other.healthCode) && Objects.equals(identifier, other.identifier)
             && Objects.equals(surveyKey, other.surveyKey) && Objects.equals(startedOn, other.startedOn) 
             && Objects.equals(completedOn, other.completedOn) && Objects.equals(answers, other.answers)
+            && Objects.equals(appliedKeys, other.appliedKeys)
             && Objects.equals(version, other.version));
     }
 
@@ -12,13 +12,13 @@ import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityAlreadyExistsException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
-import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
@@ -27,17 +27,24 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 @Component
 public class DynamoSurveyResponseDao implements SurveyResponseDao {
 
     private static final List<SurveyAnswer> EMPTY_ANSWERS = ImmutableList.of();
+    private static final JsonNodeMarshaller DATA_MARSHALLER = new JsonNodeMarshaller();
+    
+    // Enough to recognize a client retrying any recent batch, without growing the item without bound.
+    static final int MAX_APPLIED_KEYS = 20;
     
     private DynamoDBMapper mapper;
-    private DynamoSurveyDao surveyDao;
+    private AmazonDynamoDB client;
 
     @Resource(name = "surveyResponseDdbMapper")
     public void setDdbMapper(DynamoDBMapper mapper) {
@@ -45,16 +52,16 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
     }
     
     @Autowired
-    public void setSurveyDao(DynamoSurveyDao surveyDao) {
-        this.surveyDao = surveyDao;
+    public void setDynamoDbClient(AmazonDynamoDB client) {
+        this.client = client;
     }
     
     @Override
-    public SurveyResponse createSurveyResponse(GuidCreatedOnVersionHolder keys, String healthCode,
-            List<SurveyAnswer> answers, String identifier) {
+    public SurveyResponse createSurveyResponse(Survey survey, String healthCode, List<SurveyAnswer> answers,
+            String identifier) {
         
         try {
-            return createSurveyResponseInternal(keys, healthCode, answers, identifier);
+            return createSurveyResponseInternal(survey, healthCode, answers, identifier);
         } catch(ConcurrentModificationException e) {
             // This can happen due to the version not being correct, as we're only checking the identifier;
             throw new EntityAlreadyExistsException(e.getEntity());
@@ -70,17 +77,38 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
         return response;
     }
     
+    /**
+     * Merges the answers into the response and writes the result with a single UpdateItem call, conditional on the
+     * version of the response that was read. Neither the survey nor the response is read again here. If the batch
+     * carries an idempotency key that has already been applied to this response, nothing is written and the response
+     * is returned as it is.
+     */
     @Override
-    public SurveyResponse appendSurveyAnswers(SurveyResponse response, List<SurveyAnswer> answers) {
+    public SurveyResponse appendSurveyAnswers(SurveyResponse response, Survey survey, List<SurveyAnswer> answers,
+            String idempotencyKey) {
+        if (idempotencyKey != null && response.getAppliedKeys().contains(idempotencyKey)) {
+            return response;
+        }
         List<SurveyAnswer> unionOfAnswers = getUnionOfValidMostRecentAnswers(response.getAnswers(), answers);
         response.setAnswers(unionOfAnswers);
-        updateTimestamps(response);
+        if (idempotencyKey != null) {
+            List<String> appliedKeys = Lists.newArrayList(response.getAppliedKeys());
+            appliedKeys.add(idempotencyKey);
+            if (appliedKeys.size() > MAX_APPLIED_KEYS) {
+                appliedKeys = appliedKeys.subList(appliedKeys.size() - MAX_APPLIED_KEYS, appliedKeys.size());
+            }
+            response.setAppliedKeys(Lists.newArrayList(appliedKeys));
+        }
+        updateTimestamps(response, survey);
 
+        Long expectedVersion = response.getVersion();
+        Long newVersion = (expectedVersion == null) ? 1L : expectedVersion + 1L;
         try {
-            mapper.save(response);
+            client.updateItem(getAppendRequest((DynamoSurveyResponse)response, expectedVersion, newVersion));
         } catch(ConditionalCheckFailedException e) {
             throw new ConcurrentModificationException(response);
         }
+        response.setVersion(newVersion);
         return response;
     }
     
@@ -115,7 +143,7 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
         return mapper.count(DynamoSurveyResponse.class, query) > 0;
     }
     
-    private SurveyResponse createSurveyResponseInternal(GuidCreatedOnVersionHolder keys, String healthCode,
+    private SurveyResponse createSurveyResponseInternal(Survey survey, String healthCode,
             List<SurveyAnswer> answers, String identifier) {
 
         List<SurveyAnswer> unionOfAnswers = getUnionOfValidMostRecentAnswers(EMPTY_ANSWERS, answers);
@@ -124,8 +152,8 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
         response.setIdentifier(identifier);
         response.setAnswers(unionOfAnswers);
         response.setHealthCode(healthCode);
-        response.setSurveyKey(keys);
-        updateTimestamps(response);
+        response.setSurveyKey(survey);
+        updateTimestamps(response, survey);
         
         try {
             mapper.save(response);
@@ -177,7 +205,45 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
         return Lists.newArrayList(answersMap.values()); 
     }
     
-    private void updateTimestamps(SurveyResponse response) {
+    private UpdateItemRequest getAppendRequest(DynamoSurveyResponse response, Long expectedVersion, Long newVersion) {
+        Map<String,AttributeValue> key = Maps.newHashMap();
+        key.put("healthCode", new AttributeValue().withS(response.getHealthCode()));
+        key.put("identifier", new AttributeValue().withS(response.getIdentifier()));
+
+        // "data" is a reserved word, so all attributes are referenced by name placeholders.
+        Map<String,String> names = Maps.newHashMap();
+        Map<String,AttributeValue> values = Maps.newHashMap();
+        List<String> sets = Lists.newArrayList();
+        names.put("#data", "data");
+        values.put(":data", new AttributeValue().withS(DATA_MARSHALLER.marshall(response.getData())));
+        sets.add("#data = :data");
+        names.put("#version", "version");
+        values.put(":newVersion", new AttributeValue().withN(newVersion.toString()));
+        sets.add("#version = :newVersion");
+        if (response.getStartedOn() != null) {
+            names.put("#startedOn", "startedOn");
+            values.put(":startedOn", new AttributeValue().withN(response.getStartedOn().toString()));
+            sets.add("#startedOn = :startedOn");
+        }
+        if (response.getCompletedOn() != null) {
+            names.put("#completedOn", "completedOn");
+            values.put(":completedOn", new AttributeValue().withN(response.getCompletedOn().toString()));
+            sets.add("#completedOn = :completedOn");
+        }
+        String condition;
+        if (expectedVersion == null) {
+            condition = "attribute_exists(healthCode) AND attribute_not_exists(#version)";
+        } else {
+            values.put(":expectedVersion", new AttributeValue().withN(expectedVersion.toString()));
+            condition = "#version = :expectedVersion";
+        }
+        return new UpdateItemRequest().withTableName(DynamoUtils.getTableName(DynamoSurveyResponse.class))
+                .withKey(key).withUpdateExpression("SET " + Joiner.on(", ").join(sets))
+                .withConditionExpression(condition).withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values);
+    }
+    
+    private void updateTimestamps(SurveyResponse response, Survey survey) {
         List<SurveyAnswer> answers = response.getAnswers();
         if (answers != null) {
             long earliestDate = Long.MAX_VALUE;
@@ -190,8 +256,6 @@ public class DynamoSurveyResponseDao implements SurveyResponseDao {
                     latestDate = answer.getAnsweredOn();
                 }
             }
-            GuidCreatedOnVersionHolder keys = new GuidCreatedOnVersionHolderImpl(response);
-            Survey survey = surveyDao.getSurvey(keys);
             if (!answers.isEmpty()) {
                 response.setStartedOn(earliestDate);    
             }
@@ -16,10 +16,12 @@ import org.sagebionetworks.bridge.models.schedules.TaskStatus;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMarshalling;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
@@ -32,6 +34,12 @@ public final class DynamoTask implements Task, BridgeEntity {
 
     private static final String ACTIVITY_PROPERTY = "activity";
     
+    /**
+     * Index of a user's tasks by the time they are hidden, so the tasks still shown can be read without reading the 
+     * expired and finished tasks. It's a global index because a local index can't be added to an existing table.
+     */
+    static final String HIDES_ON_INDEX = "healthCode-hidesOn-index";
+    
     private String healthCode;
     private String guid;
     private String schedulePlanGuid;
@@ -64,6 +72,7 @@ public final class DynamoTask implements Task, BridgeEntity {
     }
     @JsonIgnore
     @DynamoDBAttribute
+    @DynamoDBIndexRangeKey(attributeName = "hidesOn", globalSecondaryIndexName = HIDES_ON_INDEX)
     public Long getHidesOn() {
         return this.hidesOn;
     }
@@ -81,6 +90,8 @@ public final class DynamoTask implements Task, BridgeEntity {
     }
     @JsonIgnore
     @DynamoDBHashKey
+    @DynamoDBIndexHashKey(attributeName = "healthCode", globalSecondaryIndexName = HIDES_ON_INDEX)
+    @DynamoDBProjection(projectionType = ProjectionType.ALL, globalSecondaryIndexName = HIDES_ON_INDEX)
     @Override
     public String getHealthCode() {
         return healthCode;
@@ -1,39 +1,58 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Resource;
 
 import org.joda.time.DateTime;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.TaskDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.schedules.Task;
+import org.sagebionetworks.bridge.models.schedules.TaskUpdateResult;
+import org.sagebionetworks.bridge.models.schedules.TaskUpdateResult.Status;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 @Component
 public class DynamoTaskDao implements TaskDao {
     
-    private static final Comparator<Task> TASK_COMPARATOR = new Comparator<Task>() {
-        @Override 
-        public int compare(Task task1, Task task2) {
-            int result = (int)(task1.getScheduledOn() - task2.getScheduledOn());
-            if (result == 0) {
-                result = task1.getActivity().getLabel().compareTo(task2.getActivity().getLabel());
-            }
-            return result;
-        }
-    };
+    static final String HEALTH_CODE_ATTRIBUTE = "healthCode";
+    static final String GUID_ATTRIBUTE = "guid";
+    static final String HIDES_ON_ATTRIBUTE = "hidesOn";
+    static final String EXPIRES_ON_ATTRIBUTE = "expiresOn";
+    static final String SCHEDULED_ON_ATTRIBUTE = "scheduledOn";
+    /** Separates the hidesOn timestamp and the GUID of the last task of a page in the offset key. */
+    private static final String OFFSET_KEY_SEPARATOR = ":";
+    /** Tasks in batches that fail to save are saved again, up to this many attempts in all. */
+    static final int MAX_SAVE_ATTEMPTS = 3;
+    /**
+     * Batches usually fail because the table's write throughput is exceeded, so the delay before saving them again
+     * starts at this and doubles with each attempt.
+     */
+    static final long SAVE_RETRY_DELAY_MILLIS = 100L;
     
     private DynamoDBMapper mapper;
 
@@ -45,6 +64,47 @@ public class DynamoTaskDao implements TaskDao {
     /** {@inheritDoc} */
     @Override
     public List<Task> getTasks(String healthCode, DateTime endsOn) {
+        PaginatedQueryList<DynamoTask> queryResults = mapper.query(DynamoTask.class, 
+                createShownTasksQuery(healthCode, endsOn));
+        List<Task> tasks = Lists.newArrayList();
+        tasks.addAll(queryResults);
+        Collections.sort(tasks, Task.TASK_COMPARATOR);
+        return tasks;
+    }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The offset key is the hidesOn timestamp and the GUID of the last task of the previous page, which 
+     * is where the query of the hidesOn index continues.
+     * </p>
+     */
+    @Override
+    public PagedResourceList<Task> getTasks(String healthCode, DateTime endsOn, String offsetKey, int pageSize) {
+        checkArgument(pageSize > 0, "Page size must be positive");
+        
+        DynamoDBQueryExpression<DynamoTask> query = createShownTasksQuery(healthCode, endsOn).withLimit(pageSize);
+        if (offsetKey != null) {
+            query.setExclusiveStartKey(parseOffsetKey(healthCode, offsetKey));
+        }
+        QueryResultPage<DynamoTask> page = mapper.queryPage(DynamoTask.class, query);
+        List<Task> tasks = Lists.newArrayList();
+        tasks.addAll(page.getResults());
+        
+        Map<String,AttributeValue> lastKey = page.getLastEvaluatedKey();
+        String nextOffsetKey = (lastKey == null) ? null : 
+            lastKey.get(HIDES_ON_ATTRIBUTE).getN() + OFFSET_KEY_SEPARATOR + lastKey.get(GUID_ATTRIBUTE).getS();
+        return new PagedResourceList<>(tasks, nextOffsetKey);
+    }
+    
+    /**
+     * Query of the hidesOn index for the user's tasks that are hidden after now and scheduled by the end 
+     * timestamp. Since hidesOn is a key condition rather than a query filter, the hidden tasks are never 
+     * read. Tasks are saved ahead of the end timestamps that can be requested, so later tasks are 
+     * filtered out. A query filter is applied after the read, so the later tasks are still read and 
+     * consume read capacity, and a page can be filtered down to nothing.
+     */
+    private static DynamoDBQueryExpression<DynamoTask> createShownTasksQuery(String healthCode, DateTime endsOn) {
         DynamoTask hashKey = new DynamoTask();
         hashKey.setHealthCode(healthCode);
 
@@ -54,15 +114,33 @@ public class DynamoTaskDao implements TaskDao {
             .withComparisonOperator(ComparisonOperator.GT)
             .withAttributeValueList(attribute);
 
-        DynamoDBQueryExpression<DynamoTask> query = new DynamoDBQueryExpression<DynamoTask>()
-            .withQueryFilterEntry("hidesOn", condition)
-            .withHashKeyValues(hashKey);
-
-        PaginatedQueryList<DynamoTask> queryResults = mapper.query(DynamoTask.class, query);
-        List<Task> tasks = Lists.newArrayList();
-        tasks.addAll(queryResults);
-        Collections.sort(tasks, TASK_COMPARATOR);
-        return tasks;
+        return new DynamoDBQueryExpression<DynamoTask>()
+            .withIndexName(DynamoTask.HIDES_ON_INDEX)
+            .withConsistentRead(false)
+            .withHashKeyValues(hashKey)
+            .withRangeKeyCondition(HIDES_ON_ATTRIBUTE, condition)
+            .withQueryFilterEntry(SCHEDULED_ON_ATTRIBUTE, new Condition()
+                .withComparisonOperator(ComparisonOperator.LE)
+                .withAttributeValueList(new AttributeValue().withN(Long.toString(endsOn.getMillis()))));
+    }
+    
+    /** The index and table key of the last task of the previous page, for the query to start after it. */
+    private static Map<String,AttributeValue> parseOffsetKey(String healthCode, String offsetKey) {
+        String[] parts = offsetKey.split(OFFSET_KEY_SEPARATOR, 2);
+        if (parts.length == 2 && !parts[1].isEmpty()) {
+            try {
+                Long.parseLong(parts[0]);
+                
+                Map<String,AttributeValue> key = Maps.newHashMap();
+                key.put(HEALTH_CODE_ATTRIBUTE, new AttributeValue().withS(healthCode));
+                key.put(GUID_ATTRIBUTE, new AttributeValue().withS(parts[1]));
+                key.put(HIDES_ON_ATTRIBUTE, new AttributeValue().withN(parts[0]));
+                return key;
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new BadRequestException("'" + offsetKey + "' is not a valid offsetKey");
     }
     
     /** {@inheritDoc} */
@@ -92,34 +170,100 @@ public class DynamoTaskDao implements TaskDao {
     
     /** {@inheritDoc} */
     @Override
-    public void updateTasks(String healthCode, List<Task> tasks) {
-        List<Task> tasksToSave = Lists.newArrayList();
+    public List<TaskUpdateResult> updateTasks(String healthCode, List<Task> tasks) {
+        // Load all the tasks that change in one BatchGetItem (the mapper splits it into batches of 100 keys).
+        List<Object> keys = Lists.newArrayList();
+        Set<String> keyGuids = Sets.newHashSet();
         for (Task task : tasks) {
-            if (task != null && (task.getStartedOn() != null || task.getFinishedOn() != null)) {
+            if (hasChanges(task) && keyGuids.add(task.getGuid())) {
                 DynamoTask hashKey = new DynamoTask();
                 hashKey.setHealthCode(healthCode);
                 hashKey.setGuid(task.getGuid());
-                Task dbTask = mapper.load(hashKey);
-                
-                if (dbTask != null) {
-                    if (task.getStartedOn() != null) {
-                        dbTask.setStartedOn(task.getStartedOn());
-                        dbTask.setHidesOn(new Long(Long.MAX_VALUE));
-                    }
-                    if (task.getFinishedOn() != null) {
-                        dbTask.setFinishedOn(task.getFinishedOn());
-                        dbTask.setHidesOn(task.getFinishedOn());
+                keys.add(hashKey);
+            }
+        }
+        Map<String,DynamoTask> dbTasks = Maps.newHashMap();
+        if (!keys.isEmpty()) {
+            for (List<Object> results : mapper.batchLoad(keys).values()) {
+                for (Object result : results) {
+                    DynamoTask dbTask = (DynamoTask)result;
+                    dbTasks.put(dbTask.getGuid(), dbTask);
+                }
+            }
+        }
+        
+        // Apply the changes in order, so a later update of the same task in the list wins
+        Map<String,TaskUpdateResult> results = Maps.newLinkedHashMap();
+        Map<String,DynamoTask> tasksToSave = Maps.newLinkedHashMap();
+        for (Task task : tasks) {
+            String guid = task.getGuid();
+            if (!hasChanges(task)) {
+                if (!results.containsKey(guid)) {
+                    results.put(guid, new TaskUpdateResult(guid, Status.NOT_CHANGED));
+                }
+                continue;
+            }
+            DynamoTask dbTask = dbTasks.get(guid);
+            if (dbTask == null) {
+                results.put(guid, new TaskUpdateResult(guid, Status.NOT_FOUND));
+                continue;
+            }
+            if (task.getStartedOn() != null) {
+                dbTask.setStartedOn(task.getStartedOn());
+                dbTask.setHidesOn(new Long(Long.MAX_VALUE));
+            }
+            if (task.getFinishedOn() != null) {
+                dbTask.setFinishedOn(task.getFinishedOn());
+                dbTask.setHidesOn(task.getFinishedOn());
+            }
+            tasksToSave.put(guid, dbTask);
+            results.put(guid, new TaskUpdateResult(guid, Status.UPDATED));
+        }
+        
+        // Save with BatchWriteItem, and save the tasks of failed batches again after a delay
+        for (int attempt = 1; !tasksToSave.isEmpty(); attempt++) {
+            List<FailedBatch> failures = mapper.batchSave(Lists.newArrayList(tasksToSave.values()));
+            
+            Map<String,DynamoTask> failedTasks = Maps.newLinkedHashMap();
+            Map<String,String> failureMessages = Maps.newHashMap();
+            for (FailedBatch failure : failures) {
+                for (List<WriteRequest> requests : failure.getUnprocessedItems().values()) {
+                    for (WriteRequest request : requests) {
+                        String guid = request.getPutRequest().getItem().get(GUID_ATTRIBUTE).getS();
+                        failedTasks.put(guid, tasksToSave.get(guid));
+                        if (failure.getException() != null) {
+                            failureMessages.put(guid, failure.getException().getMessage());
+                        }
                     }
-                    tasksToSave.add(dbTask);
                 }
             }
+            if (!failedTasks.isEmpty() && attempt >= MAX_SAVE_ATTEMPTS) {
+                for (String guid : failedTasks.keySet()) {
+                    results.put(guid, new TaskUpdateResult(guid, Status.FAILED, failureMessages.get(guid)));
+                }
+                break;
+            }
+            if (!failedTasks.isEmpty()) {
+                sleepBeforeRetry(attempt);
+            }
+            tasksToSave = failedTasks;
         }
-        if (!tasksToSave.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchSave(tasksToSave);
-            BridgeUtils.ifFailuresThrowException(failures);
+        return Lists.newArrayList(results.values());
+    }
+    
+    private static void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(SAVE_RETRY_DELAY_MILLIS << (attempt - 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(ex);
         }
     }
     
+    private static boolean hasChanges(Task task) {
+        return task.getStartedOn() != null || task.getFinishedOn() != null;
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void deleteTasks(String healthCode) {
@@ -139,5 +283,61 @@ public class DynamoTaskDao implements TaskDao {
             BridgeUtils.ifFailuresThrowException(failures);
         }
     }
+    
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a parallel scan of the whole table, throttled to the read capacity budget of admin scans. 
+     * Batches are archived and deleted from the scan threads as they fill up. If archiving or deleting a 
+     * batch fails, the scan is cancelled and the exception is rethrown; the tasks of that batch are kept 
+     * and are deleted by the next sweep.
+     * </p>
+     */
+    @Override
+    public int deleteExpiredTasks(DateTime expiredBefore, final int batchSize, final TaskArchiver archiver) {
+        checkNotNull(expiredBefore);
+        checkArgument(batchSize > 0, "Batch size must be positive");
+        checkNotNull(archiver);
+        
+        AttributeValue attribute = new AttributeValue().withN(Long.toString(expiredBefore.getMillis()));
+        Condition condition = new Condition()
+            .withComparisonOperator(ComparisonOperator.LT)
+            .withAttributeValueList(attribute);
+        DynamoDBScanExpression scan = new DynamoDBScanExpression();
+        scan.addFilterCondition(EXPIRES_ON_ATTRIBUTE, condition);
+        scan.addFilterCondition(HIDES_ON_ATTRIBUTE, condition);
+        
+        final List<Task> batch = Lists.newArrayList();
+        final AtomicInteger deleteCount = new AtomicInteger();
+        DynamoParallelScan<DynamoTask> parallelScan = DynamoUtils.getParallelScan(mapper, DynamoTask.class, scan);
+        parallelScan.scan(new DynamoParallelScan.Callback<DynamoTask>() {
+            @Override
+            public void accept(DynamoTask task) {
+                List<Task> fullBatch = null;
+                synchronized (batch) {
+                    batch.add(task);
+                    if (batch.size() >= batchSize) {
+                        fullBatch = Lists.newArrayList(batch);
+                        batch.clear();
+                    }
+                }
+                // Archive and delete outside the lock, so the other segments can keep scanning.
+                if (fullBatch != null) {
+                    deleteCount.addAndGet(archiveAndDelete(fullBatch, archiver));
+                }
+            }
+        });
+        if (!batch.isEmpty()) {
+            deleteCount.addAndGet(archiveAndDelete(batch, archiver));
+        }
+        return deleteCount.get();
+    }
+    
+    private int archiveAndDelete(List<Task> tasks, TaskArchiver archiver) {
+        archiver.archive(tasks);
+        List<FailedBatch> failures = mapper.batchDelete(tasks);
+        BridgeUtils.ifFailuresThrowException(failures);
+        return tasks.size();
+    }
 
 }
@@ -12,23 +12,45 @@ import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.TaskEventDao;
 import org.sagebionetworks.bridge.models.tasks.TaskEvent;
 import org.sagebionetworks.bridge.models.tasks.TaskEventType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 @Component
 public class DynamoTaskEventDao implements TaskEventDao {
 
     private static final String ANSWERED_EVENT_POSTFIX = ":"+TaskEventType.ANSWERED.name().toLowerCase();
     
+    static final String HEALTH_CODE_ATTRIBUTE = "healthCode";
+    static final String EVENT_ID_ATTRIBUTE = "eventId";
+    static final String TIMESTAMP_ATTRIBUTE = "timestamp";
+    static final String ANSWER_VALUE_ATTRIBUTE = "answerValue";
+    // "timestamp" is a reserved word in expressions
+    private static final String TIMESTAMP_NAME = "#timestamp";
+    private static final String ANSWER_VALUE_NAME = "#answerValue";
+    
+    private AmazonDynamoDB client;
+    private String tableName;
     private DynamoDBMapper mapper;
 
+    @Autowired
+    public void setDynamoDbClient(AmazonDynamoDB client) {
+        this.client = client;
+        this.tableName = DynamoUtils.getTableName(DynamoTaskEvent.class);
+    }
+    
     @Resource(name = "taskEventDdbMapper")
     public void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
@@ -38,17 +60,63 @@ public class DynamoTaskEventDao implements TaskEventDao {
     public void publishEvent(TaskEvent event) {
         checkNotNull(event);
         
-        DynamoTaskEvent hashKey = new DynamoTaskEvent();
-        hashKey.setHealthCode(event.getHealthCode());
-        hashKey.setEventId(event.getEventId());
+        try {
+            client.updateItem(getUpdateRequest(event));
+        } catch (ConditionalCheckFailedException e) {
+            // The saved event is as late or later than this one, so there's nothing to change.
+        }
+    }
+
+    @Override
+    public void publishEvents(List<TaskEvent> events) {
+        checkNotNull(events);
         
-        // Only save if the timestamp is later than the current timestamp in the table
-        TaskEvent savedEvent = mapper.load(hashKey);
-        if (savedEvent == null || event.getTimestamp() > savedEvent.getTimestamp()) {
-            mapper.save(event);    
+        // Conditional writes can't be batched, so only the latest of several events with the same key is written.
+        Map<String,TaskEvent> latestEvents = Maps.newLinkedHashMap();
+        for (TaskEvent event : events) {
+            checkNotNull(event);
+            String key = event.getHealthCode() + ":" + event.getEventId();
+            TaskEvent latest = latestEvents.get(key);
+            if (latest == null || event.getTimestamp() > latest.getTimestamp()) {
+                latestEvents.put(key, event);
+            }
+        }
+        for (TaskEvent event : latestEvents.values()) {
+            publishEvent(event);
         }
     }
 
+    /**
+     * One UpdateItem that writes the event only if there is no saved event, or the saved event has an earlier 
+     * timestamp. The check and the write are atomic, so concurrent events can't move the timestamp backwards.
+     */
+    private UpdateItemRequest getUpdateRequest(TaskEvent event) {
+        Map<String,String> names = Maps.newHashMap();
+        names.put(TIMESTAMP_NAME, TIMESTAMP_ATTRIBUTE);
+        names.put(ANSWER_VALUE_NAME, ANSWER_VALUE_ATTRIBUTE);
+        
+        Map<String,AttributeValue> values = Maps.newHashMap();
+        values.put(":timestamp", new AttributeValue().withN(event.getTimestamp().toString()));
+        
+        String expression = "SET " + TIMESTAMP_NAME + " = :timestamp";
+        if (event.getAnswerValue() != null) {
+            values.put(":answerValue", new AttributeValue().withS(event.getAnswerValue()));
+            expression += ", " + ANSWER_VALUE_NAME + " = :answerValue";
+        } else {
+            expression += " REMOVE " + ANSWER_VALUE_NAME;
+        }
+        
+        return new UpdateItemRequest().withTableName(tableName)
+                .withKey(ImmutableMap.of(
+                        HEALTH_CODE_ATTRIBUTE, new AttributeValue().withS(event.getHealthCode()),
+                        EVENT_ID_ATTRIBUTE, new AttributeValue().withS(event.getEventId())))
+                .withUpdateExpression(expression)
+                .withConditionExpression("attribute_not_exists(" + TIMESTAMP_NAME + ") OR " + TIMESTAMP_NAME
+                        + " < :timestamp")
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values);
+    }
+
     @Override
     public Map<String, DateTime> getTaskEventMap(String healthCode) {
         checkNotNull(healthCode);
@@ -15,6 +15,7 @@ import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMarshalling;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
@@ -72,7 +73,8 @@ public class DynamoUpload2 implements Upload {
         this.contentLength = contentLength;
     }
 
-    /** The base64-encoded, 128-bit MD5 digest of the object body. */
+    /** {@inheritDoc} */
+    @Override
     public String getContentMd5() {
         return contentMd5;
     }
@@ -135,6 +137,7 @@ public class DynamoUpload2 implements Upload {
     }
 
     /** {@inheritDoc} */
+    @DynamoDBIndexRangeKey(attributeName = "status", globalSecondaryIndexName = "uploadDate-index")
     @DynamoDBMarshalling(marshallerClass = EnumMarshaller.class)
     @Override
     public UploadStatus getStatus() {
@@ -147,6 +150,7 @@ public class DynamoUpload2 implements Upload {
     }
 
     /** {@inheritDoc} */
+    @DynamoDBIndexHashKey(attributeName = "uploadDate", globalSecondaryIndexName = "uploadDate-index")
     @DynamoDBMarshalling(marshallerClass = LocalDateMarshaller.class)
     @Override
     public LocalDate getUploadDate() {
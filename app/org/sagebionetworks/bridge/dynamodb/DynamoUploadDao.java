@@ -6,20 +6,26 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.LocalDate;
 
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
@@ -27,6 +33,16 @@ import org.springframework.stereotype.Component;
 
 @Component
 public class DynamoUploadDao implements UploadDao {
+    /** Global index of uploads by upload date, with the status as range key. */
+    static final String UPLOAD_DATE_INDEX = "uploadDate-index";
+
+    /** Statuses of failed uploads, in the order they are listed for each date. */
+    static final List<UploadStatus> FAILED_STATUSES = ImmutableList.of(UploadStatus.VALIDATION_FAILED,
+            UploadStatus.VALIDATION_IN_PROGRESS);
+
+    /** Most index queries for one page of failed uploads, so a page over many dates without failures stays short. */
+    static final int MAX_QUERIES_PER_PAGE = 20;
+
     private DynamoDBMapper mapper;
 
     /**
@@ -53,17 +69,78 @@ public class DynamoUploadDao implements UploadDao {
     /** {@inheritDoc} */
     @Override
     public List<? extends Upload> getFailedUploadsForDates(@Nonnull String startDate, @Nonnull String endDate) {
-        // We want upload dates between startDate and endDate (inclusive by default) and with statuses
-        // VALIDATION_IN_PROGRESS or VALIDATION_FAILED
-        DynamoDBScanExpression scan = new DynamoDBScanExpression()
-                .withFilterConditionEntry("uploadDate", new Condition()
-                        .withComparisonOperator(ComparisonOperator.BETWEEN)
-                        .withAttributeValueList(new AttributeValue(startDate), new AttributeValue(endDate)))
-                .withFilterConditionEntry("status", new Condition()
-                        .withComparisonOperator(ComparisonOperator.IN)
-                        .withAttributeValueList(new AttributeValue(UploadStatus.VALIDATION_IN_PROGRESS.name()),
-                                new AttributeValue(UploadStatus.VALIDATION_FAILED.name())));
-        return mapper.scan(DynamoUpload2.class, scan);
+        List<Upload> uploads = new ArrayList<>();
+        String offsetKey = null;
+        do {
+            PagedResourceList<? extends Upload> page = getFailedUploads(startDate, endDate, offsetKey,
+                    DynamoIndexHelper.BATCH_LOAD_SIZE);
+            uploads.addAll(page.getItems());
+            offsetKey = page.getOffsetKey();
+        } while (offsetKey != null);
+        return uploads;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each date and status is a key of the upload date index, which is queried a key at a time. The index only holds
+     * the keys of the uploads, so the uploads of the page are then loaded with one batch load.
+     * </p>
+     */
+    @Override
+    public PagedResourceList<? extends Upload> getFailedUploads(@Nonnull String startDate, @Nonnull String endDate,
+            String offsetKey, int pageSize) {
+        checkArgument(pageSize > 0 && pageSize <= DynamoIndexHelper.BATCH_LOAD_SIZE, "Page size must be from 1 to "
+                + DynamoIndexHelper.BATCH_LOAD_SIZE);
+        LocalDate end = LocalDate.parse(endDate);
+        FailedUploadCursor cursor = (offsetKey == null) ? new FailedUploadCursor(LocalDate.parse(startDate), 0, null)
+                : FailedUploadCursor.parse(offsetKey);
+
+        List<DynamoUpload2> keys = new ArrayList<>();
+        int queries = 0;
+        while (keys.size() < pageSize && queries < MAX_QUERIES_PER_PAGE && !cursor.date.isAfter(end)) {
+            DynamoUpload2 hashKey = new DynamoUpload2();
+            hashKey.setUploadDate(cursor.date);
+            DynamoDBQueryExpression<DynamoUpload2> query = new DynamoDBQueryExpression<DynamoUpload2>()
+                    .withIndexName(UPLOAD_DATE_INDEX).withConsistentRead(false).withHashKeyValues(hashKey)
+                    .withRangeKeyCondition("status", new Condition().withComparisonOperator(ComparisonOperator.EQ)
+                            .withAttributeValueList(new AttributeValue(cursor.getStatus().name())))
+                    .withLimit(pageSize - keys.size());
+            if (cursor.uploadId != null) {
+                query.setExclusiveStartKey(cursor.getExclusiveStartKey());
+            }
+            QueryResultPage<DynamoUpload2> page = mapper.queryPage(DynamoUpload2.class, query);
+            keys.addAll(page.getResults());
+            queries++;
+
+            Map<String, AttributeValue> lastKey = page.getLastEvaluatedKey();
+            cursor = (lastKey == null) ? cursor.next() : new FailedUploadCursor(cursor.date, cursor.statusIndex,
+                    lastKey.get("uploadId").getS());
+        }
+        String nextOffsetKey = cursor.date.isAfter(end) ? null : cursor.toString();
+        return new PagedResourceList<>(loadUploads(keys), nextOffsetKey);
+    }
+
+    /** Loads the uploads with one batch load, in the order of their keys. Uploads deleted since are left out. */
+    private List<DynamoUpload2> loadUploads(List<DynamoUpload2> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, DynamoUpload2> uploadsById = new HashMap<>();
+        for (List<Object> results : mapper.batchLoad(new ArrayList<Object>(keys)).values()) {
+            for (Object result : results) {
+                DynamoUpload2 upload = (DynamoUpload2) result;
+                uploadsById.put(upload.getUploadId(), upload);
+            }
+        }
+        List<DynamoUpload2> uploads = new ArrayList<>(keys.size());
+        for (DynamoUpload2 key : keys) {
+            DynamoUpload2 upload = uploadsById.get(key.getUploadId());
+            if (upload != null) {
+                uploads.add(upload);
+            }
+        }
+        return uploads;
     }
 
     // TODO: Cache this, or make it so that calling getUpload() and uploadComplete() in sequence don't cause duplicate
@@ -111,4 +188,64 @@ public class DynamoUploadDao implements UploadDao {
         // persist
         mapper.save(upload2);
     }
+
+    /**
+     * Position in the listing of failed uploads: a date, a failed status, and the ID of the last upload listed for
+     * them, if any. As an offset key, it reads "date:status:uploadId".
+     */
+    static final class FailedUploadCursor {
+        private static final String SEPARATOR = ":";
+
+        private final LocalDate date;
+        private final int statusIndex;
+        private final String uploadId;
+
+        FailedUploadCursor(LocalDate date, int statusIndex, String uploadId) {
+            this.date = date;
+            this.statusIndex = statusIndex;
+            this.uploadId = uploadId;
+        }
+
+        static FailedUploadCursor parse(String offsetKey) {
+            String[] parts = offsetKey.split(SEPARATOR, -1);
+            if (parts.length == 3) {
+                try {
+                    int statusIndex = FAILED_STATUSES.indexOf(UploadStatus.valueOf(parts[1]));
+                    if (statusIndex >= 0) {
+                        return new FailedUploadCursor(LocalDate.parse(parts[0]), statusIndex,
+                                parts[2].isEmpty() ? null : parts[2]);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    // fall through
+                }
+            }
+            throw new BadRequestException("'" + offsetKey + "' is not a valid offsetKey");
+        }
+
+        UploadStatus getStatus() {
+            return FAILED_STATUSES.get(statusIndex);
+        }
+
+        /** The start of the next status of the date, or of the next date. */
+        FailedUploadCursor next() {
+            if (statusIndex + 1 < FAILED_STATUSES.size()) {
+                return new FailedUploadCursor(date, statusIndex + 1, null);
+            }
+            return new FailedUploadCursor(date.plusDays(1), 0, null);
+        }
+
+        /** Index queries start after the last upload listed, identified by its table key and index key. */
+        Map<String, AttributeValue> getExclusiveStartKey() {
+            Map<String, AttributeValue> key = new HashMap<>();
+            key.put("uploadId", new AttributeValue(uploadId));
+            key.put("uploadDate", new AttributeValue(date.toString()));
+            key.put("status", new AttributeValue(getStatus().name()));
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return date + SEPARATOR + getStatus().name() + SEPARATOR + (uploadId == null ? "" : uploadId);
+        }
+    }
 }
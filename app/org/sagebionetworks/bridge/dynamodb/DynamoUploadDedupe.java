@@ -0,0 +1,66 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBRangeKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+
+/**
+ * The last upload of some content by a participant, used to find repeated uploads of the same file. Content is
+ * identified by the MD5 of the file and its name.
+ */
+@DynamoThroughput(readCapacity=25, writeCapacity=25)
+@DynamoDBTable(tableName = "UploadDedupe")
+public class DynamoUploadDedupe {
+
+    private String healthCode;
+    private String contentKey;
+    private String uploadId;
+    private Long createdOn;
+
+    public DynamoUploadDedupe() {
+    }
+
+    public DynamoUploadDedupe(String healthCode, String contentMd5, String filename) {
+        this.healthCode = healthCode;
+        this.contentKey = getContentKey(contentMd5, filename);
+    }
+
+    static String getContentKey(String contentMd5, String filename) {
+        return contentMd5 + ":" + filename;
+    }
+
+    @DynamoDBHashKey
+    public String getHealthCode() {
+        return healthCode;
+    }
+    public void setHealthCode(String healthCode) {
+        this.healthCode = healthCode;
+    }
+
+    /** MD5 and name of the file, separated by a colon. */
+    @DynamoDBRangeKey
+    public String getContentKey() {
+        return contentKey;
+    }
+    public void setContentKey(String contentKey) {
+        this.contentKey = contentKey;
+    }
+
+    @DynamoDBAttribute
+    public String getUploadId() {
+        return uploadId;
+    }
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    /** When the upload was requested, or when it was completed if it replaced an upload that was never completed. */
+    @DynamoDBAttribute
+    public Long getCreatedOn() {
+        return createdOn;
+    }
+    public void setCreatedOn(Long createdOn) {
+        this.createdOn = createdOn;
+    }
+}
@@ -0,0 +1,57 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import javax.annotation.Nonnull;
+
+import org.sagebionetworks.bridge.dao.UploadDedupeDao;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.ConsistentReads;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.SaveBehavior;
+
+@Component
+public class DynamoUploadDedupeDao implements UploadDedupeDao {
+
+    private DynamoDBMapper mapper;
+
+    @Autowired
+    public void setDynamoDbClient(AmazonDynamoDB client) {
+        DynamoDBMapperConfig mapperConfig = new DynamoDBMapperConfig.Builder().withSaveBehavior(SaveBehavior.CLOBBER)
+                .withConsistentReads(ConsistentReads.CONSISTENT)
+                .withTableNameOverride(DynamoUtils.getTableNameOverride(DynamoUploadDedupe.class)).build();
+        mapper = new DynamoDBMapper(client, mapperConfig);
+    }
+
+    /** Package-scoped for unit tests. */
+    void setMapper(DynamoDBMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String getDuplicateUploadId(@Nonnull String healthCode, @Nonnull String contentMd5,
+            @Nonnull String filename, long registeredAfter) {
+        checkArgument(isNotBlank(healthCode));
+        DynamoUploadDedupe dedupe = mapper.load(new DynamoUploadDedupe(healthCode, contentMd5, filename));
+        if (dedupe == null || dedupe.getCreatedOn() == null || dedupe.getCreatedOn() < registeredAfter) {
+            return null;
+        }
+        return dedupe.getUploadId();
+    }
+
+    @Override
+    public void registerUpload(@Nonnull String healthCode, @Nonnull String contentMd5, @Nonnull String filename,
+            @Nonnull String uploadId, long registeredOn) {
+        checkArgument(isNotBlank(healthCode));
+        checkArgument(isNotBlank(uploadId));
+        DynamoUploadDedupe dedupe = new DynamoUploadDedupe(healthCode, contentMd5, filename);
+        dedupe.setUploadId(uploadId);
+        dedupe.setCreatedOn(registeredOn);
+        mapper.save(dedupe);
+    }
+}
@@ -84,19 +84,39 @@ public class DynamoUserConsentDao implements UserConsentDao {
 
     @Override
     public long getNumberOfParticipants(StudyIdentifier studyIdentifier) {
+        // This is read when a participant consents, so it is an ordinary scan rather than a throttled parallel scan
+        Set<String> healthCodes = Sets.newHashSet();
+        List<DynamoUserConsent2> mappings = mapper.scan(DynamoUserConsent2.class, getStudyScan(studyIdentifier));
+        for (DynamoUserConsent2 consent : mappings) {
+            healthCodes.add(consent.getHealthCode());
+        }
+        return healthCodes.size();
+    }
+
+    @Override
+    public Set<String> getParticipantHealthCodes(StudyIdentifier studyIdentifier) {
+        DynamoDBScanExpression scan = getStudyScan(studyIdentifier);
+
+        final Set<String> healthCodes = Sets.newConcurrentHashSet();
+        DynamoParallelScan<DynamoUserConsent2> parallelScan = DynamoUtils.getParallelScan(mapper,
+                DynamoUserConsent2.class, scan);
+        parallelScan.scan(new DynamoParallelScan.Callback<DynamoUserConsent2>() {
+            @Override
+            public void accept(DynamoUserConsent2 consent) {
+                healthCodes.add(consent.getHealthCode());
+            }
+        });
+        return healthCodes;
+    }
+
+    private static DynamoDBScanExpression getStudyScan(StudyIdentifier studyIdentifier) {
         DynamoDBScanExpression scan = new DynamoDBScanExpression();
 
         Condition condition = new Condition();
         condition.withComparisonOperator(ComparisonOperator.EQ);
         condition.withAttributeValueList(new AttributeValue().withS(studyIdentifier.getIdentifier()));
         scan.addFilterCondition("studyKey", condition);
-
-        Set<String> healthCodes = Sets.newHashSet();
-        List<DynamoUserConsent2> mappings = mapper.scan(DynamoUserConsent2.class, scan);
-        for (DynamoUserConsent2 consent : mappings) {
-            healthCodes.add(consent.getHealthCode());
-        }
-        return healthCodes.size();
+        return scan;
     }
 
     private DynamoUserConsent2 getUserConsent(String healthCode, StudyConsent studyConsent) {
@@ -7,6 +7,7 @@ import org.sagebionetworks.bridge.config.Environment;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.TableNameOverride;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
@@ -59,6 +60,19 @@ public final class DynamoUtils {
         final DynamoIndexHelper indexHelper = new DynamoIndexHelper();
         indexHelper.setIndex(ddbIndex);
         indexHelper.setMapper(getMapper(dynamoTable, client));
+        indexHelper.setTableClass(dynamoTable);
         return indexHelper;
     }
+
+    /**
+     * Gets a parallel scan of the mapper's table, using the segment count and read capacity budget configured for
+     * admin and reporting scans.
+     */
+    public static <T> DynamoParallelScan<T> getParallelScan(final DynamoDBMapper mapper, final Class<T> dynamoTable,
+            final DynamoDBScanExpression scanExpression) {
+        final BridgeConfig config = BridgeConfigFactory.getConfig();
+        return new DynamoParallelScan<>(mapper, dynamoTable, scanExpression)
+                .withTotalSegments(config.getPropertyAsInt("dynamo.scan.total.segments"))
+                .withCapacityUnitsPerSecond(config.getPropertyAsInt("dynamo.scan.capacity.units.per.second"));
+    }
 }
@@ -0,0 +1,13 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import java.util.List;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.JsonMarshaller;
+
+/**
+ * Marshalls List<String> values to JSON when persisting using DynamoDB, keeping the order of the list and allowing
+ * empty lists.
+ */
+public class StringListMarshaller extends JsonMarshaller<List<String>> {
+
+}
@@ -0,0 +1,68 @@
+package org.sagebionetworks.bridge.models;
+
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Statistics of the keys of one domain of the cache, accumulated one key at a time. Memory is approximated by the
+ * length of the keys and of their values. Key counts by time to live are bucketed as "none" (the key doesn't
+ * expire), "1m" (expires in less than a minute), "1h", "1d", and "more".
+ */
+public class CacheDomainStatistics {
+
+    private static final long MINUTE = 60L;
+    private static final long HOUR = 60L * MINUTE;
+    private static final long DAY = 24L * HOUR;
+
+    private final String domain;
+    private long keyCount;
+    private long approximateBytes;
+    private long noExpiration;
+    private long expiresInMinute;
+    private long expiresInHour;
+    private long expiresInDay;
+    private long expiresLater;
+
+    public CacheDomainStatistics(String domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * Adds a key to the statistics.
+     *
+     * @param bytes
+     *         approximate size of the key and its value
+     * @param ttlSeconds
+     *         time to live of the key in seconds, negative if the key doesn't expire
+     */
+    public void add(long bytes, long ttlSeconds) {
+        keyCount++;
+        approximateBytes += bytes;
+        if (ttlSeconds < 0L) {
+            noExpiration++;
+        } else if (ttlSeconds < MINUTE) {
+            expiresInMinute++;
+        } else if (ttlSeconds < HOUR) {
+            expiresInHour++;
+        } else if (ttlSeconds < DAY) {
+            expiresInDay++;
+        } else {
+            expiresLater++;
+        }
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+    public long getKeyCount() {
+        return keyCount;
+    }
+    public long getApproximateBytes() {
+        return approximateBytes;
+    }
+    public Map<String, Long> getTtlDistribution() {
+        return ImmutableMap.<String, Long>builder().put("none", noExpiration).put("1m", expiresInMinute)
+                .put("1h", expiresInHour).put("1d", expiresInDay).put("more", expiresLater).build();
+    }
+}
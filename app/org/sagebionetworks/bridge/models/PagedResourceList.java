@@ -0,0 +1,26 @@
+package org.sagebionetworks.bridge.models;
+
+import java.util.List;
+
+/**
+ * One page of a list. The offset key is passed back to get the next page, and is null on the last page.
+ */
+public final class PagedResourceList<T> {
+
+    private final List<T> items;
+    private final String offsetKey;
+
+    public PagedResourceList(List<T> items, String offsetKey) {
+        this.items = items;
+        this.offsetKey = offsetKey;
+    }
+    public List<T> getItems() {
+        return items;
+    }
+    public String getOffsetKey() {
+        return offsetKey;
+    }
+    public int getTotal() {
+        return items.size();
+    }
+}
@@ -0,0 +1,51 @@
+package org.sagebionetworks.bridge.models.healthdata;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Progress of a health data export over a range of upload dates. A date is complete once all of its files have been
+ * written to the export bucket. Exports resume from the first date that isn't complete.
+ */
+public class HealthDataExportStatus {
+    private final String startDate;
+    private final String endDate;
+    private final boolean running;
+    private final List<String> completedDates;
+    private final List<String> pendingDates;
+
+    public HealthDataExportStatus(String startDate, String endDate, boolean running, List<String> completedDates,
+            List<String> pendingDates) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.running = running;
+        this.completedDates = ImmutableList.copyOf(completedDates);
+        this.pendingDates = ImmutableList.copyOf(pendingDates);
+    }
+
+    /** First upload date of the export, in YYYY-MM-DD format. */
+    public String getStartDate() {
+        return startDate;
+    }
+
+    /** Last upload date of the export (inclusive), in YYYY-MM-DD format. */
+    public String getEndDate() {
+        return endDate;
+    }
+
+    /** True if an export is currently running on this server. */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Upload dates in the range that have been fully exported. */
+    public List<String> getCompletedDates() {
+        return completedDates;
+    }
+
+    /** Upload dates in the range that have not been exported yet. */
+    public List<String> getPendingDates() {
+        return pendingDates;
+    }
+}
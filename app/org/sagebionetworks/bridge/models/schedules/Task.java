@@ -1,7 +1,21 @@
 package org.sagebionetworks.bridge.models.schedules;
 
+import java.util.Comparator;
+
 public interface Task {
     
+    /** Orders tasks as they are returned to the user, by the time they are scheduled, then by activity label. */
+    public static final Comparator<Task> TASK_COMPARATOR = new Comparator<Task>() {
+        @Override 
+        public int compare(Task task1, Task task2) {
+            int result = (int)(task1.getScheduledOn() - task2.getScheduledOn());
+            if (result == 0) {
+                result = task1.getActivity().getLabel().compareTo(task2.getActivity().getLabel());
+            }
+            return result;
+        }
+    };
+    
     public TaskStatus getStatus();
     
     public String getHealthCode();
@@ -0,0 +1,41 @@
+package org.sagebionetworks.bridge.models.schedules;
+
+/**
+ * The result of updating one task in a batch of task updates. Updates are applied task by task, so some tasks of a
+ * batch can be updated while others are not found or fail to save.
+ */
+public final class TaskUpdateResult {
+    
+    public enum Status {
+        /** The task's startedOn or finishedOn timestamps were saved. */
+        UPDATED,
+        /** The update has neither a startedOn nor a finishedOn timestamp, so there was nothing to save. */
+        NOT_CHANGED,
+        /** The user has no task with this GUID. */
+        NOT_FOUND,
+        /** The task couldn't be saved. The client can send the update again. */
+        FAILED;
+    }
+    
+    private final String guid;
+    private final Status status;
+    private final String message;
+    
+    public TaskUpdateResult(String guid, Status status, String message) {
+        this.guid = guid;
+        this.status = status;
+        this.message = message;
+    }
+    public TaskUpdateResult(String guid, Status status) {
+        this(guid, status, null);
+    }
+    public String getGuid() {
+        return guid;
+    }
+    public Status getStatus() {
+        return status;
+    }
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,384 @@
+package org.sagebionetworks.bridge.models.surveys;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sagebionetworks.bridge.models.surveys.SurveyRule.Operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * <p>
+ * The skip logic of one survey version, compiled into a graph of its elements. Each element leads to the next element
+ * in the survey, and a question also leads to the targets of its rules. A question's rules are evaluated in order
+ * against its answer, and the first rule that matches decides where the survey goes next; if none match, the survey
+ * goes on to the next element.
+ * </p>
+ * <p>
+ * When the rules of a question cover every possible answer (true, false and declined for a boolean question; every
+ * enumerated value and declined for a single-choice question that doesn't allow other values), the question never
+ * falls through to the next element, which can leave later elements unreachable.
+ * </p>
+ * <p>
+ * Answers to a survey are on a legal path if every answered question can be reached from the start of the survey,
+ * following the rules of every answered question on the way. Questions that haven't been answered are assumed to lead
+ * anywhere they could, so a response that is still in progress is on a legal path. Graphs are immutable and safe to
+ * share between threads, so build one per survey version.
+ * </p>
+ */
+public final class SurveyNavigationGraph {
+
+    private final List<SurveyElement> elements;
+    private final Map<String, Integer> indexByIdentifier;
+    private final Map<String, Integer> indexByGuid;
+    // rules and outgoing edges, by element index
+    private final List<List<CompiledRule>> rules;
+    private final List<Set<Integer>> edges;
+
+    public SurveyNavigationGraph(Survey survey) {
+        checkNotNull(survey);
+
+        this.elements = ImmutableList.copyOf(survey.getElements());
+        this.indexByIdentifier = new HashMap<>();
+        this.indexByGuid = new HashMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            SurveyElement element = elements.get(i);
+            if (element.getIdentifier() != null && !indexByIdentifier.containsKey(element.getIdentifier())) {
+                indexByIdentifier.put(element.getIdentifier(), i);
+            }
+            if (element.getGuid() != null) {
+                indexByGuid.put(element.getGuid(), i);
+            }
+        }
+
+        List<List<CompiledRule>> ruleList = new ArrayList<>(elements.size());
+        List<Set<Integer>> edgeList = new ArrayList<>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            List<CompiledRule> elementRules = compileRules(elements.get(i));
+            Set<Integer> elementEdges = new LinkedHashSet<>();
+            for (CompiledRule rule : elementRules) {
+                if (rule.target != null) {
+                    elementEdges.add(rule.target);
+                }
+            }
+            if (i + 1 < elements.size() && !coversEveryAnswer(elements.get(i), elementRules)) {
+                elementEdges.add(i + 1);
+            }
+            ruleList.add(elementRules);
+            edgeList.add(ImmutableSet.copyOf(elementEdges));
+        }
+        this.rules = ImmutableList.copyOf(ruleList);
+        this.edges = ImmutableList.copyOf(edgeList);
+    }
+
+    /** The first element of the survey, or null if the survey is empty. */
+    public SurveyElement getFirstElement() {
+        return elements.isEmpty() ? null : elements.get(0);
+    }
+
+    /**
+     * Returns the element that follows the given element, given its answer.
+     *
+     * @param identifier
+     *         identifier of the current element
+     * @param answer
+     *         answer to the current element, if it is a question. May be null if the element is not a question.
+     * @return the next element, or null if the survey is over
+     * @throws IllegalArgumentException
+     *         if the survey has no element with this identifier
+     */
+    public SurveyElement getNextElement(String identifier, SurveyAnswer answer) {
+        Integer index = (identifier == null) ? null : indexByIdentifier.get(identifier);
+        if (index == null) {
+            throw new IllegalArgumentException("Survey has no element with identifier " + identifier);
+        }
+        Integer next = getNextIndex(index, answer);
+        return (next == null) ? null : elements.get(next);
+    }
+
+    /**
+     * Follows the survey from the start using the given answers, and returns the first question on the way that
+     * hasn't been answered. Info screens along the way are passed over.
+     *
+     * @param answers
+     *         answers given so far. If a question was answered more than once, the most recent answer is used.
+     * @return the next question to answer, or null if the survey is finished
+     */
+    public SurveyElement getNextUnansweredQuestion(Collection<SurveyAnswer> answers) {
+        Map<Integer, SurveyAnswer> answerMap = getAnswersByIndex(answers);
+        Set<Integer> visited = new HashSet<>();
+        Integer index = elements.isEmpty() ? null : 0;
+        while (index != null && visited.add(index)) {
+            SurveyElement element = elements.get(index);
+            if (element instanceof SurveyQuestion && !answerMap.containsKey(index)) {
+                return element;
+            }
+            index = getNextIndex(index, answerMap.get(index));
+        }
+        return null;
+    }
+
+    /**
+     * Returns the answers to questions that can't be reached given the other answers, because the skip rules of an
+     * answered question jump over them.
+     *
+     * @param answers
+     *         answers given so far. If a question was answered more than once, the most recent answer is used.
+     * @return answers that are not on a legal path through the survey, empty if all answers are legal
+     */
+    public List<SurveyAnswer> getAnswersOffPath(Collection<SurveyAnswer> answers) {
+        Map<Integer, SurveyAnswer> answerMap = getAnswersByIndex(answers);
+
+        Set<Integer> reachable = new HashSet<>();
+        List<Integer> stack = Lists.newArrayList();
+        if (!elements.isEmpty()) {
+            stack.add(0);
+        }
+        while (!stack.isEmpty()) {
+            int index = stack.remove(stack.size() - 1);
+            if (!reachable.add(index)) {
+                continue;
+            }
+            SurveyAnswer answer = answerMap.get(index);
+            if (answer != null) {
+                Integer next = getNextIndex(index, answer);
+                if (next != null) {
+                    stack.add(next);
+                }
+            } else {
+                stack.addAll(edges.get(index));
+            }
+        }
+
+        List<SurveyAnswer> offPath = new ArrayList<>();
+        for (Map.Entry<Integer, SurveyAnswer> entry : answerMap.entrySet()) {
+            if (!reachable.contains(entry.getKey())) {
+                offPath.add(entry.getValue());
+            }
+        }
+        return offPath;
+    }
+
+    /** Identifiers of the elements that can't be reached from the start of the survey, in survey order. */
+    public List<String> getUnreachableIdentifiers() {
+        Set<Integer> reachable = new HashSet<>();
+        List<Integer> stack = Lists.newArrayList();
+        if (!elements.isEmpty()) {
+            stack.add(0);
+        }
+        while (!stack.isEmpty()) {
+            int index = stack.remove(stack.size() - 1);
+            if (reachable.add(index)) {
+                stack.addAll(edges.get(index));
+            }
+        }
+        List<String> unreachable = new ArrayList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            if (!reachable.contains(i)) {
+                unreachable.add(elements.get(i).getIdentifier());
+            }
+        }
+        return unreachable;
+    }
+
+    /**
+     * Returns the identifiers of the elements of a cycle in the survey, in the order they are visited. The first
+     * element of the cycle is also the element the cycle returns to. Returns an empty list if the survey has no cycle.
+     */
+    public List<String> getCycle() {
+        // 0 = not visited, 1 = on the current path, 2 = done
+        int[] state = new int[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            if (state[i] == 0) {
+                List<Integer> path = new ArrayList<>();
+                List<String> cycle = findCycle(i, state, path);
+                if (cycle != null) {
+                    return cycle;
+                }
+            }
+        }
+        return ImmutableList.of();
+    }
+
+    private List<String> findCycle(int index, int[] state, List<Integer> path) {
+        state[index] = 1;
+        path.add(index);
+        for (int next : edges.get(index)) {
+            if (state[next] == 1) {
+                List<String> cycle = new ArrayList<>();
+                for (int i = path.indexOf(next); i < path.size(); i++) {
+                    cycle.add(elements.get(path.get(i)).getIdentifier());
+                }
+                return cycle;
+            } else if (state[next] == 0) {
+                List<String> cycle = findCycle(next, state, path);
+                if (cycle != null) {
+                    return cycle;
+                }
+            }
+        }
+        path.remove(path.size() - 1);
+        state[index] = 2;
+        return null;
+    }
+
+    private Integer getNextIndex(int index, SurveyAnswer answer) {
+        if (answer != null) {
+            for (CompiledRule rule : rules.get(index)) {
+                if (rule.target != null && rule.matches(answer)) {
+                    return rule.target;
+                }
+            }
+        }
+        return (index + 1 < elements.size()) ? index + 1 : null;
+    }
+
+    private Map<Integer, SurveyAnswer> getAnswersByIndex(Collection<SurveyAnswer> answers) {
+        Map<Integer, SurveyAnswer> answerMap = new HashMap<>();
+        if (answers == null) {
+            return answerMap;
+        }
+        for (SurveyAnswer answer : answers) {
+            Integer index = (answer.getQuestionGuid() == null) ? null : indexByGuid.get(answer.getQuestionGuid());
+            if (index == null) {
+                continue;
+            }
+            SurveyAnswer existing = answerMap.get(index);
+            if (existing == null || answer.getAnsweredOn() >= existing.getAnsweredOn()) {
+                answerMap.put(index, answer);
+            }
+        }
+        return answerMap;
+    }
+
+    private List<CompiledRule> compileRules(SurveyElement element) {
+        if (!(element instanceof SurveyQuestion)) {
+            return ImmutableList.of();
+        }
+        Constraints constraints = ((SurveyQuestion) element).getConstraints();
+        if (constraints == null || constraints.getRules() == null) {
+            return ImmutableList.of();
+        }
+        List<CompiledRule> compiled = new ArrayList<>();
+        for (SurveyRule rule : constraints.getRules()) {
+            if (rule != null && rule.getOperator() != null) {
+                Integer target = (rule.getSkipToTarget() == null) ? null : indexByIdentifier.get(
+                        rule.getSkipToTarget());
+                compiled.add(new CompiledRule(rule.getOperator(), rule.getValue(), target));
+            }
+        }
+        return ImmutableList.copyOf(compiled);
+    }
+
+    /**
+     * True if the rules of a question send every possible answer somewhere else, so the question never falls through
+     * to the next element. Only boolean and single-choice enumerated questions can have rules like this.
+     */
+    private static boolean coversEveryAnswer(SurveyElement element, List<CompiledRule> elementRules) {
+        if (!(element instanceof SurveyQuestion) || elementRules.isEmpty()) {
+            return false;
+        }
+        Set<String> required = new HashSet<>();
+        Constraints constraints = ((SurveyQuestion) element).getConstraints();
+        if (constraints instanceof BooleanConstraints) {
+            required.add("true");
+            required.add("false");
+        } else if (constraints instanceof MultiValueConstraints) {
+            MultiValueConstraints mcon = (MultiValueConstraints) constraints;
+            if (mcon.getAllowOther() || mcon.getAllowMultiple() || mcon.getEnumeration() == null) {
+                return false;
+            }
+            for (SurveyQuestionOption option : mcon.getEnumeration()) {
+                required.add(option.getValue());
+            }
+        } else {
+            return false;
+        }
+
+        boolean coversDeclined = false;
+        for (CompiledRule rule : elementRules) {
+            if (rule.target == null) {
+                continue;
+            }
+            if (rule.operator == Operator.DE) {
+                coversDeclined = true;
+            } else if (rule.operator == Operator.EQ) {
+                required.remove(rule.stringValue);
+            }
+        }
+        return coversDeclined && required.isEmpty();
+    }
+
+    /** A rule with its target resolved and its value parsed once, rather than for every answer. */
+    private static final class CompiledRule {
+        private final Operator operator;
+        private final String stringValue;
+        private final Double numericValue;
+        private final Integer target;
+
+        CompiledRule(Operator operator, Object value, Integer target) {
+            this.operator = operator;
+            this.stringValue = (value == null) ? null : String.valueOf(value);
+            this.numericValue = parseNumber(stringValue);
+            this.target = target;
+        }
+
+        boolean matches(SurveyAnswer answer) {
+            if (answer.isDeclined()) {
+                return operator == Operator.DE;
+            }
+            if (operator == Operator.DE || stringValue == null || answer.getAnswers() == null) {
+                return false;
+            }
+            // For questions with several answers, the rule matches if any of the answers matches.
+            for (String value : answer.getAnswers()) {
+                if (value != null && matches(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(String value) {
+            Double number = (numericValue == null) ? null : parseNumber(value);
+            int comparison = (number != null) ? Double.compare(number, numericValue) : value.compareTo(stringValue);
+            switch (operator) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case GT:
+                    return comparison > 0;
+                case LE:
+                    return comparison <= 0;
+                case GE:
+                    return comparison >= 0;
+                default:
+                    return false;
+            }
+        }
+
+        private static Double parseNumber(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Double.valueOf(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -36,5 +36,12 @@ public interface SurveyResponse extends BridgeEntity {
     
     public List<SurveyAnswer> getAnswers();
     public void setAnswers(List<SurveyAnswer> answers);
+    
+    /**
+     * Idempotency keys of the most recent answer batches appended to this response, oldest first. A batch whose key
+     * is in this list has already been applied and is not applied again.
+     */
+    public List<String> getAppliedKeys();
+    public void setAppliedKeys(List<String> appliedKeys);
  
 }
@@ -12,6 +12,9 @@ public interface Upload {
      */
     boolean canBeValidated();
 
+    /** The base64-encoded, 128-bit MD5 digest of the object body, as given by the client. */
+    String getContentMd5();
+
     /** Name of the file to upload. */
     String getFilename();
 
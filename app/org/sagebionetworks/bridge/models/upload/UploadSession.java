@@ -12,25 +12,52 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 public class UploadSession implements BridgeEntity {
 
     public UploadSession(String id, URL url, long expires) {
+        this(id, url, expires, UploadStatus.REQUESTED);
+    }
+
+    public UploadSession(String id, URL url, long expires, UploadStatus status) {
         this.id = id;
         this.url = url;
         this.expires = expires;
+        this.status = status;
+    }
+
+    /**
+     * A session for an upload whose file was already uploaded. There is nothing more to upload, so the session has no
+     * URL and doesn't expire.
+     */
+    public UploadSession(String id, UploadStatus status) {
+        this.id = id;
+        this.url = null;
+        this.expires = null;
+        this.status = status;
     }
 
     public String getId() {
         return id;
     }
 
+    /** The URL to upload the file to, or null if the file was already uploaded. */
     public String getUrl() {
-        return url.toString();
+        return (url == null) ? null : url.toString();
     }
 
+    /** When the URL expires, or null if there is no URL. */
     @JsonSerialize(using = DateTimeJsonSerializer.class)
-    public long getExpires() {
+    public Long getExpires() {
         return expires;
     }
 
+    /**
+     * Status of the upload. This is REQUESTED for a new upload. If the same file was uploaded recently, the session is
+     * for that upload, and the status shows that it was already uploaded and is being or has been validated.
+     */
+    public UploadStatus getStatus() {
+        return status;
+    }
+
     private final String id;
     private final URL url;
-    private final long expires;
+    private final Long expires;
+    private final UploadStatus status;
 }
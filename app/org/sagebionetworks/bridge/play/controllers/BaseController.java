@@ -3,6 +3,7 @@ package org.sagebionetworks.bridge.play.controllers;
 import static org.sagebionetworks.bridge.BridgeConstants.BRIDGE_HOST_HEADER;
 import static org.sagebionetworks.bridge.BridgeConstants.BRIDGE_SESSION_EXPIRE_IN_SECONDS;
 import static org.sagebionetworks.bridge.BridgeConstants.BRIDGE_STUDY_HEADER;
+import static org.sagebionetworks.bridge.BridgeConstants.JSON_MIME_TYPE;
 import static org.sagebionetworks.bridge.BridgeConstants.SESSION_TOKEN_HEADER;
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -38,7 +39,12 @@ import play.mvc.Result;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.hash.Hashing;
 
 public abstract class BaseController extends Controller {
 
@@ -46,6 +52,9 @@ public abstract class BaseController extends Controller {
 
     private static ObjectMapper mapper = BridgeObjectMapper.get();
 
+    // Responses are specific to the caller and may change, so clients may keep them but must revalidate each time.
+    private static final String CACHE_CONTROL_REVALIDATE = "private, no-cache";
+
     private BridgeConfig bridgeConfig;
     private CacheProvider cacheProvider;
 
@@ -222,6 +231,68 @@ public abstract class BaseController extends Controller {
         return ok((JsonNode)mapper.valueToTree(new ResourceList<T>(list)));
     }
 
+    /**
+     * Returns the object as JSON with the given ETag, or a 304 (Not Modified) without a body if the client already
+     * has that ETag. The ETag should be computed from the version of the entity (see {@link #createETag}), so that
+     * the object only needs to be serialized when the client doesn't have it.
+     */
+    Result okResultWithETag(String etag, Object obj) {
+        if (setETagHeaders(etag)) {
+            return status(NOT_MODIFIED);
+        }
+        return okResult(obj);
+    }
+
+    /**
+     * As {@link #okResultWithETag(String, Object)}, for objects that are expensive to build; the supplier is only
+     * called if the client doesn't already have the ETag.
+     */
+    Result okResultWithETag(String etag, Supplier<?> supplier) {
+        if (setETagHeaders(etag)) {
+            return status(NOT_MODIFIED);
+        }
+        return okResult(supplier.get());
+    }
+
+    /**
+     * Returns the already serialized JSON, with an ETag computed from that JSON, or a 304 (Not Modified) without a
+     * body if the client already has that ETag.
+     */
+    Result okJsonResultWithETag(String json) {
+        if (setETagHeaders(createETag(json))) {
+            return status(NOT_MODIFIED);
+        }
+        return ok(json).as(JSON_MIME_TYPE);
+    }
+
+    /**
+     * Creates a strong ETag from the values that identify a version of a response, such as the GUID and version of
+     * each entity in it. Any change to these values produces a different ETag.
+     */
+    static String createETag(Object... versionParts) {
+        String joined = Joiner.on(':').useForNull("null").join(versionParts);
+        return "\"" + Hashing.md5().hashString(joined, Charsets.UTF_8).toString() + "\"";
+    }
+
+    /**
+     * Sets the ETag and Cache-Control headers on the response, and returns true if the request's If-None-Match header
+     * matches the ETag.
+     */
+    private boolean setETagHeaders(String etag) {
+        response().setHeader(ETAG, etag);
+        response().setHeader(CACHE_CONTROL, CACHE_CONTROL_REVALIDATE);
+
+        String ifNoneMatch = request().getHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+                if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     Result createdResult(Object obj) throws Exception {
         return created((JsonNode)mapper.valueToTree(obj));
     }
@@ -2,8 +2,10 @@ package org.sagebionetworks.bridge.play.controllers;
 
 import static org.sagebionetworks.bridge.Roles.ADMIN;
 
-import java.util.Set;
+import java.util.List;
 
+import org.sagebionetworks.bridge.models.CacheDomainStatistics;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.services.CacheAdminService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -20,13 +22,20 @@ public class CacheAdminController extends BaseController {
         this.cacheAdminService = cacheService;
     }
     
-    public Result listItems() throws Exception {
+    public Result listItems(String domain, String offsetKey, Integer pageSize) throws Exception {
         getAuthenticatedSession(ADMIN);
         
-        Set<String> keys = cacheAdminService.listItems();
+        PagedResourceList<String> keys = cacheAdminService.listItems(domain, offsetKey, pageSize);
         return okResult(keys);
     }
     
+    public Result getStatistics() throws Exception {
+        getAuthenticatedSession(ADMIN);
+        
+        List<CacheDomainStatistics> statistics = cacheAdminService.getStatistics();
+        return okResult(statistics);
+    }
+    
     public Result removeItem(String cacheKey) {
         getAuthenticatedSession(ADMIN);
         
@@ -0,0 +1,51 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import static org.sagebionetworks.bridge.Roles.ADMIN;
+
+import org.joda.time.LocalDate;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.json.DateUtils;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataExportStatus;
+import org.sagebionetworks.bridge.services.HealthDataExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+
+import play.mvc.Result;
+
+@Controller
+public class HealthDataExportController extends BaseController {
+
+    private HealthDataExportService healthDataExportService;
+
+    @Autowired
+    public void setHealthDataExportService(HealthDataExportService healthDataExportService) {
+        this.healthDataExportService = healthDataExportService;
+    }
+
+    public Result startExport(String startDate, String endDate) {
+        getAuthenticatedSession(ADMIN);
+
+        HealthDataExportStatus status = healthDataExportService.startExport(parseDate(startDate),
+                parseDate(endDate));
+        return okResult(status);
+    }
+
+    public Result getExportStatus(String startDate, String endDate) {
+        getAuthenticatedSession(ADMIN);
+
+        HealthDataExportStatus status = healthDataExportService.getExportStatus(parseDate(startDate),
+                parseDate(endDate));
+        return okResult(status);
+    }
+
+    private static LocalDate parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return DateUtils.parseCalendarDate(date);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException(String.format("Expected date format YYYY-MM-DD, received %s", date));
+        }
+    }
+}
@@ -13,6 +13,7 @@ import org.springframework.stereotype.Controller;
 
 import play.mvc.Result;
 
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 
 @Controller
@@ -26,18 +27,25 @@ public class ScheduleController extends BaseController {
     }
     
     public Result getSchedules() throws Exception {
-        UserSession session = getAuthenticatedAndConsentedSession();
+        final UserSession session = getAuthenticatedAndConsentedSession();
         StudyIdentifier studyId = session.getStudyIdentifier();
-        Study study = studyService.getStudy(studyId);
+        final Study study = studyService.getStudy(studyId);
         
-        List<SchedulePlan> plans = schedulePlanService.getSchedulePlans(studyId);
-        List<Schedule> schedules = Lists.newArrayListWithCapacity(plans.size());
-        for (SchedulePlan plan : plans) {
-            // Cast seems unnecessary, but we are getting NoSuchMethodError when deployed
-            Schedule schedule = plan.getStrategy().getScheduleForUser((StudyIdentifier)study, plan, session.getUser());
-            schedules.add(schedule);
-        }
-        return okResult(schedules);
+        final List<SchedulePlan> plans = schedulePlanService.getSchedulePlans(studyId);
+        // Which schedule a user gets from a plan depends on the user, so the same plans give different schedules.
+        String etag = createETag(session.getUser().getHealthCode(), SchedulePlanController.getETag(plans));
+        return okResultWithETag(etag, new Supplier<List<Schedule>>() {
+            @Override public List<Schedule> get() {
+                List<Schedule> schedules = Lists.newArrayListWithCapacity(plans.size());
+                for (SchedulePlan plan : plans) {
+                    // Cast seems unnecessary, but we are getting NoSuchMethodError when deployed
+                    Schedule schedule = plan.getStrategy().getScheduleForUser((StudyIdentifier)study, plan,
+                            session.getUser());
+                    schedules.add(schedule);
+                }
+                return schedules;
+            }
+        });
     }
     
 }
@@ -15,6 +15,8 @@ import org.springframework.stereotype.Controller;
 
 import play.mvc.Result;
 
+import com.google.common.collect.Lists;
+
 @Controller
 public class SchedulePlanController extends BaseController {
 
@@ -30,7 +32,7 @@ public class SchedulePlanController extends BaseController {
         StudyIdentifier studyId = session.getStudyIdentifier();
 
         List<SchedulePlan> plans =  schedulePlanService.getSchedulePlans(studyId);
-        return okResult(plans);
+        return okResultWithETag(getETag(plans), plans);
     }
 
     public Result createSchedulePlan() throws Exception {
@@ -48,7 +50,7 @@ public class SchedulePlanController extends BaseController {
         StudyIdentifier studyId = session.getStudyIdentifier();
         
         SchedulePlan plan = schedulePlanService.getSchedulePlan(studyId, guid);
-        return okResult(plan);
+        return okResultWithETag(createETag(plan.getGuid(), plan.getVersion()), plan);
     }
 
     public Result updateSchedulePlan(String guid) throws Exception {
@@ -70,4 +72,12 @@ public class SchedulePlanController extends BaseController {
         return okResult("Schedule plan deleted.");
     }
 
+    static String getETag(List<SchedulePlan> plans) {
+        List<Object> versionParts = Lists.newArrayListWithCapacity(plans.size() * 2);
+        for (SchedulePlan plan : plans) {
+            versionParts.add(plan.getGuid());
+            versionParts.add(plan.getVersion());
+        }
+        return createETag(versionParts.toArray());
+    }
 }
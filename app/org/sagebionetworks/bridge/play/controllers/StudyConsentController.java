@@ -16,6 +16,8 @@ import org.springframework.stereotype.Controller;
 
 import play.mvc.Result;
 
+import com.google.common.collect.Lists;
+
 @Controller
 public class StudyConsentController extends BaseController {
 
@@ -30,21 +32,26 @@ public class StudyConsentController extends BaseController {
         UserSession session = getAuthenticatedSession(RESEARCHER);
         StudyIdentifier studyId = session.getStudyIdentifier();
         List<StudyConsent> consents = studyConsentService.getAllConsents(studyId);
-        return okResult(consents);
+        List<Object> versionParts = Lists.newArrayListWithCapacity(consents.size() * 2);
+        for (StudyConsent consent : consents) {
+            versionParts.add(consent.getCreatedOn());
+            versionParts.add(consent.getActive());
+        }
+        return okResultWithETag(createETag(versionParts.toArray()), consents);
     }
 
     public Result getActiveConsent() throws Exception {
         UserSession session = getAuthenticatedSession(RESEARCHER);
         StudyIdentifier studyId = session.getStudyIdentifier();
         StudyConsentView consent = studyConsentService.getActiveConsent(studyId);
-        return okResult(consent);
+        return okResultWithETag(getETag(consent), consent);
     }
     
     public Result getMostRecentConsent() throws Exception {
         UserSession session = getAuthenticatedSession(RESEARCHER);
         StudyIdentifier studyId = session.getStudyIdentifier();
         StudyConsentView consent = studyConsentService.getMostRecentConsent(studyId);
-        return okResult(consent);
+        return okResultWithETag(getETag(consent), consent);
     }
 
     public Result getConsent(String createdOn) throws Exception {
@@ -52,7 +59,7 @@ public class StudyConsentController extends BaseController {
         StudyIdentifier studyId = session.getStudyIdentifier();
         long timestamp = DateUtils.convertToMillisFromEpoch(createdOn);
         StudyConsentView consent = studyConsentService.getConsent(studyId, timestamp);
-        return okResult(consent);
+        return okResultWithETag(getETag(consent), consent);
     }
     
     public Result addConsent() throws Exception {
@@ -70,4 +77,9 @@ public class StudyConsentController extends BaseController {
         studyConsentService.activateConsent(studyId, timestamp);
         return okResult("Consent document set as active.");
     }
+
+    // A consent document never changes once it is created, only whether it is the active one.
+    private String getETag(StudyConsentView consent) {
+        return createETag(consent.getCreatedOn(), consent.getActive());
+    }
 }
@@ -1,6 +1,5 @@
 package org.sagebionetworks.bridge.play.controllers;
 
-import static org.sagebionetworks.bridge.BridgeConstants.JSON_MIME_TYPE;
 import static org.sagebionetworks.bridge.Roles.ADMIN;
 import static org.sagebionetworks.bridge.Roles.DEVELOPER;
 
@@ -22,6 +21,7 @@ import org.springframework.stereotype.Controller;
 import play.mvc.Result;
 
 import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
 
 @Controller
 public class SurveyController extends BaseController {
@@ -48,7 +48,7 @@ public class SurveyController extends BaseController {
 
         List<Survey> surveys = surveyService.getAllSurveysMostRecentVersion(studyId);
         verifySurveyIsInStudy(session, studyId, surveys);
-        return okResult(surveys);
+        return okResultWithETag(getETag(surveys), surveys);
     }
     
     public Result getAllSurveysMostRecentVersion2() throws Exception {
@@ -57,7 +57,7 @@ public class SurveyController extends BaseController {
 
         List<Survey> surveys = surveyService.getAllSurveysMostRecentVersion(studyId);
         verifySurveyIsInStudy(session, studyId, surveys);
-        return okResult(surveys);
+        return okResultWithETag(getETag(surveys), surveys);
     }
     
     public Result getAllSurveysMostRecentlyPublishedVersion() throws Exception {
@@ -66,7 +66,7 @@ public class SurveyController extends BaseController {
 
         List<Survey> surveys = surveyService.getAllSurveysMostRecentlyPublishedVersion(studyId);
         verifySurveyIsInStudy(session, studyId, surveys);
-        return okResult(surveys);
+        return okResultWithETag(getETag(surveys), surveys);
     }
     
     public Result getSurveyForUser(final String surveyGuid, final String createdOnString) throws Exception {
@@ -84,7 +84,7 @@ public class SurveyController extends BaseController {
                 return surveyService.getSurvey(keys);
             }
         });
-        return ok(json).as(JSON_MIME_TYPE);
+        return okJsonResultWithETag(json);
     }
 
     public Result getSurveyMostRecentlyPublishedVersionForUser(final String surveyGuid) throws Exception {
@@ -99,7 +99,7 @@ public class SurveyController extends BaseController {
                 return survey;
             }
         });
-        return ok(json).as(JSON_MIME_TYPE);
+        return okJsonResultWithETag(json);
     }
     
     // Otherwise you don't need consent but you must be a researcher or an administrator
@@ -117,7 +117,7 @@ public class SurveyController extends BaseController {
                 return survey;
             }
         });
-        return ok(json).as(JSON_MIME_TYPE);
+        return okJsonResultWithETag(json);
     }
     
     public Result getSurveyMostRecentVersion(final String surveyGuid) throws Exception {
@@ -132,7 +132,7 @@ public class SurveyController extends BaseController {
                 return survey;
             }
         });
-        return ok(json).as(JSON_MIME_TYPE);
+        return okJsonResultWithETag(json);
     }
     
     public Result getSurveyMostRecentlyPublishedVersion(final String surveyGuid) throws Exception {
@@ -147,7 +147,7 @@ public class SurveyController extends BaseController {
                 return survey;
             }
         });
-        return ok(json).as(JSON_MIME_TYPE);
+        return okJsonResultWithETag(json);
     }
     
     public Result getMostRecentPublishedSurveyVersionByIdentifier(String identifier) throws Exception {
@@ -172,7 +172,7 @@ public class SurveyController extends BaseController {
         verifySurveyIsInStudy(session, studyId, survey);
         
         surveyService.deleteSurvey(survey);
-        expireCache(surveyGuid, createdOnString);
+        expireCache(surveyGuid);
         
         return okResult("Survey deleted.");
     }
@@ -183,7 +183,7 @@ public class SurveyController extends BaseController {
         
         List<Survey> surveys = surveyService.getSurveyAllVersions(studyId, surveyGuid);
         verifySurveyIsInStudy(session, studyId, surveys);
-        return okResult(surveys);
+        return okResultWithETag(getETag(surveys), surveys);
     }
     
     public Result createSurvey() throws Exception {
@@ -208,7 +208,7 @@ public class SurveyController extends BaseController {
         verifySurveyIsInStudy(session, studyId, survey);
 
         survey = surveyService.versionSurvey(survey);
-        expireCache(surveyGuid, createdOnString);
+        expireCache(surveyGuid);
         
         return createdResult(new GuidCreatedOnVersionHolderImpl(survey));
     }
@@ -231,7 +231,7 @@ public class SurveyController extends BaseController {
         survey.setStudyIdentifier(studyId.getIdentifier());
         
         survey = surveyService.updateSurvey(survey);
-        expireCache(surveyGuid, createdOnString);
+        expireCache(surveyGuid);
         
         return okResult(new GuidCreatedOnVersionHolderImpl(survey));
     }
@@ -247,7 +247,7 @@ public class SurveyController extends BaseController {
         verifySurveyIsInStudy(session, studyId, survey);
         
         survey = surveyService.publishSurvey(survey);
-        expireCache(surveyGuid, createdOnString);
+        expireCache(surveyGuid);
         
         return okResult(new GuidCreatedOnVersionHolderImpl(survey));
     }
@@ -265,12 +265,21 @@ public class SurveyController extends BaseController {
         }
     }
     
-    private void expireCache(String surveyGuid, String createdOnString) {
+    private String getETag(List<Survey> surveys) {
+        List<Object> versionParts = Lists.newArrayListWithCapacity(surveys.size() * 3);
+        for (Survey survey : surveys) {
+            versionParts.add(survey.getGuid());
+            versionParts.add(survey.getCreatedOn());
+            versionParts.add(survey.getVersion());
+        }
+        return createETag(versionParts.toArray());
+    }
+    
+    private void expireCache(String surveyGuid) {
         // Don't screw around trying to figure out if *this* survey instance is the same survey
-        // as the most recent or published version, expire all versions in the cache
-        viewCache.removeView(viewCache.getCacheKey(Survey.class, surveyGuid, createdOnString));
-        viewCache.removeView(viewCache.getCacheKey(Survey.class, surveyGuid, PUBLISHED_KEY));
-        viewCache.removeView(viewCache.getCacheKey(Survey.class, surveyGuid, MOSTRECENT_KEY));
+        // as the most recent or published version, expire all versions in the cache. All the
+        // views of a survey are keyed by its GUID first, so they are all removed together.
+        viewCache.removeView(viewCache.getCacheKey(Survey.class, surveyGuid));
     }
     
 }
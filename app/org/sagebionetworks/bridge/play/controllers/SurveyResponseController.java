@@ -1,5 +1,7 @@
 package org.sagebionetworks.bridge.play.controllers;
 
+import static org.sagebionetworks.bridge.BridgeConstants.IDEMPOTENCY_KEY_HEADER;
+
 import java.io.IOException;
 import java.util.List;
 
@@ -60,10 +62,11 @@ public class SurveyResponseController extends BaseController {
     }
     
     public Result appendSurveyAnswers(String identifier) throws Exception {
-        SurveyResponseView response = getSurveyResponseIfAuthorized(identifier);
-        
+        UserSession session = getAuthenticatedAndConsentedSession();
         List<SurveyAnswer> answers = deserializeSurveyAnswers();
-        responseService.appendSurveyAnswers(response.getResponse(), answers);
+        String idempotencyKey = request().getHeader(IDEMPOTENCY_KEY_HEADER);
+        
+        responseService.appendSurveyAnswers(session.getUser().getHealthCode(), identifier, answers, idempotencyKey);
         return okResult("Survey response updated.");
     }
 
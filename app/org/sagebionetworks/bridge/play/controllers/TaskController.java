@@ -6,8 +6,10 @@ import java.util.List;
 import org.joda.time.DateTime;
 import org.sagebionetworks.bridge.dynamodb.DynamoTask;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.schedules.Task;
+import org.sagebionetworks.bridge.models.schedules.TaskUpdateResult;
 import org.sagebionetworks.bridge.services.TaskService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -30,24 +32,29 @@ public class TaskController extends BaseController {
         this.taskService = taskService;
     }
     
-    public Result getTasks(String untilString) throws Exception {
+    public Result getTasks(String untilString, String offsetKey, Integer pageSize) throws Exception {
         UserSession session = getAuthenticatedAndConsentedSession();
         
         DateTime endsOn = (untilString == null) ? 
             DateTime.now().plusDays(TaskService.DEFAULT_EXPIRES_ON_DAYS) :
             DateTime.parse(untilString);
         
-        List<Task> tasks = taskService.getTasks(session.getUser(), endsOn);
-        return okResult(tasks);
+        // Without paging parameters, all of the tasks are returned in one list, as before paging was added
+        if (offsetKey == null && pageSize == null) {
+            List<Task> tasks = taskService.getTasks(session.getUser(), endsOn);
+            return okResult(tasks);
+        }
+        PagedResourceList<Task> page = taskService.getTasks(session.getUser(), endsOn, offsetKey, pageSize);
+        return okResult(page);
     }
     
     public Result updateTasks() throws Exception {
         UserSession session = getAuthenticatedAndConsentedSession();
         
         List<Task> tasks = mapper.convertValue(requestToJSON(request()), taskTypeRef);
-        taskService.updateTasks(session.getUser().getHealthCode(), tasks);
+        List<TaskUpdateResult> results = taskService.updateTasks(session.getUser().getHealthCode(), tasks);
         
-        return okResult("Tasks updated.");
+        return okResult(results);
     }
     
 }
@@ -1,26 +1,44 @@
 package org.sagebionetworks.bridge.play.controllers;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.models.Metrics;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadSession;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
 import org.sagebionetworks.bridge.services.UploadService;
 import org.sagebionetworks.bridge.services.UploadValidationService;
+import org.sagebionetworks.bridge.upload.UploadCompletionBroker;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
+import akka.dispatch.ExecutionContexts;
+import play.libs.F;
+import play.libs.HttpExecution;
 import play.mvc.Result;
+import scala.concurrent.ExecutionContext;
 
 @Controller
 public class UploadController extends BaseController {
 
+    static final int MAX_WAIT_SECONDS = BridgeConfigFactory.getConfig().getPropertyAsInt(
+            "upload.status.max.wait.seconds");
+
     private UploadService uploadService;
     private UploadValidationService uploadValidationService;
+    private UploadCompletionBroker completionBroker;
+    private ExecutionContext statusExecutionContext;
 
     @Autowired
     public void setUploadService(UploadService uploadService) {
@@ -33,6 +51,21 @@ public class UploadController extends BaseController {
         this.uploadValidationService = uploadValidationService;
     }
 
+    /** Broker that tells waiting requests when upload validation completes. This is configured by Spring. */
+    @Autowired
+    public void setCompletionBroker(UploadCompletionBroker completionBroker) {
+        this.completionBroker = completionBroker;
+    }
+
+    /**
+     * Reads the status of uploads whose waiting requests were released. The read blocks on DynamoDB, so it is kept
+     * off Play's default execution context. This is configured by Spring.
+     */
+    @Resource(name = "uploadStatusExecutorService")
+    public void setUploadStatusExecutorService(ExecutorService uploadStatusExecutorService) {
+        this.statusExecutionContext = ExecutionContexts.fromExecutorService(uploadStatusExecutorService);
+    }
+
     /** Gets validation status and messages for the given upload ID. */
     public Result getValidationStatus(String uploadId) throws JsonProcessingException {
         UserSession session = getAuthenticatedAndConsentedSession();
@@ -42,6 +75,49 @@ public class UploadController extends BaseController {
         return ok(HealthDataRecord.PUBLIC_RECORD_WRITER.writeValueAsString(validationStatus));
     }
 
+    /**
+     * Gets validation status and messages for the given upload ID, like {@link #getValidationStatus}, but if
+     * validation is in progress, waits for it to complete, or for the timeout, before answering. This spares clients
+     * from polling. If the server already has as many waiting requests as it allows, the status is returned at once.
+     */
+    public F.Promise<Result> waitForValidationStatus(final String uploadId, Integer timeoutSeconds)
+            throws JsonProcessingException {
+        final UserSession session = getAuthenticatedAndConsentedSession();
+        int timeout = (timeoutSeconds == null) ? MAX_WAIT_SECONDS : timeoutSeconds;
+        if (timeout < 1 || timeout > MAX_WAIT_SECONDS) {
+            throw new BadRequestException("timeoutSeconds must be from 1 to " + MAX_WAIT_SECONDS);
+        }
+
+        // Wait before reading the status, so a validation that completes in between isn't missed
+        F.Promise<Boolean> completion = completionBroker.waitForCompletion(uploadId,
+                TimeUnit.SECONDS.toMillis(timeout));
+        UploadValidationStatus validationStatus;
+        try {
+            validationStatus = uploadService.getUploadValidationStatus(session.getUser(), uploadId);
+        } catch (RuntimeException ex) {
+            if (completion != null) {
+                completionBroker.cancel(uploadId, completion);
+            }
+            throw ex;
+        }
+        if (completion == null || validationStatus.getStatus() != UploadStatus.VALIDATION_IN_PROGRESS) {
+            if (completion != null) {
+                completionBroker.cancel(uploadId, completion);
+            }
+            return F.Promise.pure(ok(HealthDataRecord.PUBLIC_RECORD_WRITER.writeValueAsString(validationStatus)));
+        }
+
+        // Validation completed, or timed out. Either way, the client gets the status as it is now.
+        return completion.map(new F.Function<Boolean, Result>() {
+            @Override
+            public Result apply(Boolean completed) throws JsonProcessingException {
+                UploadValidationStatus validationStatus = uploadService.getUploadValidationStatus(session.getUser(),
+                        uploadId);
+                return ok(HealthDataRecord.PUBLIC_RECORD_WRITER.writeValueAsString(validationStatus));
+            }
+        }, HttpExecution.fromThread(statusExecutionContext));
+    }
+
     public Result upload() throws Exception {
         UserSession session = getAuthenticatedAndConsentedSession();
         UploadRequest uploadRequest = UploadRequest.fromJson(requestToJSON(request()));
@@ -69,10 +145,20 @@ public class UploadController extends BaseController {
 
         // mark upload as complete
         Upload upload = uploadService.getUpload(session.getUser(), uploadId);
-        uploadService.uploadComplete(upload);
+        boolean canBeValidated = upload.canBeValidated();
+        Upload duplicate = uploadService.uploadComplete(upload);
+
+        // The same file was already uploaded, return the status of that upload instead of validating this one
+        if (duplicate != null) {
+            UploadValidationStatus validationStatus = uploadService.getUploadValidationStatus(session.getUser(),
+                    duplicate.getUploadId());
+            return ok(HealthDataRecord.PUBLIC_RECORD_WRITER.writeValueAsString(validationStatus));
+        }
 
-        // kick off upload validation
-        uploadValidationService.validateUpload(session.getStudyIdentifier(), upload);
+        // kick off upload validation, unless an earlier call already did
+        if (canBeValidated) {
+            uploadValidationService.validateUpload(session.getStudyIdentifier(), upload);
+        }
 
         return ok("Upload " + uploadId + " complete!");
     }
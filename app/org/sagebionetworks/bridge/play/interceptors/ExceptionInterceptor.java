@@ -12,6 +12,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import play.libs.F;
+import play.libs.F.Promise;
 import play.libs.Json;
 import play.mvc.Http;
 import play.mvc.Http.Request;
@@ -23,18 +25,34 @@ public class ExceptionInterceptor implements MethodInterceptor {
 
     private final Logger logger = LoggerFactory.getLogger(ExceptionInterceptor.class);
 
+    @SuppressWarnings("unchecked")
     @Override
     public Object invoke(MethodInvocation method) throws Throwable {
+        final Request request = Http.Context.current().request();
         try {
-            return method.proceed();
+            final Object result = method.proceed();
+            if (result instanceof Promise) {
+                // Actions that wait return a promise of the result, which fails if the action fails after waiting
+                return ((Promise<Result>)result).recover(new F.Function<Throwable, Result>() {
+                    @Override
+                    public Result apply(Throwable throwable) {
+                        logException(request, throwable);
+                        return getResult(throwable);
+                    }
+                });
+            }
+            return result;
         } catch(Throwable throwable) {
-            logException(throwable);
-            return getResult(throwable);
+            logException(request, throwable);
+            final Result result = getResult(throwable);
+            if (Promise.class.isAssignableFrom(method.getMethod().getReturnType())) {
+                return Promise.pure(result);
+            }
+            return result;
         }
     }
 
-    private void logException(final Throwable throwable) {
-        final Request request = Http.Context.current().request();
+    private void logException(final Request request, final Throwable throwable) {
         final String requestId = RequestUtils.getRequestId(request);
         final String msg = "request: " + requestId + " " + throwable.getMessage();
         if (throwable.getClass().isAnnotationPresent(NoStackTraceException.class)) {
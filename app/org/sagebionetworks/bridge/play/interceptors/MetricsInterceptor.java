@@ -12,6 +12,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import play.cache.Cache;
+import play.libs.F;
+import play.libs.F.Promise;
 import play.mvc.Http;
 import play.mvc.Http.Request;
 import play.mvc.Result;
@@ -21,21 +23,47 @@ public class MetricsInterceptor implements MethodInterceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(MetricsInterceptor.class);
 
+    @SuppressWarnings("unchecked")
     @Override
     public Object invoke(MethodInvocation method) throws Throwable {
         final Metrics metrics = initMetrics();
         Cache.set(metrics.getCacheKey(), metrics, METRICS_EXPIRE_SECONDS);
+        boolean async = false;
         try {
-            final Result result = (Result)method.proceed();
-            metrics.setStatus(result.toScala().header().status());
+            final Object result = method.proceed();
+            if (result instanceof Promise) {
+                // Actions that wait return a promise of the result. The request ends when the promise is redeemed.
+                async = true;
+                return ((Promise<Result>)result).transform(new F.Function<Result, Result>() {
+                    @Override
+                    public Result apply(Result result) {
+                        metrics.setStatus(result.toScala().header().status());
+                        end(metrics);
+                        return result;
+                    }
+                }, new F.Function<Throwable, Throwable>() {
+                    @Override
+                    public Throwable apply(Throwable throwable) {
+                        end(metrics);
+                        return throwable;
+                    }
+                });
+            }
+            metrics.setStatus(((Result)result).toScala().header().status());
             return result;
         } finally {
-            Cache.remove(metrics.getCacheKey());
-            metrics.end();
-            logger.info(metrics.toJsonString());
+            if (!async) {
+                end(metrics);
+            }
         }
     }
 
+    private void end(Metrics metrics) {
+        Cache.remove(metrics.getCacheKey());
+        metrics.end();
+        logger.info(metrics.toJsonString());
+    }
+
     Metrics initMetrics() {
         final Request request = Http.Context.current().request();
         final Metrics metrics = new Metrics(RequestUtils.getRequestId(request));
@@ -80,6 +80,30 @@ public class JedisOps {
         }.execute();
     }
 
+    /**
+     * Sets the value of the key and makes it expire after the specified
+     * seconds, if and only if the key does not already have a value. The
+     * value and the expiration are set by a single SET with the NX and EX
+     * options, so the key can't be left without an expiration.
+     *
+     * @param key
+     *            key of the key-value pair.
+     * @param seconds
+     *            number of seconds until expiration.
+     * @param value
+     *            value of the key-value pair.
+     * @return success code
+     *          "OK" if the key was set, null if not
+     */
+    public String setnxex(final String key, final int seconds, final String value) {
+        return new AbstractJedisTemplate<String>() {
+            @Override
+            String execute(Jedis jedis) {
+                return jedis.set(key, value, "NX", "EX", seconds);
+            }
+        }.execute();
+    }
+
     /**
      * Gets the value of the specified key. If the key does not exist null is
      * returned.
@@ -154,6 +178,24 @@ public class JedisOps {
         }.execute();
     }
 
+    /**
+     * Posts a message to the subscribers of a channel.
+     *
+     * @param channel
+     *            the channel to post to.
+     * @param message
+     *            the message.
+     * @return number of clients that received the message
+     */
+    public Long publish(final String channel, final String message) {
+        return new AbstractJedisTemplate<Long>() {
+            @Override
+            Long execute(Jedis jedis) {
+                return jedis.publish(channel, message);
+            }
+        }.execute();
+    }
+
     /**
      * Starts a transaction with the optional list of keys to watch.
      *
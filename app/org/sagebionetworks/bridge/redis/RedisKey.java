@@ -1,5 +1,9 @@
 package org.sagebionetworks.bridge.redis;
 
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
 /**
  * A Redis key concatenates the original key with a list of domains to form a compound key
  * where different parts are separated by ':'.
@@ -46,6 +50,23 @@ public interface RedisKey {
     /** A cached JSON response. */
     RedisKey VIEW = new SimpleKey("view");
 
+    /** Generation of a group of cached JSON responses, replaced with a new GUID to invalidate the group. */
+    RedisKey VIEW_GENERATION = new SimpleKey("view-generation");
+
+    /** Held while a cached JSON response is being built. */
+    RedisKey VIEW_LOCK = new CompoundKey((SimpleKey)VIEW, (SimpleKey)LOCK);
+
+    /** Participant options, by health code. */
+    RedisKey PARTICIPANT_OPTIONS = new SimpleKey("participant-options");
+
+    /** Version of the cached options of a participant, replaced to invalidate them. */
+    RedisKey PARTICIPANT_OPTIONS_VERSION = new SimpleKey("participant-options-version");
+
+    /** All the keys above, for administration of the cache. */
+    List<RedisKey> ALL_KEYS = ImmutableList.of(LOCK, SESSION, STUDY, HEALTH_CODE, USER, USER_SESSION,
+            HEALTH_CODE_LOCK, USER_LOCK, NUM_OF_PARTICIPANTS, VIEW, VIEW_GENERATION, VIEW_LOCK, PARTICIPANT_OPTIONS,
+            PARTICIPANT_OPTIONS_VERSION);
+
     String SEPARATOR = ":";
 
     /**
@@ -2,9 +2,11 @@ package org.sagebionetworks.bridge.s3;
 
 import javax.annotation.Nonnull;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.S3Object;
 import com.google.common.base.Charsets;
@@ -64,4 +66,40 @@ public class S3Helper {
             s3Client.putObject(bucket, key, dataInputStream, null);
         }
     }
+
+    /**
+     * Uploads the given local file to S3. This streams the file from disk, so it is suitable for files too large to
+     * hold in memory.
+     *
+     * @param bucket
+     *         S3 bucket to write to, must be non-null and non-empty
+     * @param key
+     *         S3 key (filename), must be non-null and non-empty
+     * @param file
+     *         local file to upload, must be non-null and exist
+     */
+    public void writeFileToS3(@Nonnull String bucket, @Nonnull String key, @Nonnull File file) {
+        s3Client.putObject(bucket, key, file);
+    }
+
+    /**
+     * Returns true if the given S3 file exists.
+     *
+     * @param bucket
+     *         S3 bucket to check, must be non-null and non-empty
+     * @param key
+     *         S3 key (filename), must be non-null and non-empty
+     * @return true if the file exists, false otherwise
+     */
+    public boolean doesS3FileExist(@Nonnull String bucket, @Nonnull String key) {
+        try {
+            s3Client.getObjectMetadata(bucket, key);
+            return true;
+        } catch (AmazonServiceException ex) {
+            if (ex.getStatusCode() == 404) {
+                return false;
+            }
+            throw ex;
+        }
+    }
 }
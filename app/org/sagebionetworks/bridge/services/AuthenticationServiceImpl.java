@@ -5,12 +5,22 @@ import static org.sagebionetworks.bridge.Roles.ADMIN;
 import static org.sagebionetworks.bridge.Roles.DEVELOPER;
 import static org.sagebionetworks.bridge.Roles.RESEARCHER;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
 import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConsentRequiredException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
@@ -38,6 +48,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
 @Component("authenticationService")
 public class AuthenticationServiceImpl implements AuthenticationService {
     
@@ -57,6 +70,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     private SignUpValidator signUpValidator;
     private PasswordResetValidator passwordResetValidator;
     private EmailValidator emailValidator;
+    private ExecutorService sessionExecutorService;
 
     @Autowired
     public void setDistributedLockDao(DistributedLockDao lockDao) {
@@ -107,6 +121,11 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         this.emailValidator = validator;
     }
 
+    @Resource(name = "sessionExecutorService")
+    public void setSessionExecutorService(ExecutorService sessionExecutorService) {
+        this.sessionExecutorService = sessionExecutorService;
+    }
+
     @Override
     public UserSession getSession(String sessionToken) {
         if (sessionToken == null) {
@@ -222,12 +241,51 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         final User user = new User(account);
         user.setStudyKey(study.getIdentifier());
 
+        final Stopwatch healthCodeStopwatch = Stopwatch.createStarted();
         final String healthCode = getHealthCode(study, account);
         user.setHealthCode(healthCode);
+        healthCodeStopwatch.stop();
 
-        user.setSharingScope(optionsService.getSharingScope(healthCode));
-        user.setSignedMostRecentConsent(consentService.hasUserSignedMostRecentConsent(study, user));
-        user.setConsent(consentService.hasUserConsentedToResearch(study, user));
+        // Everything else in the session only depends on the health code, so these reads are issued together and
+        // sign in waits on the slowest of them rather than on their sum.
+        final TimedCallable<SharingScope> sharingScopeCall = new TimedCallable<>("sharingScope",
+                new Callable<SharingScope>() {
+            @Override
+            public SharingScope call() {
+                return optionsService.getSharingScope(healthCode);
+            }
+        });
+        final TimedCallable<Boolean> signedMostRecentConsentCall = new TimedCallable<>("signedMostRecentConsent",
+                new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return consentService.hasUserSignedMostRecentConsent(study, user);
+            }
+        });
+        final TimedCallable<Boolean> consentedCall = new TimedCallable<>("consented", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return consentService.hasUserConsentedToResearch(study, user);
+            }
+        });
+        final Future<SharingScope> sharingScope = sessionExecutorService.submit(sharingScopeCall);
+        final Future<Boolean> signedMostRecentConsent = sessionExecutorService.submit(signedMostRecentConsentCall);
+        final Future<Boolean> consented = sessionExecutorService.submit(consentedCall);
+
+        user.setSharingScope(getResult(sharingScope));
+        user.setSignedMostRecentConsent(getResult(signedMostRecentConsent));
+        user.setConsent(getResult(consented));
+
+        if (logger.isDebugEnabled()) {
+            StringBuilder timings = new StringBuilder("Session assembly timings (ms) for " + account.getId() + ": ");
+            timings.append("healthCode=").append(healthCodeStopwatch.elapsed(TimeUnit.MILLISECONDS));
+            List<TimedCallable<?>> calls = ImmutableList.<TimedCallable<?>>of(
+                    sharingScopeCall, signedMostRecentConsentCall, consentedCall);
+            for (TimedCallable<?> call : calls) {
+                timings.append(", ").append(call.getName()).append("=").append(call.getElapsedMillis());
+            }
+            logger.debug(timings.toString());
+        }
 
         // And now for some exceptions...
         // All administrators and all researchers are assumed to consent when using any API.
@@ -245,6 +303,24 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         return session;
     }
 
+    /**
+     * Waits on one of the parallel session reads. Exceptions thrown by the read are rethrown as-is, so callers see
+     * the same exceptions they would have if the read had been done on the calling thread.
+     */
+    private <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new BridgeServiceException(e.getCause());
+        }
+    }
+
     private UserSession getSession(final Account account) {
         final UserSession session = cacheProvider.getUserSessionByUserId(account.getId());
         if (session != null) {
@@ -276,4 +352,33 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         }
         return healthId.getCode();
     }
+
+    /**
+     * Wraps one of the session reads so the time it took can be reported once the session is assembled.
+     */
+    private static class TimedCallable<T> implements Callable<T> {
+        private final String name;
+        private final Callable<T> delegate;
+        private volatile long elapsedMillis;
+
+        TimedCallable(String name, Callable<T> delegate) {
+            this.name = name;
+            this.delegate = delegate;
+        }
+        String getName() {
+            return name;
+        }
+        long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        @Override
+        public T call() throws Exception {
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            try {
+                return delegate.call();
+            } finally {
+                elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            }
+        }
+    }
 }
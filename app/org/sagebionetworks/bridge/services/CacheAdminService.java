@@ -3,45 +3,144 @@ package org.sagebionetworks.bridge.services;
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
-import java.util.Set;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.CacheDomainStatistics;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.redis.RedisKey;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
 
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+/**
+ * Administration of the cache. Keys are found with SCAN, a batch at a time, never with KEYS, which blocks Redis
+ * until it has gone through the whole keyspace. As with SCAN, a key may be found more than once, and keys added or
+ * removed while scanning may or may not be found.
+ */
 @Component
 public class CacheAdminService {
 
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    /** Most SCAN calls for one page of keys. A page of a sparse domain can have fewer keys than requested. */
+    static final int MAX_SCANS_PER_PAGE = 10;
+    /** Keys requested of each SCAN when computing statistics. */
+    static final int STATISTICS_SCAN_COUNT = 500;
+    /** Domain of keys that don't end with the suffix of a RedisKey. */
+    static final String OTHER_DOMAIN = "other";
+
     private final String SESSION_SUFFIX = RedisKey.SEPARATOR + RedisKey.SESSION.getSuffix();
     private final String USER_SESSION_SUFFIX = RedisKey.SEPARATOR + RedisKey.SESSION.getSuffix() + RedisKey.SEPARATOR + RedisKey.USER.getSuffix();
+
+    /** Longest suffixes first, so that a key of a compound domain isn't counted in the domain of its last part. */
+    private static final List<String> DOMAINS;
+    static {
+        List<String> domains = Lists.newArrayList();
+        for (RedisKey key : RedisKey.ALL_KEYS) {
+            domains.add(key.getSuffix());
+        }
+        Collections.sort(domains, new Comparator<String>() {
+            @Override
+            public int compare(String suffix1, String suffix2) {
+                return suffix2.length() - suffix1.length();
+            }
+        });
+        DOMAINS = Collections.unmodifiableList(domains);
+    }
+
     private JedisPool jedisPool;
-    
+
     @Autowired
     public void setJedisPool(JedisPool jedisPool) {
         this.jedisPool = jedisPool;
     }
 
     /**
-     * Returns all keys in the cache that are not user session keys.
+     * Returns a page of the keys in the cache that are not user session keys. A page can have somewhat more or fewer
+     * keys than the page size, or even none; the last page is the one without an offset key.
+     * @param domain
+     *      the suffix of a RedisKey to list only keys of that domain, "other" for keys of no domain, or null
+     * @param offsetKey
+     *      the offset key of the previous page, or null for the first page
+     * @param pageSize
+     *      the number of keys to look for, or null for the default
      * @return
      */
-    public Set<String> listItems() {
+    public PagedResourceList<String> listItems(String domain, String offsetKey, Integer pageSize) {
+        int size = (pageSize == null) ? DEFAULT_PAGE_SIZE : pageSize;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("pageSize must be from 1 to " + MAX_PAGE_SIZE);
+        }
+        if (domain != null && !DOMAINS.contains(domain) && !OTHER_DOMAIN.equals(domain)) {
+            throw new BadRequestException("'" + domain + "' is not a domain of the cache");
+        }
+        if (RedisKey.SESSION.getSuffix().equals(domain) || RedisKey.USER_SESSION.getSuffix().equals(domain)) {
+            throw new BadRequestException("Session keys can't be listed");
+        }
+        if (offsetKey != null && !StringUtils.isNumeric(offsetKey)) {
+            throw new BadRequestException("'" + offsetKey + "' is not a valid offsetKey");
+        }
+        // Keys of a compound domain also match the pattern of the domain of their last part, so the domain of each
+        // key is checked as well
+        ScanParams params = new ScanParams().count(size);
+        if (domain != null && !OTHER_DOMAIN.equals(domain)) {
+            params.match("*" + RedisKey.SEPARATOR + domain);
+        }
+        List<String> items = Lists.newArrayList();
+        String cursor = (offsetKey == null) ? ScanParams.SCAN_POINTER_START : offsetKey;
         try (Jedis jedis = jedisPool.getResource()) {
-            Set<String> allKeys = jedis.keys("*");
-            Set<String> set = Sets.newHashSet();
-            for (String key : allKeys) {
-                if (notASessionKey(key)) {
-                    set.add(key);
+            int scans = 0;
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                for (String key : result.getResult()) {
+                    if (notASessionKey(key) && (domain == null || domain.equals(getDomain(key)))) {
+                        items.add(key);
+                    }
                 }
-            }
-            return set;
+                cursor = result.getStringCursor();
+                scans++;
+            } while (items.size() < size && scans < MAX_SCANS_PER_PAGE
+                    && !ScanParams.SCAN_POINTER_START.equals(cursor));
         }
+        String nextOffsetKey = ScanParams.SCAN_POINTER_START.equals(cursor) ? null : cursor;
+        return new PagedResourceList<String>(items, nextOffsetKey);
+    }
+
+    /**
+     * Returns statistics of the keys of each domain in the cache. The keyspace is scanned in batches, and the
+     * time to live and the length of the keys of a batch are read in one pipelined round trip, so Redis keeps
+     * serving other requests in between. The statistics are approximate, since keys can change while they are
+     * being scanned.
+     * @return
+     */
+    public List<CacheDomainStatistics> getStatistics() {
+        Map<String, CacheDomainStatistics> statisticsByDomain = Maps.newTreeMap();
+        ScanParams params = new ScanParams().count(STATISTICS_SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        try (Jedis jedis = jedisPool.getResource()) {
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                addStatistics(jedis, result.getResult(), statisticsByDomain);
+                cursor = result.getStringCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        }
+        return Lists.newArrayList(statisticsByDomain.values());
     }
 
     /**
@@ -51,17 +150,65 @@ public class CacheAdminService {
     public void removeItem(String cacheKey) {
         checkArgument(isNotBlank(cacheKey));
         Long removed = null;
-        
+
         if (notASessionKey(cacheKey)) {
             try (Jedis jedis = jedisPool.getResource()) {
                 removed = jedis.del(cacheKey);
             }
         }
         if (removed == null || removed == 0) {
-            throw new BridgeServiceException("Item could not be removed from cache: does key '"+cacheKey+"' exist?"); 
+            throw new BridgeServiceException("Item could not be removed from cache: does key '"+cacheKey+"' exist?");
+        }
+    }
+
+    /**
+     * The suffix of the RedisKey that the key was created with, or "other".
+     */
+    static String getDomain(String key) {
+        for (String domain : DOMAINS) {
+            if (key.endsWith(RedisKey.SEPARATOR + domain)) {
+                return domain;
+            }
+        }
+        return OTHER_DOMAIN;
+    }
+
+    private void addStatistics(Jedis jedis, List<String> keys, Map<String, CacheDomainStatistics> statisticsByDomain) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<Long>> ttls = Lists.newArrayListWithCapacity(keys.size());
+        List<Response<Long>> lengths = Lists.newArrayListWithCapacity(keys.size());
+        for (String key : keys) {
+            ttls.add(pipeline.ttl(key));
+            lengths.add(pipeline.strlen(key));
+        }
+        pipeline.sync();
+
+        for (int i=0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Long ttl = ttls.get(i).get();
+            if (ttl == null || ttl == -2L) {
+                // Removed since it was scanned
+                continue;
+            }
+            long bytes = key.length();
+            try {
+                bytes += lengths.get(i).get();
+            } catch(JedisDataException e) {
+                // Not a string value, only the key is counted
+            }
+            String domain = getDomain(key);
+            CacheDomainStatistics statistics = statisticsByDomain.get(domain);
+            if (statistics == null) {
+                statistics = new CacheDomainStatistics(domain);
+                statisticsByDomain.put(domain, statistics);
+            }
+            statistics.add(bytes, ttl);
         }
     }
-    
+
     private boolean notASessionKey(String key) {
         return !(key.endsWith(SESSION_SUFFIX) || key.endsWith(USER_SESSION_SUFFIX));
     }
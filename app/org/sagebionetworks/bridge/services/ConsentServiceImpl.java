@@ -44,6 +44,7 @@ public class ConsentServiceImpl implements ConsentService {
     private StudyConsentService studyConsentService;
     private UserConsentDao userConsentDao;
     private TaskEventService taskEventService;
+    private TaskMaterializer taskMaterializer;
     private String consentTemplate;
     
     @Value("classpath:study-defaults/consent-page.xhtml")
@@ -79,6 +80,10 @@ public class ConsentServiceImpl implements ConsentService {
     public void setTaskEventService(TaskEventService taskEventService) {
         this.taskEventService = taskEventService;
     }
+    @Autowired
+    public void setTaskMaterializer(TaskMaterializer taskMaterializer) {
+        this.taskMaterializer = taskMaterializer;
+    }
     
     @Override
     public ConsentSignature getConsentSignature(final Study study, final User user) {
@@ -116,8 +121,9 @@ public class ConsentServiceImpl implements ConsentService {
         final StudyConsentView studyConsent = studyConsentService.getActiveConsent(study);
 
         incrementStudyEnrollment(study);
+        UserConsent userConsent;
         try {
-            UserConsent userConsent = userConsentDao.giveConsent(user.getHealthCode(), studyConsent.getStudyConsent());
+            userConsent = userConsentDao.giveConsent(user.getHealthCode(), studyConsent.getStudyConsent());
             if (userConsent != null){
                 taskEventService.publishEvent(user.getHealthCode(), userConsent);
             }
@@ -125,6 +131,10 @@ public class ConsentServiceImpl implements ConsentService {
             decrementStudyEnrollment(study);
             throw e;
         }
+        // Reading tasks doesn't schedule them, so a participant's first tasks are saved before consent returns
+        if (userConsent != null) {
+            taskMaterializer.materializeNow(user);
+        }
 
         optionsService.setOption(study, user.getHealthCode(), sharingScope);
 
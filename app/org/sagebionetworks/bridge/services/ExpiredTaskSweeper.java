@@ -0,0 +1,182 @@
+package org.sagebionetworks.bridge.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.TaskDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.schedules.Task;
+import org.sagebionetworks.bridge.s3.S3Helper;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+
+/**
+ * <p>
+ * Moves expired tasks out of the Task table, so a user's task reads only cover the tasks that are still shown. Every
+ * task.sweep.hours hours, the tasks of all users that expired more than task.archive.days days ago and are no longer
+ * shown are written to the task archive bucket, then deleted. Each batch of tasks is written as a gzipped file of JSON
+ * objects, one per line:
+ * </p>
+ * <pre>
+ * sweptOn=[date of the sweep]/part-[guid].json.gz
+ * </pre>
+ * <p>
+ * Only one server sweeps at a time. A batch that can't be archived is not deleted, and is swept again next time.
+ * </p>
+ */
+@Component
+public class ExpiredTaskSweeper {
+    private static final Logger logger = LoggerFactory.getLogger(ExpiredTaskSweeper.class);
+
+    private static final String ARCHIVE_BUCKET = BridgeConfigFactory.getConfig().getProperty("task.archive.bucket");
+    private static final int ARCHIVE_DAYS = BridgeConfigFactory.getConfig().getPropertyAsInt("task.archive.days");
+    private static final int SWEEP_HOURS = BridgeConfigFactory.getConfig().getPropertyAsInt("task.sweep.hours");
+
+    static final int BATCH_SIZE = 1000;
+    private static final String LOCK_ID = "sweep";
+    // Long enough for a scan of the whole table at the read capacity budget of admin scans.
+    private static final int LOCK_EXPIRE_IN_SECONDS = 6 * 60 * 60;
+
+    private final ScheduledExecutorService sweepExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "expired-task-sweep");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private DistributedLockDao lockDao;
+    private S3Helper s3Helper;
+    private TaskDao taskDao;
+
+    /** Lock, so only one server sweeps at a time. This is configured by Spring. */
+    @Autowired
+    public void setDistributedLockDao(DistributedLockDao lockDao) {
+        this.lockDao = lockDao;
+    }
+
+    /** S3 helper, used to write archived tasks to the archive bucket. This is configured by Spring. */
+    @Resource(name = "s3Helper")
+    public void setS3Helper(S3Helper s3Helper) {
+        this.s3Helper = s3Helper;
+    }
+
+    /** DAO that scans for and deletes the expired tasks. This is configured by Spring. */
+    @Autowired
+    public void setTaskDao(TaskDao taskDao) {
+        this.taskDao = taskDao;
+    }
+
+    /** Starts sweeping periodically. The first sweep is one period after startup, so deployments don't sweep. */
+    @PostConstruct
+    public void start() {
+        sweepExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException ex) {
+                    // An exception would cancel the schedule, so log it and sweep again next time.
+                    logger.error("Error sweeping expired tasks: " + ex.getMessage(), ex);
+                }
+            }
+        }, SWEEP_HOURS, SWEEP_HOURS, TimeUnit.HOURS);
+    }
+
+    /** Stops sweeping. A sweep in progress is interrupted; the batch being deleted is swept again next time. */
+    @PreDestroy
+    public void stop() {
+        sweepExecutor.shutdownNow();
+    }
+
+    /**
+     * Archives and deletes the tasks that expired more than task.archive.days days ago, unless another server is
+     * already sweeping.
+     *
+     * @return the number of tasks deleted
+     */
+    public int sweep() {
+        final String lock;
+        try {
+            lock = lockDao.acquireLock(ExpiredTaskSweeper.class, LOCK_ID, LOCK_EXPIRE_IN_SECONDS);
+        } catch (ConcurrentModificationException ex) {
+            logger.info("Expired tasks are already being swept by another server");
+            return 0;
+        }
+        try {
+            DateTime now = DateTime.now(DateTimeZone.UTC);
+            final String prefix = "sweptOn=" + now.toLocalDate();
+            int count = taskDao.deleteExpiredTasks(now.minusDays(ARCHIVE_DAYS), BATCH_SIZE,
+                    new TaskDao.TaskArchiver() {
+                        @Override
+                        public void archive(List<Task> tasks) {
+                            String key = prefix + "/part-" + BridgeUtils.generateGuid() + ".json.gz";
+                            try {
+                                s3Helper.writeBytesToS3(ARCHIVE_BUCKET, key, toBytes(tasks));
+                            } catch (IOException ex) {
+                                throw new BridgeServiceException(ex);
+                            }
+                            logger.info("Archived " + tasks.size() + " expired tasks to " + key);
+                        }
+                    });
+            logger.info("Swept " + count + " expired tasks");
+            return count;
+        } finally {
+            lockDao.releaseLock(ExpiredTaskSweeper.class, LOCK_ID, lock);
+        }
+    }
+
+    /**
+     * Gzipped JSON lines of the tasks. The task JSON of the API leaves out the health code and the fields used for
+     * scheduling, so these are written field by field. This is package-scoped for unit tests.
+     */
+    static byte[] toBytes(List<Task> tasks) throws IOException {
+        BridgeObjectMapper mapper = BridgeObjectMapper.get();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), Charsets.UTF_8)) {
+            for (Task task : tasks) {
+                ObjectNode node = mapper.createObjectNode();
+                node.put("healthCode", task.getHealthCode());
+                node.put("guid", task.getGuid());
+                node.put("schedulePlanGuid", task.getSchedulePlanGuid());
+                node.put("runKey", task.getRunKey());
+                node.set("activity", mapper.valueToTree(task.getActivity()));
+                node.put("scheduledOn", task.getScheduledOn());
+                node.put("expiresOn", task.getExpiresOn());
+                node.put("startedOn", task.getStartedOn());
+                node.put("finishedOn", task.getFinishedOn());
+                node.put("hidesOn", task.getHidesOn());
+                writer.write(mapper.writeValueAsString(node));
+                writer.write('\n');
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -14,11 +14,20 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 @Component
 public class HealthCodeServiceImpl implements HealthCodeService {
 
     private final Logger logger = LoggerFactory.getLogger(HealthCodeServiceImpl.class);
 
+    /**
+     * A health ID never changes the health code it points to once it has been written, so the mapping can be held
+     * in process. This takes a DynamoDB read off of every sign in.
+     */
+    private final Cache<String, String> healthCodeCache = CacheBuilder.newBuilder().maximumSize(10000).build();
+
     private HealthIdDao healthIdDao;
     private HealthCodeDao healthCodeDao;
 
@@ -44,9 +53,13 @@ public class HealthCodeServiceImpl implements HealthCodeService {
         if (healthId == null) {
             return null;
         }
-        final String healthCode = healthIdDao.getCode(healthId);
+        String healthCode = healthCodeCache.getIfPresent(healthId);
         if (healthCode == null) {
-            return null;
+            healthCode = healthIdDao.getCode(healthId);
+            if (healthCode == null) {
+                return null;
+            }
+            healthCodeCache.put(healthId, healthCode);
         }
         return new HealthIdImpl(healthId, healthCode);
     }
@@ -72,6 +85,7 @@ public class HealthCodeServiceImpl implements HealthCodeService {
             id = UUID.randomUUID().toString();
             isSet = healthIdDao.setIfNotExist(id, code);
         }
+        healthCodeCache.put(id, code);
         return id;
     }
 }
@@ -0,0 +1,386 @@
+package org.sagebionetworks.bridge.services;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Resource;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.HealthDataDao;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataExportStatus;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.s3.S3Helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+
+/**
+ * <p>
+ * Exports health data records for a range of upload dates to the export bucket, for analysts who need the data in
+ * bulk. Each upload date is exported to gzipped newline-delimited JSON files, one per study and schema revision:
+ * </p>
+ * <pre>
+ * [uploadDate]/[studyId]/[schemaId]-v[revision].ndjson.gz
+ * </pre>
+ * <p>
+ * Records are streamed from the upload date index rather than loaded a day at a time, and the contents of attachment
+ * fields are read from the attachment bucket on a bounded pool of threads and embedded in each line under
+ * "attachments". Records of participants who aren't sharing data are skipped.
+ * </p>
+ * <p>
+ * Once all files of a date are written, a _SUCCESS marker is written under the date. Dates with a marker are skipped,
+ * so an export that fails or is interrupted can be started again and resumes where it left off. Only one export runs
+ * at a time across servers.
+ * </p>
+ */
+@Component
+public class HealthDataExportService {
+    private static final Logger logger = LoggerFactory.getLogger(HealthDataExportService.class);
+
+    private static final String ATTACHMENT_BUCKET = BridgeConfigFactory.getConfig().getProperty("attachment.bucket");
+    private static final String EXPORT_BUCKET = BridgeConfigFactory.getConfig().getProperty("export.bucket");
+    private static final int ATTACHMENT_THREAD_COUNT = BridgeConfigFactory.getConfig().getPropertyAsInt(
+            "export.attachment.thread.count");
+
+    static final String ATTACHMENTS_FIELD = "attachments";
+    static final String SUCCESS_MARKER = "_SUCCESS";
+    static final int CHUNK_SIZE = 100;
+    static final int MAX_EXPORT_DAYS = 31;
+    private static final int LOCK_EXPIRE_IN_SECONDS = 6 * 60 * 60;
+    private static final String LOCK_ID = "export";
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private DistributedLockDao lockDao;
+    private HealthDataDao healthDataDao;
+    private S3Helper s3Helper;
+    private UploadSchemaService uploadSchemaService;
+
+    /** Lock DAO, used to run only one export at a time. This is configured by Spring. */
+    @Autowired
+    public void setDistributedLockDao(DistributedLockDao lockDao) {
+        this.lockDao = lockDao;
+    }
+
+    /** Health data DAO. This is configured by Spring. */
+    @Autowired
+    public void setHealthDataDao(HealthDataDao healthDataDao) {
+        this.healthDataDao = healthDataDao;
+    }
+
+    /** S3 helper, used to read attachments and write export files. This is configured by Spring. */
+    @Resource(name = "s3Helper")
+    public void setS3Helper(S3Helper s3Helper) {
+        this.s3Helper = s3Helper;
+    }
+
+    /** Upload schema service, used to find attachment fields. This is configured by Spring. */
+    @Autowired
+    public void setUploadSchemaService(UploadSchemaService uploadSchemaService) {
+        this.uploadSchemaService = uploadSchemaService;
+    }
+
+    /**
+     * Starts exporting the given range of upload dates in the background, skipping dates that have already been
+     * exported.
+     *
+     * @param startDate
+     *         first upload date to export
+     * @param endDate
+     *         last upload date to export (inclusive)
+     * @return export progress at the time the export was started
+     * @throws org.sagebionetworks.bridge.exceptions.ConcurrentModificationException
+     *         if another export is already running
+     */
+    public HealthDataExportStatus startExport(final LocalDate startDate, final LocalDate endDate) {
+        validateDateRange(startDate, endDate);
+
+        final String lock = lockDao.acquireLock(HealthDataExportService.class, LOCK_ID, LOCK_EXPIRE_IN_SECONDS);
+        running.set(true);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        exportDates(startDate, endDate);
+                    } catch (Throwable t) {
+                        logger.error("Export of upload dates " + startDate + " to " + endDate + " failed", t);
+                    } finally {
+                        running.set(false);
+                        lockDao.releaseLock(HealthDataExportService.class, LOCK_ID, lock);
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            running.set(false);
+            lockDao.releaseLock(HealthDataExportService.class, LOCK_ID, lock);
+            throw ex;
+        }
+        return getExportStatus(startDate, endDate);
+    }
+
+    /**
+     * Returns which upload dates in the given range have been exported.
+     *
+     * @param startDate
+     *         first upload date of the range
+     * @param endDate
+     *         last upload date of the range (inclusive)
+     * @return export progress
+     */
+    public HealthDataExportStatus getExportStatus(LocalDate startDate, LocalDate endDate) {
+        validateDateRange(startDate, endDate);
+
+        List<String> completed = new ArrayList<>();
+        List<String> pending = new ArrayList<>();
+        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            if (isExported(date)) {
+                completed.add(date.toString());
+            } else {
+                pending.add(date.toString());
+            }
+        }
+        return new HealthDataExportStatus(startDate.toString(), endDate.toString(), running.get(), completed,
+                pending);
+    }
+
+    private static void validateDateRange(LocalDate startDate, LocalDate endDate) {
+        if (startDate == null || endDate == null) {
+            throw new BadRequestException("startDate and endDate are required");
+        }
+        if (startDate.isAfter(endDate)) {
+            throw new BadRequestException("startDate can't be after endDate");
+        }
+        if (Days.daysBetween(startDate, endDate).getDays() >= MAX_EXPORT_DAYS) {
+            throw new BadRequestException("Can't export more than " + MAX_EXPORT_DAYS + " days at a time");
+        }
+    }
+
+    private boolean isExported(LocalDate date) {
+        return s3Helper.doesS3FileExist(EXPORT_BUCKET, date + "/" + SUCCESS_MARKER);
+    }
+
+    private void exportDates(LocalDate startDate, LocalDate endDate) throws IOException {
+        ExecutorService attachmentExecutor = Executors.newFixedThreadPool(ATTACHMENT_THREAD_COUNT);
+        try {
+            // Schemas rarely change during an export, so they are looked up once per study for the whole job.
+            Map<String, Map<String, UploadSchema>> schemaCache = new HashMap<>();
+            for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                if (isExported(date)) {
+                    logger.info("Upload date " + date + " already exported, skipping");
+                    continue;
+                }
+                exportDate(date, attachmentExecutor, schemaCache);
+            }
+        } finally {
+            attachmentExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Exports one upload date. Records are read and written in chunks, so only one chunk of records and their
+     * attachments are in memory at a time. Files are written locally and uploaded once the whole date is read.
+     */
+    void exportDate(LocalDate date, ExecutorService attachmentExecutor,
+            Map<String, Map<String, UploadSchema>> schemaCache) throws IOException {
+        logger.info("Exporting upload date " + date);
+        Map<String, PartitionWriter> writers = new HashMap<>();
+        int count = 0;
+        try {
+            Iterator<HealthDataRecord> recordIter = healthDataDao.getRecordIteratorForUploadDate(date.toString());
+            List<HealthDataRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+            while (recordIter.hasNext()) {
+                HealthDataRecord record = recordIter.next();
+                if (record.getUserSharingScope() == null || record.getUserSharingScope() == SharingScope.NO_SHARING) {
+                    continue;
+                }
+                chunk.add(record);
+                if (chunk.size() == CHUNK_SIZE) {
+                    count += exportChunk(chunk, attachmentExecutor, schemaCache, writers);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                count += exportChunk(chunk, attachmentExecutor, schemaCache, writers);
+            }
+
+            for (Map.Entry<String, PartitionWriter> writer : writers.entrySet()) {
+                writer.getValue().close();
+                s3Helper.writeFileToS3(EXPORT_BUCKET, date + "/" + writer.getKey(), writer.getValue().file);
+            }
+            s3Helper.writeBytesToS3(EXPORT_BUCKET, date + "/" + SUCCESS_MARKER, new byte[0]);
+        } finally {
+            for (PartitionWriter writer : writers.values()) {
+                writer.closeQuietly();
+                if (!writer.file.delete()) {
+                    logger.warn("Couldn't delete temp export file " + writer.file);
+                }
+            }
+        }
+        logger.info("Exported " + count + " records in " + writers.size() + " files for upload date " + date);
+    }
+
+    private int exportChunk(List<HealthDataRecord> chunk, ExecutorService attachmentExecutor,
+            Map<String, Map<String, UploadSchema>> schemaCache, Map<String, PartitionWriter> writers)
+            throws IOException {
+        // Attachments are read in parallel, but records are written in the order they were read.
+        List<Future<ObjectNode>> futures = new ArrayList<>(chunk.size());
+        for (final HealthDataRecord record : chunk) {
+            final UploadSchema schema = getSchema(record, schemaCache);
+            futures.add(attachmentExecutor.submit(new Callable<ObjectNode>() {
+                @Override
+                public ObjectNode call() throws IOException {
+                    return toExportNode(record, schema);
+                }
+            }));
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            HealthDataRecord record = chunk.get(i);
+            String partition = record.getStudyId() + "/" + record.getSchemaId() + "-v" + record.getSchemaRevision()
+                    + ".ndjson.gz";
+            PartitionWriter writer = writers.get(partition);
+            if (writer == null) {
+                writer = new PartitionWriter();
+                writers.put(partition, writer);
+            }
+            writer.writeLine(BridgeObjectMapper.get().writeValueAsString(getResult(futures.get(i))));
+        }
+        return chunk.size();
+    }
+
+    private UploadSchema getSchema(HealthDataRecord record, Map<String, Map<String, UploadSchema>> schemaCache) {
+        Map<String, UploadSchema> studySchemas = schemaCache.get(record.getStudyId());
+        if (studySchemas == null) {
+            studySchemas = new HashMap<>();
+            List<UploadSchema> schemaList = uploadSchemaService.getUploadSchemasForStudy(
+                    new StudyIdentifierImpl(record.getStudyId()));
+            for (UploadSchema schema : schemaList) {
+                studySchemas.put(schema.getSchemaId() + "-v" + schema.getRevision(), schema);
+            }
+            schemaCache.put(record.getStudyId(), studySchemas);
+        }
+        return studySchemas.get(record.getSchemaId() + "-v" + record.getSchemaRevision());
+    }
+
+    /**
+     * Converts a record to its exported JSON, with the contents of its attachment fields embedded under
+     * "attachments". JSON attachments are embedded as JSON, CSV attachments as text and other attachments as base64.
+     */
+    private ObjectNode toExportNode(HealthDataRecord record, UploadSchema schema) throws IOException {
+        ObjectNode node = BridgeObjectMapper.get().valueToTree(record);
+        JsonNode data = record.getData();
+        if (schema == null || data == null) {
+            return node;
+        }
+
+        ObjectNode attachments = BridgeObjectMapper.get().createObjectNode();
+        for (UploadFieldDefinition field : schema.getFieldDefinitions()) {
+            JsonNode attachmentId = data.get(field.getName());
+            if (attachmentId == null || !attachmentId.isTextual()) {
+                continue;
+            }
+            switch (field.getType()) {
+                case ATTACHMENT_JSON_BLOB:
+                case ATTACHMENT_JSON_TABLE:
+                    attachments.set(field.getName(), BridgeObjectMapper.get().readTree(
+                            s3Helper.readS3FileAsBytes(ATTACHMENT_BUCKET, attachmentId.textValue())));
+                    break;
+                case ATTACHMENT_CSV:
+                    attachments.put(field.getName(),
+                            s3Helper.readS3FileAsString(ATTACHMENT_BUCKET, attachmentId.textValue()));
+                    break;
+                case ATTACHMENT_BLOB:
+                    attachments.put(field.getName(),
+                            s3Helper.readS3FileAsBytes(ATTACHMENT_BUCKET, attachmentId.textValue()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (attachments.size() > 0) {
+            node.set(ATTACHMENTS_FIELD, attachments);
+        }
+        return node;
+    }
+
+    private static <T> T getResult(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new BridgeServiceException(e.getCause());
+        }
+    }
+
+    /** Gzipped NDJSON file for one partition, written to a local temp file until the date is done. */
+    private static class PartitionWriter {
+        private final File file;
+        private final Writer writer;
+        private boolean closed;
+
+        PartitionWriter() throws IOException {
+            file = File.createTempFile("export", ".ndjson.gz");
+            writer = new OutputStreamWriter(new GZIPOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file))), Charsets.UTF_8);
+        }
+
+        void writeLine(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+        }
+
+        void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                writer.close();
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                close();
+            } catch (IOException ex) {
+                logger.warn("Error closing temp export file " + file, ex);
+            }
+        }
+    }
+}
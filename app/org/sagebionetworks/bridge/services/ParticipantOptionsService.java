@@ -16,6 +16,14 @@ public interface ParticipantOptionsService {
      * @param value
      */
     public void setOption(StudyIdentifier studyIdentifier, String healthCode, ParticipantOption option, String value);
+
+    /**
+     * Set several options for a participant in one update. Options mapped to null are removed.
+     * @param studyIdentifier
+     * @param healthCode
+     * @param options
+     */
+    public void setOptions(StudyIdentifier studyIdentifier, String healthCode, Map<ParticipantOption,String> options);
     
     /**
      * Set the scope of sharing option.
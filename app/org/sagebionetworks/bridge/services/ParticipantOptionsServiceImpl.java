@@ -6,24 +6,42 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 import java.util.Map;
 
+import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.dao.ParticipantOption;
 import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
 import org.sagebionetworks.bridge.dao.ParticipantOptionsDao;
 import org.sagebionetworks.bridge.dynamodb.OptionLookup;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.validators.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+/**
+ * Participant options are read for every upload and many requests, so all the options of a participant are cached by
+ * health code. Any change to the options sets a new version of the cached options after the change is written, so
+ * options read before the change can't be cached for the new version. If Redis fails, options are read from DynamoDB,
+ * and changes are still written.
+ */
 @Component
 public class ParticipantOptionsServiceImpl implements ParticipantOptionsService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ParticipantOptionsServiceImpl.class);
+
     private ParticipantOptionsDao optionsDao;
+    private CacheProvider cacheProvider;
     
     @Autowired
     public void setParticipantOptionsDao(ParticipantOptionsDao participantOptionsDao) {
         this.optionsDao = participantOptionsDao;
     }
+
+    @Autowired
+    public void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
     
     @Override
     public void setOption(StudyIdentifier studyIdentifier, String healthCode, ParticipantOption option, String value) {
@@ -33,6 +51,22 @@ public class ParticipantOptionsServiceImpl implements ParticipantOptionsService
         checkArgument(isNotBlank(value), Validate.CANNOT_BE_BLANK, "value");
         
         optionsDao.setOption(studyIdentifier, healthCode, option, value);
+        removeCachedOptions(healthCode);
+    }
+
+    @Override
+    public void setOptions(StudyIdentifier studyIdentifier, String healthCode, Map<ParticipantOption,String> options) {
+        checkNotNull(studyIdentifier, Validate.CANNOT_BE_NULL, "study");
+        checkArgument(isNotBlank(healthCode), Validate.CANNOT_BE_BLANK, "healthCode");
+        checkNotNull(options, Validate.CANNOT_BE_NULL, "options");
+        for (Map.Entry<ParticipantOption,String> option : options.entrySet()) {
+            checkNotNull(option.getKey(), Validate.CANNOT_BE_NULL, "option");
+            checkArgument(option.getValue() == null || isNotBlank(option.getValue()), Validate.CANNOT_BE_BLANK,
+                    "value");
+        }
+        
+        optionsDao.setOptions(studyIdentifier, healthCode, options);
+        removeCachedOptions(healthCode);
     }
     
     @Override
@@ -45,7 +79,9 @@ public class ParticipantOptionsServiceImpl implements ParticipantOptionsService
         checkArgument(isNotBlank(healthCode), Validate.CANNOT_BE_BLANK, "healthCode");
         checkNotNull(option, Validate.CANNOT_BE_NULL, "option");
         
-        return optionsDao.getOption(healthCode, option);
+        Map<ParticipantOption,String> options = getAllParticipantOptions(healthCode);
+        // No options record at all means every option has its default value
+        return options.containsKey(option) ? options.get(option) : option.getDefaultValue();
     }
 
     public SharingScope getSharingScope(String healthCode) {
@@ -63,6 +99,7 @@ public class ParticipantOptionsServiceImpl implements ParticipantOptionsService
         checkArgument(isNotBlank(healthCode), Validate.CANNOT_BE_BLANK, "healthCode");
         
         optionsDao.deleteAllParticipantOptions(healthCode);
+        removeCachedOptions(healthCode);
     }
     
     @Override
@@ -71,13 +108,43 @@ public class ParticipantOptionsServiceImpl implements ParticipantOptionsService
         checkNotNull(option, Validate.CANNOT_BE_NULL, "option");
         
         optionsDao.deleteOption(healthCode, option);
+        removeCachedOptions(healthCode);
     }
 
     @Override
     public Map<ParticipantOption, String> getAllParticipantOptions(String healthCode) {
         checkArgument(isNotBlank(healthCode), Validate.CANNOT_BE_BLANK, "healthCode");
         
-        return optionsDao.getAllParticipantOptions(healthCode);
+        String version;
+        try {
+            version = cacheProvider.getParticipantOptionsVersion(healthCode);
+            Map<ParticipantOption,String> options = cacheProvider.getParticipantOptions(healthCode, version);
+            if (options != null) {
+                return options;
+            }
+        } catch (BridgeServiceException e) {
+            logger.warn("Error reading cached participant options, reading them from DynamoDB", e);
+            return optionsDao.getAllParticipantOptions(healthCode);
+        }
+        Map<ParticipantOption,String> options = optionsDao.getAllParticipantOptions(healthCode);
+        try {
+            cacheProvider.setParticipantOptions(healthCode, version, options);
+        } catch (BridgeServiceException e) {
+            logger.warn("Error caching participant options", e);
+        }
+        return options;
+    }
+
+    /**
+     * The change has already been written when this is called, so a Redis error is logged rather than failing the
+     * request. Until they expire, the cached options of the participant are then out of date.
+     */
+    private void removeCachedOptions(String healthCode) {
+        try {
+            cacheProvider.removeParticipantOptions(healthCode);
+        } catch (BridgeServiceException e) {
+            logger.warn("Error removing cached participant options", e);
+        }
     }
 
     @Override
@@ -7,6 +7,7 @@ import java.util.List;
 import org.sagebionetworks.bridge.dao.SchedulePlanDao;
 import org.sagebionetworks.bridge.models.schedules.SchedulePlan;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.validators.SchedulePlanValidator;
 import org.sagebionetworks.bridge.validators.Validate;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +18,7 @@ public class SchedulePlanServiceImpl implements SchedulePlanService {
     
     private SchedulePlanDao schedulePlanDao;
     private SchedulePlanValidator validator;
+    private TaskMaterializer taskMaterializer;
 
     @Autowired
     public void setSchedulePlanDao(SchedulePlanDao schedulePlanDao) {
@@ -27,6 +29,12 @@ public class SchedulePlanServiceImpl implements SchedulePlanService {
     public void setValidator(SchedulePlanValidator validator) {
         this.validator = validator;
     }
+    
+    /** New and updated plans can schedule new tasks, so the study's participants are materialized again. */
+    @Autowired
+    public void setTaskMaterializer(TaskMaterializer taskMaterializer) {
+        this.taskMaterializer = taskMaterializer;
+    }
 
     @Override
     public List<SchedulePlan> getSchedulePlans(StudyIdentifier studyIdentifier) {
@@ -44,13 +52,17 @@ public class SchedulePlanServiceImpl implements SchedulePlanService {
         checkNewEntity(plan, plan.getGuid(), "Schedule plan has a GUID; it may already exist");
         checkNewEntity(plan, plan.getVersion(), "Schedule plan has a version value; it may already exist");
         
-        return schedulePlanDao.createSchedulePlan(plan);
+        SchedulePlan createdPlan = schedulePlanDao.createSchedulePlan(plan);
+        taskMaterializer.requestMaterialization(new StudyIdentifierImpl(createdPlan.getStudyKey()));
+        return createdPlan;
     }
 
     @Override
     public SchedulePlan updateSchedulePlan(SchedulePlan plan) {
         Validate.entityThrowingException(validator, plan);
-        return schedulePlanDao.updateSchedulePlan(plan);
+        SchedulePlan updatedPlan = schedulePlanDao.updateSchedulePlan(plan);
+        taskMaterializer.requestMaterialization(new StudyIdentifierImpl(updatedPlan.getStudyKey()));
+        return updatedPlan;
     }
 
     @Override
@@ -5,6 +5,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Resource;
 
@@ -33,6 +35,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.Validator;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 @Component
 public class StudyConsentServiceImpl implements StudyConsentService {
 
@@ -43,6 +49,12 @@ public class StudyConsentServiceImpl implements StudyConsentService {
     private S3Helper s3Helper;
     private static final String BUCKET = BridgeConfigFactory.getConfig().getConsentsBucket();
 
+    /**
+     * Consent documents are written once under a storage path that includes their creation timestamp and are never
+     * rewritten, so the document content can be held in process, keyed by storage path.
+     */
+    private final Cache<String, String> documentContentCache = CacheBuilder.newBuilder().maximumSize(100).build();
+
     @Autowired
     public void setValidator(StudyConsentValidator validator) {
         this.validator = validator;
@@ -72,6 +84,7 @@ public class StudyConsentServiceImpl implements StudyConsentService {
         try {
             s3Helper.writeBytesToS3(BUCKET, storagePath, sanitizedContent.getBytes());
             StudyConsent consent = studyConsentDao.addConsent(studyIdentifier, storagePath, createdOn);
+            documentContentCache.put(storagePath, sanitizedContent);
             return new StudyConsentView(consent, sanitizedContent);
         } catch(Throwable t) {
             throw new BridgeServiceException(t);
@@ -140,13 +153,18 @@ public class StudyConsentServiceImpl implements StudyConsentService {
         return new StudyConsentView(consent, documentContent);
     }
     
-    private String loadDocumentContent(StudyConsent consent) {
+    private String loadDocumentContent(final StudyConsent consent) {
         try {
-            logger.info("Loading S3 key: " + consent.getStoragePath());
-            return s3Helper.readS3FileAsString(BUCKET, consent.getStoragePath());
-        } catch(IOException ioe) {
+            return documentContentCache.get(consent.getStoragePath(), new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    logger.info("Loading S3 key: " + consent.getStoragePath());
+                    return s3Helper.readS3FileAsString(BUCKET, consent.getStoragePath());
+                }
+            });
+        } catch(ExecutionException | UncheckedExecutionException e) {
             logger.error("Failure loading storagePath: " + consent.getStoragePath());
-            throw new BridgeServiceException(ioe);
+            throw new BridgeServiceException(e.getCause());
         }
     }
     
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponse;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponseView;
 
@@ -19,6 +20,20 @@ public interface SurveyResponseService {
     
     public SurveyResponseView appendSurveyAnswers(SurveyResponse response, List<SurveyAnswer> answers);
     
+    /**
+     * Appends a batch of answers to the participant's survey response with a single write. If the idempotency key
+     * (which may be null) matches a batch that was already appended to the response, the batch is not applied again
+     * and the response is returned as it is.
+     */
+    public SurveyResponse appendSurveyAnswers(String healthCode, String identifier, List<SurveyAnswer> answers,
+            String idempotencyKey);
+    
+    /**
+     * Follows the survey's skip rules through the answers given so far, and returns the next question the participant
+     * should answer, or null if the survey is finished.
+     */
+    public SurveyElement getNextUnansweredQuestion(String healthCode, String identifier);
+    
     public void deleteSurveyResponses(String healthCode);
 
 }
@@ -7,7 +7,6 @@ import static org.sagebionetworks.bridge.validators.Validate.CANNOT_BE_BLANK;
 import static org.sagebionetworks.bridge.validators.Validate.CANNOT_BE_NULL;
 
 import java.util.List;
-import java.util.Map;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.SurveyResponseDao;
@@ -16,21 +15,30 @@ import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
 import org.sagebionetworks.bridge.models.surveys.SurveyQuestion;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponse;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponseView;
-import org.sagebionetworks.bridge.validators.SurveyAnswerValidator;
-import org.sagebionetworks.bridge.validators.Validate;
+import org.sagebionetworks.bridge.validators.SurveyAnswerValidationPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.validation.MapBindingResult;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Maps;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
 
 @Component
 public class SurveyResponseServiceImpl implements SurveyResponseService {
 
+    private static final Logger logger = LoggerFactory.getLogger(SurveyResponseServiceImpl.class);
+
+    // Validation plans of published survey versions, keyed by guid and createdOn. Published versions can't be changed,
+    // so a cached plan (and the survey it holds) never needs to be reloaded.
+    private final Cache<String, SurveyAnswerValidationPlan> validationPlanCache = CacheBuilder.newBuilder()
+            .maximumSize(200).build();
+
     private SurveyResponseDao surveyResponseDao;
     private DynamoSurveyDao surveyDao;
     private TaskEventService taskEventService;
@@ -65,10 +73,12 @@ public class SurveyResponseServiceImpl implements SurveyResponseService {
         checkArgument(isNotBlank(healthCode), CANNOT_BE_BLANK, "health code");
         checkArgument(keys.getCreatedOn() != 0L, "Survey createdOn cannot be 0");
 
-        Survey survey = surveyDao.getSurvey(keys);
-        validate(answers, survey);
+        SurveyAnswerValidationPlan plan = getValidationPlan(keys);
+        Survey survey = plan.getSurvey();
+        plan.validate(answers);
+        logSkippedQuestions(plan, survey, answers);
         SurveyResponse response = surveyResponseDao.createSurveyResponse(survey, healthCode, answers, identifier);
-        fireEvents(survey, response, answers);
+        fireEvents(plan, response, answers);
         return new SurveyResponseView(response, survey);
     }
     
@@ -78,7 +88,7 @@ public class SurveyResponseServiceImpl implements SurveyResponseService {
         checkNotNull(identifier, CANNOT_BE_NULL, "identifier");
         
         SurveyResponse response = surveyResponseDao.getSurveyResponse(healthCode, identifier);
-        Survey survey = getSurveyForResponse(response);
+        Survey survey = getValidationPlan(response).getSurvey();
         return new SurveyResponseView(response, survey);
     }
 
@@ -87,11 +97,32 @@ public class SurveyResponseServiceImpl implements SurveyResponseService {
         checkNotNull(response, CANNOT_BE_NULL, "survey response");
         checkNotNull(answers, CANNOT_BE_NULL, "survey answers");
         
-        Survey survey = getSurveyForResponse(response);
-        validate(answers, survey);
-        SurveyResponse savedResponse = surveyResponseDao.appendSurveyAnswers(response, answers);
-        fireEvents(survey, savedResponse, answers);
-        return new SurveyResponseView(savedResponse, survey);
+        SurveyAnswerValidationPlan plan = getValidationPlan(response);
+        return new SurveyResponseView(appendSurveyAnswersInternal(plan, response, answers, null), plan.getSurvey());
+    }
+    
+    @Override
+    public SurveyResponse appendSurveyAnswers(String healthCode, String identifier, List<SurveyAnswer> answers,
+            String idempotencyKey) {
+        checkNotNull(healthCode, CANNOT_BE_NULL, "health code");
+        checkNotNull(identifier, CANNOT_BE_NULL, "identifier");
+        checkNotNull(answers, CANNOT_BE_NULL, "survey answers");
+        
+        SurveyResponse response = surveyResponseDao.getSurveyResponse(healthCode, identifier);
+        if (idempotencyKey != null && response.getAppliedKeys().contains(idempotencyKey)) {
+            // A retry of a batch that was already applied. Its events were fired the first time.
+            return response;
+        }
+        return appendSurveyAnswersInternal(getValidationPlan(response), response, answers, idempotencyKey);
+    }
+    
+    @Override
+    public SurveyElement getNextUnansweredQuestion(String healthCode, String identifier) {
+        checkNotNull(healthCode, CANNOT_BE_NULL, "health code");
+        checkNotNull(identifier, CANNOT_BE_NULL, "identifier");
+
+        SurveyResponse response = surveyResponseDao.getSurveyResponse(healthCode, identifier);
+        return getValidationPlan(response).getNavigationGraph().getNextUnansweredQuestion(response.getAnswers());
     }
     
     @Override
@@ -101,45 +132,71 @@ public class SurveyResponseServiceImpl implements SurveyResponseService {
         surveyResponseDao.deleteSurveyResponses(healthCode);
     }
 
-    private Survey getSurveyForResponse(SurveyResponse response) {
-        GuidCreatedOnVersionHolder keys = new GuidCreatedOnVersionHolderImpl(response);
-        return surveyDao.getSurvey(keys);
+    private SurveyResponse appendSurveyAnswersInternal(SurveyAnswerValidationPlan plan, SurveyResponse response,
+            List<SurveyAnswer> answers, String idempotencyKey) {
+        Survey survey = plan.getSurvey();
+        plan.validate(answers);
+        logSkippedQuestions(plan, survey, getAllAnswers(response, answers));
+        SurveyResponse savedResponse = surveyResponseDao.appendSurveyAnswers(response, survey, answers,
+                idempotencyKey);
+        fireEvents(plan, savedResponse, answers);
+        return savedResponse;
     }
 
-    private void validate(List<SurveyAnswer> answers, Survey survey) {
-        Map<String, SurveyQuestion> questions = getQuestionsMap(survey.getUnmodifiableQuestionList());
-        
-        MapBindingResult errors = new MapBindingResult(Maps.newHashMap(), "SurveyResponse");
-        for (int i = 0; i < answers.size(); i++) {
-            SurveyAnswer answer = answers.get(i);
-            SurveyQuestion question = questions.get(answer.getQuestionGuid());
-            SurveyAnswerValidator validator = new SurveyAnswerValidator(question);
-            Validate.entity(validator, errors, answer);
+    private SurveyAnswerValidationPlan getValidationPlan(SurveyResponse response) {
+        return getValidationPlan(new GuidCreatedOnVersionHolderImpl(response));
+    }
+
+    /**
+     * Existing clients don't always follow the skip rules, so answers to skipped questions are accepted. They are
+     * logged to see how often clients send them.
+     */
+    private void logSkippedQuestions(SurveyAnswerValidationPlan plan, Survey survey, List<SurveyAnswer> answers) {
+        List<String> skipped = plan.getSkippedQuestionIdentifiers(answers);
+        if (!skipped.isEmpty()) {
+            logger.warn("Survey " + survey.getGuid() + ":" + survey.getCreatedOn()
+                    + " has answers to questions that earlier answers skip: " + skipped);
+        }
+    }
+
+    private List<SurveyAnswer> getAllAnswers(SurveyResponse response, List<SurveyAnswer> answers) {
+        List<SurveyAnswer> allAnswers = Lists.newArrayList();
+        if (response.getAnswers() != null) {
+            allAnswers.addAll(response.getAnswers());
         }
-        Validate.throwException(errors, survey);
+        allAnswers.addAll(answers);
+        return allAnswers;
+    }
+
+    /**
+     * Validation plans of published survey versions are built once and cached, so answering a published survey doesn't
+     * read the survey again. The survey is only loaded on a cache miss. Plans for unpublished versions are built for
+     * each call, since the survey may still be edited.
+     */
+    private SurveyAnswerValidationPlan getValidationPlan(GuidCreatedOnVersionHolder keys) {
+        String cacheKey = keys.getGuid() + ":" + keys.getCreatedOn();
+        SurveyAnswerValidationPlan plan = validationPlanCache.getIfPresent(cacheKey);
+        if (plan == null) {
+            Survey survey = surveyDao.getSurvey(keys);
+            plan = new SurveyAnswerValidationPlan(survey);
+            if (survey.isPublished()) {
+                validationPlanCache.put(cacheKey, plan);
+            }
+        }
+        return plan;
     }
     
-    private void fireEvents(Survey survey, SurveyResponse response, List<SurveyAnswer> answers) {
-        Map<String, SurveyQuestion> questions = getQuestionsMap(survey.getUnmodifiableQuestionList());
+    private void fireEvents(SurveyAnswerValidationPlan plan, SurveyResponse response, List<SurveyAnswer> answers) {
         // It's safe to fire an event with the same timestamp more than once. The taskEventDao already 
         // prevents "backtracking" if the timestamp is earlier than the timestamp that's stored.
+        List<SurveyAnswer> answersToFire = Lists.newArrayList();
         for (SurveyAnswer answer : answers) {
-            SurveyQuestion question = questions.get(answer.getQuestionGuid());
+            SurveyQuestion question = plan.getQuestionByGuid(answer.getQuestionGuid());
             if (question != null && question.getFireEvent()) {
-                taskEventService.publishEvent(response.getHealthCode(), answer);
+                answersToFire.add(answer);
             }
         }
-        if (response.getStatus() == SurveyResponse.Status.FINISHED) {
-            taskEventService.publishEvent(response);
-        }
-    }
-
-    private Map<String, SurveyQuestion> getQuestionsMap(List<SurveyQuestion> questions) {
-        return BridgeUtils.asMap(questions, new Function<SurveyQuestion, String>() {
-            public String apply(SurveyQuestion element) {
-                return element.getGuid();
-            }
-        });
+        taskEventService.publishEvents(response, answersToFire);
     }
     
 }
\ No newline at end of file
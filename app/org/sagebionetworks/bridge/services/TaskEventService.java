@@ -2,7 +2,9 @@ package org.sagebionetworks.bridge.services;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.joda.time.DateTime;
 import org.sagebionetworks.bridge.dao.TaskEventDao;
@@ -17,17 +19,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 @Component
 public class TaskEventService {
 
     private TaskEventDao taskEventDao;
+    private TaskMaterializer taskMaterializer;
     
     @Autowired
     public void setTaskEventDao(TaskEventDao taskEventDao) {
         this.taskEventDao = taskEventDao;
     }
     
+    /** An event can start a schedule, so publishing events materializes the participant's tasks. */
+    @Autowired
+    public void setTaskMaterializer(TaskMaterializer taskMaterializer) {
+        this.taskMaterializer = taskMaterializer;
+    }
+    
     public void publishEvent(String healthCode, UserConsent consent) {
         checkNotNull(consent);
         
@@ -35,39 +46,66 @@ public class TaskEventService {
             .withHealthCode(healthCode)
             .withTimestamp(consent.getSignedOn())
             .withObjectType(TaskEventObjectType.ENROLLMENT).build();
-        taskEventDao.publishEvent(event);    
+        publishEvent(event);
     }
     
     public void publishEvent(String healthCode, SurveyAnswer answer) {
         checkNotNull(healthCode);
         checkNotNull(answer);
         
-        TaskEvent event = new DynamoTaskEvent.Builder()
-            .withHealthCode(healthCode)
-            .withTimestamp(answer.getAnsweredOn())
-            .withObjectType(TaskEventObjectType.QUESTION)
-            .withObjectId(answer.getQuestionGuid())
-            .withEventType(TaskEventType.ANSWERED)
-            .withAnswerValue(Joiner.on(",").join(answer.getAnswers())).build();
-        taskEventDao.publishEvent(event);
+        publishEvent(getAnswerEvent(healthCode, answer));
     }
     
     public void publishEvent(SurveyResponse response) {
         checkNotNull(response);
         
-        TaskEvent event = new DynamoTaskEvent.Builder()
-            .withHealthCode(response.getHealthCode())
-            .withTimestamp(response.getCompletedOn())
-            .withObjectType(TaskEventObjectType.SURVEY)
-            .withObjectId(response.getSurveyGuid())
-            .withEventType(TaskEventType.FINISHED)
-            .build();
-        taskEventDao.publishEvent(event);
+        publishEvent(getFinishedEvent(response));
     }
     
     public void publishEvent(TaskEvent event) {
         checkNotNull(event);
         taskEventDao.publishEvent(event);
+        taskMaterializer.requestMaterialization(event.getHealthCode());
+    }
+    
+    /**
+     * Publish the events of answers to a survey in one call and, if the response is finished, the event of finishing
+     * the survey.
+     * @param response
+     * @param answers
+     *      the answers to publish events for, which are usually only some of the answers in the response
+     */
+    public void publishEvents(SurveyResponse response, List<SurveyAnswer> answers) {
+        checkNotNull(response);
+        checkNotNull(answers);
+        
+        List<TaskEvent> events = Lists.newArrayListWithCapacity(answers.size() + 1);
+        for (SurveyAnswer answer : answers) {
+            events.add(getAnswerEvent(response.getHealthCode(), answer));
+        }
+        if (response.getStatus() == SurveyResponse.Status.FINISHED) {
+            events.add(getFinishedEvent(response));
+        }
+        publishEvents(events);
+    }
+    
+    /**
+     * Publish several events in one call. Of several events with the same key, only the latest is saved.
+     * @param events
+     */
+    public void publishEvents(List<TaskEvent> events) {
+        checkNotNull(events);
+        if (!events.isEmpty()) {
+            taskEventDao.publishEvents(events);
+            
+            Set<String> healthCodes = Sets.newHashSet();
+            for (TaskEvent event : events) {
+                healthCodes.add(event.getHealthCode());
+            }
+            for (String healthCode : healthCodes) {
+                taskMaterializer.requestMaterialization(healthCode);
+            }
+        }
     }
 
     public Map<String, DateTime> getTaskEventMap(String healthCode) {
@@ -80,4 +118,24 @@ public class TaskEventService {
         taskEventDao.deleteTaskEvents(healthCode);
     }
 
+    private TaskEvent getAnswerEvent(String healthCode, SurveyAnswer answer) {
+        return new DynamoTaskEvent.Builder()
+            .withHealthCode(healthCode)
+            .withTimestamp(answer.getAnsweredOn())
+            .withObjectType(TaskEventObjectType.QUESTION)
+            .withObjectId(answer.getQuestionGuid())
+            .withEventType(TaskEventType.ANSWERED)
+            .withAnswerValue(Joiner.on(",").join(answer.getAnswers())).build();
+    }
+    
+    private TaskEvent getFinishedEvent(SurveyResponse response) {
+        return new DynamoTaskEvent.Builder()
+            .withHealthCode(response.getHealthCode())
+            .withTimestamp(response.getCompletedOn())
+            .withObjectType(TaskEventObjectType.SURVEY)
+            .withObjectId(response.getSurveyGuid())
+            .withEventType(TaskEventType.FINISHED)
+            .build();
+    }
+
 }
@@ -0,0 +1,310 @@
+package org.sagebionetworks.bridge.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.UserConsentDao;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.models.accounts.User;
+import org.sagebionetworks.bridge.models.schedules.Task;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * <p>
+ * Schedules and saves participants' tasks in the background, so reading tasks never has to. A participant's tasks are
+ * materialized up to task.materialize.horizon.days days ahead, which is more than the longest window that can be read
+ * ({@link TaskService#MAX_EXPIRES_ON_DAYS}) plus the time between sweeps, so reads always find every task.
+ * </p>
+ * <p>
+ * A participant's tasks are materialized when one of their task events is published, since an event can start a
+ * schedule; right away when the participant consents, so their first read finds tasks; for every participant of a
+ * study when a schedule plan of the study changes; and for every participant
+ * every task.materialize.sweep.hours hours, as the horizon moves forward. Only one server sweeps in each period.
+ * </p>
+ * <p>
+ * Requests are queued by health code, and a health code already waiting in the queue is not queued again. Each health
+ * code is always handled by the same one of task.materialize.partitions worker threads, so a server never materializes
+ * a participant's tasks twice at once, and a lock keeps other servers from doing so at the same time. All workers of a
+ * server share a limit of task.materialize.per.second participants per second.
+ * </p>
+ */
+@Component
+public class TaskMaterializer {
+    private static final Logger logger = LoggerFactory.getLogger(TaskMaterializer.class);
+
+    private static final int HORIZON_DAYS = BridgeConfigFactory.getConfig().getPropertyAsInt(
+            "task.materialize.horizon.days");
+    private static final int SWEEP_HOURS = BridgeConfigFactory.getConfig().getPropertyAsInt(
+            "task.materialize.sweep.hours");
+    private static final int PARTITIONS = BridgeConfigFactory.getConfig().getPropertyAsInt(
+            "task.materialize.partitions");
+    private static final int PER_SECOND = BridgeConfigFactory.getConfig().getPropertyAsInt(
+            "task.materialize.per.second");
+
+    private static final String SWEEP_LOCK_ID = "sweep";
+    // The sweep lock isn't released, so it expires just before the next sweep of any server.
+    private static final int SWEEP_LOCK_EXPIRE_IN_SECONDS = SWEEP_HOURS * 60 * 60 - 60;
+    private static final int LOCK_EXPIRE_IN_SECONDS = 60;
+    /** A participant whose tasks are being materialized by another server is tried again after this delay. */
+    static final int RETRY_DELAY_SECONDS = 10;
+    /** The first sweep is a few minutes after startup, if no server has swept in the last period. */
+    private static final int FIRST_SWEEP_DELAY_MINUTES = 5;
+
+    private final Set<String> queuedHealthCodes = Sets.newConcurrentHashSet();
+    private final RateLimiter rateLimiter = RateLimiter.create(PER_SECOND);
+    private final ScheduledExecutorService sweepExecutor = Executors.newSingleThreadScheduledExecutor(
+            newThreadFactory("task-materializer-sweep"));
+    private final ScheduledExecutorService[] partitionExecutors = new ScheduledExecutorService[PARTITIONS];
+
+    private DistributedLockDao lockDao;
+    private HealthCodeDao healthCodeDao;
+    private StudyService studyService;
+    private TaskService taskService;
+    private UserConsentDao userConsentDao;
+
+    public TaskMaterializer() {
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitionExecutors[i] = Executors.newSingleThreadScheduledExecutor(
+                    newThreadFactory("task-materializer-" + i));
+        }
+    }
+
+    /** Locks, so only one server materializes a participant's tasks or sweeps at a time. Configured by Spring. */
+    @Autowired
+    public void setDistributedLockDao(DistributedLockDao lockDao) {
+        this.lockDao = lockDao;
+    }
+
+    /** DAO for getting the study ID from a health code. This is configured by Spring. */
+    @Autowired
+    public void setHealthCodeDao(HealthCodeDao healthCodeDao) {
+        this.healthCodeDao = healthCodeDao;
+    }
+
+    /** Service for listing the studies to sweep. This is configured by Spring. */
+    @Autowired
+    public void setStudyService(StudyService studyService) {
+        this.studyService = studyService;
+    }
+
+    /** Service that schedules and saves tasks. This is configured by Spring. */
+    @Autowired
+    public void setTaskService(TaskService taskService) {
+        this.taskService = taskService;
+    }
+
+    /** DAO for listing the participants of a study. This is configured by Spring. */
+    @Autowired
+    public void setUserConsentDao(UserConsentDao userConsentDao) {
+        this.userConsentDao = userConsentDao;
+    }
+
+    /** Starts sweeping periodically. */
+    @PostConstruct
+    public void start() {
+        sweepExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException ex) {
+                    // An exception would cancel the schedule, so log it and sweep again next time.
+                    logger.error("Error sweeping task materialization: " + ex.getMessage(), ex);
+                }
+            }
+        }, FIRST_SWEEP_DELAY_MINUTES, SWEEP_HOURS * 60, TimeUnit.MINUTES);
+    }
+
+    /** Stops sweeping and materializing. Queued participants are materialized again by the next sweep. */
+    @PreDestroy
+    public void stop() {
+        sweepExecutor.shutdownNow();
+        for (ScheduledExecutorService executor : partitionExecutors) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues the participant's tasks to be materialized, unless they are already queued.
+     *
+     * @param healthCode
+     *         health code of the participant
+     */
+    public void requestMaterialization(String healthCode) {
+        checkArgument(isNotBlank(healthCode));
+        queue(healthCode, 0);
+    }
+
+    /**
+     * Queues the tasks of every participant of the study to be materialized. The participants are listed in the
+     * background, since that scans the consent table.
+     *
+     * @param studyIdentifier
+     *         study whose participants are materialized
+     */
+    public void requestMaterialization(final StudyIdentifier studyIdentifier) {
+        checkNotNull(studyIdentifier);
+        sweepExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queueStudy(studyIdentifier);
+                } catch (RuntimeException ex) {
+                    logger.error("Error queueing task materialization for study " + studyIdentifier.getIdentifier()
+                            + ": " + ex.getMessage(), ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Materializes the participant's tasks up to the horizon now, rather than in the background, and takes the
+     * participant out of the queue. This is for participants who have no tasks to read yet, right after consenting.
+     * If another server is materializing the participant's tasks, or materializing fails, the participant is queued
+     * instead.
+     *
+     * @param user
+     *         a user with a health code and study key
+     * @return the tasks that were saved, or an empty list if the participant was queued instead
+     */
+    public List<Task> materializeNow(User user) {
+        checkNotNull(user);
+        String healthCode = user.getHealthCode();
+        queuedHealthCodes.remove(healthCode);
+
+        String lock;
+        try {
+            lock = lockDao.acquireLock(TaskMaterializer.class, healthCode, LOCK_EXPIRE_IN_SECONDS);
+        } catch (ConcurrentModificationException ex) {
+            queue(healthCode, RETRY_DELAY_SECONDS);
+            return ImmutableList.of();
+        }
+        try {
+            return taskService.materializeTasks(user, DateTime.now().plusDays(HORIZON_DAYS));
+        } catch (RuntimeException ex) {
+            logger.error("Error materializing tasks for a participant: " + ex.getMessage(), ex);
+            queue(healthCode, RETRY_DELAY_SECONDS);
+            return ImmutableList.of();
+        } finally {
+            lockDao.releaseLock(TaskMaterializer.class, healthCode, lock);
+        }
+    }
+
+    /**
+     * Queues every participant of every study, unless another server has swept in this period. This is
+     * package-scoped for unit tests.
+     */
+    void sweep() {
+        try {
+            lockDao.acquireLock(TaskMaterializer.class, SWEEP_LOCK_ID, SWEEP_LOCK_EXPIRE_IN_SECONDS);
+        } catch (ConcurrentModificationException ex) {
+            logger.info("Task materialization has already been swept in this period");
+            return;
+        }
+        for (Study study : studyService.getStudies()) {
+            queueStudy(study);
+        }
+    }
+
+    private void queueStudy(StudyIdentifier studyIdentifier) {
+        Set<String> healthCodes = userConsentDao.getParticipantHealthCodes(studyIdentifier);
+        for (String healthCode : healthCodes) {
+            queue(healthCode, 0);
+        }
+        logger.info("Queued task materialization for " + healthCodes.size() + " participants of study "
+                + studyIdentifier.getIdentifier());
+    }
+
+    /** Queues the participant after the delay, unless already queued. This is package-scoped for unit tests. */
+    void queue(final String healthCode, int delaySeconds) {
+        if (queuedHealthCodes.add(healthCode)) {
+            getPartitionExecutor(healthCode).schedule(new Runnable() {
+                @Override
+                public void run() {
+                    materialize(healthCode);
+                }
+            }, delaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /** The worker of the health code's partition. This is package-scoped for unit tests. */
+    ScheduledExecutorService getPartitionExecutor(String healthCode) {
+        return partitionExecutors[(healthCode.hashCode() & Integer.MAX_VALUE) % PARTITIONS];
+    }
+
+    /** Materializes the participant's tasks up to the horizon. This is package-scoped for unit tests. */
+    void materialize(String healthCode) {
+        // Taken out of the queue first, so an event published while this runs queues the participant again. If the
+        // participant isn't queued any more, their tasks were materialized now by a request since.
+        if (!queuedHealthCodes.remove(healthCode)) {
+            return;
+        }
+        rateLimiter.acquire();
+
+        String lock;
+        try {
+            lock = lockDao.acquireLock(TaskMaterializer.class, healthCode, LOCK_EXPIRE_IN_SECONDS);
+        } catch (ConcurrentModificationException ex) {
+            // The other server may have read the participant's events before the event that queued this request.
+            queue(healthCode, RETRY_DELAY_SECONDS);
+            return;
+        }
+        try {
+            String studyId = healthCodeDao.getStudyIdentifier(healthCode);
+            if (studyId == null) {
+                // The participant has been deleted.
+                return;
+            }
+            User user = new User();
+            user.setHealthCode(healthCode);
+            user.setStudyKey(studyId);
+            taskService.materializeTasks(user, DateTime.now().plusDays(HORIZON_DAYS));
+        } catch (RuntimeException ex) {
+            // The next sweep materializes this participant again.
+            logger.error("Error materializing tasks for a participant: " + ex.getMessage(), ex);
+        } finally {
+            lockDao.releaseLock(TaskMaterializer.class, healthCode, lock);
+        }
+    }
+
+    /** True if the participant is waiting to be materialized. This is package-scoped for unit tests. */
+    boolean isQueued(String healthCode) {
+        return queuedHealthCodes.contains(healthCode);
+    }
+
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
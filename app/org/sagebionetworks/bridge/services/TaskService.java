@@ -15,6 +15,7 @@ import org.sagebionetworks.bridge.dao.UserConsentDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.accounts.UserConsent;
 import org.sagebionetworks.bridge.models.schedules.Activity;
@@ -25,6 +26,7 @@ import org.sagebionetworks.bridge.models.schedules.SchedulerFactory;
 import org.sagebionetworks.bridge.models.schedules.SurveyReference;
 import org.sagebionetworks.bridge.models.schedules.Task;
 import org.sagebionetworks.bridge.models.schedules.TaskScheduler;
+import org.sagebionetworks.bridge.models.schedules.TaskUpdateResult;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
@@ -43,6 +45,8 @@ public class TaskService {
 
     public static final int DEFAULT_EXPIRES_ON_DAYS = 2;
     public static final int MAX_EXPIRES_ON_DAYS = 4;
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 100;
     
     private static final Logger logger = LoggerFactory.getLogger(TaskService.class);
     private static final List<SurveyAnswer> EMPTY_ANSWERS = ImmutableList.of();
@@ -84,16 +88,61 @@ public class TaskService {
         this.surveyResponseService = surveyResponseService;
     }
     
+    /**
+     * Get the user's tasks up to the end timestamp. This only reads tasks; they are scheduled and saved 
+     * by {@link TaskMaterializer}, in the background or when the user consents.
+     * 
+     * @param user
+     * @param endsOn
+     * @return
+     */
     public List<Task> getTasks(User user, DateTime endsOn) {
         checkNotNull(user);
         checkNotNull(endsOn);
+        validateEndsOn(endsOn);
         
-        DateTime now = DateTime.now();
-        if (endsOn.isBefore(now)) {
-            throw new BadRequestException("End timestamp must be after the time of the request");
-        } else if (endsOn.minusDays(MAX_EXPIRES_ON_DAYS).isAfter(now)) {
-            throw new BadRequestException("Task request window must be "+MAX_EXPIRES_ON_DAYS+" days or less");
+        return taskDao.getTasks(user.getHealthCode(), endsOn);
+    }
+    
+    /**
+     * Get a page of the user's tasks, ordered by the time they are hidden. Like 
+     * {@link #getTasks(User, DateTime)}, this only reads tasks. A page may be short, or empty, even if 
+     * it isn't the last page; only a null offset key ends the list.
+     * 
+     * @param user
+     * @param endsOn
+     * @param offsetKey
+     *      the offset key of the previous page, or null for the first page
+     * @param pageSize
+     *      the number of tasks in a page, or null for the default page size
+     * @return
+     */
+    public PagedResourceList<Task> getTasks(User user, DateTime endsOn, String offsetKey, Integer pageSize) {
+        checkNotNull(user);
+        checkNotNull(endsOn);
+        validateEndsOn(endsOn);
+        
+        int size = (pageSize == null) ? DEFAULT_PAGE_SIZE : pageSize;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("pageSize must be from 1 to " + MAX_PAGE_SIZE);
         }
+        return taskDao.getTasks(user.getHealthCode(), endsOn, offsetKey, size);
+    }
+    
+    /**
+     * Schedule the user's tasks for all the schedule plans of the study up to the end timestamp, and 
+     * save the tasks of each run that hasn't been saved yet. Survey tasks get a new survey response. 
+     * This is called in the background by {@link TaskMaterializer}, so the user's task events are read 
+     * from the table rather than from a cache.
+     * 
+     * @param user
+     *      a user with a health code and study key
+     * @param endsOn
+     * @return the tasks that were saved
+     */
+    public List<Task> materializeTasks(User user, DateTime endsOn) {
+        checkNotNull(user);
+        checkNotNull(endsOn);
         
         StudyIdentifier studyId = new StudyIdentifierImpl(user.getStudyKey());
         List<Task> tasksToSave = Lists.newArrayList();
@@ -110,10 +159,10 @@ public class TaskService {
             }
         }
         taskDao.saveTasks(user.getHealthCode(), tasksToSave);
-        return taskDao.getTasks(user.getHealthCode(), endsOn);
+        return tasksToSave;
     }
     
-    public void updateTasks(String healthCode, List<Task> tasks) {
+    public List<TaskUpdateResult> updateTasks(String healthCode, List<Task> tasks) {
         checkArgument(isNotBlank(healthCode));
         checkNotNull(tasks);
         for (int i=0; i < tasks.size(); i++) {
@@ -125,7 +174,7 @@ public class TaskService {
                 throw new BadRequestException(String.format("Task #%s has no GUID", i));
             }
         }
-        taskDao.updateTasks(healthCode, tasks);
+        return taskDao.updateTasks(healthCode, tasks);
     }
     
     public void deleteTasks(String healthCode) {
@@ -134,6 +183,15 @@ public class TaskService {
         taskDao.deleteTasks(healthCode);
     }
     
+    private void validateEndsOn(DateTime endsOn) {
+        DateTime now = DateTime.now();
+        if (endsOn.isBefore(now)) {
+            throw new BadRequestException("End timestamp must be after the time of the request");
+        } else if (endsOn.minusDays(MAX_EXPIRES_ON_DAYS).isAfter(now)) {
+            throw new BadRequestException("Task request window must be "+MAX_EXPIRES_ON_DAYS+" days or less");
+        }
+    }
+    
     /**
      * @param user
      * @return
@@ -142,6 +200,10 @@ public class TaskService {
         Map<String,DateTime> events = taskEventService.getTaskEventMap(user.getHealthCode());
         if (!events.containsKey("enrollment")) {
             UserConsent consent = userConsentDao.getUserConsent(user.getHealthCode(), new StudyIdentifierImpl(user.getStudyKey()));
+            if (consent == null) {
+                // Not consented (or consent withdrawn), so only tasks of other events can be scheduled
+                return events;
+            }
             Map<String,DateTime> newEvents = Maps.newHashMap();
             newEvents.putAll(events);
             newEvents.put("enrollment", new DateTime(consent.getSignedOn()));
@@ -161,9 +223,15 @@ public class TaskService {
             Schedule schedule = plan.getStrategy().getScheduleForUser(studyId, plan, user);
             TaskScheduler scheduler = SchedulerFactory.getScheduler(plan.getGuid(), schedule);
 
-            List<Task> tasks = scheduler.getTasks(events, endsOn);
-            if (!tasks.isEmpty()) {
-                map.put(tasks.get(0).getRunKey(), tasks);
+            // Tasks are grouped by run, so as the end timestamp moves forward, the runs that have been 
+            // added are saved even though the earlier runs of the plan have already been saved.
+            for (Task task : scheduler.getTasks(events, endsOn)) {
+                List<Task> run = map.get(task.getRunKey());
+                if (run == null) {
+                    run = Lists.newArrayList();
+                    map.put(task.getRunKey(), run);
+                }
+                run.add(task);
             }
         }
         return map;
@@ -4,8 +4,14 @@ import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.bouncycastle.cms.CMSException;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
@@ -16,10 +22,13 @@ import org.sagebionetworks.bridge.util.DuplicateZipEntryException;
 import org.sagebionetworks.bridge.util.ZipOverflowException;
 import org.sagebionetworks.bridge.util.Zipper;
 import org.sagebionetworks.bridge.validators.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
@@ -29,11 +38,25 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
  */
 @Component
 public class UploadArchiveService {
+    private static final Logger logger = LoggerFactory.getLogger(UploadArchiveService.class);
+
+    /** Minutes between logs of the encryptor cache statistics, the same as the time between encryptor reloads. */
+    private static final int STATS_LOG_MINUTES = 60;
 
     private final static Zipper ZIPPER = new Zipper(
             BridgeConfigFactory.getConfig().getPropertyAsInt("max.zip.entry.size"),
             BridgeConfigFactory.getConfig().getPropertyAsInt("max.num.zip.entries"));
 
+    private final ScheduledExecutorService statsExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "cms-encryptor-cache-stats");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     private LoadingCache<String, CmsEncryptor> cmsEncryptorCache;
 
     /** Loading cache for CMS encryptor, keyed by study ID. This is configured by Spring. */
@@ -42,6 +65,39 @@ public class UploadArchiveService {
         this.cmsEncryptorCache = cmsEncryptorCache;
     }
 
+    /** Starts logging the statistics of the encryptor cache periodically. */
+    @PostConstruct
+    public void start() {
+        statsExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    logger.info(getCacheStatsMessage());
+                } catch (RuntimeException ex) {
+                    // An exception would cancel the schedule
+                    logger.error("Error logging CMS encryptor cache statistics: " + ex.getMessage(), ex);
+                }
+            }
+        }, STATS_LOG_MINUTES, STATS_LOG_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /** Stops logging the statistics of the encryptor cache. */
+    @PreDestroy
+    public void stop() {
+        statsExecutor.shutdownNow();
+    }
+
+    /**
+     * Statistics of the encryptor cache since startup. Loads include the background reloads, so load failures and the
+     * average load time show how S3 reads of the certificates are doing. This is package-scoped for unit tests.
+     */
+    String getCacheStatsMessage() {
+        CacheStats stats = cmsEncryptorCache.stats();
+        return String.format("CMS encryptor cache: %d hits, %d misses, %d loads, %d failed loads, "
+                + "%.1f ms average load, %d evictions", stats.hitCount(), stats.missCount(), stats.loadSuccessCount(),
+                stats.loadExceptionCount(), stats.averageLoadPenalty() / 1000000.0, stats.evictionCount());
+    }
+
     /**
      * Encrypts the specified data, using the encryption materials for the specified study.
      *
@@ -8,6 +8,7 @@ import javax.annotation.Resource;
 
 import java.net.URL;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import com.amazonaws.AmazonClientException;
 import com.google.common.base.Strings;
@@ -16,14 +17,17 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
 import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.dao.UploadDedupeDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
+import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadSession;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
 import org.sagebionetworks.bridge.validators.UploadValidator;
 import org.sagebionetworks.bridge.validators.Validate;
@@ -45,11 +49,14 @@ public class UploadService {
 
     private static final long EXPIRATION = 60 * 1000; // 1 minute
     private static final String BUCKET = BridgeConfigFactory.getConfig().getProperty("upload.bucket");
+    private static final long DEDUPE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(
+            BridgeConfigFactory.getConfig().getPropertyAsInt("upload.dedupe.window.minutes"));
 
     private HealthDataService healthDataService;
     private AmazonS3 s3UploadClient;
     private AmazonS3 s3Client;
     private UploadDao uploadDao;
+    private UploadDedupeDao uploadDedupeDao;
     private UploadSessionCredentialsService uploadCredentailsService;
     private Validator validator;
 
@@ -75,6 +82,10 @@ public class UploadService {
         this.uploadDao = uploadDao;
     }
     @Autowired
+    public void setUploadDedupeDao(UploadDedupeDao uploadDedupeDao) {
+        this.uploadDedupeDao = uploadDedupeDao;
+    }
+    @Autowired
     public void setUploadSessionCredentialsService(UploadSessionCredentialsService uploadCredentialsService) {
         this.uploadCredentailsService = uploadCredentialsService;
     }
@@ -86,8 +97,24 @@ public class UploadService {
     public UploadSession createUpload(User user, UploadRequest uploadRequest) {
         Validate.entityThrowingException(validator, uploadRequest);
 
-        // For all new uploads, the upload ID in DynamoDB is the same as the S3 Object ID
-        Upload upload = uploadDao.createUpload(uploadRequest, user.getHealthCode());
+        // A repeated request for the same file gets the upload that was created for the first request. If that upload
+        // has been completed, the session has no upload URL, and the status tells the client there's no need to upload
+        // the file again.
+        final String healthCode = user.getHealthCode();
+        Upload upload = getDuplicateUpload(healthCode, uploadRequest.getContentMd5(), uploadRequest.getName(), null);
+        if (upload == null) {
+            // For all new uploads, the upload ID in DynamoDB is the same as the S3 Object ID
+            upload = uploadDao.createUpload(uploadRequest, healthCode);
+            if (DEDUPE_WINDOW_MILLIS > 0) {
+                uploadDedupeDao.registerUpload(healthCode, uploadRequest.getContentMd5(), uploadRequest.getName(),
+                        upload.getUploadId(), DateUtils.getCurrentMillisFromEpoch());
+            }
+        } else if (upload.getStatus() != UploadStatus.REQUESTED) {
+            logger.info("Upload requested for the same file as completed upload " + upload.getUploadId());
+            return new UploadSession(upload.getUploadId(), upload.getStatus());
+        } else {
+            logger.info("Upload requested for the same file as upload " + upload.getUploadId());
+        }
         final String uploadId = upload.getUploadId();
         GeneratePresignedUrlRequest presignedUrlRequest =
                 new GeneratePresignedUrlRequest(BUCKET, uploadId, HttpMethod.PUT);
@@ -108,7 +135,7 @@ public class UploadService {
         presignedUrlRequest.setContentType(uploadRequest.getContentType());
 
         URL url = s3UploadClient.generatePresignedUrl(presignedUrlRequest);
-        return new UploadSession(uploadId, url, expiration.getTime());
+        return new UploadSession(uploadId, url, expiration.getTime(), upload.getStatus());
     }
 
     /**
@@ -181,13 +208,37 @@ public class UploadService {
         return validationStatus;
     }
 
-    public void uploadComplete(Upload upload) {
+    /**
+     * <p>
+     * Marks the upload as complete, so that it can be validated. If the same file was uploaded and completed by the
+     * same participant within the dedupe window, this upload is a duplicate: it isn't marked as complete, and the
+     * earlier upload is returned instead. The earlier upload's status answers for this upload, so it doesn't need to
+     * be validated again.
+     * </p>
+     * <p>
+     * Does nothing if the upload was already completed.
+     * </p>
+     *
+     * @param upload
+     *         upload to mark as completed
+     * @return the earlier upload of the same file, or null if this upload isn't a duplicate
+     */
+    public Upload uploadComplete(Upload upload) {
         String uploadId = upload.getUploadId();
 
         // We don't want to kick off upload validation on an upload that already has upload validation.
         if (!upload.canBeValidated()) {
             logger.info(String.format("uploadComplete called for upload %s, which is already complete", uploadId));
-            return;
+            return null;
+        }
+
+        // Check again, for requests that created two uploads of the same file at once, or that raced with the first
+        // upload's uploadComplete.
+        Upload duplicate = getDuplicateUpload(upload.getHealthCode(), upload.getContentMd5(), upload.getFilename(),
+                uploadId);
+        if (duplicate != null && duplicate.getStatus() != UploadStatus.REQUESTED) {
+            logger.info("Upload " + uploadId + " is a duplicate of upload " + duplicate.getUploadId());
+            return duplicate;
         }
 
         final String objectId = upload.getObjectId();
@@ -202,5 +253,38 @@ public class UploadService {
             logger.error("Missing S3 server-side encryption (SSE) for presigned upload " + uploadId + ".");
         }
         uploadDao.uploadComplete(upload);
+
+        // The first upload of the file that's completed is the one later uploads are deduped against
+        if (duplicate != null) {
+            uploadDedupeDao.registerUpload(upload.getHealthCode(), upload.getContentMd5(), upload.getFilename(),
+                    uploadId, DateUtils.getCurrentMillisFromEpoch());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the last upload of the file by the participant within the dedupe window, other than the given upload,
+     * or null if there is none. An upload that failed validation is never returned, so that the participant can retry
+     * after a transient failure.
+     */
+    private Upload getDuplicateUpload(String healthCode, String contentMd5, String filename, String uploadId) {
+        if (DEDUPE_WINDOW_MILLIS <= 0 || contentMd5 == null || filename == null) {
+            return null;
+        }
+        long windowStart = DateUtils.getCurrentMillisFromEpoch() - DEDUPE_WINDOW_MILLIS;
+        String duplicateId = uploadDedupeDao.getDuplicateUploadId(healthCode, contentMd5, filename, windowStart);
+        if (duplicateId == null || duplicateId.equals(uploadId)) {
+            return null;
+        }
+        try {
+            Upload duplicate = uploadDao.getUpload(duplicateId);
+            if (!healthCode.equals(duplicate.getHealthCode())
+                    || duplicate.getStatus() == UploadStatus.VALIDATION_FAILED) {
+                return null;
+            }
+            return duplicate;
+        } catch (NotFoundException ex) {
+            return null;
+        }
     }
 }
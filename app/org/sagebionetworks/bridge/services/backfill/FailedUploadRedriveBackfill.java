@@ -0,0 +1,115 @@
+package org.sagebionetworks.bridge.services.backfill;
+
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.models.PagedResourceList;
+import org.sagebionetworks.bridge.models.backfill.BackfillTask;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.services.UploadValidationService;
+
+/**
+ * <p>
+ * Re-drives the failed uploads of the last {@value #REDRIVE_DAYS} days, up to and including yesterday. Uploads of
+ * today are left out, since they may still be validating.
+ * </p>
+ * <p>
+ * Failed uploads are read from the upload date index a page at a time, and each upload is fed back into validation
+ * as it is read, so the backfill never holds more than a page of uploads.
+ * </p>
+ */
+@Component("failedUploadRedriveBackfill")
+public class FailedUploadRedriveBackfill extends AsyncBackfillTemplate {
+    private static final Logger logger = LoggerFactory.getLogger(FailedUploadRedriveBackfill.class);
+
+    static final int REDRIVE_DAYS = 7;
+    static final int PAGE_SIZE = 50;
+
+    private HealthCodeDao healthCodeDao;
+    private UploadDao uploadDao;
+    private UploadValidationService uploadValidationService;
+    private long delayMillis = 1000L;
+
+    /** DAO for getting the study ID from a health code. This is configured by Spring. */
+    @Autowired
+    public final void setHealthCodeDao(HealthCodeDao healthCodeDao) {
+        this.healthCodeDao = healthCodeDao;
+    }
+
+    /** DAO for querying failed uploads. This is configured by Spring. */
+    @Autowired
+    public final void setUploadDao(UploadDao uploadDao) {
+        this.uploadDao = uploadDao;
+    }
+
+    /** Service handler for upload validation. This is configured by Spring. */
+    @Autowired
+    public final void setUploadValidationService(UploadValidationService uploadValidationService) {
+        this.uploadValidationService = uploadValidationService;
+    }
+
+    /** Pause between uploads, so the re-drive doesn't starve threads or brown out DDB. Unit tests set this to 0. */
+    final void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    int getLockExpireInSeconds() {
+        // We do roughly one upload per second. One hour should be enough for most cases.
+        return 3600;
+    }
+
+    @Override
+    void doBackfill(BackfillTask task, BackfillCallback callback) {
+        LocalDate endDate = LocalDate.now(BridgeConstants.LOCAL_TIME_ZONE).minusDays(1);
+        String startDate = endDate.minusDays(REDRIVE_DAYS - 1).toString();
+
+        String offsetKey = null;
+        do {
+            PagedResourceList<? extends Upload> page = uploadDao.getFailedUploads(startDate, endDate.toString(),
+                    offsetKey, PAGE_SIZE);
+            for (Upload oneUpload : page.getItems()) {
+                redrive(task, callback, oneUpload);
+            }
+            offsetKey = page.getOffsetKey();
+        } while (offsetKey != null);
+
+        logger.info("FailedUploadRedriveBackfill complete");
+    }
+
+    private void redrive(BackfillTask task, BackfillCallback callback, Upload upload) {
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException ex) {
+                logger.error("Interrupted while sleeping: " + ex.getMessage(), ex);
+            }
+        }
+
+        String uploadId = upload.getUploadId();
+        try {
+            // Get study ID from health code. Upload validation needs this.
+            String studyId = healthCodeDao.getStudyIdentifier(upload.getHealthCode());
+            StudyIdentifier studyIdentifier = new StudyIdentifierImpl(studyId);
+
+            // Kick off upload validation.
+            uploadValidationService.validateUpload(studyIdentifier, upload);
+
+            recordMessage(task, callback, "Re-drove upload ID " + uploadId + " with status " + upload.getStatus());
+            logger.info("Re-drove upload ID " + uploadId);
+        } catch (RuntimeException ex) {
+            // Ensure that errors won't fail the entire backfill. Log an error and move on.
+            String errMsg = "Error re-driving upload ID " + uploadId + ": " + ex.getMessage();
+            logger.error(errMsg, ex);
+            recordMessage(task, callback, errMsg);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.sagebionetworks.bridge.upload;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.json.DateUtils;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadFieldType;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+
+/**
+ * <p>
+ * Projects the validated health data record into a typed row, with one column per field of the schema revision, and
+ * hands the row to the {@link ColumnProjectionWriter}. Analytic reads of the written files get typed columns without
+ * parsing the JSON of each record.
+ * </p>
+ * <p>
+ * Each value is converted to the type of its field: INT to a long, FLOAT to a double, BOOLEAN to a boolean,
+ * TIMESTAMP to an ISO 8601 date time in UTC, CALENDAR_DATE to YYYY-MM-DD, INLINE_JSON_BLOB to its JSON text, and
+ * STRING and attachment fields (which hold attachment IDs) to text. A value that can't be converted is projected as
+ * null, with a message in the context.
+ * </p>
+ * <p>
+ * This runs after UploadArtifactsHandler, since it needs the record ID and the attachment IDs. The projection is a
+ * secondary copy of the record, so errors are added to the context messages and never fail the upload. Records of
+ * participants who aren't sharing data are not projected.
+ * </p>
+ */
+@Component
+public class ColumnProjectionHandler implements UploadValidationHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnProjectionHandler.class);
+
+    static final String RECORD_ID_COLUMN = "recordId";
+    static final String HEALTH_CODE_COLUMN = "healthCode";
+    static final String CREATED_ON_COLUMN = "createdOn";
+
+    private ColumnProjectionWriter columnProjectionWriter;
+
+    /** Buffers and writes the projected rows. This is configured by Spring. */
+    @Autowired
+    public void setColumnProjectionWriter(ColumnProjectionWriter columnProjectionWriter) {
+        this.columnProjectionWriter = columnProjectionWriter;
+    }
+
+    @Override
+    public void handle(@Nonnull UploadValidationContext context) {
+        UploadSchema schema = context.getSchema();
+        HealthDataRecordBuilder record = context.getHealthDataRecordBuilder();
+        if (schema == null || record == null || context.getRecordId() == null) {
+            return;
+        }
+        SharingScope sharingScope = record.getUserSharingScope();
+        if (sharingScope == null || sharingScope == SharingScope.NO_SHARING) {
+            return;
+        }
+
+        String uploadId = context.getUpload().getUploadId();
+        try {
+            String partition = record.getStudyId() + "/" + schema.getSchemaId() + "-v" + schema.getRevision()
+                    + "/uploadDate=" + record.getUploadDate();
+            columnProjectionWriter.addRow(partition, getHeader(schema), getRow(context, schema, record));
+        } catch (RuntimeException ex) {
+            String message = String.format("Upload ID %s error projecting record %s: %s", uploadId,
+                    context.getRecordId(), ex.getMessage());
+            context.addMessage(message);
+            logger.warn(message, ex);
+        }
+    }
+
+    /** Column names and types, as "name:TYPE". This is package-scoped for unit tests. */
+    static List<String> getHeader(UploadSchema schema) {
+        List<UploadFieldDefinition> fieldDefList = schema.getFieldDefinitions();
+        List<String> header = new ArrayList<>(fieldDefList.size() + 3);
+        header.add(RECORD_ID_COLUMN + ":" + UploadFieldType.STRING);
+        header.add(HEALTH_CODE_COLUMN + ":" + UploadFieldType.STRING);
+        header.add(CREATED_ON_COLUMN + ":" + UploadFieldType.TIMESTAMP);
+        for (UploadFieldDefinition oneFieldDef : fieldDefList) {
+            header.add(oneFieldDef.getName() + ":" + oneFieldDef.getType());
+        }
+        return header;
+    }
+
+    private static List<Object> getRow(UploadValidationContext context, UploadSchema schema,
+            HealthDataRecordBuilder record) {
+        List<UploadFieldDefinition> fieldDefList = schema.getFieldDefinitions();
+        List<Object> row = new ArrayList<>(fieldDefList.size() + 3);
+        row.add(context.getRecordId());
+        row.add(record.getHealthCode());
+        row.add(record.getCreatedOn() == null ? null : DateUtils.convertToISODateTime(record.getCreatedOn()));
+
+        JsonNode data = record.getData();
+        for (UploadFieldDefinition oneFieldDef : fieldDefList) {
+            String fieldName = oneFieldDef.getName();
+            JsonNode valueNode = (data == null) ? null : data.get(fieldName);
+            Object value;
+            try {
+                value = convertValue(oneFieldDef.getType(), valueNode);
+            } catch (RuntimeException ex) {
+                context.addMessage(String.format("Upload ID %s field %s can't be projected as %s: %s",
+                        context.getUpload().getUploadId(), fieldName, oneFieldDef.getType(), ex.getMessage()));
+                value = null;
+            }
+            row.add(value);
+        }
+        return row;
+    }
+
+    /**
+     * Converts a JSON value to the Java value of its column. Returns null for a missing or null value. This is
+     * package-scoped for unit tests.
+     *
+     * @throws IllegalArgumentException
+     *         if the value can't be converted to the given type
+     */
+    static Object convertValue(UploadFieldType type, JsonNode valueNode) {
+        if (valueNode == null || valueNode.isNull()) {
+            return null;
+        }
+        switch (type) {
+            case BOOLEAN:
+                if (valueNode.isBoolean()) {
+                    return valueNode.booleanValue();
+                } else if (valueNode.isTextual() && ("true".equalsIgnoreCase(valueNode.textValue())
+                        || "false".equalsIgnoreCase(valueNode.textValue()))) {
+                    return Boolean.valueOf(valueNode.textValue());
+                }
+                break;
+            case INT:
+                if (valueNode.isIntegralNumber() && valueNode.canConvertToLong()) {
+                    return valueNode.longValue();
+                } else if (valueNode.isTextual()) {
+                    return Long.valueOf(valueNode.textValue().trim());
+                }
+                break;
+            case FLOAT:
+                if (valueNode.isNumber()) {
+                    return valueNode.doubleValue();
+                } else if (valueNode.isTextual()) {
+                    return Double.valueOf(valueNode.textValue().trim());
+                }
+                break;
+            case CALENDAR_DATE:
+                if (valueNode.isTextual()) {
+                    return DateUtils.getCalendarDateString(DateUtils.parseCalendarDate(valueNode.textValue()));
+                }
+                break;
+            case TIMESTAMP:
+                if (valueNode.isTextual()) {
+                    return DateUtils.getISODateTime(DateUtils.parseISODateTime(valueNode.textValue()));
+                } else if (valueNode.isIntegralNumber()) {
+                    return DateUtils.convertToISODateTime(valueNode.longValue());
+                }
+                break;
+            case INLINE_JSON_BLOB:
+                return valueNode.toString();
+            case STRING:
+            case ATTACHMENT_BLOB:
+            case ATTACHMENT_CSV:
+            case ATTACHMENT_JSON_BLOB:
+            case ATTACHMENT_JSON_TABLE:
+                if (valueNode.isValueNode()) {
+                    return valueNode.asText();
+                }
+                break;
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Unexpected JSON " + valueNode.getNodeType());
+    }
+}
@@ -0,0 +1,236 @@
+package org.sagebionetworks.bridge.upload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.s3.S3Helper;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+
+/**
+ * <p>
+ * Buffers the typed rows made by {@link ColumnProjectionHandler} and flushes them as gzipped, tab-separated files, one
+ * file per partition and flush:
+ * </p>
+ * <pre>
+ * [studyId]/[schemaId]-v[revision]/uploadDate=[uploadDate]/part-[guid].tsv.gz
+ * </pre>
+ * <p>
+ * The first line of each file is the header, with the name and type of each column as "name:TYPE". Null values are
+ * written as \N, and tabs, newlines and backslashes in values are escaped with a backslash.
+ * </p>
+ * <p>
+ * A partition is flushed once it has projection.flush.rows rows, and all partitions are flushed every
+ * projection.flush.seconds seconds and when the server stops. Files are written to the projection bucket, or
+ * to a local directory if one is configured. Rows that can't be written are logged and dropped; they can be
+ * projected again from the health data records.
+ * </p>
+ */
+@Component
+public class ColumnProjectionWriter {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnProjectionWriter.class);
+
+    private static final String PROJECTION_BUCKET = BridgeConfigFactory.getConfig().getProperty("projection.bucket");
+    private static final String PROJECTION_DIR = BridgeConfigFactory.getConfig().getProperty("projection.dir");
+    private static final int FLUSH_ROWS = BridgeConfigFactory.getConfig().getPropertyAsInt("projection.flush.rows");
+    private static final int FLUSH_SECONDS = BridgeConfigFactory.getConfig().getPropertyAsInt(
+            "projection.flush.seconds");
+
+    static final String NULL_VALUE = "\\N";
+    private static final Joiner TAB_JOINER = Joiner.on('\t');
+
+    private final Map<String, PartitionBuffer> buffers = new HashMap<>();
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "column-projection-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private S3Helper s3Helper;
+    private String projectionDir = PROJECTION_DIR;
+    private int flushRows = FLUSH_ROWS;
+
+    /** S3 helper, used to write files to the projection bucket. This is configured by Spring. */
+    @Resource(name = "s3Helper")
+    public void setS3Helper(S3Helper s3Helper) {
+        this.s3Helper = s3Helper;
+    }
+
+    /** Local directory to write files to instead of S3. This is package-scoped for unit tests. */
+    /* package-scoped */ void setProjectionDir(String projectionDir) {
+        this.projectionDir = projectionDir;
+    }
+
+    /** Number of rows that makes a partition flush. This is package-scoped for unit tests. */
+    /* package-scoped */ void setFlushRows(int flushRows) {
+        this.flushRows = flushRows;
+    }
+
+    /** Starts flushing all partitions periodically. */
+    @PostConstruct
+    public void start() {
+        flushExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushAll();
+            }
+        }, FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** Stops flushing periodically, and flushes what's left. */
+    @PreDestroy
+    public void stop() {
+        flushExecutor.shutdownNow();
+        flushAll();
+    }
+
+    /**
+     * Adds a row to the partition, and flushes the partition if it is full.
+     *
+     * @param partition
+     *         path of the partition, without the file name
+     * @param header
+     *         columns of the partition, as "name:TYPE"; all rows of a partition have the same columns
+     * @param row
+     *         values of the row, in the order of the header
+     */
+    public void addRow(@Nonnull String partition, @Nonnull List<String> header, @Nonnull List<Object> row) {
+        PartitionBuffer full = null;
+        synchronized (buffers) {
+            PartitionBuffer buffer = buffers.get(partition);
+            if (buffer == null) {
+                buffer = new PartitionBuffer(partition, header);
+                buffers.put(partition, buffer);
+            }
+            buffer.rows.add(row);
+            if (buffer.rows.size() >= flushRows) {
+                buffers.remove(partition);
+                full = buffer;
+            }
+        }
+        // Write outside the lock, so other uploads can keep adding rows.
+        if (full != null) {
+            flush(full);
+        }
+    }
+
+    /** Flushes every partition that has rows. */
+    public void flushAll() {
+        List<PartitionBuffer> toFlush;
+        synchronized (buffers) {
+            toFlush = new ArrayList<>(buffers.values());
+            buffers.clear();
+        }
+        for (PartitionBuffer buffer : toFlush) {
+            flush(buffer);
+        }
+    }
+
+    private void flush(PartitionBuffer buffer) {
+        String key = buffer.partition + "/part-" + BridgeUtils.generateGuid() + ".tsv.gz";
+        try {
+            byte[] bytes = toBytes(buffer.header, buffer.rows);
+            if (StringUtils.isNotBlank(projectionDir)) {
+                File file = new File(projectionDir, key);
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), bytes);
+            } else {
+                s3Helper.writeBytesToS3(PROJECTION_BUCKET, key, bytes);
+            }
+            logger.info("Wrote " + buffer.rows.size() + " projected rows to " + key);
+        } catch (IOException | RuntimeException ex) {
+            logger.error("Error writing " + buffer.rows.size() + " projected rows to " + key + ": " + ex.getMessage(),
+                    ex);
+        }
+    }
+
+    /** Gzipped file contents for the given header and rows. This is package-scoped for unit tests. */
+    static byte[] toBytes(List<String> header, List<List<Object>> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), Charsets.UTF_8)) {
+            writer.write(TAB_JOINER.join(header));
+            writer.write('\n');
+            for (List<Object> row : rows) {
+                List<String> cells = new ArrayList<>(row.size());
+                for (Object value : row) {
+                    cells.add(toCell(value));
+                }
+                writer.write(TAB_JOINER.join(cells));
+                writer.write('\n');
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Text of one value in the file. This is package-scoped for unit tests. */
+    static String toCell(Object value) {
+        if (value == null) {
+            return NULL_VALUE;
+        }
+        String text = value.toString();
+        StringBuilder cell = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    cell.append("\\\\");
+                    break;
+                case '\t':
+                    cell.append("\\t");
+                    break;
+                case '\n':
+                    cell.append("\\n");
+                    break;
+                case '\r':
+                    cell.append("\\r");
+                    break;
+                default:
+                    cell.append(c);
+                    break;
+            }
+        }
+        return cell.toString();
+    }
+
+    /** Rows of one partition waiting to be flushed. */
+    private static class PartitionBuffer {
+        private final String partition;
+        private final List<String> header;
+        private final List<List<Object>> rows = new ArrayList<>();
+
+        PartitionBuffer(String partition, List<String> header) {
+            this.partition = partition;
+            this.header = header;
+        }
+    }
+}
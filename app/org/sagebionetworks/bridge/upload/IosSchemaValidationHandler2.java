@@ -59,12 +59,12 @@ public class IosSchemaValidationHandler2 implements UploadValidationHandler {
             UploadFieldType.ATTACHMENT_CSV, UploadFieldType.ATTACHMENT_JSON_BLOB,
             UploadFieldType.ATTACHMENT_JSON_TABLE);
 
-    private static final String FILENAME_INFO_JSON = "info.json";
-    private static final Pattern FILENAME_TIMESTAMP_PATTERN = Pattern.compile("-\\d{8,}");
+    static final String FILENAME_INFO_JSON = "info.json";
+    static final Pattern FILENAME_TIMESTAMP_PATTERN = Pattern.compile("-\\d{8,}");
     private static final String KEY_FILENAME = "filename";
     private static final String KEY_FILES = "files";
-    private static final String KEY_IDENTIFIER = "identifier";
-    private static final String KEY_ITEM = "item";
+    static final String KEY_IDENTIFIER = "identifier";
+    static final String KEY_ITEM = "item";
     private static final String KEY_TIMESTAMP = "timestamp";
 
     private static final Map<String, String> SURVEY_TYPE_TO_ANSWER_KEY_MAP = ImmutableMap.<String, String>builder()
@@ -157,11 +157,15 @@ public class IosSchemaValidationHandler2 implements UploadValidationHandler {
 
         // schema
         // TODO: once the apps are including schema revision in the upload, we can get the schema by revision too
-        UploadSchema schema;
-        try {
-            schema = uploadSchemaService.getUploadSchema(study, item);
-        } catch (InvalidEntityException ex) {
-            throw new UploadValidationException(String.format("Schema %s not found", item), ex);
+        // ParseJsonHandler may already have looked up the schema.
+        UploadSchema schema = context.getSchema();
+        if (schema == null || !item.equals(schema.getSchemaId())) {
+            try {
+                schema = uploadSchemaService.getUploadSchema(study, item);
+            } catch (InvalidEntityException ex) {
+                throw new UploadValidationException(String.format("Schema %s not found", item), ex);
+            }
+            context.setSchema(schema);
         }
         recordBuilder.withSchemaId(schema.getSchemaId());
         recordBuilder.withSchemaRevision(schema.getRevision());
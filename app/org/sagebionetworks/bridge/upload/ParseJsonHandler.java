@@ -1,48 +1,256 @@
 package org.sagebionetworks.bridge.upload;
 
+import static org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2.FILENAME_INFO_JSON;
+import static org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2.FILENAME_TIMESTAMP_PATTERN;
+import static org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2.KEY_IDENTIFIER;
+import static org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2.KEY_ITEM;
+
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nonnull;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.models.upload.UploadSchemaType;
+import org.sagebionetworks.bridge.services.UploadSchemaService;
 
 /**
+ * <p>
  * Validation handler for parsing the upload data into JSON, if applicable. This handler reads unzipped data from
  * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getUnzippedDataMap}. As it iterates over the unzipped
  * data, if it's able to parse any entries into JSON, it will remove it from getUnzippedDataMap, and write it to
  * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getJsonDataMap}.
+ * </p>
+ * <p>
+ * Entries are only parsed if they need to be. info.json is parsed first, and the schema it names is looked up and
+ * saved in the context. An entry is then parsed only if the schema reads JSON from it, that is if the schema has a
+ * field named "[filename].[key]", or a field named after the file that isn't an attachment. Entries that the schema
+ * only stores as an ATTACHMENT_JSON_TABLE are checked with a streaming parser, without building a tree, and are left
+ * as bytes, which become the attachment as is. Entries that the schema stores as a blob or CSV attachment, or doesn't
+ * reference at all, are left as bytes. All entries of a survey are parsed, since each answer is a JSON file.
+ * </p>
+ * <p>
+ * Whatever the schema, entries whose extension or first bytes show they are binary or CSV (audio, images, archives)
+ * are never parsed. If the schema can't be found, entries are parsed if they start like a JSON object or array.
+ * </p>
  */
 @Component
 public class ParseJsonHandler implements UploadValidationHandler {
+    /** Extensions of files that are never JSON. */
+    private static final Set<String> NON_JSON_EXTENSION_SET = ImmutableSet.of("aac", "caf", "csv", "gif", "gz",
+            "jpeg", "jpg", "m4a", "mp3", "mp4", "pdf", "png", "wav", "zip");
+
+    /** Magic numbers that binary files start with: PNG, JPEG, GIF, PDF, zip, gzip, RIFF (WAV), CAF and ID3 (MP3). */
+    private static final List<byte[]> MAGIC_NUMBER_LIST = ImmutableList.of(
+            new byte[] { (byte) 0x89, 'P', 'N', 'G' }, new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF },
+            ascii("GIF8"), ascii("%PDF"), new byte[] { 'P', 'K', 3, 4 }, new byte[] { 0x1F, (byte) 0x8B },
+            ascii("RIFF"), ascii("caff"), ascii("ID3"));
+
+    /** MP4 and M4A files have "ftyp" after the size of their first box, at offset 4. */
+    private static final byte[] MP4_MAGIC_NUMBER = ascii("ftyp");
+    private static final int MP4_MAGIC_NUMBER_OFFSET = 4;
+
+    /** How an entry is handled. */
+    enum ParseMode {
+        /** Parsed into a JSON tree and moved to the JSON data map. */
+        TREE,
+        /** Checked with a streaming parser and left as bytes. */
+        STREAM,
+        /** Left as bytes. */
+        SKIP,
+    }
+
+    private UploadSchemaService uploadSchemaService;
+
+    /** Upload Schema Service, used to get the schema named by info.json. This is configured by Spring. */
+    @Autowired
+    public void setUploadSchemaService(UploadSchemaService uploadSchemaService) {
+        this.uploadSchemaService = uploadSchemaService;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void handle(@Nonnull UploadValidationContext context) {
         Map<String, byte[]> unzippedDataMap = context.getUnzippedDataMap();
         Map<String, JsonNode> jsonDataMap = new HashMap<>();
 
+        // info.json names the schema, which decides which of the other entries to parse.
+        UploadSchema schema = null;
+        byte[] infoJsonBytes = unzippedDataMap.get(FILENAME_INFO_JSON);
+        if (infoJsonBytes != null) {
+            JsonNode infoJson = parseTree(infoJsonBytes);
+            if (infoJson != null) {
+                jsonDataMap.put(FILENAME_INFO_JSON, infoJson);
+                unzippedDataMap.remove(FILENAME_INFO_JSON);
+                schema = getSchema(context, infoJson);
+            }
+        }
+
         // We use the iterator directly, because we may want to modify unzippedDataMap as we iterate it, and this is
         // the most straightforward way to do that without hitting a ConcurrentModificationException.
         Iterator<Map.Entry<String, byte[]>> unzippedDataIter = unzippedDataMap.entrySet().iterator();
         while (unzippedDataIter.hasNext()) {
             Map.Entry<String, byte[]> oneUnzippedData = unzippedDataIter.next();
             String entryName = oneUnzippedData.getKey();
+            byte[] data = oneUnzippedData.getValue();
+            if (isBinary(entryName, data)) {
+                continue;
+            }
 
-            try {
-                // Try to parse it as JSON. If you can, remove the entry from unzippedDataMap and add it to
-                // jsonDataMap.
-                JsonNode jsonNode = BridgeObjectMapper.get().readTree(oneUnzippedData.getValue());
-                jsonDataMap.put(entryName, jsonNode);
-                unzippedDataIter.remove();
-            } catch (Exception ex) {
-                // Can't parse this as a JSON node. This could be normal (for example, for audio files). Ignore the
-                // error and move on.
+            ParseMode parseMode = getParseMode(schema, entryName);
+            if (parseMode == ParseMode.TREE && (schema == null || schema.getSchemaType() == UploadSchemaType.IOS_SURVEY)
+                    && !startsLikeJson(data)) {
+                // Without field definitions to go by, only parse what looks like a JSON object or array.
+                parseMode = ParseMode.SKIP;
+            }
+
+            if (parseMode == ParseMode.TREE) {
+                // If it parses, remove the entry from unzippedDataMap and add it to jsonDataMap. If not, this could be
+                // normal (for example, for text files), so leave it as bytes.
+                JsonNode jsonNode = parseTree(data);
+                if (jsonNode != null) {
+                    jsonDataMap.put(entryName, jsonNode);
+                    unzippedDataIter.remove();
+                }
+            } else if (parseMode == ParseMode.STREAM && !isWellFormed(data)) {
+                context.addMessage(String.format("Upload ID %s file %s is not valid JSON",
+                        context.getUpload().getUploadId(), entryName));
             }
         }
 
         context.setJsonDataMap(jsonDataMap);
     }
+
+    private UploadSchema getSchema(UploadValidationContext context, JsonNode infoJson) {
+        if (uploadSchemaService == null || context.getStudy() == null) {
+            return null;
+        }
+        JsonNode itemNode = infoJson.get(KEY_ITEM);
+        if (itemNode == null) {
+            // fall back to "identifier"
+            itemNode = infoJson.get(KEY_IDENTIFIER);
+        }
+        if (itemNode == null || !itemNode.isTextual() || StringUtils.isBlank(itemNode.textValue())) {
+            return null;
+        }
+        try {
+            UploadSchema schema = uploadSchemaService.getUploadSchema(context.getStudy(), itemNode.textValue());
+            context.setSchema(schema);
+            return schema;
+        } catch (RuntimeException ex) {
+            // IosSchemaValidationHandler reports the missing schema. Until then, parse by content alone.
+            return null;
+        }
+    }
+
+    /**
+     * Decides how an entry is handled, based on how the schema's fields reference it. This is package-scoped for unit
+     * tests.
+     */
+    static ParseMode getParseMode(UploadSchema schema, String entryName) {
+        if (schema == null || schema.getSchemaType() == UploadSchemaType.IOS_SURVEY) {
+            return ParseMode.TREE;
+        }
+
+        // IosSchemaValidationHandler matches fields against filenames without timestamps.
+        String filename = FILENAME_TIMESTAMP_PATTERN.matcher(entryName).replaceAll("");
+        ParseMode parseMode = ParseMode.SKIP;
+        for (UploadFieldDefinition oneFieldDef : schema.getFieldDefinitions()) {
+            String fieldName = oneFieldDef.getName();
+            if (fieldName.startsWith(filename + ".")) {
+                return ParseMode.TREE;
+            } else if (fieldName.equals(filename)) {
+                switch (oneFieldDef.getType()) {
+                    case ATTACHMENT_BLOB:
+                    case ATTACHMENT_CSV:
+                        break;
+                    case ATTACHMENT_JSON_TABLE:
+                        parseMode = ParseMode.STREAM;
+                        break;
+                    default:
+                        return ParseMode.TREE;
+                }
+            }
+        }
+        return parseMode;
+    }
+
+    /** True if the extension or the magic number of the entry shows it isn't JSON. This is package-scoped for tests. */
+    static boolean isBinary(String entryName, byte[] data) {
+        int dotIndex = entryName.lastIndexOf('.');
+        if (dotIndex >= 0 && NON_JSON_EXTENSION_SET.contains(entryName.substring(dotIndex + 1).toLowerCase())) {
+            return true;
+        }
+        for (byte[] magicNumber : MAGIC_NUMBER_LIST) {
+            if (startsWith(data, 0, magicNumber)) {
+                return true;
+            }
+        }
+        return startsWith(data, MP4_MAGIC_NUMBER_OFFSET, MP4_MAGIC_NUMBER);
+    }
+
+    /** True if the first character, after any byte order mark and whitespace, starts a JSON object or array. */
+    private static boolean startsLikeJson(byte[] data) {
+        int i = 0;
+        if (data.length >= 3 && data[0] == (byte) 0xEF && data[1] == (byte) 0xBB && data[2] == (byte) 0xBF) {
+            i = 3;
+        }
+        while (i < data.length && Character.isWhitespace(data[i])) {
+            i++;
+        }
+        return i < data.length && (data[i] == '{' || data[i] == '[');
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (data.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonNode parseTree(byte[] data) {
+        try {
+            return BridgeObjectMapper.get().readTree(data);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /** Reads the entry token by token, without building a tree, to check that it's well-formed JSON. */
+    private static boolean isWellFormed(byte[] data) {
+        try (JsonParser parser = BridgeObjectMapper.get().getFactory().createParser(data)) {
+            if (parser.nextToken() == null) {
+                return false;
+            }
+            while (parser.nextToken() != null) {
+                // Nothing to do with the tokens. Reading them is enough to find syntax errors.
+            }
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(Charsets.US_ASCII);
+    }
 }
@@ -96,6 +96,9 @@ public class UploadArtifactsHandler implements UploadValidationHandler {
             updatedRecordBuilder.withData(updatedDataMap);
             HealthDataRecord updatedRecord = updatedRecordBuilder.build();
             healthDataService.createOrUpdateRecord(updatedRecord);
+
+            // Later handlers see the record as it was written, with the attachment IDs.
+            context.setHealthDataRecordBuilder(updatedRecordBuilder);
         }
     }
 
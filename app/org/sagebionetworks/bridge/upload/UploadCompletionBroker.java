@@ -0,0 +1,260 @@
+package org.sagebionetworks.bridge.upload;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.redis.JedisOps;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+import play.libs.F;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * <p>
+ * Lets requests wait for the validation of an upload to complete, instead of polling for its status. A waiter is a
+ * promise that is redeemed with true when the upload completes, or with false when the wait times out or is
+ * cancelled. Waiters are held in memory, and their number is capped, so a burst of clients can't park an unbounded
+ * number of requests on one server. The timeout of a waiter is cancelled when the waiter is released, so the
+ * scheduled timeouts are capped along with the waiters.
+ * </p>
+ * <p>
+ * The validation task that completes an upload may run on another server than the one holding the waiters, so
+ * completions are published on a Redis channel, and each server subscribes to the channel with one connection of the
+ * pool. Completions are also delivered locally, so waiters on the validating server don't depend on Redis. A missed
+ * message only means the waiter times out, and the caller reads the status then.
+ * </p>
+ */
+@Component
+public class UploadCompletionBroker {
+    private static final Logger logger = LoggerFactory.getLogger(UploadCompletionBroker.class);
+
+    static final String CHANNEL = "upload-completion";
+    static final int MAX_WAITERS = BridgeConfigFactory.getConfig().getPropertyAsInt("upload.status.max.waiters");
+
+    /** How long the subscriber waits before subscribing again after the Redis connection fails. */
+    private static final long RESUBSCRIBE_DELAY_MILLIS = 5000L;
+
+    private final SetMultimap<String, F.RedeemablePromise<Boolean>> waiters = HashMultimap.create();
+    private final Map<F.Promise<Boolean>, ScheduledFuture<?>> timeouts = Maps.newHashMap();
+    private final ScheduledThreadPoolExecutor timeoutExecutor = new ScheduledThreadPoolExecutor(1,
+            new DaemonThreadFactory("upload-completion-timeout"));
+    private final CompletionSubscriber subscriber = new CompletionSubscriber();
+
+    private JedisOps jedisOps;
+    private JedisPool jedisPool;
+    private Thread subscriberThread;
+    private volatile boolean running;
+
+    public UploadCompletionBroker() {
+        // Drop cancelled timeouts from the queue at once, instead of holding them until they would have run
+        timeoutExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    /** Used to publish completions to the other servers. This is configured by Spring. */
+    @Autowired
+    public void setJedisOps(JedisOps jedisOps) {
+        this.jedisOps = jedisOps;
+    }
+
+    /** Used to subscribe to the completions published by all servers. This is configured by Spring. */
+    @Autowired
+    public void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    /** Starts listening for completions published through Redis. Does nothing if there is no Redis pool. */
+    @PostConstruct
+    public void start() {
+        if (jedisPool == null) {
+            return;
+        }
+        running = true;
+        subscriberThread = new DaemonThreadFactory("upload-completion-subscriber").newThread(new Runnable() {
+            @Override
+            public void run() {
+                subscribe();
+            }
+        });
+        subscriberThread.start();
+    }
+
+    /** Stops listening for completions, and releases all the waiters. */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (subscriber.isSubscribed()) {
+            subscriber.unsubscribe();
+        }
+        timeoutExecutor.shutdownNow();
+        synchronized (waiters) {
+            for (F.RedeemablePromise<Boolean> waiter : waiters.values()) {
+                waiter.success(false);
+            }
+            waiters.clear();
+            timeouts.clear();
+        }
+    }
+
+    /**
+     * Waits for the upload to complete. The caller should check the upload status after calling this method, since
+     * the upload may have completed before the waiter was added; if so, it should cancel the waiter.
+     *
+     * @param uploadId
+     *         ID of the upload to wait for
+     * @param timeoutMillis
+     *         how long to wait, in milliseconds
+     * @return a promise that is redeemed with true when the upload completes, or with false when the wait times out
+     *         or is cancelled; null if the server already has as many waiters as it allows
+     */
+    public F.Promise<Boolean> waitForCompletion(@Nonnull final String uploadId, long timeoutMillis) {
+        final F.RedeemablePromise<Boolean> waiter = F.RedeemablePromise.empty();
+        synchronized (waiters) {
+            if (waiters.size() >= MAX_WAITERS) {
+                return null;
+            }
+            waiters.put(uploadId, waiter);
+            // Scheduled under the lock, so the waiter can't be released before its timeout is recorded
+            timeouts.put(waiter, timeoutExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    cancel(uploadId, waiter);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS));
+        }
+        return waiter;
+    }
+
+    /**
+     * Stops waiting, and redeems the waiter with false. Does nothing if the waiter was already redeemed.
+     *
+     * @param uploadId
+     *         ID of the upload the waiter is waiting for
+     * @param waiter
+     *         promise returned by {@link #waitForCompletion}
+     */
+    public void cancel(@Nonnull String uploadId, @Nonnull F.Promise<Boolean> waiter) {
+        boolean removed;
+        synchronized (waiters) {
+            removed = waiters.remove(uploadId, waiter);
+            if (removed) {
+                cancelTimeout(waiter);
+            }
+        }
+        if (removed) {
+            ((F.RedeemablePromise<Boolean>) waiter).success(false);
+        }
+    }
+
+    /**
+     * Tells the waiters on every server that validation of the upload is complete. Failing to publish through Redis
+     * is logged and otherwise ignored, since the waiters on other servers still time out and read the status.
+     *
+     * @param uploadId
+     *         ID of the upload that completed
+     */
+    public void publishCompletion(@Nonnull String uploadId) {
+        notifyWaiters(uploadId);
+        if (jedisOps != null) {
+            try {
+                jedisOps.publish(CHANNEL, uploadId);
+            } catch (RuntimeException ex) {
+                logger.warn("Error publishing completion of upload " + uploadId + ": " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /** Redeems with true the waiters on this server for the upload. This is package-scoped for unit tests. */
+    /* package-scoped */ void notifyWaiters(String uploadId) {
+        Set<F.RedeemablePromise<Boolean>> completed;
+        synchronized (waiters) {
+            completed = waiters.removeAll(uploadId);
+            for (F.RedeemablePromise<Boolean> waiter : completed) {
+                cancelTimeout(waiter);
+            }
+        }
+        for (F.RedeemablePromise<Boolean> waiter : completed) {
+            waiter.success(true);
+        }
+    }
+
+    /** Number of waiters on this server. This is package-scoped for unit tests. */
+    /* package-scoped */ int getWaiterCount() {
+        synchronized (waiters) {
+            return waiters.size();
+        }
+    }
+
+    /** Number of waiter timeouts scheduled on this server. This is package-scoped for unit tests. */
+    /* package-scoped */ int getScheduledTimeoutCount() {
+        return timeoutExecutor.getQueue().size();
+    }
+
+    /** Cancels the timeout of a released waiter. Must be called holding the lock on the waiters. */
+    private void cancelTimeout(F.Promise<Boolean> waiter) {
+        ScheduledFuture<?> timeout = timeouts.remove(waiter);
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    private void subscribe() {
+        while (running) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                // Blocks until unsubscribed. Jedis lifts the socket timeout while subscribed.
+                jedis.subscribe(subscriber, CHANNEL);
+            } catch (RuntimeException ex) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Lost subscription to upload completions, subscribing again: " + ex.getMessage(), ex);
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private class CompletionSubscriber extends JedisPubSub {
+        @Override
+        public void onMessage(String channel, String message) {
+            notifyWaiters(message);
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
@@ -21,6 +22,7 @@ public class UploadValidationContext {
     private byte[] decryptedData;
     private Map<String, byte[]> unzippedDataMap;
     private Map<String, JsonNode> jsonDataMap;
+    private UploadSchema schema;
     private HealthDataRecordBuilder healthDataRecordBuilder;
     private Map<String, byte[]> attachmentsByFieldName;
     private String recordId;
@@ -127,6 +129,20 @@ public class UploadValidationContext {
         this.jsonDataMap = jsonDataMap;
     }
 
+    /**
+     * Schema the upload was validated against. This is looked up by ParseJsonHandler (or by
+     * IosSchemaValidationHandler, if ParseJsonHandler couldn't), and is used by ColumnProjectionHandler to type the
+     * columns of the record.
+     */
+    public UploadSchema getSchema() {
+        return schema;
+    }
+
+    /** @see #getSchema */
+    public void setSchema(UploadSchema schema) {
+        this.schema = schema;
+    }
+
     /**
      * Health Data Record Builder, used to build a health data record that will be written to the health data record
      * table. This is initially created by IosSchemaValidationHandler, is further updated by the
@@ -191,6 +207,7 @@ public class UploadValidationContext {
         copy.decryptedData = this.decryptedData;
         copy.unzippedDataMap = this.unzippedDataMap;
         copy.jsonDataMap = this.jsonDataMap;
+        copy.schema = this.schema;
         copy.healthDataRecordBuilder = this.healthDataRecordBuilder;
         copy.attachmentsByFieldName = this.attachmentsByFieldName;
         copy.recordId = this.recordId;
@@ -22,6 +22,7 @@ public class UploadValidationTask implements Runnable {
 
     private List<UploadValidationHandler> handlerList;
     private UploadDao uploadDao;
+    private UploadCompletionBroker completionBroker;
 
     /**
      * Constructs an upload validation task instance with the given context. This should only be called by the
@@ -57,6 +58,19 @@ public class UploadValidationTask implements Runnable {
         return uploadDao;
     }
 
+    /**
+     * Broker for telling the requests waiting for this upload that validation is complete. This is configured by
+     * Spring through the task factory.
+     */
+    public void setCompletionBroker(UploadCompletionBroker completionBroker) {
+        this.completionBroker = completionBroker;
+    }
+
+    /** This is package-scoped to facilitate unit tests. */
+    /* package-scoped*/ UploadCompletionBroker getCompletionBroker() {
+        return completionBroker;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void run() {
@@ -101,6 +115,7 @@ public class UploadValidationTask implements Runnable {
         uploadDao.writeValidationStatus(context.getUpload(), status, context.getMessageList(), context.getRecordId());
         logger.info(String.format("Upload validation for study %s, upload %s, record %s, with status %s",
                 context.getStudy().getIdentifier(), context.getUpload().getUploadId(), context.getRecordId(), status));
+        completionBroker.publishCompletion(context.getUpload().getUploadId());
 
         // TODO: if validation fails, wipe the files from S3
     }
@@ -20,6 +20,7 @@ import org.springframework.stereotype.Component;
 public class UploadValidationTaskFactory {
     private List<UploadValidationHandler> handlerList;
     private UploadDao uploadDao;
+    private UploadCompletionBroker completionBroker;
 
     /** Validation handler list. This is configured by Spring. */
     @Resource(name = "uploadValidationHandlerList")
@@ -33,6 +34,12 @@ public class UploadValidationTaskFactory {
         this.uploadDao = uploadDao;
     }
 
+    /** Broker for publishing upload completions to waiting requests. This is configured by Spring. */
+    @Autowired
+    public void setCompletionBroker(UploadCompletionBroker completionBroker) {
+        this.completionBroker = completionBroker;
+    }
+
     /**
      * Factory method for creating a validation task instance, for validating a single upload.
      *
@@ -52,6 +59,7 @@ public class UploadValidationTaskFactory {
         UploadValidationTask task = new UploadValidationTask(context);
         task.setHandlerList(handlerList);
         task.setUploadDao(uploadDao);
+        task.setCompletionBroker(completionBroker);
         return task;
     }
 }
@@ -1,9 +1,23 @@
 package org.sagebionetworks.bridge.util;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
@@ -13,6 +27,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Files;
 
 import org.joda.time.format.ISODateTimeFormat;
@@ -34,23 +50,71 @@ import org.sagebionetworks.bridge.upload.UploadValidationContext;
  * list of S3 files instead of a date range.
  * </p>
  * <p>
- * Usage: play "run-main org.sagebionetworks.bridge.util.BulkDownloadUtil [S3 key1] [[S3 key2] [S3 key3] ...]"
+ * Usage: play "run-main org.sagebionetworks.bridge.util.BulkDownloadUtil [--threads N] [--manifest file]
+ * [--ids-file file] [[S3 key1] [S3 key2] ...]"
+ * </p>
+ * <p>
+ * Uploads are processed on a pool of --threads workers (default 8). Decryption goes through the upload archive
+ * service, so all workers share the cached CMS encryptor for each study. The ID of each upload that is written
+ * successfully is appended to the manifest (default tmp/bulk-download-manifest.txt), and uploads already in the
+ * manifest are skipped, so an interrupted run can be started again with the same arguments. A summary of throughput
+ * and failures is printed at the end.
  * </p>
  * <p>
  * You'll also need to override the upload bucket, the CMS cert bucket, and CMS priv key bucket in your configs.
  * </p>
  */
 public class BulkDownloadUtil {
+    private static final String USAGE = "Usage: play \"run-main org.sagebionetworks.bridge.util.BulkDownloadUtil " +
+            "[--threads N] [--manifest file] [--ids-file file] [[S3 key1] [S3 key2] ...]\"";
+    static final int DEFAULT_THREAD_COUNT = 8;
+    static final String DEFAULT_MANIFEST_NAME = "bulk-download-manifest.txt";
+
+    private final ObjectWriter prettyPrinter = new ObjectMapper().writerWithDefaultPrettyPrinter();
+    private final Object manifestLock = new Object();
+
+    private S3DownloadHandler s3DownloadHandler;
+    private DecryptHandler decryptHandler;
+    private UnzipHandler unzipHandler;
+    private ParseJsonHandler parseJsonHandler;
+    private File outputDir;
+    private File manifestFile;
+    private int threadCount = DEFAULT_THREAD_COUNT;
+
     @SuppressWarnings("resource")
-    public static void main(String[] args) {
-        if (args.length == 0) {
-            System.out.println(
-                    "Usage: play \"run-main org.sagebionetworks.bridge.util.BulkDownloadUtil [S3 key1] [[S3 key2] [S3" +
-                            " key3] ...]\"");
+    public static void main(String[] args) throws IOException {
+        int threadCount = DEFAULT_THREAD_COUNT;
+        String manifestPath = null;
+        List<String> s3KeyList = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads":
+                        threadCount = Integer.parseInt(args[++i]);
+                        break;
+                    case "--manifest":
+                        manifestPath = args[++i];
+                        break;
+                    case "--ids-file":
+                        for (String line : Files.readLines(new File(args[++i]), Charsets.UTF_8)) {
+                            if (!line.trim().isEmpty()) {
+                                s3KeyList.add(line.trim());
+                            }
+                        }
+                        break;
+                    default:
+                        s3KeyList.add(args[i]);
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            s3KeyList.clear();
+        }
+        if (s3KeyList.isEmpty() || threadCount <= 0) {
+            System.out.println(USAGE);
             System.exit(1);
             return;
         }
-        String[] s3KeyArr = args;
 
         // Make tmp directory (if it doesn't exist). This has to be in the source root, since we're probably running
         // this script in Vagrant.
@@ -59,18 +123,40 @@ public class BulkDownloadUtil {
             tmpDir.mkdir();
         }
 
-        System.out.println(String.format("Downloading %s files for S3 keys (%s)", s3KeyArr.length,
-                Joiner.on(", ").join(s3KeyArr)));
+        BulkDownloadUtil util = new BulkDownloadUtil();
+        util.setOutputDir(tmpDir);
+        util.setManifestFile(manifestPath != null ? new File(manifestPath) : new File(tmpDir, DEFAULT_MANIFEST_NAME));
+        util.setThreadCount(threadCount);
+
+        // skip uploads that an earlier run already wrote
+        Set<String> completedIdSet = util.readManifest();
+        List<String> pendingKeyList = new ArrayList<>();
+        for (String oneS3Key : s3KeyList) {
+            if (!completedIdSet.contains(oneS3Key)) {
+                pendingKeyList.add(oneS3Key);
+            }
+        }
+        System.out.println(String.format("Skipping %s uploads already in manifest %s", s3KeyList.size() -
+                pendingKeyList.size(), util.manifestFile));
+        if (pendingKeyList.isEmpty()) {
+            return;
+        }
+        if (pendingKeyList.size() <= 10) {
+            System.out.println(String.format("Downloading %s files for S3 keys (%s)", pendingKeyList.size(),
+                    Joiner.on(", ").join(pendingKeyList)));
+        } else {
+            System.out.println(String.format("Downloading %s files", pendingKeyList.size()));
+        }
 
         // spring beans
         AbstractApplicationContext springCtx = new ClassPathXmlApplicationContext("application-context.xml");
         springCtx.registerShutdownHook();
 
         AmazonDynamoDBClient ddbClient = springCtx.getBean(AmazonDynamoDBClient.class);
-        S3DownloadHandler s3DownloadHandler = springCtx.getBean(S3DownloadHandler.class);
-        DecryptHandler decryptHandler = springCtx.getBean(DecryptHandler.class);
-        UnzipHandler unzipHandler = springCtx.getBean(UnzipHandler.class);
-        ParseJsonHandler parseJsonHandler = springCtx.getBean(ParseJsonHandler.class);
+        util.setS3DownloadHandler(springCtx.getBean(S3DownloadHandler.class));
+        util.setDecryptHandler(springCtx.getBean(DecryptHandler.class));
+        util.setUnzipHandler(springCtx.getBean(UnzipHandler.class));
+        util.setParseJsonHandler(springCtx.getBean(ParseJsonHandler.class));
 
         // DDB mappers
         DynamoDBMapperConfig uploadMapperConfig = new DynamoDBMapperConfig.Builder().withSaveBehavior(
@@ -86,119 +172,220 @@ public class BulkDownloadUtil {
         DynamoDBMapper healthCodeMapper = new DynamoDBMapper(ddbClient, healthCodeMapperConfig);
 
         // get uploads
-        ObjectMapper mapper = new ObjectMapper();
-        ObjectWriter prettyPrinter = mapper.writerWithDefaultPrettyPrinter();
-        List<UploadObject> uploads = getUploads(uploadMapper, healthCodeMapper, s3KeyArr);
+        List<UploadObject> uploads = getUploads(uploadMapper, healthCodeMapper, pendingKeyList);
         System.out.println("Found " + uploads.size() + " uploads.");
 
         // process uploads
-        for (UploadObject uploadObj : uploads) {
-            // Artificial study, because upload validation handler chain takes in study but only looks at the study ID.
-            DynamoStudy study = new DynamoStudy();
-            study.setIdentifier(uploadObj.studyId);
+        Summary summary = util.downloadUploads(uploads);
+        System.out.println(summary);
+        springCtx.close();
+    }
 
-            UploadValidationContext ctx = new UploadValidationContext();
-            ctx.setStudy(study);
-            ctx.setUpload(uploadObj.metadata);
+    public void setS3DownloadHandler(S3DownloadHandler s3DownloadHandler) {
+        this.s3DownloadHandler = s3DownloadHandler;
+    }
 
-            // use handlers to process uploads
-            try {
-                s3DownloadHandler.handle(ctx);
-            } catch (Exception ex) {
-                System.out.println(String.format(
-                        "Error downloading file %s from S3 with uploadId %s from study %s, healthCode %s, timestamp " +
-                                "%s: %s",
-                        uploadObj.metadata.getFilename(), uploadObj.metadata.getUploadId(), uploadObj.studyId,
-                        uploadObj.metadata.getHealthCode(),
-                        uploadObj.metadata.getUploadDate().toString(ISODateTimeFormat.date()), ex.getMessage()));
-                continue;
-            }
+    public void setDecryptHandler(DecryptHandler decryptHandler) {
+        this.decryptHandler = decryptHandler;
+    }
 
-            try {
-                decryptHandler.handle(ctx);
-            } catch (Exception ex) {
-                System.out.println(String.format(
-                        "Error decrypting file %s with uploadId %s from study %s, healthCode %s, timestamp %s: %s",
-                        uploadObj.metadata.getFilename(), uploadObj.metadata.getUploadId(), uploadObj.studyId,
-                        uploadObj.metadata.getHealthCode(),
-                        uploadObj.metadata.getUploadDate().toString(ISODateTimeFormat.date()), ex.getMessage()));
-                System.out.println("Falling back to non-decrypted data.");
-                ctx.setDecryptedData(ctx.getData());
-            }
+    public void setUnzipHandler(UnzipHandler unzipHandler) {
+        this.unzipHandler = unzipHandler;
+    }
 
-            boolean hasUnzipped;
-            try {
-                unzipHandler.handle(ctx);
-                hasUnzipped = true;
-            } catch (Exception ex) {
-                System.out.println(String.format(
-                        "Error unzipping file %s with uploadId %s from study %s, healthCode %s, timestamp %s: %s",
-                        uploadObj.metadata.getFilename(), uploadObj.metadata.getUploadId(), uploadObj.studyId,
-                        uploadObj.metadata.getHealthCode(),
-                        uploadObj.metadata.getUploadDate().toString(ISODateTimeFormat.date()), ex.getMessage()));
-                System.out.println("Will write zipped file to disk.");
-                hasUnzipped = false;
-            }
+    public void setParseJsonHandler(ParseJsonHandler parseJsonHandler) {
+        this.parseJsonHandler = parseJsonHandler;
+    }
 
-            // write file to disk
-            String basename = String.format("%s-%s-%s", uploadObj.studyId, uploadObj.metadata.getFilename(),
-                    uploadObj.metadata.getUploadId());
+    /** Directory the downloaded files are written to. */
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
 
-            if (hasUnzipped) {
-                // parseJsonHandler doesn't throw
-                parseJsonHandler.handle(ctx);
+    /** File of upload IDs that have been written, one per line. */
+    public void setManifestFile(File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
 
-                try {
-                    Map<String, JsonNode> jsonDataMap = ctx.getJsonDataMap();
-                    String jsonBundle = prettyPrinter.writeValueAsString(jsonDataMap);
-                    File jsonFile = new File(tmpDir, basename + ".json");
-                    Files.write(jsonBundle, jsonFile, Charsets.UTF_8);
-                } catch (Exception ex) {
-                    System.out.println(String.format(
-                            "Error writing JSON for file %s with uploadId %s from study %s, healthCode %s, timestamp " +
-                                    "%s: %s",
-                            uploadObj.metadata.getFilename(), uploadObj.metadata.getUploadId(), uploadObj.studyId,
-                            uploadObj.metadata.getHealthCode(),
-                            uploadObj.metadata.getUploadDate().toString(ISODateTimeFormat.date()), ex.getMessage()));
+    /** Number of uploads processed at the same time. */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /** Reads the upload IDs that have already been written from the manifest. */
+    Set<String> readManifest() throws IOException {
+        Set<String> completedIdSet = new HashSet<>();
+        if (manifestFile != null && manifestFile.exists()) {
+            for (String line : Files.readLines(manifestFile, Charsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    completedIdSet.add(line.trim());
                 }
+            }
+        }
+        return completedIdSet;
+    }
 
-                Map<String, byte[]> byteMap = ctx.getUnzippedDataMap();
-                for (Map.Entry<String, byte[]> oneByteEntry : byteMap.entrySet()) {
-                    try {
-                        File byteFile = new File(tmpDir, basename + "." + oneByteEntry.getKey());
-                        Files.write(oneByteEntry.getValue(), byteFile);
-                    } catch (Exception ex) {
-                        System.out.println(String.format(
-                                "Error writing data file %s for file %s with uploadId %s from study %s, healthCode " +
-                                        "%s, timestamp %s: %s",
-                                oneByteEntry.getKey(),
-                                uploadObj.metadata.getFilename(), uploadObj.metadata.getUploadId(), uploadObj.studyId,
-                                uploadObj.metadata.getHealthCode(),
-                                uploadObj.metadata.getUploadDate().toString(ISODateTimeFormat.date()),
-                                ex.getMessage()));
+    /**
+     * Downloads, decrypts, unzips and writes the given uploads, using a pool of worker threads. Blocks until all
+     * uploads are done.
+     *
+     * @param uploads
+     *         uploads to process
+     * @return summary of the run
+     */
+    Summary downloadUploads(List<UploadObject> uploads) {
+        final Summary summary = new Summary();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        // The pool is bounded, so only threadCount uploads are held in memory at a time.
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (final UploadObject uploadObj : uploads) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long bytes = processUpload(uploadObj);
+                            appendToManifest(uploadObj.metadata.getUploadId());
+                            summary.succeeded.incrementAndGet();
+                            summary.bytesDownloaded.addAndGet(bytes);
+                        } catch (Exception ex) {
+                            System.out.println(ex.getMessage());
+                            summary.failures.put(uploadObj.metadata.getUploadId(), ex.getMessage());
+                        }
+                        int done = summary.succeeded.get() + summary.failures.size();
+                        if (done % 100 == 0) {
+                            System.out.println(String.format("Processed %s uploads", done));
+                        }
                     }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println(String.format("Still processing, %s uploads done",
+                        summary.succeeded.get() + summary.failures.size()));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        summary.elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+        return summary;
+    }
+
+    /**
+     * Processes a single upload. Decrypt and unzip errors fall back to writing the data as is. Download and write
+     * errors fail the upload, so it isn't added to the manifest and is retried the next run.
+     *
+     * @return number of bytes downloaded
+     * @throws Exception
+     *         if the upload couldn't be downloaded or written, with a message describing the upload
+     */
+    long processUpload(UploadObject uploadObj) throws Exception {
+        // Artificial study, because upload validation handler chain takes in study but only looks at the study ID.
+        DynamoStudy study = new DynamoStudy();
+        study.setIdentifier(uploadObj.studyId);
+
+        UploadValidationContext ctx = new UploadValidationContext();
+        ctx.setStudy(study);
+        ctx.setUpload(uploadObj.metadata);
+
+        // use handlers to process uploads
+        try {
+            s3DownloadHandler.handle(ctx);
+        } catch (Exception ex) {
+            throw new Exception(String.format("Error downloading file %s from S3: %s", describe(uploadObj),
+                    ex.getMessage()), ex);
+        }
+
+        try {
+            decryptHandler.handle(ctx);
+        } catch (Exception ex) {
+            System.out.println(String.format("Error decrypting file %s: %s", describe(uploadObj), ex.getMessage()));
+            System.out.println("Falling back to non-decrypted data.");
+            ctx.setDecryptedData(ctx.getData());
+        }
+
+        boolean hasUnzipped;
+        try {
+            unzipHandler.handle(ctx);
+            hasUnzipped = true;
+        } catch (Exception ex) {
+            System.out.println(String.format("Error unzipping file %s: %s", describe(uploadObj), ex.getMessage()));
+            System.out.println("Will write zipped file to disk.");
+            hasUnzipped = false;
+        }
+
+        // write file to disk
+        String basename = String.format("%s-%s-%s", uploadObj.studyId, uploadObj.metadata.getFilename(),
+                uploadObj.metadata.getUploadId());
+
+        if (hasUnzipped) {
+            // parseJsonHandler doesn't throw
+            parseJsonHandler.handle(ctx);
+
+            try {
+                // stream the JSON straight to the file, rather than building the whole bundle as a string
+                Map<String, JsonNode> jsonDataMap = ctx.getJsonDataMap();
+                try (Writer jsonWriter = Files.newWriter(new File(outputDir, basename + ".json"), Charsets.UTF_8)) {
+                    prettyPrinter.writeValue(jsonWriter, jsonDataMap);
                 }
-            } else {
-                // we have no unzipped data, write decrypted data
+            } catch (Exception ex) {
+                throw new Exception(String.format("Error writing JSON for file %s: %s", describe(uploadObj),
+                        ex.getMessage()), ex);
+            }
+
+            Map<String, byte[]> byteMap = ctx.getUnzippedDataMap();
+            for (Map.Entry<String, byte[]> oneByteEntry : byteMap.entrySet()) {
                 try {
-                    File rawFile = new File(tmpDir, basename);
-                    Files.write(ctx.getDecryptedData(), rawFile);
+                    writeBytes(oneByteEntry.getValue(), new File(outputDir, basename + "." + oneByteEntry.getKey()));
                 } catch (Exception ex) {
-                    System.out.println(String.format(
-                            "Error writing raw file %s with uploadId %s from study %s, healthCode %s, timestamp %s: %s",
-                            uploadObj.metadata.getFilename(), uploadObj.metadata.getUploadId(), uploadObj.studyId,
-                            uploadObj.metadata.getHealthCode(),
-                            uploadObj.metadata.getUploadDate().toString(ISODateTimeFormat.date()), ex.getMessage()));
+                    throw new Exception(String.format("Error writing data file %s for file %s: %s",
+                            oneByteEntry.getKey(), describe(uploadObj), ex.getMessage()), ex);
                 }
             }
+        } else {
+            // we have no unzipped data, write decrypted data
+            try {
+                writeBytes(ctx.getDecryptedData(), new File(outputDir, basename));
+            } catch (Exception ex) {
+                throw new Exception(String.format("Error writing raw file %s: %s", describe(uploadObj),
+                        ex.getMessage()), ex);
+            }
+        }
+
+        return ctx.getData().length;
+    }
+
+    private void appendToManifest(String uploadId) throws IOException {
+        if (manifestFile == null) {
+            return;
+        }
+        synchronized (manifestLock) {
+            Files.append(uploadId + "\n", manifestFile, Charsets.UTF_8);
+        }
+    }
+
+    private static void writeBytes(byte[] bytes, File file) throws IOException {
+        try (OutputStream fileStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            fileStream.write(bytes);
         }
     }
 
+    private static String describe(UploadObject uploadObj) {
+        return String.format("%s with uploadId %s from study %s, healthCode %s, timestamp %s",
+                uploadObj.metadata.getFilename(), uploadObj.metadata.getUploadId(), uploadObj.studyId,
+                uploadObj.metadata.getHealthCode(),
+                uploadObj.metadata.getUploadDate().toString(ISODateTimeFormat.date()));
+    }
+
     private static List<UploadObject> getUploads(DynamoDBMapper uploadMapper, DynamoDBMapper healthCodeMapper,
-            String[] s3KeyArr) {
+            List<String> s3KeyList) {
         // S3 keys are Upload IDs
         List<Object> uploadKeyList = new ArrayList<>();
-        for (String oneS3Key : s3KeyArr) {
+        for (String oneS3Key : s3KeyList) {
             DynamoUpload2 oneUploadKey = new DynamoUpload2();
             oneUploadKey.setUploadId(oneS3Key);
             uploadKeyList.add(oneUploadKey);
@@ -219,34 +406,72 @@ public class BulkDownloadUtil {
         }
         System.out.println(String.format("Got %s results from DDB Upload table", uploadMetadataList.size()));
 
-        System.out.println("Downloading files from S3 and cross-referencing study ID from health code...");
-        List<UploadObject> uploads = new ArrayList<>();
+        // fetch studies from DDB HealthCode table, in batches rather than one health code at a time
+        System.out.println("Cross-referencing study ID from health code...");
+        List<Object> healthCodeKeyList = new ArrayList<>();
         for (DynamoUpload2 oneUploadMetadata : uploadMetadataList) {
-            String studyId;
-
-            // fetch study from DDB HealthCode table
             DynamoHealthCode key = new DynamoHealthCode();
             key.setCode(oneUploadMetadata.getHealthCode());
-            DynamoHealthCode entry = healthCodeMapper.load(key);
-            if (entry == null) {
+            healthCodeKeyList.add(key);
+        }
+        Map<String, String> studyIdByHealthCode = new HashMap<>();
+        for (List<Object> oneResultList : healthCodeMapper.batchLoad(healthCodeKeyList).values()) {
+            for (Object oneResult : oneResultList) {
+                DynamoHealthCode entry = (DynamoHealthCode) oneResult;
+                studyIdByHealthCode.put(entry.getCode(), entry.getStudyIdentifier());
+            }
+        }
+
+        List<UploadObject> uploads = new ArrayList<>();
+        for (DynamoUpload2 oneUploadMetadata : uploadMetadataList) {
+            String studyId = studyIdByHealthCode.get(oneUploadMetadata.getHealthCode());
+            if (studyId == null) {
                 System.out.println(String.format("No study found for uploadId %s, healthcode %s",
                         oneUploadMetadata.getUploadId(), oneUploadMetadata.getHealthCode()));
                 continue;
             }
-            studyId = entry.getStudyIdentifier();
-
             uploads.add(new UploadObject(oneUploadMetadata, studyId));
         }
         return uploads;
     }
 
-    private static class UploadObject {
+    static class UploadObject {
         private final DynamoUpload2 metadata;
         private final String studyId;
 
-        private UploadObject(DynamoUpload2 metadata, String studyId) {
+        UploadObject(DynamoUpload2 metadata, String studyId) {
             this.metadata = metadata;
             this.studyId = studyId;
         }
     }
+
+    /** Counts and timings of a run. Updated concurrently by the workers. */
+    static class Summary {
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicLong bytesDownloaded = new AtomicLong();
+        final Map<String, String> failures = new ConcurrentHashMap<>();
+        volatile long elapsedMillis;
+
+        int getSucceeded() {
+            return succeeded.get();
+        }
+
+        Map<String, String> getFailures() {
+            return ImmutableMap.copyOf(failures);
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+            int total = succeeded.get() + failures.size();
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format("Processed %s uploads in %.1f seconds (%.2f uploads/sec, %.2f MB/sec)%n",
+                    total, seconds, total / seconds, bytesDownloaded.get() / (1024.0 * 1024.0) / seconds));
+            builder.append(String.format("Succeeded: %s, Failed: %s", succeeded.get(), failures.size()));
+            for (Map.Entry<String, String> oneFailure : failures.entrySet()) {
+                builder.append(String.format("%n  %s: %s", oneFailure.getKey(), oneFailure.getValue()));
+            }
+            return builder.toString();
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package org.sagebionetworks.bridge.validators;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
+import org.sagebionetworks.bridge.models.surveys.SurveyNavigationGraph;
+import org.sagebionetworks.bridge.models.surveys.SurveyQuestion;
+import org.springframework.validation.MapBindingResult;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * The answer validators and the navigation graph for one version of a survey, built once so that they can be reused
+ * for every response to that version. Published survey versions can't change, so a plan for a published version can be
+ * cached for as long as is convenient. Plans are immutable and safe to share between threads.
+ */
+public class SurveyAnswerValidationPlan {
+
+    private static final SurveyAnswerValidator NO_QUESTION_VALIDATOR = new SurveyAnswerValidator(null);
+
+    private final Survey survey;
+    private final Map<String, SurveyQuestion> questionsByGuid;
+    private final Map<String, SurveyQuestion> questionsByIdentifier;
+    private final Map<String, SurveyAnswerValidator> validatorsByGuid;
+    private final SurveyNavigationGraph navigationGraph;
+
+    public SurveyAnswerValidationPlan(Survey survey) {
+        checkNotNull(survey);
+        this.survey = survey;
+
+        Map<String, SurveyQuestion> byGuid = Maps.newHashMap();
+        Map<String, SurveyQuestion> byIdentifier = Maps.newHashMap();
+        Map<String, SurveyAnswerValidator> validators = Maps.newHashMap();
+        for (SurveyQuestion question : survey.getUnmodifiableQuestionList()) {
+            if (question.getGuid() == null) {
+                continue;
+            }
+            byGuid.put(question.getGuid(), question);
+            if (question.getIdentifier() != null) {
+                byIdentifier.put(question.getIdentifier(), question);
+            }
+            validators.put(question.getGuid(), new SurveyAnswerValidator(question));
+        }
+        this.questionsByGuid = ImmutableMap.copyOf(byGuid);
+        this.questionsByIdentifier = ImmutableMap.copyOf(byIdentifier);
+        this.validatorsByGuid = ImmutableMap.copyOf(validators);
+        this.navigationGraph = new SurveyNavigationGraph(survey);
+    }
+
+    /** The survey version this plan validates answers for. */
+    public Survey getSurvey() {
+        return survey;
+    }
+
+    /** The skip logic of the survey version. */
+    public SurveyNavigationGraph getNavigationGraph() {
+        return navigationGraph;
+    }
+
+    /** Returns the question with the given GUID, or null if the survey has no such question. */
+    public SurveyQuestion getQuestionByGuid(String guid) {
+        return (guid == null) ? null : questionsByGuid.get(guid);
+    }
+
+    /** Returns the question with the given identifier, or null if the survey has no such question. */
+    public SurveyQuestion getQuestionByIdentifier(String identifier) {
+        return (identifier == null) ? null : questionsByIdentifier.get(identifier);
+    }
+
+    /**
+     * Validates all the answers in one pass, collecting the errors of every answer.
+     *
+     * @param answers
+     *         answers to validate
+     * @throws org.sagebionetworks.bridge.exceptions.InvalidEntityException
+     *         listing every invalid answer, if any answer is invalid
+     */
+    public void validate(List<SurveyAnswer> answers) {
+        checkNotNull(answers);
+
+        MapBindingResult errors = new MapBindingResult(Maps.newHashMap(), "SurveyResponse");
+        for (SurveyAnswer answer : answers) {
+            SurveyAnswerValidator validator = (answer.getQuestionGuid() == null) ? null :
+                    validatorsByGuid.get(answer.getQuestionGuid());
+            Validate.entity((validator == null) ? NO_QUESTION_VALIDATOR : validator, errors, answer);
+        }
+        Validate.throwException(errors, survey);
+    }
+
+    /**
+     * Returns the identifiers of the questions that were answered although an earlier answer skipped over them, in
+     * the order of the answers. Clients aren't required to follow the skip rules, so these answers are not invalid.
+     *
+     * @param answers
+     *         all answers of a response, including answers submitted earlier
+     */
+    public List<String> getSkippedQuestionIdentifiers(Collection<SurveyAnswer> answers) {
+        checkNotNull(answers);
+
+        List<String> identifiers = Lists.newArrayList();
+        for (SurveyAnswer answer : navigationGraph.getAnswersOffPath(answers)) {
+            identifiers.add(questionsByGuid.get(answer.getQuestionGuid()).getIdentifier());
+        }
+        return identifiers;
+    }
+}
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.validators;
 
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.LocalTime;
@@ -26,8 +27,15 @@ import org.sagebionetworks.bridge.models.surveys.Unit;
 import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
+/**
+ * Validates answers to one question. Everything that depends only on the question (the compiled regular expression of
+ * a string constraint, the set of enumerated values) is worked out when the validator is created, so one validator can
+ * be reused for every answer to the question. Validators are immutable and safe to share between threads; see
+ * {@link SurveyAnswerValidationPlan} for validating all the answers to a survey.
+ */
 public class SurveyAnswerValidator implements Validator {
     
     private static final long FIVE_MINUTES = 5 * 60 * 1000;
@@ -40,12 +48,35 @@ public class SurveyAnswerValidator implements Validator {
     private static final DateConstraints DATE_CONSTRAINTS = new DateConstraints();
     private static final TimeConstraints TIME_CONSTRAINTS = new TimeConstraints();
 
+    private static final DurationToIntegerConverter DURATION_CONVERTER = new DurationToIntegerConverter();
+
     private static Set<String> BOOLEAN_VALUES = Sets.newHashSet("true", "false");
 
-    private SurveyQuestion question;
+    private final SurveyQuestion question;
+    private final Pattern pattern;
+    private final Set<String> enumeratedValues;
     
     public SurveyAnswerValidator(SurveyQuestion question) {
         this.question = question;
+        
+        Constraints con = (question == null) ? null : question.getConstraints();
+        // Patterns are validated when the survey is saved, so this compiles
+        if (con instanceof StringConstraints && StringUtils.isNotBlank(((StringConstraints)con).getPattern())) {
+            this.pattern = Pattern.compile(((StringConstraints)con).getPattern());
+        } else {
+            this.pattern = null;
+        }
+        if (con instanceof MultiValueConstraints && ((MultiValueConstraints)con).getEnumeration() != null) {
+            ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+            for (SurveyQuestionOption option : ((MultiValueConstraints)con).getEnumeration()) {
+                if (option.getValue() != null) {
+                    builder.add(option.getValue());
+                }
+            }
+            this.enumeratedValues = builder.build();
+        } else {
+            this.enumeratedValues = ImmutableSet.of();
+        }
     }
     
     @Override
@@ -90,7 +121,7 @@ public class SurveyAnswerValidator implements Validator {
                     validateType(errors, (DurationConstraints) con, firstAnswer);
                     break;
                 case STRING:
-                    validateType(errors, (StringConstraints) con, firstAnswer);
+                    validateType(errors, (StringConstraints) con, pattern, firstAnswer);
                     break;
                 case INTEGER:
                     validateType(errors, (NumericalConstraints) con, firstAnswer, "integer");
@@ -188,7 +219,7 @@ public class SurveyAnswerValidator implements Validator {
             rejectField(errors, "constraints", "%s is not a time unit", con.getUnit().name().toLowerCase());
         } else {
             try {
-                String value = new DurationToIntegerConverter().convert(answer, con.getUnit());
+                String value = DURATION_CONVERTER.convert(answer, con.getUnit());
                 validateType(errors, (NumericalConstraints)con, value, "integer");
             } catch(IllegalArgumentException e) {
                 rejectField(errors, "constraints", e.getMessage());
@@ -196,13 +227,13 @@ public class SurveyAnswerValidator implements Validator {
         }
     }
     
-    private void validateType(Errors errors, StringConstraints con, String answer) {
+    private void validateType(Errors errors, StringConstraints con, Pattern pattern, String answer) {
         if (con.getMinLength() != null && answer.length() < con.getMinLength()) {
             rejectField(errors, "constraints", "%s is shorter than %s characters", answer, con.getMinLength());
         } else if (con.getMaxLength() != null && answer.length() > con.getMaxLength()) {
             rejectField(errors, "constraints", "%s is longer than %s characters", answer, con.getMaxLength());
         }
-        if (StringUtils.isNotBlank(con.getPattern()) && answer != null && !answer.matches(con.getPattern())) {
+        if (pattern != null && answer != null && !pattern.matcher(answer).matches()) {
             rejectField(errors, "constraints", "%s does not match the regular expression /%s/", answer, con.getPattern());
         }
     }
@@ -220,7 +251,7 @@ public class SurveyAnswerValidator implements Validator {
         }
         if (!con.getAllowOther()) {
             for (int i=0; i < answers.size(); i++) {
-                if (!isEnumeratedValue(con, answers.get(i))) {
+                if (!enumeratedValues.contains(answers.get(i))) {
                     rejectField(errors, "constraints", "%s is not an enumerated value for this question", answers.get(i));
                 }
             }
@@ -229,7 +260,7 @@ public class SurveyAnswerValidator implements Validator {
     private void validateType(Errors errors, MultiValueConstraints con, String answer) {
         // Then we're concerned with the one answer
         validateMultiValueType(errors, con, answer);
-        if (!con.getAllowOther() && !isEnumeratedValue(con, answer)) {
+        if (!con.getAllowOther() && !enumeratedValues.contains(answer)) {
             rejectField(errors, "constraints", "%s is not an enumerated value for this question", answer);
         }
     }
@@ -240,7 +271,7 @@ public class SurveyAnswerValidator implements Validator {
             validateType(errors, DURATION_CONSTRAINTS, answer);
             break;
         case STRING:
-            validateType(errors, STRING_CONSTRAINTS, answer);
+            validateType(errors, STRING_CONSTRAINTS, null, answer);
             break;
         case INTEGER:
             validateType(errors, INTEGER_CONSTRAINTS, answer, "integer");
@@ -260,14 +291,6 @@ public class SurveyAnswerValidator implements Validator {
             break;
         }
     }
-    private boolean isEnumeratedValue(MultiValueConstraints con, String value) {
-        for (SurveyQuestionOption option : con.getEnumeration()) {
-            if (option.getValue().equals(value)) {
-                return true;
-            }
-        }
-        return false;
-    }
     private void rejectField(Errors errors, String field, String message, Object... args) {
         errors.rejectValue(field, message, args, message);
     }
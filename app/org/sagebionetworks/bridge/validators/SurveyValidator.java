@@ -17,6 +17,7 @@ import org.sagebionetworks.bridge.models.surveys.StringConstraints;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyElement;
 import org.sagebionetworks.bridge.models.surveys.SurveyInfoScreen;
+import org.sagebionetworks.bridge.models.surveys.SurveyNavigationGraph;
 import org.sagebionetworks.bridge.models.surveys.SurveyQuestion;
 import org.sagebionetworks.bridge.models.surveys.SurveyRule;
 import org.sagebionetworks.bridge.models.surveys.UIHint;
@@ -24,6 +25,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.Sets;
 
 @Component
@@ -63,6 +65,9 @@ public class SurveyValidator implements Validator {
             List<SurveyQuestion> questions = survey.getUnmodifiableQuestionList();
             validateRules(errors, questions);    
         }
+        if (!errors.hasErrors()) {
+            validateNavigation(errors, new SurveyNavigationGraph(survey));
+        }
     }
     private void doValidateQuestion(SurveyQuestion question, int pos, Errors errors) {
         if (isBlank(question.getIdentifier())) {
@@ -137,6 +142,16 @@ public class SurveyValidator implements Validator {
         }
         
     }
+    private void validateNavigation(Errors errors, SurveyNavigationGraph graph) {
+        List<String> cycle = graph.getCycle();
+        if (!cycle.isEmpty()) {
+            errors.reject(String.format("has rules that loop through elements %s", Joiner.on(", ").join(cycle)));
+        }
+        for (String identifier : graph.getUnreachableIdentifiers()) {
+            errors.reject(String.format("has rules that skip over element %s in every case, so it can't be reached",
+                    identifier));
+        }
+    }
     private void doValidateConstraints(SurveyQuestion question, Constraints con, Errors errors) {
         if (con.getDataType() == null) {
             errors.reject("has no dataType");
@@ -68,6 +68,7 @@ public class TestUtils {
 
         Http.Context context = mock(Http.Context.class);
         when(context.request()).thenReturn(request);
+        when(context.response()).thenReturn(mock(Http.Response.class));
 
         return context;
     }
@@ -81,6 +82,7 @@ public class TestUtils {
 
         Http.Context context = mock(Http.Context.class);
         when(context.request()).thenReturn(request);
+        when(context.response()).thenReturn(mock(Http.Response.class));
 
         return context;
     }
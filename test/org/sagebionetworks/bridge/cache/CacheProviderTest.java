@@ -1,6 +1,8 @@
 package org.sagebionetworks.bridge.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -12,6 +14,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
@@ -20,6 +23,8 @@ import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.dao.ParticipantOption;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
@@ -217,6 +222,56 @@ public class CacheProviderTest {
         assertNull(cachedString);
     }
 
+    @Test
+    public void addAndRemoveParticipantOptions() {
+        final CacheProvider simpleCacheProvider = new CacheProvider();
+        simpleCacheProvider.setJedisOps(getJedisOps());
+        simpleCacheProvider.setBridgeObjectMapper(BridgeObjectMapper.get());
+        assertNull(simpleCacheProvider.getParticipantOptionsVersion("healthCode"));
+        assertNull(simpleCacheProvider.getParticipantOptions("healthCode", null));
+
+        Map<ParticipantOption,String> options = Maps.newHashMap();
+        options.put(ParticipantOption.SHARING_SCOPE, SharingScope.SPONSORS_AND_PARTNERS.name());
+        options.put(ParticipantOption.EXTERNAL_IDENTIFIER, null);
+        simpleCacheProvider.setParticipantOptions("healthCode", null, options);
+        assertEquals(options, simpleCacheProvider.getParticipantOptions("healthCode", null));
+
+        simpleCacheProvider.removeParticipantOptions("healthCode");
+        String version = simpleCacheProvider.getParticipantOptionsVersion("healthCode");
+        assertNotNull(version);
+        assertNull(simpleCacheProvider.getParticipantOptions("healthCode", version));
+    }
+
+    @Test
+    public void optionsReadBeforeChangeAreNotCachedAfterIt() {
+        final CacheProvider simpleCacheProvider = new CacheProvider();
+        simpleCacheProvider.setJedisOps(getJedisOps());
+        simpleCacheProvider.setBridgeObjectMapper(BridgeObjectMapper.get());
+
+        // A reader reads the version, then the options from the table, while a writer changes the options
+        String readVersion = simpleCacheProvider.getParticipantOptionsVersion("healthCode");
+        simpleCacheProvider.removeParticipantOptions("healthCode");
+        Map<ParticipantOption,String> staleOptions = Maps.newHashMap();
+        staleOptions.put(ParticipantOption.SHARING_SCOPE, SharingScope.SPONSORS_AND_PARTNERS.name());
+        simpleCacheProvider.setParticipantOptions("healthCode", readVersion, staleOptions);
+
+        String version = simpleCacheProvider.getParticipantOptionsVersion("healthCode");
+        assertNull(simpleCacheProvider.getParticipantOptions("healthCode", version));
+    }
+
+    @Test
+    public void setStringIfAbsentSetsValueAndExpirationTogether() {
+        JedisOps jedisOps = mock(JedisOps.class);
+        when(jedisOps.setnxex("key", 10, "value")).thenReturn("OK").thenReturn(null);
+        CacheProvider simpleCacheProvider = new CacheProvider();
+        simpleCacheProvider.setJedisOps(jedisOps);
+
+        assertTrue(simpleCacheProvider.setStringIfAbsent("key", "value", 10));
+        assertFalse(simpleCacheProvider.setStringIfAbsent("key", "value", 10));
+        verify(jedisOps, times(2)).setnxex("key", 10, "value");
+        verifyNoMoreInteractions(jedisOps);
+    }
+
     private JedisOps getJedisOps() {
         return new JedisOps(new JedisPool()) {
             private Map<String,String> map = Maps.newHashMap();
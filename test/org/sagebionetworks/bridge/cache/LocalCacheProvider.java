@@ -0,0 +1,37 @@
+package org.sagebionetworks.bridge.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for the string operations of the cache provider, for tests of code that caches views without
+ * a Redis server. Keys don't expire. This is thread-safe.
+ */
+public class LocalCacheProvider extends CacheProvider {
+    private final Map<String, String> map = new ConcurrentHashMap<>();
+
+    @Override
+    public String getString(String cacheKey) {
+        return map.get(cacheKey);
+    }
+
+    @Override
+    public void setString(String cacheKey, String value) {
+        map.put(cacheKey, value);
+    }
+
+    @Override
+    public void removeString(String cacheKey) {
+        map.remove(cacheKey);
+    }
+
+    @Override
+    public boolean setStringIfAbsent(String cacheKey, String value, int expireInSeconds) {
+        return map.putIfAbsent(cacheKey, value) == null;
+    }
+
+    @Override
+    public void setString(String cacheKey, String value, int expireInSeconds) {
+        map.put(cacheKey, value);
+    }
+}
@@ -1,23 +1,38 @@
 package org.sagebionetworks.bridge.cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.ViewCache.CachedView;
 import org.sagebionetworks.bridge.cache.ViewCache.ViewCacheKey;
 import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.redis.RedisKey;
 
 import com.google.common.base.Supplier;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class ViewCacheTest {
     
@@ -37,6 +52,7 @@ public class ViewCacheTest {
         ViewCacheKey<Study> cacheKey = cache.getCacheKey(Study.class, study.getIdentifier());
         CacheProvider provider = mock(CacheProvider.class);
         when(provider.getString(cacheKey.getKey())).thenReturn(null);
+        when(provider.setStringIfAbsent(anyString(), anyString(), anyInt())).thenReturn(true);
         cache.setCacheProvider(provider);
         
         String json = cache.getView(cacheKey, new Supplier<Study>() {
@@ -58,6 +74,7 @@ public class ViewCacheTest {
         
         CacheProvider provider = mock(CacheProvider.class);
         when(provider.getString(cacheKey.getKey())).thenReturn(null);
+        when(provider.setStringIfAbsent(anyString(), anyString(), anyInt())).thenReturn(true);
         cache.setCacheProvider(provider);
         
         // It doesn't get wrapped or transformed or anything
@@ -101,7 +118,9 @@ public class ViewCacheTest {
         final String originalStudyJson = mapper.writeValueAsString(study);
         ViewCache cache = new ViewCache();
         final ViewCacheKey<Study> cacheKey = cache.getCacheKey(Study.class, study.getIdentifier());
-        cache.setCacheProvider(getSimpleCacheProvider(cacheKey.getKey(), originalStudyJson));
+        LocalCacheProvider provider = new LocalCacheProvider();
+        provider.setString(cacheKey.getKey(), originalStudyJson);
+        cache.setCacheProvider(provider);
         
         cache.removeView(cacheKey);
         
@@ -124,22 +143,162 @@ public class ViewCacheTest {
         assertEquals("mostRandom:leastRandom:org.sagebionetworks.bridge.models.studies.Study:view", cacheKey.getKey());
     }
     
-    private CacheProvider getSimpleCacheProvider(final String cacheKey, final String originalStudyJson) {
-        return new CacheProvider() {
-            private Map<String,String> map = Maps.newHashMap();
-            {
-                map.put(cacheKey, originalStudyJson);
+    @Test
+    public void concurrentMissesBuildViewOnce() throws Exception {
+        final ViewCache cache = new ViewCache();
+        cache.setCacheProvider(new LocalCacheProvider());
+        final ViewCacheKey<Study> cacheKey = cache.getCacheKey(Study.class, study.getIdentifier());
+        final AtomicInteger builds = new AtomicInteger();
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch finishBuilding = new CountDownLatch(1);
+        final Supplier<Study> supplier = new Supplier<Study>() {
+            @Override public Study get() {
+                builds.incrementAndGet();
+                building.countDown();
+                Uninterruptibles.awaitUninterruptibly(finishBuilding);
+                return study;
             }
-            public String getString(String cacheKey) {
-                return map.get(cacheKey);
+        };
+        Callable<String> getView = new Callable<String>() {
+            @Override public String call() {
+                return cache.getView(cacheKey, supplier);
             }
-            public void setString(String cacheKey, String value) {
-                map.put(cacheKey, value);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = Lists.newArrayList();
+            results.add(executor.submit(getView));
+            building.await();
+            for (int i=0; i < 7; i++) {
+                results.add(executor.submit(getView));
             }
-            public void removeString(String cacheKey) {
-                map.remove(cacheKey);
+            finishBuilding.countDown();
+            for (Future<String> result : results) {
+                assertEquals(study.getName(), mapper.readValue(result.get(), DynamoStudy.class).getName());
             }
-        };   
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, builds.get());
     }
-    
+
+    @Test
+    public void waitsForViewBuiltByAnotherServer() throws Exception {
+        ViewCache cache = new ViewCache();
+        final LocalCacheProvider provider = new LocalCacheProvider();
+        cache.setCacheProvider(provider);
+        final ViewCacheKey<Study> cacheKey = cache.getCacheKey(Study.class, study.getIdentifier());
+        final String originalStudyJson = mapper.writeValueAsString(study);
+
+        // Another server holds the loading lock, and caches the view a little later
+        provider.setStringIfAbsent(RedisKey.VIEW_LOCK.getRedisKey(cacheKey.getKey()), "otherServer", 10);
+        Thread otherServer = new Thread() {
+            @Override public void run() {
+                Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+                provider.setString(cacheKey.getKey(), originalStudyJson);
+            }
+        };
+        otherServer.start();
+
+        String json = cache.getView(cacheKey, new Supplier<Study>() {
+            @Override public Study get() {
+                fail("This should not be called");
+                return null;
+            }
+        });
+        assertEquals(originalStudyJson, json);
+        otherServer.join();
+    }
+
+    @Test
+    public void removeViewRemovesViewsWithSameFirstIdentifier() throws Exception {
+        ViewCache cache = new ViewCache();
+        cache.setCacheProvider(new LocalCacheProvider());
+        ViewCacheKey<Study> published = cache.getCacheKey(Study.class, "guid", "published");
+        ViewCacheKey<Study> recent = cache.getCacheKey(Study.class, "guid", "mostrecent");
+        ViewCacheKey<Study> other = cache.getCacheKey(Study.class, "otherGuid", "published");
+        CountingSupplier supplier = new CountingSupplier();
+        cache.getView(published, supplier);
+        cache.getView(recent, supplier);
+        cache.getView(other, supplier);
+        assertEquals(3, supplier.count);
+
+        cache.removeView(cache.getCacheKey(Study.class, "guid"));
+
+        cache.getView(published, supplier);
+        cache.getView(recent, supplier);
+        cache.getView(other, supplier);
+        assertEquals(5, supplier.count);
+    }
+
+    @Test
+    public void generationsAreNotReused() throws Exception {
+        ViewCache cache = new ViewCache();
+        LocalCacheProvider provider = new LocalCacheProvider();
+        cache.setCacheProvider(provider);
+        ViewCacheKey<Study> cacheKey = cache.getCacheKey(Study.class, "guid", "published");
+        CountingSupplier supplier = new CountingSupplier();
+
+        cache.removeView(cacheKey);
+        cache.getView(cacheKey, supplier);
+        assertEquals(1, supplier.count);
+
+        // The generation expires while its view is kept alive, then the view is removed again
+        provider.removeString(cacheKey.getGenerationKey());
+        cache.removeView(cacheKey);
+        cache.getView(cacheKey, supplier);
+        assertEquals(2, supplier.count);
+    }
+
+    @Test
+    public void expiredViewIsRefreshed() throws Exception {
+        ViewCache cache = new ViewCache();
+        LocalCacheProvider provider = new LocalCacheProvider();
+        cache.setCacheProvider(provider);
+        ViewCacheKey<Study> cacheKey = cache.getCacheKey(Study.class, study.getIdentifier());
+        long expiresOn = DateUtils.getCurrentMillisFromEpoch() - 1;
+        provider.setString(cacheKey.getKey(), new CachedView("{}", expiresOn, 10L).toString());
+
+        CountingSupplier supplier = new CountingSupplier();
+        String json = cache.getView(cacheKey, supplier);
+
+        assertEquals(1, supplier.count);
+        assertEquals(study.getName(), mapper.readValue(json, DynamoStudy.class).getName());
+        // The refreshed view is not refreshed again
+        cache.getView(cacheKey, supplier);
+        assertEquals(1, supplier.count);
+    }
+
+    @Test
+    public void viewIsRefreshedEarlierWhenSlowToBuild() {
+        CachedView fast = new CachedView("{}", 10000L, 10L);
+        CachedView slow = new CachedView("{}", 10000L, 1000L);
+        CachedView legacy = CachedView.parse("{}");
+
+        // With a random number of 1.0 there is no early refresh
+        assertFalse(slow.shouldRefresh(9999L, 1.0));
+        assertTrue(slow.shouldRefresh(10000L, 1.0));
+        // Otherwise, the longer the build, the earlier the refresh
+        assertFalse(fast.shouldRefresh(9000L, 0.1));
+        assertTrue(slow.shouldRefresh(9000L, 0.1));
+        assertFalse(legacy.shouldRefresh(20000L, 0.1));
+    }
+
+    @Test
+    public void cachedViewHeaderRoundTrips() {
+        CachedView view = CachedView.parse(new CachedView("{\"a\":\"b\nc\"}", 10000L, 5L).toString());
+        assertEquals("{\"a\":\"b\nc\"}", view.getJson());
+        assertTrue(view.shouldRefresh(10000L, 1.0));
+        assertFalse(view.shouldRefresh(9999L, 1.0));
+    }
+
+    private class CountingSupplier implements Supplier<Study> {
+        private int count;
+        @Override public Study get() {
+            count++;
+            return study;
+        }
+    }
+
 }
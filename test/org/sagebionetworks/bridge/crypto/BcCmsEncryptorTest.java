@@ -6,8 +6,15 @@ import static org.junit.Assert.assertNotNull;
 
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.bouncycastle.cms.CMSException;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -55,4 +62,34 @@ public class BcCmsEncryptorTest {
         assertNotNull(encrypted2);
         assertFalse(Arrays.equals(encrypted1, encrypted2));
     }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final String text = "text " + i;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return new String(decryptor.decrypt(encryptor.encrypt(text.getBytes("UTF-8"))), "UTF-8");
+                    }
+                }));
+            }
+            for (int i = 0; i < 20; i++) {
+                assertEquals("text " + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = CMSException.class)
+    public void testDecryptForOtherCertificate() throws Exception {
+        KeyPair keyPair = KeyPairFactory.newRsa2048();
+        X509Certificate cert = new BcCertificateFactory().newCertificate(keyPair, "*");
+        CmsEncryptor otherEncryptor = new BcCmsEncryptor(cert, keyPair.getPrivate());
+        decryptor.decrypt(otherEncryptor.encrypt("some text".getBytes()));
+    }
 }
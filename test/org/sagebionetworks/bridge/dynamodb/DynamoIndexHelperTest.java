@@ -1,22 +1,34 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import javax.annotation.Nonnull;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.KeyPair;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class DynamoIndexHelperTest {
@@ -35,6 +47,11 @@ public class DynamoIndexHelperTest {
             this.key = key;
             this.value = value;
         }
+
+        @DynamoDBHashKey
+        public String getKey() {
+            return key;
+        }
     }
 
     // index.query() can't be mocked, so override queryHelper to sidestep this problem
@@ -74,9 +91,10 @@ public class DynamoIndexHelperTest {
 
         // mock mapper
         DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
-        ArgumentCaptor<List> arg = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Map> arg = ArgumentCaptor.forClass(Map.class);
         when(mockMapper.batchLoad(arg.capture())).thenReturn(mockMapperResultMap);
         helper.setMapper(mockMapper);
+        helper.setTableClass(Thing.class);
 
         // execute query keys and validate
         List<Thing> keyList = helper.queryKeys(Thing.class, "test key", "test value");
@@ -85,9 +103,16 @@ public class DynamoIndexHelperTest {
         // execute
         List<Thing> resultList = helper.query(Thing.class, "test key", "test value");
 
-        // Validate intermediate "key objects". This is a List<Object>, but because of type erasure, this should work,
-        // at least in the test context.
-        validateKeyObjects(arg.getValue());
+        // Validate the table keys read off of the index items.
+        Map<Class<?>, List<KeyPair>> keysByClass = arg.getValue();
+        assertEquals(1, keysByClass.size());
+        List<KeyPair> keyPairList = keysByClass.get(Thing.class);
+        assertEquals(4, keyPairList.size());
+        assertEquals("foo key", keyPairList.get(0).getHashKey());
+        assertEquals("bar key", keyPairList.get(1).getHashKey());
+        assertEquals("asdf key", keyPairList.get(2).getHashKey());
+        assertEquals("jkl; key", keyPairList.get(3).getHashKey());
+        assertNull(keyPairList.get(0).getRangeKey());
 
         // Validate final results. Because of wonkiness with maps and ordering, we'll convert the Things into a map and
         // validate the map.
@@ -104,6 +129,59 @@ public class DynamoIndexHelperTest {
         assertEquals("jkl; value", thingMap.get("jkl; key"));
     }
 
+    @Test
+    public void queryIteratorLoadsInBatches() {
+        // 250 index hits should be loaded in batches of 100, 100, and 50
+        List<Item> mockItemList = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            mockItemList.add(new Item().with("key", "key " + i));
+        }
+        DynamoIndexHelper helper = new TestDynamoIndexHelper("test key", "test value", mockItemList);
+
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.batchLoad(anyMap())).thenAnswer(new Answer<Map<String, List<Object>>>() {
+            @Override
+            public Map<String, List<Object>> answer(InvocationOnMock invocation) {
+                Map<Class<?>, List<KeyPair>> keysByClass = (Map<Class<?>, List<KeyPair>>) invocation.getArguments()[0];
+                List<Object> thingList = new ArrayList<>();
+                for (KeyPair oneKey : keysByClass.get(Thing.class)) {
+                    thingList.add(new Thing((String) oneKey.getHashKey(), "value"));
+                }
+                return ImmutableMap.of("dummy table", thingList);
+            }
+        });
+        helper.setMapper(mockMapper);
+        helper.setTableClass(Thing.class);
+
+        Iterator<Thing> thingIter = helper.queryIterator(Thing.class, "test key", "test value");
+
+        // nothing is loaded until the iterator is consumed
+        verify(mockMapper, times(0)).batchLoad(anyMap());
+
+        int count = 0;
+        while (thingIter.hasNext()) {
+            assertEquals("key " + count, thingIter.next().key);
+            count++;
+            if (count == 1) {
+                verify(mockMapper, times(1)).batchLoad(anyMap());
+            }
+        }
+        assertEquals(250, count);
+        assertFalse(thingIter.hasNext());
+        verify(mockMapper, times(3)).batchLoad(anyMap());
+    }
+
+    @Test
+    public void queryIteratorWithNoResults() {
+        DynamoIndexHelper helper = new TestDynamoIndexHelper("test key", "test value", ImmutableList.<Item>of());
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        helper.setMapper(mockMapper);
+        helper.setTableClass(Thing.class);
+
+        assertTrue(helper.query(Thing.class, "test key", "test value").isEmpty());
+        verify(mockMapper, times(0)).batchLoad(anyMap());
+    }
+
     private static void validateKeyObjects(List<Thing> keyList) {
         assertEquals(4, keyList.size());
 
@@ -1,11 +1,13 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -20,14 +22,18 @@ import org.sagebionetworks.bridge.dynamodb.test.HealthDataRecordTest;
 import org.sagebionetworks.bridge.exceptions.BridgeInitializationException;
 
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateGlobalSecondaryIndexAction;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
 import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.IndexStatus;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.LocalSecondaryIndex;
 import com.amazonaws.services.dynamodbv2.model.LocalSecondaryIndexDescription;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
 
 public class DynamoInitializerTest {
 
@@ -176,6 +182,56 @@ public class DynamoInitializerTest {
         assertEquals("expiresOn", index.getKeySchema().get(0).getAttributeName());
     }
     
+    @Test
+    public void createsUploadDateIndexWithStatusRangeKey() {
+        List<TableDescription> tables = DynamoInitializer.getAnnotatedTables(
+                new ArrayList<Class<?>>(Arrays.asList(DynamoUpload2.class)));
+        TableDescription table = tables.get(0);
+
+        GlobalSecondaryIndexDescription index = findIndex(table.getGlobalSecondaryIndexes(), "uploadDate-index");
+        assertEquals("uploadDate", index.getKeySchema().get(0).getAttributeName());
+        assertEquals("status", index.getKeySchema().get(1).getAttributeName());
+        assertTrue(table.getAttributeDefinitions().contains(new AttributeDefinition("status", ScalarAttributeType.S)));
+    }
+
+    @Test
+    public void tableIsActiveOnlyOnceIndicesAreBackfilled() {
+        GlobalSecondaryIndexDescription index = new GlobalSecondaryIndexDescription().withIndexName("test-index")
+                .withIndexStatus(IndexStatus.CREATING);
+        TableDescription table = new TableDescription().withTableName("test-table")
+                .withTableStatus(TableStatus.ACTIVE).withGlobalSecondaryIndexes(index);
+        assertFalse(DynamoInitializer.isActive(table));
+
+        index.setIndexStatus(IndexStatus.ACTIVE);
+        assertTrue(DynamoInitializer.isActive(table));
+
+        table.setTableStatus(TableStatus.UPDATING);
+        assertFalse(DynamoInitializer.isActive(table));
+    }
+
+    @Test
+    public void createsMissingGlobalIndicesOnExistingTable() {
+        List<TableDescription> tables = DynamoInitializer.getAnnotatedTables(
+                new ArrayList<Class<?>>(Arrays.asList(DynamoUpload2.class)));
+        TableDescription table = tables.get(0);
+        TableDescription existingTable = copyTableDescription(table);
+        GlobalSecondaryIndexDescription existingIndex = findIndex(existingTable.getGlobalSecondaryIndexes(),
+                "uploadDate-index");
+        existingTable.getGlobalSecondaryIndexes().remove(existingIndex);
+
+        List<UpdateTableRequest> requests = DynamoInitializer.getCreateGlobalIndexRequests(table, existingTable);
+        assertEquals(1, requests.size());
+        UpdateTableRequest request = requests.get(0);
+        assertEquals(table.getTableName(), request.getTableName());
+        CreateGlobalSecondaryIndexAction createIndex = request.getGlobalSecondaryIndexUpdates().get(0).getCreate();
+        assertEquals("uploadDate-index", createIndex.getIndexName());
+        assertEquals(2, createIndex.getKeySchema().size());
+        assertEquals(2, request.getAttributeDefinitions().size());
+
+        // Nothing to do once the index exists
+        assertTrue(DynamoInitializer.getCreateGlobalIndexRequests(table, table).isEmpty());
+    }
+
     private TableDescription getTableByName(List<TableDescription> tables, String partialTableName) {
         for (TableDescription descr : tables) {
             if (descr.getTableName().indexOf(partialTableName) > -1) {
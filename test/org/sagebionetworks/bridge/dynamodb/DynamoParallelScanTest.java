@@ -0,0 +1,167 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+public class DynamoParallelScanTest {
+
+    // Each segment returns two pages of two items, named "[segment]-[page]-[item]"
+    private static class SegmentedAnswer implements Answer<ScanResultPage<String>> {
+        final Set<String> filteredOn = Sets.newConcurrentHashSet();
+
+        @Override
+        public ScanResultPage<String> answer(InvocationOnMock invocation) {
+            DynamoDBScanExpression scan = (DynamoDBScanExpression) invocation.getArguments()[1];
+            if (scan.getScanFilter() != null) {
+                filteredOn.addAll(scan.getScanFilter().keySet());
+            }
+            int segment = scan.getSegment();
+            int pageNum = (scan.getExclusiveStartKey() == null) ? 0 : 1;
+
+            ScanResultPage<String> page = new ScanResultPage<>();
+            page.setResults(ImmutableList.of(segment + "-" + pageNum + "-0", segment + "-" + pageNum + "-1"));
+            if (pageNum == 0) {
+                Map<String, AttributeValue> lastKey = ImmutableMap.of("key", new AttributeValue("page0"));
+                page.setLastEvaluatedKey(lastKey);
+            }
+            return page;
+        }
+    }
+
+    @Test
+    public void scansEverySegmentAndPage() {
+        SegmentedAnswer answer = new SegmentedAnswer();
+        DynamoDBMapper mapper = mock(DynamoDBMapper.class);
+        when(mapper.scanPage(eq(String.class), any(DynamoDBScanExpression.class))).thenAnswer(answer);
+
+        DynamoDBScanExpression scan = new DynamoDBScanExpression();
+        scan.addFilterCondition("studyKey", new Condition().withComparisonOperator(ComparisonOperator.EQ)
+                .withAttributeValueList(new AttributeValue("api")));
+
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        long count = new DynamoParallelScan<>(mapper, String.class, scan).withTotalSegments(3)
+                .scan(new DynamoParallelScan.Callback<String>() {
+                    @Override
+                    public void accept(String item) {
+                        results.add(item);
+                    }
+                });
+
+        assertEquals(12, count);
+        assertEquals(12, results.size());
+        for (int segment = 0; segment < 3; segment++) {
+            for (int page = 0; page < 2; page++) {
+                assertTrue(results.contains(segment + "-" + page + "-0"));
+                assertTrue(results.contains(segment + "-" + page + "-1"));
+            }
+        }
+        // filters are carried over to every segment
+        assertEquals(Sets.newHashSet("studyKey"), answer.filteredOn);
+    }
+
+    @Test
+    public void cancelStopsScan() {
+        DynamoDBMapper mapper = mock(DynamoDBMapper.class);
+        when(mapper.scanPage(eq(String.class), any(DynamoDBScanExpression.class))).thenAnswer(new SegmentedAnswer());
+
+        final DynamoParallelScan<String> parallelScan = new DynamoParallelScan<>(mapper, String.class,
+                new DynamoDBScanExpression());
+        long count = parallelScan.scan(new DynamoParallelScan.Callback<String>() {
+            @Override
+            public void accept(String item) {
+                parallelScan.cancel();
+            }
+        });
+
+        assertEquals(1, count);
+        assertTrue(parallelScan.isCancelled());
+    }
+
+    @Test
+    public void callbackExceptionIsRethrown() {
+        DynamoDBMapper mapper = mock(DynamoDBMapper.class);
+        when(mapper.scanPage(eq(String.class), any(DynamoDBScanExpression.class))).thenAnswer(new SegmentedAnswer());
+
+        final IllegalStateException exception = new IllegalStateException();
+        DynamoParallelScan<String> parallelScan = new DynamoParallelScan<>(mapper, String.class,
+                new DynamoDBScanExpression()).withTotalSegments(2);
+        try {
+            parallelScan.scan(new DynamoParallelScan.Callback<String>() {
+                @Override
+                public void accept(String item) {
+                    throw exception;
+                }
+            });
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            assertSame(exception, ex);
+        }
+        assertTrue(parallelScan.isCancelled());
+    }
+
+    @Test
+    public void failingSegmentCancelsSegmentsStillReading() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        DynamoDBMapper mapper = mock(DynamoDBMapper.class);
+        when(mapper.scanPage(eq(String.class), any(DynamoDBScanExpression.class))).thenAnswer(
+                new Answer<ScanResultPage<String>>() {
+            @Override
+            public ScanResultPage<String> answer(InvocationOnMock invocation) {
+                DynamoDBScanExpression scan = (DynamoDBScanExpression) invocation.getArguments()[1];
+                if (scan.getSegment() == 1) {
+                    throw new IllegalStateException();
+                }
+                // The first segment is still reading when the second fails
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                }
+                return new ScanResultPage<>();
+            }
+        });
+
+        DynamoParallelScan<String> parallelScan = new DynamoParallelScan<>(mapper, String.class,
+                new DynamoDBScanExpression()).withTotalSegments(2);
+        try {
+            parallelScan.scan(new DynamoParallelScan.Callback<String>() {
+                @Override
+                public void accept(String item) {
+                }
+            });
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        assertTrue(parallelScan.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}
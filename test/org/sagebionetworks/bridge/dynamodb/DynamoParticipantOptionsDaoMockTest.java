@@ -0,0 +1,164 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.dao.ParticipantOption;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+public class DynamoParticipantOptionsDaoMockTest {
+    private static final String HEALTH_CODE = "healthCode";
+    private static final String LEGACY_DATA = "{\"SHARING_SCOPE\":\"SPONSORS_AND_PARTNERS\","
+            + "\"EXTERNAL_IDENTIFIER\":\"ext-id\"}";
+
+    private AmazonDynamoDB mockClient;
+    private DynamoParticipantOptionsDao dao;
+
+    @Before
+    public void before() {
+        mockClient = mock(AmazonDynamoDB.class);
+        when(mockClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult());
+        dao = new DynamoParticipantOptionsDao();
+        dao.setDynamoDbClient(mockClient);
+    }
+
+    @Test
+    public void setOptionsWritesAttributesAndData() throws Exception {
+        Map<ParticipantOption,String> options = Maps.newHashMap();
+        options.put(ParticipantOption.SHARING_SCOPE, SharingScope.ALL_QUALIFIED_RESEARCHERS.name());
+        options.put(ParticipantOption.EXTERNAL_IDENTIFIER, null);
+        dao.setOptions(TestConstants.TEST_STUDY, HEALTH_CODE, options);
+
+        UpdateItemRequest request = getUpdateRequest();
+        assertEquals(HEALTH_CODE, request.getKey().get("healthDataCode").getS());
+        assertEquals("SET #studyKey = :studyKey, #SHARING_SCOPE = :SHARING_SCOPE, #data = :data "
+                + "REMOVE #EMAIL_NOTIFICATIONS, #EXTERNAL_IDENTIFIER", request.getUpdateExpression());
+        assertEquals("attribute_not_exists(#data)", request.getConditionExpression());
+        assertEquals(TestConstants.TEST_STUDY_IDENTIFIER, request.getExpressionAttributeValues().get(":studyKey")
+                .getS());
+        assertEquals(SharingScope.ALL_QUALIFIED_RESEARCHERS.name(), request.getExpressionAttributeValues()
+                .get(":SHARING_SCOPE").getS());
+        assertEquals(ImmutableMap.of("SHARING_SCOPE", SharingScope.ALL_QUALIFIED_RESEARCHERS.name()),
+                getData(request));
+    }
+
+    @Test
+    public void deleteOptionOfMigratedItemDoesNotCreateItem() throws Exception {
+        when(mockClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult().withItem(ImmutableMap.of(
+                "SHARING_SCOPE", new AttributeValue().withS(SharingScope.NO_SHARING.name()),
+                "EMAIL_NOTIFICATIONS", new AttributeValue().withS("false"))));
+
+        dao.deleteOption(HEALTH_CODE, ParticipantOption.EMAIL_NOTIFICATIONS);
+
+        UpdateItemRequest request = getUpdateRequest();
+        assertEquals("SET #SHARING_SCOPE = :SHARING_SCOPE, #data = :data REMOVE #EMAIL_NOTIFICATIONS, "
+                + "#EXTERNAL_IDENTIFIER", request.getUpdateExpression());
+        assertEquals("attribute_exists(#healthCode) AND attribute_not_exists(#data)",
+                request.getConditionExpression());
+        assertEquals(ImmutableMap.of("SHARING_SCOPE", SharingScope.NO_SHARING.name()), getData(request));
+    }
+
+    @Test
+    public void deleteOptionOfMissingItem() {
+        dao.deleteOption(HEALTH_CODE, ParticipantOption.EMAIL_NOTIFICATIONS);
+        verify(mockClient, never()).updateItem(any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void legacyDataIsMigratedAndKept() throws Exception {
+        AttributeValue data = new AttributeValue().withS(LEGACY_DATA);
+        when(mockClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult().withItem(
+                ImmutableMap.of("data", data)));
+
+        dao.setOption(TestConstants.TEST_STUDY, HEALTH_CODE, ParticipantOption.EMAIL_NOTIFICATIONS, "false");
+
+        UpdateItemRequest migration = getUpdateRequest();
+        assertEquals("#data = :oldData", migration.getConditionExpression());
+        assertEquals(data, migration.getExpressionAttributeValues().get(":oldData"));
+        assertFalse(migration.getUpdateExpression().contains("REMOVE"));
+        Map<String,AttributeValue> values = migration.getExpressionAttributeValues();
+        assertEquals("SPONSORS_AND_PARTNERS", values.get(":SHARING_SCOPE").getS());
+        assertEquals("ext-id", values.get(":EXTERNAL_IDENTIFIER").getS());
+        assertEquals("false", values.get(":EMAIL_NOTIFICATIONS").getS());
+        assertEquals(ImmutableMap.of("SHARING_SCOPE", "SPONSORS_AND_PARTNERS", "EXTERNAL_IDENTIFIER", "ext-id",
+                "EMAIL_NOTIFICATIONS", "false"), getData(migration));
+    }
+
+    @Test
+    public void concurrentChangesFailAfterMaxAttempts() {
+        when(mockClient.updateItem(any(UpdateItemRequest.class))).thenThrow(
+                new ConditionalCheckFailedException("test exception"));
+        when(mockClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult().withItem(
+                ImmutableMap.of("data", new AttributeValue().withS(LEGACY_DATA))));
+
+        try {
+            dao.setOption(TestConstants.TEST_STUDY, HEALTH_CODE, ParticipantOption.EMAIL_NOTIFICATIONS, "false");
+            fail("expected exception");
+        } catch (ConcurrentModificationException ex) {
+            // expected exception
+        }
+        verify(mockClient, times(DynamoParticipantOptionsDao.MAX_UPDATE_ATTEMPTS)).updateItem(
+                any(UpdateItemRequest.class));
+    }
+
+    @Test
+    public void dataIsReadInsteadOfAttributes() {
+        // An earlier server changed the data without changing the attributes
+        when(mockClient.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult().withItem(ImmutableMap.of(
+                "data", new AttributeValue().withS(LEGACY_DATA),
+                "SHARING_SCOPE", new AttributeValue().withS(SharingScope.NO_SHARING.name()))));
+
+        Map<ParticipantOption,String> options = dao.getAllParticipantOptions(HEALTH_CODE);
+        assertEquals(SharingScope.SPONSORS_AND_PARTNERS.name(), options.get(ParticipantOption.SHARING_SCOPE));
+        assertEquals("ext-id", options.get(ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertEquals("true", options.get(ParticipantOption.EMAIL_NOTIFICATIONS));
+    }
+
+    @Test
+    public void mapperModelReadsData() {
+        DynamoParticipantOptions options = new DynamoParticipantOptions();
+        options.setSharingScope(SharingScope.NO_SHARING.name());
+        options.setData(LEGACY_DATA);
+        options.setEmailNotifications("false");
+        assertEquals(SharingScope.SPONSORS_AND_PARTNERS.name(), options.getOptions().get("SHARING_SCOPE"));
+        assertEquals("ext-id", options.getOptions().get("EXTERNAL_IDENTIFIER"));
+        assertFalse(options.getOptions().containsKey("EMAIL_NOTIFICATIONS"));
+    }
+
+    private UpdateItemRequest getUpdateRequest() {
+        ArgumentCaptor<UpdateItemRequest> requestCaptor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(mockClient).updateItem(requestCaptor.capture());
+        return requestCaptor.getValue();
+    }
+
+    private static Map<String,String> getData(UpdateItemRequest request) throws Exception {
+        String data = request.getExpressionAttributeValues().get(":data").getS();
+        return BridgeObjectMapper.get().readValue(data, new TypeReference<Map<String,String>>() {});
+    }
+}
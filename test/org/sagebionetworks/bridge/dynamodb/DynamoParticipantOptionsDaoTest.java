@@ -1,13 +1,16 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.util.ArrayList;
+import java.util.Map;
 
 import javax.annotation.Resource;
 
@@ -15,6 +18,7 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.sagebionetworks.bridge.TestConstants;
 import org.sagebionetworks.bridge.dao.ParticipantOption;
 import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
@@ -24,10 +28,14 @@ import org.sagebionetworks.bridge.services.StudyServiceImpl;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedScanList;
-import com.google.common.collect.Maps;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.google.common.collect.ImmutableMap;
 
 @ContextConfiguration("classpath:test-context.xml")
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -72,19 +80,31 @@ public class DynamoParticipantOptionsDaoTest {
     
     @Test
     public void getAllParticipantOptions() {
-        // Verify we're only calling load
-        DynamoParticipantOptions options = getOptionsForUser();
-        
+        // Verify we're only calling one GetItem, projecting the data attribute
+        Map<String,AttributeValue> item = ImmutableMap.of(DynamoParticipantOptionsDao.DATA_ATTRIBUTE,
+                new AttributeValue().withS("{\"EXTERNAL_IDENTIFIER\":\"ext-id\"}"));
+        AmazonDynamoDB client = mock(AmazonDynamoDB.class);
+        when(client.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult().withItem(item));
         DynamoDBMapper mapper = mock(DynamoDBMapper.class);
-        when(mapper.load(any())).thenReturn(options);
 
         DynamoParticipantOptionsDao optionsDao = new DynamoParticipantOptionsDao();
+        optionsDao.setDynamoDbClient(client);
         optionsDao.setMapper(mapper);
         
-        optionsDao.getAllParticipantOptions("aaa");
+        Map<ParticipantOption,String> options = optionsDao.getAllParticipantOptions("aaa");
+        assertEquals("ext-id", options.get(ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertEquals(SharingScope.NO_SHARING.name(), options.get(ParticipantOption.SHARING_SCOPE));
         
-        verify(mapper).load(any());
+        ArgumentCaptor<GetItemRequest> requestCaptor = ArgumentCaptor.forClass(GetItemRequest.class);
+        verify(client).getItem(requestCaptor.capture());
+        verifyNoMoreInteractions(client);
         verifyNoMoreInteractions(mapper);
+
+        GetItemRequest request = requestCaptor.getValue();
+        assertEquals("aaa", request.getKey().get(DynamoParticipantOptionsDao.HEALTH_CODE_ATTRIBUTE).getS());
+        assertEquals("#data", request.getProjectionExpression());
+        assertEquals(DynamoParticipantOptionsDao.DATA_ATTRIBUTE, request.getExpressionAttributeNames().get("#data"));
+        assertTrue(request.getConsistentRead());
     }
     
     @SuppressWarnings("unchecked")
@@ -92,26 +112,18 @@ public class DynamoParticipantOptionsDaoTest {
     public void getOptionForAllStudyParticipants() {
         // Verify we're only calling scan
 
-        PaginatedScanList<DynamoParticipantOptions> results = mock(PaginatedScanList.class);
-        when(results.iterator()).thenReturn(new ArrayList<DynamoParticipantOptions>().iterator());
+        ScanResultPage<DynamoParticipantOptions> results = new ScanResultPage<>();
+        results.setResults(new ArrayList<DynamoParticipantOptions>());
         
         DynamoDBMapper mapper = mock(DynamoDBMapper.class);
-        when(mapper.scan(any(Class.class), any(DynamoDBScanExpression.class))).thenReturn(results);
+        when(mapper.scanPage(any(Class.class), any(DynamoDBScanExpression.class))).thenReturn(results);
 
         DynamoParticipantOptionsDao optionsDao = new DynamoParticipantOptionsDao();
         optionsDao.setMapper(mapper);
         
         optionsDao.getOptionForAllStudyParticipants(new StudyIdentifierImpl("api"), ParticipantOption.SHARING_SCOPE);
         
-        verify(mapper).scan(any(Class.class), any(DynamoDBScanExpression.class));
+        verify(mapper, atLeastOnce()).scanPage(any(Class.class), any(DynamoDBScanExpression.class));
         verifyNoMoreInteractions(mapper);
     }
-
-    private DynamoParticipantOptions getOptionsForUser() {
-        DynamoParticipantOptions options = new DynamoParticipantOptions();
-        options.setHealthCode("aaa");
-        options.setStudyKey("api");
-        options.setOptions(Maps.<String,String>newHashMap());
-        return options;
-    }
 }
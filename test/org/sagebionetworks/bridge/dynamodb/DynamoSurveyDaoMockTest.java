@@ -0,0 +1,249 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+@SuppressWarnings("unchecked")
+public class DynamoSurveyDaoMockTest {
+    private static final String ELEMENTS_KEY = "surveyGuid:1000:elements";
+
+    private DynamoDBMapper surveyMapper;
+    private DynamoDBMapper surveyElementMapper;
+    private DynamoSurveyDao dao;
+    private List<DynamoSurveyElement> storedElements;
+
+    @Before
+    public void before() {
+        storedElements = Lists.newArrayList();
+        for (int i=0; i < 3; i++) {
+            storedElements.add(stored(screen("screen" + i), i));
+        }
+        QueryResultPage<DynamoSurveyElement> elementPage = new QueryResultPage<>();
+        elementPage.setResults(storedElements);
+
+        QueryResultPage<DynamoSurvey> surveyPage = new QueryResultPage<>();
+        surveyPage.setResults(Lists.newArrayList(survey(2L, 3)));
+
+        surveyMapper = mock(DynamoDBMapper.class);
+        when(surveyMapper.queryPage(eq(DynamoSurvey.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(surveyPage);
+        surveyElementMapper = mock(DynamoDBMapper.class);
+        when(surveyElementMapper.queryPage(eq(DynamoSurveyElement.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(elementPage);
+
+        dao = new DynamoSurveyDao();
+        dao.setSurveyMapper(surveyMapper);
+        dao.setSurveyElementMapper(surveyElementMapper);
+    }
+
+    @Test
+    public void updateWithSameElementsWritesOnlySurvey() {
+        DynamoSurvey update = survey(2L, null);
+        update.setName("New name");
+        update.setElements(Lists.<SurveyElement>newArrayList(screen("screen0"), screen("screen1"), screen("screen2")));
+
+        dao.updateSurvey(update);
+
+        verify(surveyElementMapper, never()).batchSave(anyList());
+        verify(surveyElementMapper, never()).batchDelete(anyList());
+        verify(surveyMapper).save(update);
+        assertEquals(Lists.newArrayList(ELEMENTS_KEY + ":0", ELEMENTS_KEY + ":1", ELEMENTS_KEY + ":2"),
+                update.getElementKeys());
+    }
+
+    @Test
+    public void updateWritesOnlyChangedElementsAndDeletesRemovedOnes() {
+        DynamoSurveyInfoScreen changed = screen("screen1");
+        changed.setTitle("A different title");
+        DynamoSurvey update = survey(2L, null);
+        update.setElements(Lists.<SurveyElement>newArrayList(screen("screen0"), changed, screen("added")));
+
+        dao.updateSurvey(update);
+
+        ArgumentCaptor<List> saved = ArgumentCaptor.forClass(List.class);
+        verify(surveyElementMapper).batchSave(saved.capture());
+        assertEquals(Lists.newArrayList(changed, update.getElements().get(2)), saved.getValue());
+        String newKey = changed.getSurveyCompoundKey();
+        assertTrue(newKey.startsWith("surveyGuid:1000:"));
+        assertNotEquals(ELEMENTS_KEY, newKey);
+        assertEquals(Lists.newArrayList(ELEMENTS_KEY + ":0", newKey + ":0", newKey + ":1"), update.getElementKeys());
+
+        // The replaced and removed elements are deleted once the survey record is committed
+        ArgumentCaptor<List> deleted = ArgumentCaptor.forClass(List.class);
+        verify(surveyElementMapper).batchDelete(deleted.capture());
+        assertEquals(Sets.newHashSet(ELEMENTS_KEY + ":1", ELEMENTS_KEY + ":2"), elementKeys(deleted.getValue()));
+    }
+
+    @Test
+    public void movingElementsOnlyWritesSurvey() {
+        DynamoSurvey update = survey(2L, null);
+        update.setElements(Lists.<SurveyElement>newArrayList(screen("screen2"), screen("screen0"), screen("screen1")));
+
+        dao.updateSurvey(update);
+
+        verify(surveyElementMapper, never()).batchSave(anyList());
+        verify(surveyElementMapper, never()).batchDelete(anyList());
+        assertEquals(Lists.newArrayList(ELEMENTS_KEY + ":2", ELEMENTS_KEY + ":0", ELEMENTS_KEY + ":1"),
+                update.getElementKeys());
+    }
+
+    @Test
+    public void failedCommitDeletesNewElements() {
+        doThrow(new ConditionalCheckFailedException("test")).when(surveyMapper).save(any(DynamoSurvey.class));
+        DynamoSurvey update = survey(2L, null);
+        update.setElements(Lists.<SurveyElement>newArrayList(screen("other")));
+        try {
+            dao.updateSurvey(update);
+            fail("Should have thrown exception");
+        } catch(ConcurrentModificationException e) {
+            ArgumentCaptor<List> saved = ArgumentCaptor.forClass(List.class);
+            verify(surveyElementMapper).batchSave(saved.capture());
+            ArgumentCaptor<List> deleted = ArgumentCaptor.forClass(List.class);
+            verify(surveyElementMapper).batchDelete(deleted.capture());
+            assertEquals(saved.getValue(), deleted.getValue());
+        }
+    }
+
+    @Test
+    public void staleUpdateFailsBeforeWritingElements() {
+        DynamoSurvey update = survey(1L, null);
+        update.setElements(Lists.<SurveyElement>newArrayList(screen("other")));
+        try {
+            dao.updateSurvey(update);
+            fail("Should have thrown exception");
+        } catch(ConcurrentModificationException e) {
+            verify(surveyElementMapper, never()).batchSave(anyList());
+            verify(surveyMapper, never()).save(any(DynamoSurvey.class));
+        }
+    }
+
+    @Test
+    public void committedElementsMustMatchCount() {
+        assertEquals(3, DynamoSurveyDao.getCommittedElements(survey(2L, 3), storedElements).size());
+
+        // Elements that are missing have been replaced by a later save
+        assertNull(DynamoSurveyDao.getCommittedElements(survey(2L, 4), storedElements));
+
+        // Surveys saved before the element count was recorded use all stored elements
+        assertEquals(3, DynamoSurveyDao.getCommittedElements(survey(2L, null), storedElements).size());
+    }
+
+    @Test
+    public void elementsKeyFallsBackToSurveyKeys() {
+        assertEquals(ELEMENTS_KEY, DynamoSurveyDao.getElementsKey(survey(2L, 3)));
+        DynamoSurvey legacy = survey(2L, null);
+        legacy.setElementsKey(null);
+        assertEquals("surveyGuid:1000", DynamoSurveyDao.getElementsKey(legacy));
+    }
+
+    @Test
+    public void readRetriesUntilElementsMatchSurvey() {
+        QueryResultPage<DynamoSurveyElement> partialPage = new QueryResultPage<>();
+        partialPage.setResults(storedElements.subList(0, 1));
+        QueryResultPage<DynamoSurveyElement> fullPage = new QueryResultPage<>();
+        fullPage.setResults(storedElements);
+        when(surveyElementMapper.queryPage(eq(DynamoSurveyElement.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(partialPage, fullPage);
+
+        Survey survey = dao.getSurvey(new DynamoSurvey("surveyGuid", 1000L));
+        assertEquals(3, survey.getElements().size());
+    }
+
+    @Test
+    public void readLoadsListedElementsInOrderAndRetriesIfOneIsMissing() {
+        DynamoSurvey listed = survey(3L, null);
+        listed.setElementKeys(Lists.newArrayList("key2:0", "key1:0", "key1:1"));
+        QueryResultPage<DynamoSurvey> surveyPage = new QueryResultPage<>();
+        surveyPage.setResults(Lists.newArrayList(listed));
+        when(surveyMapper.queryPage(eq(DynamoSurvey.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(surveyPage);
+
+        DynamoSurveyElement first = stored(screen("first"), "key2", 0);
+        DynamoSurveyElement second = stored(screen("second"), "key1", 0);
+        DynamoSurveyElement third = stored(screen("third"), "key1", 1);
+        Map<String,List<Object>> partial = Maps.newHashMap();
+        partial.put("SurveyElement", Lists.<Object>newArrayList(first, third));
+        Map<String,List<Object>> full = Maps.newHashMap();
+        full.put("SurveyElement", Lists.<Object>newArrayList(third, first, second));
+        when(surveyElementMapper.batchLoad(anyList())).thenReturn(partial, full);
+
+        Survey survey = dao.getSurvey(new DynamoSurvey("surveyGuid", 1000L));
+        assertEquals(3, survey.getElements().size());
+        assertEquals("first", survey.getElements().get(0).getIdentifier());
+        assertEquals("second", survey.getElements().get(1).getIdentifier());
+        assertEquals("third", survey.getElements().get(2).getIdentifier());
+        verify(surveyElementMapper, never()).queryPage(eq(DynamoSurveyElement.class),
+                any(DynamoDBQueryExpression.class));
+    }
+
+    private DynamoSurvey survey(Long version, Integer elementCount) {
+        DynamoSurvey survey = new DynamoSurvey("surveyGuid", 1000L);
+        survey.setStudyIdentifier("studyId");
+        survey.setVersion(version);
+        survey.setElementsKey(ELEMENTS_KEY);
+        survey.setElementCount(elementCount);
+        return survey;
+    }
+
+    private DynamoSurveyInfoScreen screen(String identifier) {
+        DynamoSurveyInfoScreen screen = new DynamoSurveyInfoScreen();
+        screen.setGuid(identifier + "-guid");
+        screen.setIdentifier(identifier);
+        screen.setTitle("Title");
+        screen.setPrompt("Prompt");
+        return screen;
+    }
+
+    private DynamoSurveyElement stored(SurveyElement element, int order) {
+        return stored(element, ELEMENTS_KEY, order);
+    }
+
+    private DynamoSurveyElement stored(SurveyElement element, String key, int order) {
+        DynamoSurveyElement stored = new DynamoSurveyElement();
+        stored.setSurveyCompoundKey(key);
+        stored.setGuid(element.getGuid());
+        stored.setIdentifier(element.getIdentifier());
+        stored.setType(element.getType());
+        stored.setData(element.getData());
+        stored.setOrder(order);
+        return stored;
+    }
+
+    private Set<String> elementKeys(List<DynamoSurveyElement> elements) {
+        Set<String> keys = Sets.newHashSet();
+        for (DynamoSurveyElement element : elements) {
+            keys.add(DynamoSurveyDao.getElementKey(element));
+        }
+        return keys;
+    }
+}
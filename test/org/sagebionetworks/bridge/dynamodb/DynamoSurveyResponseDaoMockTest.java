@@ -0,0 +1,147 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+import org.sagebionetworks.bridge.models.surveys.SurveyResponse;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.google.common.collect.Lists;
+
+public class DynamoSurveyResponseDaoMockTest {
+
+    private AmazonDynamoDB mockClient;
+    private DynamoSurveyResponseDao dao;
+    private DynamoSurvey survey;
+
+    @Before
+    public void before() {
+        mockClient = mock(AmazonDynamoDB.class);
+        dao = new DynamoSurveyResponseDao();
+        dao.setDynamoDbClient(mockClient);
+
+        survey = new DynamoSurvey();
+        survey.setGuid("surveyGuid");
+        survey.setCreatedOn(1000L);
+        List<SurveyElement> elements = Lists.newArrayList();
+        for (String guid : new String[] { "q1", "q2" }) {
+            DynamoSurveyQuestion question = new DynamoSurveyQuestion();
+            question.setGuid(guid);
+            question.setIdentifier(guid);
+            elements.add(question);
+        }
+        survey.setElements(elements);
+    }
+
+    @Test
+    public void appendIsOneConditionalUpdate() {
+        DynamoSurveyResponse response = createResponse(3L);
+
+        dao.appendSurveyAnswers(response, survey, Lists.newArrayList(createAnswer("q1", 2000L)), "batch-1");
+
+        ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(mockClient).updateItem(captor.capture());
+        UpdateItemRequest request = captor.getValue();
+        assertEquals("healthCode", request.getKey().get("healthCode").getS());
+        assertEquals("identifier", request.getKey().get("identifier").getS());
+        assertEquals("#version = :expectedVersion", request.getConditionExpression());
+        assertEquals("3", request.getExpressionAttributeValues().get(":expectedVersion").getN());
+        assertEquals("4", request.getExpressionAttributeValues().get(":newVersion").getN());
+        assertEquals("2000", request.getExpressionAttributeValues().get(":startedOn").getN());
+        assertNull(request.getExpressionAttributeValues().get(":completedOn"));
+        assertTrue(request.getExpressionAttributeValues().get(":data").getS().contains("batch-1"));
+
+        assertEquals(4L, response.getVersion().longValue());
+        assertEquals(1, response.getAnswers().size());
+        assertEquals(Lists.newArrayList("batch-1"), response.getAppliedKeys());
+    }
+
+    @Test
+    public void appendOfAllQuestionsCompletesResponse() {
+        DynamoSurveyResponse response = createResponse(1L);
+
+        dao.appendSurveyAnswers(response, survey,
+                Lists.newArrayList(createAnswer("q1", 2000L), createAnswer("q2", 3000L)), null);
+
+        assertEquals(3000L, response.getCompletedOn().longValue());
+        assertEquals(0, response.getAppliedKeys().size());
+    }
+
+    @Test
+    public void appliedKeyIsNotWrittenAgain() {
+        DynamoSurveyResponse response = createResponse(3L);
+        response.setAppliedKeys(Lists.newArrayList("batch-1"));
+
+        SurveyResponse result = dao.appendSurveyAnswers(response, survey,
+                Lists.newArrayList(createAnswer("q1", 2000L)), "batch-1");
+
+        assertSame(response, result);
+        assertEquals(0, response.getAnswers().size());
+        verifyZeroInteractions(mockClient);
+    }
+
+    @Test
+    public void appliedKeysAreBounded() {
+        DynamoSurveyResponse response = createResponse(3L);
+        List<String> keys = Lists.newArrayList();
+        for (int i = 0; i < DynamoSurveyResponseDao.MAX_APPLIED_KEYS; i++) {
+            keys.add("old-" + i);
+        }
+        response.setAppliedKeys(keys);
+
+        dao.appendSurveyAnswers(response, survey, Lists.newArrayList(createAnswer("q1", 2000L)), "new");
+
+        assertEquals(DynamoSurveyResponseDao.MAX_APPLIED_KEYS, response.getAppliedKeys().size());
+        assertEquals("old-1", response.getAppliedKeys().get(0));
+        assertEquals("new", response.getAppliedKeys().get(DynamoSurveyResponseDao.MAX_APPLIED_KEYS - 1));
+    }
+
+    @Test
+    public void failedConditionIsConcurrentModification() {
+        when(mockClient.updateItem(any(UpdateItemRequest.class))).thenThrow(
+                new ConditionalCheckFailedException("version changed"));
+        DynamoSurveyResponse response = createResponse(3L);
+        try {
+            dao.appendSurveyAnswers(response, survey, Lists.newArrayList(createAnswer("q1", 2000L)), "batch-1");
+            fail("Should have thrown exception");
+        } catch(ConcurrentModificationException e) {
+            assertNotNull(e.getEntity());
+        }
+    }
+
+    private DynamoSurveyResponse createResponse(long version) {
+        DynamoSurveyResponse response = new DynamoSurveyResponse();
+        response.setHealthCode("healthCode");
+        response.setIdentifier("identifier");
+        response.setSurveyKey(survey);
+        response.setVersion(version);
+        return response;
+    }
+
+    private SurveyAnswer createAnswer(String questionGuid, long answeredOn) {
+        SurveyAnswer answer = new SurveyAnswer();
+        answer.setQuestionGuid(questionGuid);
+        answer.setAnsweredOn(answeredOn);
+        answer.addAnswer("true");
+        return answer;
+    }
+}
@@ -151,7 +151,7 @@ public class DynamoSurveyResponseDaoTest {
         answer.setQuestionGuid(survey.getElements().get(1).getGuid());
         answers.add(answer);
 
-        surveyResponseDao.appendSurveyAnswers(newResponse, answers);
+        surveyResponseDao.appendSurveyAnswers(newResponse, survey, answers, null);
 
         newResponse = surveyResponseDao.getSurveyResponse(HEALTH_DATA_CODE, response.getIdentifier());
         assertEquals("Now the response has two answers", 2, newResponse.getAnswers().size());
@@ -160,14 +160,14 @@ public class DynamoSurveyResponseDaoTest {
 
         assertFalse("Survey is still in use", noResponses(survey));
         // You can't append answers to questions that have already been answered.
-        surveyResponseDao.appendSurveyAnswers(newResponse, answers);
+        surveyResponseDao.appendSurveyAnswers(newResponse, survey, answers, null);
         newResponse = surveyResponseDao.getSurveyResponse(HEALTH_DATA_CODE, response.getIdentifier());
         assertEquals("The response continues to have two answers", 2, newResponse.getAnswers().size());
 
         // But if you update a timestamp, it looks new and it will be updated.
         answers.get(0).setAnsweredOn(DateUtils.getCurrentMillisFromEpoch());
         answers.get(0).getAnswers().set(0, "true"); // eek
-        surveyResponseDao.appendSurveyAnswers(newResponse, answers);
+        surveyResponseDao.appendSurveyAnswers(newResponse, survey, answers, null);
         newResponse = surveyResponseDao.getSurveyResponse(HEALTH_DATA_CODE, response.getIdentifier());
 
         newResponse = surveyResponseDao.getSurveyResponse(HEALTH_DATA_CODE, response.getIdentifier());
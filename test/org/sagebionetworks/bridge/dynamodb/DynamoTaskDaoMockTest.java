@@ -1,9 +1,14 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -11,6 +16,8 @@ import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
@@ -23,17 +30,31 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.dao.TaskDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.schedules.Activity;
 import org.sagebionetworks.bridge.models.schedules.Task;
 import org.sagebionetworks.bridge.models.schedules.TaskStatus;
+import org.sagebionetworks.bridge.models.schedules.TaskUpdateResult;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public class DynamoTaskDaoMockTest {
 
@@ -78,16 +99,22 @@ public class DynamoTaskDaoMockTest {
             for (final Task task : tasks) {
                 results.add((DynamoTask)task);
             }
-            when(mapper.load(any())).thenAnswer(new Answer<DynamoTask>() {
-                @Override public DynamoTask answer(InvocationOnMock invocation) throws Throwable {
-                    DynamoTask thisTask = (DynamoTask)invocation.getArguments()[0];
-                    for (Task task : tasks) {
-                        if (thisTask.getGuid().equals(task.getGuid()) && 
-                            thisTask.getHealthCode().equals(task.getHealthCode())) {
-                            return thisTask;
+            when(mapper.batchLoad(any(List.class))).thenAnswer(new Answer<Map<String,List<Object>>>() {
+                @Override public Map<String,List<Object>> answer(InvocationOnMock invocation) throws Throwable {
+                    List<Object> keys = (List<Object>)invocation.getArguments()[0];
+                    List<Object> loaded = Lists.newArrayList();
+                    for (Object key : keys) {
+                        DynamoTask thisTask = (DynamoTask)key;
+                        for (Task task : tasks) {
+                            if (thisTask.getGuid().equals(task.getGuid()) && 
+                                thisTask.getHealthCode().equals(task.getHealthCode())) {
+                                loaded.add(thisTask);
+                            }
                         }
                     }
-                    return null;
+                    Map<String,List<Object>> results = Maps.newHashMap();
+                    results.put("Task", loaded);
+                    return results;
                 }
                 
             });
@@ -98,7 +125,7 @@ public class DynamoTaskDaoMockTest {
         when(mapper.query(any(Class.class), any(DynamoDBQueryExpression.class))).thenReturn(queryResults);
     }
     
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings({"unchecked", "rawtypes"})
     @Test
     public void testOfFirstPeriod() throws Exception {
         DateTime endsOn = NOW.plus(Period.parse("P2D"));
@@ -116,8 +143,23 @@ public class DynamoTaskDaoMockTest {
         assertTask("2015-04-14T13:00:00.000-07:00", TestUtils.ACTIVITY_2, tasks2.get(3));
         assertTask("2015-04-14T13:00:00.000-07:00", TestUtils.ACTIVITY_1, tasks2.get(4));
         
-        verify(mapper).query(any(Class.class), any(DynamoDBQueryExpression.class));
+        ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mapper).query(any(Class.class), queryCaptor.capture());
         verifyNoMoreInteractions(mapper);
+        
+        // Hidden tasks are excluded by a key condition of the hidesOn index, not by a query filter
+        DynamoDBQueryExpression<DynamoTask> query = queryCaptor.getValue();
+        assertEquals(DynamoTask.HIDES_ON_INDEX, query.getIndexName());
+        assertEquals(ComparisonOperator.GT.toString(), 
+                query.getRangeKeyConditions().get("hidesOn").getComparisonOperator());
+        assertEquals(Long.toString(NOW.getMillis()), 
+                query.getRangeKeyConditions().get("hidesOn").getAttributeValueList().get(0).getN());
+        
+        // Tasks are saved ahead of the end timestamp, so later tasks are filtered out
+        assertEquals(ComparisonOperator.LE.toString(), 
+                query.getQueryFilter().get("scheduledOn").getComparisonOperator());
+        assertEquals(Long.toString(endsOn.getMillis()), 
+                query.getQueryFilter().get("scheduledOn").getAttributeValueList().get(0).getN());
     }
     
     @SuppressWarnings("unchecked")
@@ -221,7 +263,7 @@ public class DynamoTaskDaoMockTest {
         taskDao.updateTasks(HEALTH_CODE, tasks);
 
         // So yeah, those tasks have been updated. Capture them and verify that they were updated
-        verify(mapper, times(2)).load(any());
+        verify(mapper).batchLoad(any(List.class));
         verify(mapper).batchSave(argument.capture());
         verifyNoMoreInteractions(mapper);
         
@@ -232,6 +274,216 @@ public class DynamoTaskDaoMockTest {
         assertEquals(TaskStatus.FINISHED, savedTask2.getStatus());
     }
     
+    /** A task of the participant that updates can be applied to. Returns its GUID. */
+    private String mockStoredTask() {
+        String guid = BridgeUtils.generateGuid();
+        Task dbTask = new DynamoTask();
+        dbTask.setHealthCode(HEALTH_CODE);
+        dbTask.setActivity(new Activity("Activity 1", "task:task1"));
+        dbTask.setScheduledOn(DateTime.parse("2015-04-11T13:00:00.000-07:00").getMillis());
+        dbTask.setGuid(guid);
+        mockQuery(NOW.plusDays(2), Lists.newArrayList(dbTask));
+        return guid;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void updateTasksReportsEachTask() {
+        String guid1 = mockStoredTask();
+        
+        Task started = new DynamoTask();
+        started.setGuid(guid1);
+        started.setStartedOn(NOW.getMillis());
+        Task missing = new DynamoTask();
+        missing.setGuid("missing-guid");
+        missing.setStartedOn(NOW.getMillis());
+        Task unchanged = new DynamoTask();
+        unchanged.setGuid("unchanged-guid");
+        
+        List<TaskUpdateResult> results = taskDao.updateTasks(HEALTH_CODE, 
+                Lists.newArrayList(started, missing, unchanged));
+        
+        assertEquals(3, results.size());
+        assertResult(guid1, TaskUpdateResult.Status.UPDATED, results.get(0));
+        assertResult("missing-guid", TaskUpdateResult.Status.NOT_FOUND, results.get(1));
+        assertResult("unchanged-guid", TaskUpdateResult.Status.NOT_CHANGED, results.get(2));
+        
+        // Both changed tasks are loaded in one batch, and only the found task is saved
+        ArgumentCaptor<List> keysCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mapper).batchLoad(keysCaptor.capture());
+        assertEquals(2, keysCaptor.getValue().size());
+        ArgumentCaptor<List> saveCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mapper).batchSave(saveCaptor.capture());
+        assertEquals(1, saveCaptor.getValue().size());
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void updateTasksRetriesFailedBatches() {
+        String guid1 = mockStoredTask();
+        
+        // Fails the first time, succeeds the second
+        when(mapper.batchSave(any(List.class))).thenReturn(Lists.newArrayList(getFailedBatch(guid1)))
+                .thenReturn(Lists.<FailedBatch>newArrayList());
+        
+        Task started = new DynamoTask();
+        started.setGuid(guid1);
+        started.setStartedOn(NOW.getMillis());
+        List<TaskUpdateResult> results = taskDao.updateTasks(HEALTH_CODE, Lists.newArrayList(started));
+        
+        assertResult(guid1, TaskUpdateResult.Status.UPDATED, results.get(0));
+        verify(mapper, times(2)).batchSave(any(List.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void updateTasksReportsTasksThatKeepFailing() {
+        String guid1 = mockStoredTask();
+        
+        when(mapper.batchSave(any(List.class))).thenReturn(Lists.newArrayList(getFailedBatch(guid1)));
+        
+        Task finished = new DynamoTask();
+        finished.setGuid(guid1);
+        finished.setFinishedOn(NOW.getMillis());
+        long start = System.nanoTime();
+        List<TaskUpdateResult> results = taskDao.updateTasks(HEALTH_CODE, Lists.newArrayList(finished));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        
+        // Waits before each retry, twice as long each time
+        assertTrue(elapsedMillis >= 3 * DynamoTaskDao.SAVE_RETRY_DELAY_MILLIS);
+        assertResult(guid1, TaskUpdateResult.Status.FAILED, results.get(0));
+        assertTrue(results.get(0).getMessage().startsWith("test exception"));
+        verify(mapper, times(DynamoTaskDao.MAX_SAVE_ATTEMPTS)).batchSave(any(List.class));
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Test
+    public void getTasksPage() {
+        Task task = new DynamoTask();
+        task.setGuid("guid1");
+        QueryResultPage<DynamoTask> page = new QueryResultPage<>();
+        page.setResults(Lists.newArrayList((DynamoTask)task));
+        Map<String,AttributeValue> lastKey = Maps.newHashMap();
+        lastKey.put("healthCode", new AttributeValue().withS(HEALTH_CODE));
+        lastKey.put("guid", new AttributeValue().withS("guid1"));
+        lastKey.put("hidesOn", new AttributeValue().withN("1428879656123"));
+        page.setLastEvaluatedKey(lastKey);
+        when(mapper.queryPage(any(Class.class), any(DynamoDBQueryExpression.class))).thenReturn(page);
+        
+        PagedResourceList<Task> tasks = taskDao.getTasks(HEALTH_CODE, NOW.plusDays(2), null, 1);
+        assertEquals(1, tasks.getTotal());
+        assertEquals("1428879656123:guid1", tasks.getOffsetKey());
+        
+        // The offset key is where the next page starts
+        page.setLastEvaluatedKey(null);
+        tasks = taskDao.getTasks(HEALTH_CODE, NOW.plusDays(2), tasks.getOffsetKey(), 1);
+        assertNull(tasks.getOffsetKey());
+        
+        ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mapper, times(2)).queryPage(any(Class.class), queryCaptor.capture());
+        DynamoDBQueryExpression<DynamoTask> query = queryCaptor.getAllValues().get(0);
+        assertEquals(DynamoTask.HIDES_ON_INDEX, query.getIndexName());
+        assertEquals(new Integer(1), query.getLimit());
+        assertNull(query.getExclusiveStartKey());
+        assertEquals(lastKey, queryCaptor.getAllValues().get(1).getExclusiveStartKey());
+    }
+    
+    @Test
+    public void getTasksPageRejectsInvalidOffsetKey() {
+        for (String offsetKey : new String[] {"guid1", "not-a-number:guid1", "1428879656123:"}) {
+            try {
+                taskDao.getTasks(HEALTH_CODE, NOW.plusDays(2), offsetKey, 10);
+                fail("expected exception");
+            } catch (BadRequestException e) {
+                // expected exception
+            }
+        }
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Test
+    public void deleteExpiredTasksArchivesThenDeletesInBatches() {
+        final List<DynamoTask> expired = Lists.newArrayList();
+        for (int i=0; i < 5; i++) {
+            DynamoTask task = new DynamoTask();
+            task.setHealthCode(HEALTH_CODE);
+            task.setGuid("guid" + i);
+            expired.add(task);
+        }
+        when(mapper.scanPage(any(Class.class), any(DynamoDBScanExpression.class))).thenAnswer(
+                new Answer<ScanResultPage<DynamoTask>>() {
+            @Override public ScanResultPage<DynamoTask> answer(InvocationOnMock invocation) throws Throwable {
+                // Each segment of the parallel scan finds all of its tasks on one page
+                DynamoDBScanExpression scan = (DynamoDBScanExpression)invocation.getArguments()[1];
+                ScanResultPage<DynamoTask> page = new ScanResultPage<>();
+                page.setResults(scan.getSegment() == 0 ? expired : Lists.<DynamoTask>newArrayList());
+                return page;
+            }
+        });
+        final List<Integer> archivedBatches = Lists.newArrayList();
+        TaskDao.TaskArchiver archiver = new TaskDao.TaskArchiver() {
+            @Override public void archive(List<Task> tasks) {
+                synchronized (archivedBatches) {
+                    archivedBatches.add(tasks.size());
+                }
+            }
+        };
+        
+        int count = taskDao.deleteExpiredTasks(NOW.minusDays(30), 2, archiver);
+        assertEquals(5, count);
+        assertEquals(Lists.newArrayList(2, 2, 1), archivedBatches);
+        verify(mapper, times(3)).batchDelete(any(List.class));
+        
+        ArgumentCaptor<DynamoDBScanExpression> scanCaptor = ArgumentCaptor.forClass(DynamoDBScanExpression.class);
+        verify(mapper, atLeastOnce()).scanPage(any(Class.class), scanCaptor.capture());
+        String expiredBefore = Long.toString(NOW.minusDays(30).getMillis());
+        for (String attribute : new String[] {"expiresOn", "hidesOn"}) {
+            assertEquals(ComparisonOperator.LT.toString(), 
+                    scanCaptor.getValue().getScanFilter().get(attribute).getComparisonOperator());
+            assertEquals(expiredBefore,
+                    scanCaptor.getValue().getScanFilter().get(attribute).getAttributeValueList().get(0).getN());
+        }
+    }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Test
+    public void deleteExpiredTasksKeepsTasksThatAreNotArchived() {
+        ScanResultPage<DynamoTask> page = new ScanResultPage<>();
+        page.setResults(Lists.newArrayList(new DynamoTask()));
+        when(mapper.scanPage(any(Class.class), any(DynamoDBScanExpression.class))).thenReturn(page);
+        TaskDao.TaskArchiver archiver = new TaskDao.TaskArchiver() {
+            @Override public void archive(List<Task> tasks) {
+                throw new IllegalStateException("test exception");
+            }
+        };
+        try {
+            taskDao.deleteExpiredTasks(NOW.minusDays(30), 1, archiver);
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            // expected exception
+        }
+        verify(mapper, never()).batchDelete(any(List.class));
+    }
+    
+    private FailedBatch getFailedBatch(String guid) {
+        Map<String,AttributeValue> item = Maps.newHashMap();
+        item.put("healthCode", new AttributeValue().withS(HEALTH_CODE));
+        item.put("guid", new AttributeValue().withS(guid));
+        Map<String,List<WriteRequest>> unprocessedItems = Maps.newHashMap();
+        unprocessedItems.put("Task", Lists.newArrayList(new WriteRequest().withPutRequest(
+                new PutRequest().withItem(item))));
+        
+        FailedBatch failure = new FailedBatch();
+        failure.setUnprocessedItems(unprocessedItems);
+        failure.setException(new ProvisionedThroughputExceededException("test exception"));
+        return failure;
+    }
+    
+    private void assertResult(String guid, TaskUpdateResult.Status status, TaskUpdateResult result) {
+        assertEquals(guid, result.getGuid());
+        assertEquals(status, result.getStatus());
+    }
+    
     private void assertTask(String dateString, String ref, Task task) {
         DateTime date = DateTime.parse(dateString);
         assertEquals((long)date.getMillis(), (long)task.getScheduledOn());
@@ -0,0 +1,99 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sagebionetworks.bridge.models.tasks.TaskEvent;
+import org.sagebionetworks.bridge.models.tasks.TaskEventObjectType;
+import org.sagebionetworks.bridge.models.tasks.TaskEventType;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.google.common.collect.Lists;
+
+public class DynamoTaskEventDaoMockTest {
+    
+    private static final DateTime NOW = DateTime.parse("2015-10-15T10:00:00.000Z");
+    
+    private AmazonDynamoDB client;
+    
+    private DynamoTaskEventDao dao;
+    
+    @Before
+    public void before() {
+        client = mock(AmazonDynamoDB.class);
+        dao = new DynamoTaskEventDao();
+        dao.setDynamoDbClient(client);
+    }
+    
+    @Test
+    public void publishEventIsOneConditionalUpdate() {
+        dao.publishEvent(getAnswerEvent("BBB", NOW, "someValue"));
+        
+        ArgumentCaptor<UpdateItemRequest> argument = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(client).updateItem(argument.capture());
+        UpdateItemRequest request = argument.getValue();
+        
+        assertEquals("BBB", request.getKey().get("healthCode").getS());
+        assertEquals("question:DDD-EEE-FFF:answered", request.getKey().get("eventId").getS());
+        assertEquals("SET #timestamp = :timestamp, #answerValue = :answerValue", request.getUpdateExpression());
+        assertEquals("attribute_not_exists(#timestamp) OR #timestamp < :timestamp",
+                request.getConditionExpression());
+        assertEquals(Long.toString(NOW.getMillis()), request.getExpressionAttributeValues().get(":timestamp").getN());
+        assertEquals("someValue", request.getExpressionAttributeValues().get(":answerValue").getS());
+    }
+    
+    @Test
+    public void eventWithoutAnswerRemovesAnswerValue() {
+        dao.publishEvent(new DynamoTaskEvent.Builder().withHealthCode("BBB").withTimestamp(NOW)
+                .withObjectType(TaskEventObjectType.ENROLLMENT).build());
+        
+        ArgumentCaptor<UpdateItemRequest> argument = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(client).updateItem(argument.capture());
+        assertEquals("SET #timestamp = :timestamp REMOVE #answerValue", argument.getValue().getUpdateExpression());
+    }
+    
+    @Test
+    public void earlierEventIsIgnored() {
+        when(client.updateItem(any(UpdateItemRequest.class))).thenThrow(
+                new ConditionalCheckFailedException("test exception"));
+        
+        // Doesn't throw an exception
+        dao.publishEvent(getAnswerEvent("BBB", NOW, "someValue"));
+    }
+    
+    @Test
+    public void publishEventsWritesOnlyLatestEventPerKey() {
+        List<TaskEvent> events = Lists.newArrayList(
+                getAnswerEvent("BBB", NOW, "first"),
+                getAnswerEvent("BBB", NOW.plusMinutes(1), "second"),
+                getAnswerEvent("CCC", NOW, "other"),
+                getAnswerEvent("BBB", NOW.minusMinutes(1), "earlier"));
+        
+        dao.publishEvents(events);
+        
+        ArgumentCaptor<UpdateItemRequest> argument = ArgumentCaptor.forClass(UpdateItemRequest.class);
+        verify(client, times(2)).updateItem(argument.capture());
+        List<UpdateItemRequest> requests = argument.getAllValues();
+        assertEquals("BBB", requests.get(0).getKey().get("healthCode").getS());
+        assertEquals("second", requests.get(0).getExpressionAttributeValues().get(":answerValue").getS());
+        assertEquals("CCC", requests.get(1).getKey().get("healthCode").getS());
+    }
+    
+    private TaskEvent getAnswerEvent(String healthCode, DateTime time, String answer) {
+        return new DynamoTaskEvent.Builder().withHealthCode(healthCode).withTimestamp(time)
+                .withObjectType(TaskEventObjectType.QUESTION).withObjectId("DDD-EEE-FFF")
+                .withEventType(TaskEventType.ANSWERED).withAnswerValue(answer).build();
+    }
+}
@@ -5,12 +5,18 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -18,16 +24,23 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
+@SuppressWarnings("unchecked")
 public class DynamoUploadDaoMockTest {
     @Test
     public void createUpload() {
@@ -168,6 +181,79 @@ public class DynamoUploadDaoMockTest {
         assertEquals("appended this message", messageList.get(1));
     }
 
+    @Test
+    public void getFailedUploadsQueriesIndexByDateAndStatus() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.queryPage(eq(DynamoUpload2.class), any(DynamoDBQueryExpression.class))).thenReturn(
+                queryPage(null, "upload-1"), queryPage("upload-2", "upload-2"), queryPage(null),
+                queryPage(null, "upload-3"), queryPage(null));
+        when(mockMapper.batchLoad(anyList())).thenReturn(batchLoadResult("upload-1", "upload-2"),
+                batchLoadResult("upload-3"));
+        DynamoUploadDao dao = new DynamoUploadDao();
+        dao.setDdbMapper(mockMapper);
+
+        // The first page ends in the middle of the failed uploads of the first date
+        PagedResourceList<? extends Upload> page = dao.getFailedUploads("2015-07-01", "2015-07-02", null, 2);
+        assertEquals(2, page.getItems().size());
+        assertEquals("upload-1", page.getItems().get(0).getUploadId());
+        assertEquals("2015-07-01:VALIDATION_IN_PROGRESS:upload-2", page.getOffsetKey());
+
+        ArgumentCaptor<DynamoDBQueryExpression> queries = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mockMapper, times(2)).queryPage(eq(DynamoUpload2.class), queries.capture());
+        DynamoDBQueryExpression<DynamoUpload2> query = queries.getAllValues().get(1);
+        assertEquals(DynamoUploadDao.UPLOAD_DATE_INDEX, query.getIndexName());
+        assertEquals(new LocalDate(2015, 7, 1), query.getHashKeyValues().getUploadDate());
+        assertEquals("VALIDATION_IN_PROGRESS",
+                query.getRangeKeyConditions().get("status").getAttributeValueList().get(0).getS());
+        assertEquals(1, query.getLimit().intValue());
+
+        // The last page goes through the rest of the statuses and dates
+        page = dao.getFailedUploads("2015-07-01", "2015-07-02", page.getOffsetKey(), 2);
+        assertEquals(1, page.getItems().size());
+        assertEquals("upload-3", page.getItems().get(0).getUploadId());
+        assertNull(page.getOffsetKey());
+
+        queries = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mockMapper, times(5)).queryPage(eq(DynamoUpload2.class), queries.capture());
+        query = queries.getAllValues().get(2);
+        assertEquals("upload-2", query.getExclusiveStartKey().get("uploadId").getS());
+        assertEquals("2015-07-01", query.getExclusiveStartKey().get("uploadDate").getS());
+        assertEquals("VALIDATION_IN_PROGRESS", query.getExclusiveStartKey().get("status").getS());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getFailedUploadsRejectsInvalidOffsetKey() {
+        DynamoUploadDao dao = new DynamoUploadDao();
+        dao.setDdbMapper(mock(DynamoDBMapper.class));
+        dao.getFailedUploads("2015-07-01", "2015-07-02", "2015-07-01:SUCCEEDED:", 10);
+    }
+
+    private static QueryResultPage<DynamoUpload2> queryPage(String lastUploadId, String... uploadIds) {
+        List<DynamoUpload2> keys = new ArrayList<>();
+        for (String uploadId : uploadIds) {
+            DynamoUpload2 key = new DynamoUpload2();
+            key.setUploadId(uploadId);
+            keys.add(key);
+        }
+        QueryResultPage<DynamoUpload2> page = new QueryResultPage<>();
+        page.setResults(keys);
+        if (lastUploadId != null) {
+            page.setLastEvaluatedKey(ImmutableMap.of("uploadId", new AttributeValue(lastUploadId)));
+        }
+        return page;
+    }
+
+    private static Map<String, List<Object>> batchLoadResult(String... uploadIds) {
+        // Batch loads don't keep the order of the keys
+        List<Object> uploads = new ArrayList<>();
+        for (String uploadId : uploadIds) {
+            DynamoUpload2 upload = new DynamoUpload2();
+            upload.setUploadId(uploadId);
+            uploads.add(0, upload);
+        }
+        return ImmutableMap.of("Upload2", uploads);
+    }
+
     private static UploadRequest createUploadRequest() {
         final String text = "test upload dao";
         ObjectNode node = JsonNodeFactory.instance.objectNode();
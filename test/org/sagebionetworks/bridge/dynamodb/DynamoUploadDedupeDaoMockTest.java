@@ -0,0 +1,63 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+
+public class DynamoUploadDedupeDaoMockTest {
+
+    private DynamoDBMapper mockMapper;
+    private DynamoUploadDedupeDao dao;
+
+    @Before
+    public void before() {
+        mockMapper = mock(DynamoDBMapper.class);
+        dao = new DynamoUploadDedupeDao();
+        dao.setMapper(mockMapper);
+    }
+
+    @Test
+    public void registerUpload() {
+        dao.registerUpload("healthCode", "md5", "filename", "uploadId", 1000L);
+
+        ArgumentCaptor<DynamoUploadDedupe> arg = ArgumentCaptor.forClass(DynamoUploadDedupe.class);
+        verify(mockMapper).save(arg.capture());
+        assertEquals("healthCode", arg.getValue().getHealthCode());
+        assertEquals("md5:filename", arg.getValue().getContentKey());
+        assertEquals("uploadId", arg.getValue().getUploadId());
+        assertEquals(1000L, arg.getValue().getCreatedOn().longValue());
+    }
+
+    @Test
+    public void getDuplicateWithinWindow() {
+        mockLoad(1000L);
+        assertEquals("uploadId", dao.getDuplicateUploadId("healthCode", "md5", "filename", 1000L));
+    }
+
+    @Test
+    public void noDuplicateBeforeWindow() {
+        mockLoad(999L);
+        assertNull(dao.getDuplicateUploadId("healthCode", "md5", "filename", 1000L));
+    }
+
+    @Test
+    public void noDuplicate() {
+        assertNull(dao.getDuplicateUploadId("healthCode", "md5", "filename", 1000L));
+    }
+
+    private void mockLoad(long createdOn) {
+        DynamoUploadDedupe dedupe = new DynamoUploadDedupe("healthCode", "md5", "filename");
+        dedupe.setUploadId("uploadId");
+        dedupe.setCreatedOn(createdOn);
+        when(mockMapper.load(any(DynamoUploadDedupe.class))).thenReturn(dedupe);
+    }
+}
@@ -0,0 +1,150 @@
+package org.sagebionetworks.bridge.models.surveys;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurveyInfoScreen;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurveyQuestion;
+import org.sagebionetworks.bridge.models.surveys.SurveyRule.Operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class SurveyNavigationGraphTest {
+
+    // count: LE 2 or declined skips to "end"
+    private SurveyNavigationGraph makeSkipSurvey() {
+        IntegerConstraints countConstraints = new IntegerConstraints();
+        countConstraints.getRules().add(new SurveyRule(Operator.LE, 2, "end"));
+        countConstraints.getRules().add(new SurveyRule(Operator.DE, null, "end"));
+
+        return makeGraph(question("count", countConstraints), question("detail", new StringConstraints()),
+                infoScreen("info"), question("more", new StringConstraints()),
+                question("end", new StringConstraints()));
+    }
+
+    @Test
+    public void nextElementFollowsRules() {
+        SurveyNavigationGraph graph = makeSkipSurvey();
+
+        assertEquals("count", graph.getFirstElement().getIdentifier());
+        assertEquals("end", graph.getNextElement("count", answer("count", "1")).getIdentifier());
+        assertEquals("end", graph.getNextElement("count", answer("count", "2.0")).getIdentifier());
+        assertEquals("detail", graph.getNextElement("count", answer("count", "3")).getIdentifier());
+        assertEquals("end", graph.getNextElement("count", declined("count")).getIdentifier());
+        assertEquals("info", graph.getNextElement("detail", answer("detail", "x")).getIdentifier());
+        assertEquals("more", graph.getNextElement("info", null).getIdentifier());
+        assertNull(graph.getNextElement("end", answer("end", "x")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nextElementOfUnknownElement() {
+        makeSkipSurvey().getNextElement("unknown", null);
+    }
+
+    @Test
+    public void nextUnansweredQuestion() {
+        SurveyNavigationGraph graph = makeSkipSurvey();
+
+        assertEquals("count", graph.getNextUnansweredQuestion(ImmutableList.<SurveyAnswer>of()).getIdentifier());
+        assertEquals("end", graph.getNextUnansweredQuestion(ImmutableList.of(answer("count", "1")))
+                .getIdentifier());
+        // info screens are passed over
+        assertEquals("more", graph.getNextUnansweredQuestion(ImmutableList.of(answer("count", "4"),
+                answer("detail", "x"))).getIdentifier());
+        assertNull(graph.getNextUnansweredQuestion(ImmutableList.of(answer("count", "1"), answer("end", "x"))));
+    }
+
+    @Test
+    public void answersOffPath() {
+        SurveyNavigationGraph graph = makeSkipSurvey();
+
+        SurveyAnswer skipped = answer("detail", "x");
+        List<SurveyAnswer> offPath = graph.getAnswersOffPath(ImmutableList.of(answer("count", "1"), skipped,
+                answer("end", "x")));
+        assertEquals(ImmutableList.of(skipped), offPath);
+
+        // not skipped if the count is high enough
+        assertTrue(graph.getAnswersOffPath(ImmutableList.of(answer("count", "3"), answer("detail", "x"))).isEmpty());
+
+        // the most recent answer to a question is the one that counts
+        SurveyAnswer firstCount = answer("count", "1");
+        SurveyAnswer secondCount = answer("count", "3");
+        secondCount.setAnsweredOn(firstCount.getAnsweredOn() + 1000);
+        assertTrue(graph.getAnswersOffPath(ImmutableList.of(firstCount, secondCount, answer("detail", "x")))
+                .isEmpty());
+
+        // unanswered questions could lead anywhere, so a response in progress is on the path
+        assertTrue(graph.getAnswersOffPath(ImmutableList.of(answer("detail", "x"), answer("end", "x"))).isEmpty());
+    }
+
+    @Test
+    public void rulesCoveringEveryAnswerMakeElementsUnreachable() {
+        BooleanConstraints agreeConstraints = new BooleanConstraints();
+        agreeConstraints.getRules().add(new SurveyRule(Operator.EQ, true, "end"));
+        agreeConstraints.getRules().add(new SurveyRule(Operator.EQ, false, "end"));
+        agreeConstraints.getRules().add(new SurveyRule(Operator.DE, null, "end"));
+
+        SurveyNavigationGraph graph = makeGraph(question("agree", agreeConstraints),
+                question("never", new StringConstraints()), question("end", new StringConstraints()));
+        assertEquals(ImmutableList.of("never"), graph.getUnreachableIdentifiers());
+
+        // without the declined rule, declining falls through to the next question
+        agreeConstraints.getRules().remove(2);
+        graph = makeGraph(question("agree", agreeConstraints), question("sometimes", new StringConstraints()),
+                question("end", new StringConstraints()));
+        assertTrue(graph.getUnreachableIdentifiers().isEmpty());
+    }
+
+    @Test
+    public void findsCycles() {
+        assertTrue(makeSkipSurvey().getCycle().isEmpty());
+
+        StringConstraints backConstraints = new StringConstraints();
+        backConstraints.getRules().add(new SurveyRule(Operator.EQ, "again", "first"));
+        SurveyNavigationGraph graph = makeGraph(question("first", new StringConstraints()),
+                question("second", backConstraints), question("third", new StringConstraints()));
+        assertEquals(ImmutableList.of("first", "second"), graph.getCycle());
+    }
+
+    private static SurveyNavigationGraph makeGraph(SurveyElement... elements) {
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setElements(Lists.newArrayList(elements));
+        return new SurveyNavigationGraph(survey);
+    }
+
+    private static DynamoSurveyQuestion question(String identifier, Constraints constraints) {
+        DynamoSurveyQuestion question = new DynamoSurveyQuestion();
+        question.setIdentifier(identifier);
+        question.setGuid(identifier + "-guid");
+        question.setConstraints(constraints);
+        return question;
+    }
+
+    private static DynamoSurveyInfoScreen infoScreen(String identifier) {
+        DynamoSurveyInfoScreen screen = new DynamoSurveyInfoScreen();
+        screen.setIdentifier(identifier);
+        screen.setGuid(identifier + "-guid");
+        return screen;
+    }
+
+    private static SurveyAnswer answer(String identifier, String value) {
+        SurveyAnswer answer = new SurveyAnswer();
+        answer.setQuestionGuid(identifier + "-guid");
+        answer.setAnswers(Lists.newArrayList(value));
+        answer.setAnsweredOn(1000L);
+        return answer;
+    }
+
+    private static SurveyAnswer declined(String identifier) {
+        SurveyAnswer answer = answer(identifier, null);
+        answer.setAnswers(null);
+        answer.setDeclined(true);
+        return answer;
+    }
+}
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.play.controllers;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Map;
@@ -9,6 +10,7 @@ import java.util.Map;
 import org.junit.Test;
 
 import play.mvc.Http;
+import play.mvc.Result;
 
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.config.BridgeConfig;
@@ -162,6 +164,56 @@ public class BaseControllerTest {
         String retrievedIdentifier = controller.getStudyIdentifier();
         assertEquals(STUDY_IDENTIFIER, retrievedIdentifier);
     }
-    
-    
+
+    @Test
+    public void okResultWithETagSetsHeaders() {
+        Http.Response mockResponse = mockContextWithIfNoneMatch(null);
+        String etag = BaseController.createETag("guid", 3L);
+
+        Result result = controller().okResultWithETag(etag, "message");
+        assertEquals(200, result.toScala().header().status());
+        verify(mockResponse).setHeader("ETag", etag);
+        verify(mockResponse).setHeader("Cache-Control", "private, no-cache");
+    }
+
+    @Test
+    public void okResultWithMatchingETagIsNotModified() {
+        String etag = BaseController.createETag("guid", 3L);
+        mockContextWithIfNoneMatch("\"other\", " + etag);
+
+        Result result = controller().okResultWithETag(etag, "message");
+        assertEquals(304, result.toScala().header().status());
+    }
+
+    @Test
+    public void okResultWithChangedVersionIsSentAgain() {
+        mockContextWithIfNoneMatch(BaseController.createETag("guid", 3L));
+
+        Result result = controller().okResultWithETag(BaseController.createETag("guid", 4L), "message");
+        assertEquals(200, result.toScala().header().status());
+    }
+
+    @Test
+    public void okJsonResultWithETagHashesJson() {
+        mockContextWithIfNoneMatch(BaseController.createETag(DUMMY_JSON));
+
+        Result result = controller().okJsonResultWithETag(DUMMY_JSON);
+        assertEquals(304, result.toScala().header().status());
+    }
+
+    private BaseController controller() {
+        return new BaseController() {};
+    }
+
+    private Http.Response mockContextWithIfNoneMatch(String ifNoneMatch) {
+        Http.Request mockRequest = mock(Http.Request.class);
+        when(mockRequest.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+        Http.Response mockResponse = mock(Http.Response.class);
+
+        Http.Context mockContext = mock(Http.Context.class);
+        when(mockContext.request()).thenReturn(mockRequest);
+        when(mockContext.response()).thenReturn(mockResponse);
+        Http.Context.current.set(mockContext);
+        return mockResponse;
+    }
 }
@@ -3,7 +3,6 @@ package org.sagebionetworks.bridge.play.controllers;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
-import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
@@ -14,17 +13,14 @@ import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.Roles.RESEARCHER;
 
 import java.util.List;
-import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.invocation.InvocationOnMock;
-import org.mockito.stubbing.Answer;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestUtils;
-import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.cache.LocalCacheProvider;
 import org.sagebionetworks.bridge.cache.ViewCache;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
@@ -43,7 +39,6 @@ import org.sagebionetworks.bridge.services.SurveyService;
 import play.mvc.Http;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -59,8 +54,6 @@ public class SurveyControllerTest {
     
     private ViewCache viewCache;
     
-    private Map<String,String> cacheMap;
-    
     private UserSession session;
 
     @Before
@@ -69,34 +62,8 @@ public class SurveyControllerTest {
         service = mock(SurveyService.class);
         
         // Dummy this out so it works and we can forget about it as a dependency
-        cacheMap = Maps.newHashMap();
         viewCache = new ViewCache();
-        CacheProvider provider = mock(CacheProvider.class);
-        when(provider.getString(anyString())).thenAnswer(new Answer<String>() {
-            @Override
-            public String answer(InvocationOnMock invocation) throws Throwable {
-                String key = invocation.getArgumentAt(0, String.class);
-                return cacheMap.get(key);
-            }
-        });
-        doAnswer(new Answer<Void>() {
-            @Override
-            public Void answer(InvocationOnMock invocation) throws Throwable {
-                String key = invocation.getArgumentAt(0, String.class);
-                String value = invocation.getArgumentAt(1, String.class);
-                cacheMap.put(key, value);
-                return null;
-            }
-        }).when(provider).setString(anyString(), anyString());
-        doAnswer(new Answer<Void>() {
-            @Override
-            public Void answer(InvocationOnMock invocation) throws Throwable {
-                String key = invocation.getArgumentAt(0, String.class);
-                cacheMap.remove(key);
-                return null;
-            }
-        }).when(provider).removeString(anyString());
-        viewCache.setCacheProvider(provider);
+        viewCache.setCacheProvider(new LocalCacheProvider());
         
         controller = spy(new SurveyController());
         controller.setSurveyService(service);
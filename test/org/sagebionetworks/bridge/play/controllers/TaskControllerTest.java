@@ -3,6 +3,7 @@ package org.sagebionetworks.bridge.play.controllers;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -19,6 +20,7 @@ import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.dynamodb.DynamoTask;
 import org.sagebionetworks.bridge.exceptions.NotAuthenticatedException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.schedules.Activity;
@@ -57,6 +59,8 @@ public class TaskControllerTest {
         
         taskService = mock(TaskService.class);
         when(taskService.getTasks(any(User.class), any(DateTime.class))).thenReturn(list);
+        when(taskService.getTasks(any(User.class), any(DateTime.class), anyString(), any(Integer.class)))
+            .thenReturn(new PagedResourceList<>(list, "offsetKey"));
         
         controller = spy(new TaskController());
         controller.setTaskService(taskService);
@@ -65,11 +69,18 @@ public class TaskControllerTest {
     
     @Test
     public void getTasks() throws Exception {
-        controller.getTasks(DateTime.now().toString());
+        controller.getTasks(DateTime.now().toString(), null, null);
         verify(taskService).getTasks(any(User.class), any(DateTime.class));
         verifyNoMoreInteractions(taskService);
     }
     
+    @Test
+    public void getTasksWithPagingParameters() throws Exception {
+        controller.getTasks(DateTime.now().toString(), "offsetKey", 10);
+        verify(taskService).getTasks(any(User.class), any(DateTime.class), eq("offsetKey"), eq(10));
+        verifyNoMoreInteractions(taskService);
+    }
+    
     @SuppressWarnings("unchecked")
     @Test
     public void updateTasks() throws Exception {
@@ -81,7 +92,7 @@ public class TaskControllerTest {
     @Test(expected = NotAuthenticatedException.class)
     public void mustBeAuthenticated() throws Exception {
         controller = new TaskController();
-        controller.getTasks(DateTime.now().toString());
+        controller.getTasks(DateTime.now().toString(), null, null);
     }
     
 }
@@ -0,0 +1,150 @@
+package org.sagebionetworks.bridge.play.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.User;
+import org.sagebionetworks.bridge.models.accounts.UserSession;
+import org.sagebionetworks.bridge.models.upload.UploadStatus;
+import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
+import org.sagebionetworks.bridge.services.UploadService;
+import org.sagebionetworks.bridge.upload.UploadCompletionBroker;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import play.libs.F;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.Helpers;
+
+public class UploadControllerTest {
+    private static final String UPLOAD_ID = "upload-id";
+    private static final String STATUS_THREAD = "upload-status-test";
+
+    private ExecutorService statusExecutor;
+    private UploadService mockUploadService;
+    private UploadCompletionBroker broker;
+    private User user;
+    private UploadController controller;
+
+    @Before
+    public void before() throws Exception {
+        Http.Context.current.set(TestUtils.mockPlayContext());
+
+        user = new User();
+        user.setHealthCode("health-code");
+        UserSession session = new UserSession();
+        session.setUser(user);
+
+        statusExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat(STATUS_THREAD)
+                .build());
+        mockUploadService = mock(UploadService.class);
+        broker = new UploadCompletionBroker();
+
+        controller = spy(new UploadController());
+        controller.setUploadService(mockUploadService);
+        controller.setCompletionBroker(broker);
+        controller.setUploadStatusExecutorService(statusExecutor);
+        doReturn(session).when(controller).getAuthenticatedAndConsentedSession();
+    }
+
+    @After
+    public void after() {
+        broker.stop();
+        statusExecutor.shutdownNow();
+    }
+
+    @Test
+    public void waitReturnsCompletedStatusAtOnce() throws Exception {
+        when(mockUploadService.getUploadValidationStatus(user, UPLOAD_ID)).thenReturn(
+                makeStatus(UploadStatus.SUCCEEDED));
+
+        Result result = controller.waitForValidationStatus(UPLOAD_ID, 10).get(1000L);
+
+        assertEquals(200, result.status());
+        assertEquals(UploadStatus.SUCCEEDED, getStatus(result));
+        verify(mockUploadService).getUploadValidationStatus(user, UPLOAD_ID);
+    }
+
+    @Test
+    public void waitReadsStatusOffRequestThreadOnCompletion() throws Exception {
+        final String[] readingThread = new String[1];
+        when(mockUploadService.getUploadValidationStatus(user, UPLOAD_ID)).thenReturn(
+                makeStatus(UploadStatus.VALIDATION_IN_PROGRESS)).thenAnswer(new Answer<UploadValidationStatus>() {
+                    @Override
+                    public UploadValidationStatus answer(InvocationOnMock invocation) {
+                        readingThread[0] = Thread.currentThread().getName();
+                        return makeStatus(UploadStatus.SUCCEEDED);
+                    }
+                });
+
+        F.Promise<Result> promise = controller.waitForValidationStatus(UPLOAD_ID, 10);
+        broker.publishCompletion(UPLOAD_ID);
+        Result result = promise.get(1000L);
+
+        assertEquals(200, result.status());
+        assertEquals(UploadStatus.SUCCEEDED, getStatus(result));
+        assertEquals(STATUS_THREAD, readingThread[0]);
+    }
+
+    @Test
+    public void waitReturnsStatusInProgressAfterTimeout() throws Exception {
+        when(mockUploadService.getUploadValidationStatus(user, UPLOAD_ID)).thenReturn(
+                makeStatus(UploadStatus.VALIDATION_IN_PROGRESS));
+
+        Result result = controller.waitForValidationStatus(UPLOAD_ID, 1).get(5000L);
+
+        assertEquals(200, result.status());
+        assertEquals(UploadStatus.VALIDATION_IN_PROGRESS, getStatus(result));
+    }
+
+    @Test
+    public void waitReturnsStatusAtOnceWhenWaitersAreCapped() throws Exception {
+        UploadCompletionBroker mockBroker = mock(UploadCompletionBroker.class);
+        controller.setCompletionBroker(mockBroker);
+        when(mockUploadService.getUploadValidationStatus(user, UPLOAD_ID)).thenReturn(
+                makeStatus(UploadStatus.VALIDATION_IN_PROGRESS));
+
+        Result result = controller.waitForValidationStatus(UPLOAD_ID, 10).get(1000L);
+
+        assertEquals(200, result.status());
+        assertEquals(UploadStatus.VALIDATION_IN_PROGRESS, getStatus(result));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void waitRejectsTimeoutAboveMaximum() throws Exception {
+        try {
+            controller.waitForValidationStatus(UPLOAD_ID, UploadController.MAX_WAIT_SECONDS + 1);
+        } finally {
+            verifyZeroInteractions(mockUploadService);
+        }
+    }
+
+    private static UploadStatus getStatus(Result result) throws Exception {
+        String json = Helpers.contentAsString(result);
+        return BridgeObjectMapper.get().readValue(json, UploadValidationStatus.class).getStatus();
+    }
+
+    private static UploadValidationStatus makeStatus(UploadStatus status) {
+        return new UploadValidationStatus.Builder().withId(UPLOAD_ID)
+                .withMessageList(Collections.<String>emptyList()).withStatus(status).build();
+    }
+}
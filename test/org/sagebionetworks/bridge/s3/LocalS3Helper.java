@@ -0,0 +1,47 @@
+package org.sagebionetworks.bridge.s3;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.google.common.io.Files;
+
+/**
+ * In-memory stand-in for S3, for tests that need to read back what they write without a real bucket. Files are kept
+ * in a map keyed by bucket and key. Reading a missing file throws a 404, like S3 does. This is thread-safe.
+ */
+public class LocalS3Helper extends S3Helper {
+    private final Map<String, byte[]> fileMap = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] readS3FileAsBytes(String bucket, String key) {
+        byte[] bytes = fileMap.get(bucket + "/" + key);
+        if (bytes == null) {
+            AmazonS3Exception ex = new AmazonS3Exception("The specified key does not exist.");
+            ex.setStatusCode(404);
+            throw ex;
+        }
+        return bytes.clone();
+    }
+
+    @Override
+    public void writeBytesToS3(String bucket, String key, byte[] data) {
+        fileMap.put(bucket + "/" + key, data.clone());
+    }
+
+    @Override
+    public void writeFileToS3(String bucket, String key, File file) {
+        try {
+            fileMap.put(bucket + "/" + key, Files.toByteArray(file));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @Override
+    public boolean doesS3FileExist(String bucket, String key) {
+        return fileMap.containsKey(bucket + "/" + key);
+    }
+}
@@ -1,20 +1,34 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.CacheDomainStatistics;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
+import redis.clients.jedis.BuilderFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 
 public class CacheAdminServiceTest {
 
@@ -32,18 +46,79 @@ public class CacheAdminServiceTest {
     
     @Test
     public void listsItemsWithoutSessions() {
-        Set<String> set = adminService.listItems();
-        assertEquals(2, set.size());
-        assertTrue(set.contains("foo:study"));
-        assertTrue(set.contains("baz:Survey:view"));
+        PagedResourceList<String> page = adminService.listItems(null, null, null);
+        assertEquals(2, page.getItems().size());
+        assertTrue(page.getItems().contains("foo:study"));
+        assertTrue(page.getItems().contains("baz:Survey:view"));
+        assertNull(page.getOffsetKey());
     }
     
+    @Test
+    public void listsItemsByPage() {
+        // The stub returns two keys per SCAN, one of them a session key
+        PagedResourceList<String> page = adminService.listItems(null, null, 1);
+        assertEquals(Lists.newArrayList("baz:Survey:view"), page.getItems());
+        assertEquals("2", page.getOffsetKey());
+        
+        page = adminService.listItems(null, page.getOffsetKey(), 1);
+        assertEquals(Lists.newArrayList("foo:study"), page.getItems());
+        assertNull(page.getOffsetKey());
+    }
+    
+    @Test
+    public void listsItemsOfDomain() {
+        PagedResourceList<String> page = adminService.listItems("view", null, null);
+        assertEquals(Lists.newArrayList("baz:Survey:view"), page.getItems());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void doesNotListSessionDomain() {
+        adminService.listItems("session", null, null);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void doesNotListUnknownDomain() {
+        adminService.listItems("not-a-domain", null, null);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void rejectsInvalidPageSize() {
+        adminService.listItems(null, null, CacheAdminService.MAX_PAGE_SIZE + 1);
+    }
+    
+    @Test
+    public void domainIsLongestMatchingSuffix() {
+        assertEquals("view", CacheAdminService.getDomain("guid:Survey:view"));
+        assertEquals("lock:view", CacheAdminService.getDomain("guid:Survey:view:lock:view"));
+        assertEquals("session:user", CacheAdminService.getDomain("userId:session:user"));
+        assertEquals(CacheAdminService.OTHER_DOMAIN, CacheAdminService.getDomain("requestId:Metrics"));
+    }
+    
+    @Test
+    public void computesStatisticsByDomain() {
+        List<CacheDomainStatistics> statistics = adminService.getStatistics();
+        assertEquals(3, statistics.size());
+        
+        CacheDomainStatistics session = statistics.get(0);
+        assertEquals("session", session.getDomain());
+        assertEquals(1, session.getKeyCount());
+        assertEquals("bar:session".length() + 10, session.getApproximateBytes());
+        assertEquals(1L, session.getTtlDistribution().get("1d").longValue());
+        
+        CacheDomainStatistics userSession = statistics.get(1);
+        assertEquals("session:user", userSession.getDomain());
+        
+        CacheDomainStatistics study = statistics.get(2);
+        assertEquals("study", study.getDomain());
+        assertEquals(1L, study.getTtlDistribution().get("none").longValue());
+        // baz:Survey:view expired while scanning, it's not counted
+    }
     
     @Test
     public void canRemoveItem() {
         adminService.removeItem("foo:study");
-        Set<String> set = adminService.listItems();
-        assertEquals(1, set.size());
+        PagedResourceList<String> page = adminService.listItems(null, null, null);
+        assertEquals(1, page.getItems().size());
     }
     
     @Test(expected = BridgeServiceException.class)
@@ -74,11 +149,31 @@ public class CacheAdminServiceTest {
     private Jedis createStubJedis() {
         return new Jedis("") {
             // xh7YDmjGQuTKnfdv9iJb0:session:user is an actual key we're suppressing
-            private Set<String> set = Sets.newHashSet("foo:study", "bar:session", "baz:Survey:view", "xh7YDmjGQuTKnfdv9iJb0:session:user");
+            private Set<String> set = Sets.newTreeSet(Sets.newHashSet("foo:study", "bar:session", "baz:Survey:view",
+                    "xh7YDmjGQuTKnfdv9iJb0:session:user"));
 
+            // Two keys per call, the cursor is the index of the next key
+            @Override
+            public ScanResult<String> scan(String cursor, ScanParams params) {
+                List<String> keys = Lists.newArrayList(set);
+                int start = Integer.parseInt(cursor);
+                int end = Math.min(start + 2, keys.size());
+                String nextCursor = (end == keys.size()) ? ScanParams.SCAN_POINTER_START : Integer.toString(end);
+                return new ScanResult<String>(nextCursor, keys.subList(start, end));
+            }
             @Override
-            public Set<String> keys(String pattern) {
-                return set;
+            public Pipeline pipelined() {
+                Pipeline pipeline = mock(Pipeline.class);
+                when(pipeline.ttl(anyString())).thenAnswer(new Answer<Response<Long>>() {
+                    @Override
+                    public Response<Long> answer(InvocationOnMock invocation) throws Throwable {
+                        String key = invocation.getArgumentAt(0, String.class);
+                        long ttl = key.endsWith("view") ? -2L : (key.endsWith("study") ? -1L : 3600L);
+                        return response(ttl);
+                    }
+                });
+                when(pipeline.strlen(anyString())).thenReturn(response(10L));
+                return pipeline;
             }
             @Override
             public Long del(String key) {
@@ -86,4 +181,10 @@ public class CacheAdminServiceTest {
             }
         };
     }
+    
+    private Response<Long> response(long value) {
+        Response<Long> response = new Response<Long>(BuilderFactory.LONG);
+        response.set(value);
+        return response;
+    }
 }
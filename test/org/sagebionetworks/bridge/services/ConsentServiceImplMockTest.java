@@ -35,6 +35,7 @@ public class ConsentServiceImplMockTest {
     private StudyConsentService studyConsentService;
     private UserConsentDao userConsentDao;
     private TaskEventService taskEventService;
+    private TaskMaterializer taskMaterializer;
 
     private Study study;
     private User user;
@@ -49,6 +50,7 @@ public class ConsentServiceImplMockTest {
         userConsentDao = mock(UserConsentDao.class);
         taskEventService = mock(TaskEventService.class);
         studyConsentService = mock(StudyConsentService.class);
+        taskMaterializer = mock(TaskMaterializer.class);
 
         consentService = new ConsentServiceImpl();
         consentService.setAccountDao(accountDao);
@@ -58,6 +60,7 @@ public class ConsentServiceImplMockTest {
         consentService.setUserConsentDao(userConsentDao);
         consentService.setTaskEventService(taskEventService);
         consentService.setStudyConsentService(studyConsentService);
+        consentService.setTaskMaterializer(taskMaterializer);
         
         study = TestUtils.getValidStudy();
         user = new User();
@@ -81,6 +84,19 @@ public class ConsentServiceImplMockTest {
         verify(taskEventService).publishEvent(user.getHealthCode(), consent);
     }
 
+    @Test
+    public void tasksMaterializedOnConsent() {
+        UserConsent consent = mock(UserConsent.class);
+        when(userConsentDao.giveConsent(any(String.class), any(StudyConsent.class))).thenReturn(consent);
+        
+        StudyConsentView view = mock(StudyConsentView.class);
+        when(studyConsentService.getActiveConsent(any(Study.class))).thenReturn(view);
+        
+        consentService.consentToResearch(study, user, consentSignature, SharingScope.NO_SHARING, false);
+        
+        verify(taskMaterializer).materializeNow(user);
+    }
+
     @Test
     public void notTaskEventIfTooYoung() {
         consentSignature = ConsentSignature.create("Test User", "2014-01-01", null, null);
@@ -114,7 +130,7 @@ public class ConsentServiceImplMockTest {
             consentService.consentToResearch(study, user, consentSignature, SharingScope.NO_SHARING, false);
             fail("Exception expected.");
         } catch(Throwable e) {
-            verifyNoMoreInteractions(taskEventService);
+            verifyNoMoreInteractions(taskEventService, taskMaterializer);
         }
     }
     
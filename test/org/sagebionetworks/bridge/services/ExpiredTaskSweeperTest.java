@@ -0,0 +1,160 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.TaskDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoTask;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.schedules.Activity;
+import org.sagebionetworks.bridge.models.schedules.Task;
+import org.sagebionetworks.bridge.s3.S3Helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+public class ExpiredTaskSweeperTest {
+    private static final String LOCK = "test-lock";
+
+    private DistributedLockDao mockLockDao;
+    private S3Helper mockS3Helper;
+    private TaskDao mockTaskDao;
+    private ExpiredTaskSweeper sweeper;
+
+    @Before
+    public void setup() {
+        mockLockDao = mock(DistributedLockDao.class);
+        when(mockLockDao.acquireLock(eq(ExpiredTaskSweeper.class), anyString(), anyInt())).thenReturn(LOCK);
+        mockS3Helper = mock(S3Helper.class);
+        mockTaskDao = mock(TaskDao.class);
+
+        sweeper = new ExpiredTaskSweeper();
+        sweeper.setDistributedLockDao(mockLockDao);
+        sweeper.setS3Helper(mockS3Helper);
+        sweeper.setTaskDao(mockTaskDao);
+    }
+
+    @Test
+    public void archivesExpiredTasks() throws Exception {
+        final List<Task> tasks = Lists.<Task>newArrayList(makeTask("guid1"), makeTask("guid2"));
+        when(mockTaskDao.deleteExpiredTasks(any(DateTime.class), eq(ExpiredTaskSweeper.BATCH_SIZE),
+                any(TaskDao.TaskArchiver.class))).thenAnswer(new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        ((TaskDao.TaskArchiver) invocation.getArguments()[2]).archive(tasks);
+                        return tasks.size();
+                    }
+                });
+
+        assertEquals(2, sweeper.sweep());
+
+        ArgumentCaptor<String> keyCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<byte[]> bytesCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockS3Helper).writeBytesToS3(anyString(), keyCaptor.capture(), bytesCaptor.capture());
+        assertTrue(keyCaptor.getValue().matches("sweptOn=\\d{4}-\\d{2}-\\d{2}/part-.+\\.json\\.gz"));
+        assertEquals(2, readLines(bytesCaptor.getValue()).size());
+
+        verify(mockLockDao).releaseLock(ExpiredTaskSweeper.class, "sweep", LOCK);
+    }
+
+    @Test
+    public void archiveErrorKeepsTasksAndReleasesLock() throws Exception {
+        when(mockTaskDao.deleteExpiredTasks(any(DateTime.class), anyInt(), any(TaskDao.TaskArchiver.class)))
+                .thenAnswer(new Answer<Integer>() {
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        // The DAO doesn't delete the batch if the archiver throws
+                        List<Task> tasks = Lists.<Task>newArrayList(makeTask("guid1"));
+                        ((TaskDao.TaskArchiver) invocation.getArguments()[2]).archive(tasks);
+                        return tasks.size();
+                    }
+                });
+        doThrow(new IOException("test exception")).when(mockS3Helper).writeBytesToS3(anyString(), anyString(),
+                any(byte[].class));
+        try {
+            sweeper.sweep();
+            fail("expected exception");
+        } catch (RuntimeException ex) {
+            // expected exception
+        }
+        verify(mockLockDao).releaseLock(ExpiredTaskSweeper.class, "sweep", LOCK);
+    }
+
+    @Test
+    public void skipsSweepIfAnotherServerIsSweeping() {
+        when(mockLockDao.acquireLock(eq(ExpiredTaskSweeper.class), anyString(), anyInt())).thenThrow(
+                new ConcurrentModificationException("Lock already set."));
+        assertEquals(0, sweeper.sweep());
+        verifyZeroInteractions(mockTaskDao, mockS3Helper);
+    }
+
+    @Test
+    public void archivedTasksKeepAllFields() throws Exception {
+        Task task = makeTask("guid1");
+        List<String> lines = readLines(ExpiredTaskSweeper.toBytes(Lists.newArrayList(task)));
+        assertEquals(1, lines.size());
+
+        JsonNode node = BridgeObjectMapper.get().readTree(lines.get(0));
+        assertEquals("health-code", node.get("healthCode").textValue());
+        assertEquals("guid1", node.get("guid").textValue());
+        assertEquals("plan-guid", node.get("schedulePlanGuid").textValue());
+        assertEquals("run-key", node.get("runKey").textValue());
+        assertEquals("task:task1", node.get("activity").get("ref").textValue());
+        assertEquals(1000L, node.get("scheduledOn").longValue());
+        assertEquals(2000L, node.get("expiresOn").longValue());
+        assertTrue(node.get("startedOn").isNull());
+        assertEquals(2000L, node.get("hidesOn").longValue());
+    }
+
+    private static Task makeTask(String guid) {
+        Task task = new DynamoTask();
+        task.setHealthCode("health-code");
+        task.setGuid(guid);
+        task.setSchedulePlanGuid("plan-guid");
+        task.setRunKey("run-key");
+        task.setActivity(new Activity("Activity 1", "task:task1"));
+        task.setScheduledOn(1000L);
+        task.setExpiresOn(2000L);
+        task.setHidesOn(2000L);
+        return task;
+    }
+
+    private static List<String> readLines(byte[] bytes) throws IOException {
+        List<String> lines = Lists.newArrayList();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(bytes)), Charsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -5,6 +5,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY_IDENTIFIER;
@@ -87,6 +89,20 @@ public class HealthCodeServiceImplTest {
         
     }
     
+    @Test
+    public void healthCodeMappingIsCachedAfterFirstRead() {
+        HealthIdDao dao = mock(HealthIdDao.class);
+        when(dao.getCode("123")).thenReturn("abc");
+        
+        HealthCodeServiceImpl healthCodeService = new HealthCodeServiceImpl();
+        healthCodeService.setHealthIdDao(dao);
+        
+        assertEquals("abc", healthCodeService.getMapping("123").getCode());
+        assertEquals("abc", healthCodeService.getMapping("123").getCode());
+        
+        verify(dao, times(1)).getCode("123");
+    }
+    
     private void clearDynamo() {
         DynamoTestUtil.clearTable(DynamoHealthCode.class);
         DynamoTestUtil.clearTable(DynamoHealthId.class);
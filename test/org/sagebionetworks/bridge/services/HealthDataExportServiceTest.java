@@ -0,0 +1,187 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.sagebionetworks.bridge.dao.HealthDataDao;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadFieldDefinition;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataExportStatus;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadFieldType;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.s3.S3Helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+
+public class HealthDataExportServiceTest {
+    private static final HealthDataDao DAO = new DynamoHealthDataDao();
+    private static final LocalDate DATE = new LocalDate(2015, 7, 20);
+
+    private ExecutorService attachmentExecutor;
+    private HealthDataDao mockDao;
+    private S3Helper mockS3Helper;
+    private UploadSchemaService mockSchemaService;
+    private HealthDataExportService svc;
+
+    @Before
+    public void setup() {
+        attachmentExecutor = Executors.newFixedThreadPool(2);
+        mockDao = mock(HealthDataDao.class);
+        mockS3Helper = mock(S3Helper.class);
+        mockSchemaService = mock(UploadSchemaService.class);
+
+        svc = new HealthDataExportService();
+        svc.setHealthDataDao(mockDao);
+        svc.setS3Helper(mockS3Helper);
+        svc.setUploadSchemaService(mockSchemaService);
+    }
+
+    @After
+    public void cleanup() {
+        attachmentExecutor.shutdownNow();
+    }
+
+    @Test
+    public void exportDateWritesPartitionsWithAttachments() throws Exception {
+        // records: one with a JSON attachment, one not sharing, one in another schema
+        HealthDataRecord withAttachment = makeRecord("schema", 1, SharingScope.SPONSORS_AND_PARTNERS,
+                "{\"json\":\"attachment-id\",\"count\":3}");
+        HealthDataRecord notSharing = makeRecord("schema", 1, SharingScope.NO_SHARING, "{\"count\":4}");
+        HealthDataRecord otherSchema = makeRecord("other", 2, SharingScope.ALL_QUALIFIED_RESEARCHERS,
+                "{\"count\":5}");
+        when(mockDao.getRecordIteratorForUploadDate("2015-07-20")).thenReturn(
+                ImmutableList.of(withAttachment, notSharing, otherSchema).iterator());
+
+        DynamoUploadSchema schema = new DynamoUploadSchema();
+        schema.setSchemaId("schema");
+        schema.setRevision(1);
+        schema.setFieldDefinitions(ImmutableList.<UploadFieldDefinition>of(
+                new DynamoUploadFieldDefinition.Builder().withName("json")
+                        .withType(UploadFieldType.ATTACHMENT_JSON_BLOB).build(),
+                new DynamoUploadFieldDefinition.Builder().withName("count").withType(UploadFieldType.INT).build()));
+        when(mockSchemaService.getUploadSchemasForStudy(any(StudyIdentifier.class))).thenReturn(
+                ImmutableList.<UploadSchema>of(schema));
+        when(mockS3Helper.readS3FileAsBytes(anyString(), eq("attachment-id"))).thenReturn(
+                "{\"value\":\"attached\"}".getBytes(Charsets.UTF_8));
+
+        final Map<String, List<String>> filesByKey = new HashMap<>();
+        when(mockS3Helper.doesS3FileExist(anyString(), anyString())).thenReturn(false);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                filesByKey.put((String) invocation.getArguments()[1],
+                        readLines((File) invocation.getArguments()[2]));
+                return null;
+            }
+        }).when(mockS3Helper).writeFileToS3(anyString(), anyString(), any(File.class));
+
+        // execute
+        svc.exportDate(DATE, attachmentExecutor, new HashMap<String, Map<String, UploadSchema>>());
+
+        // validate
+        assertEquals(2, filesByKey.size());
+
+        List<String> schemaLines = filesByKey.get("2015-07-20/api/schema-v1.ndjson.gz");
+        assertEquals(1, schemaLines.size());
+        JsonNode line = BridgeObjectMapper.get().readTree(schemaLines.get(0));
+        assertEquals(3, line.get("data").get("count").intValue());
+        assertEquals("attached", line.get(HealthDataExportService.ATTACHMENTS_FIELD).get("json").get("value")
+                .textValue());
+
+        List<String> otherLines = filesByKey.get("2015-07-20/api/other-v2.ndjson.gz");
+        assertEquals(1, otherLines.size());
+        line = BridgeObjectMapper.get().readTree(otherLines.get(0));
+        assertEquals(5, line.get("data").get("count").intValue());
+        assertFalse(line.has(HealthDataExportService.ATTACHMENTS_FIELD));
+
+        verify(mockS3Helper).writeBytesToS3(anyString(), eq("2015-07-20/" + HealthDataExportService.SUCCESS_MARKER),
+                any(byte[].class));
+    }
+
+    @Test
+    public void getExportStatus() {
+        when(mockS3Helper.doesS3FileExist(anyString(), eq("2015-07-20/" + HealthDataExportService.SUCCESS_MARKER)))
+                .thenReturn(true);
+
+        HealthDataExportStatus status = svc.getExportStatus(DATE, DATE.plusDays(2));
+        assertEquals("2015-07-20", status.getStartDate());
+        assertEquals("2015-07-22", status.getEndDate());
+        assertEquals(ImmutableList.of("2015-07-20"), status.getCompletedDates());
+        assertEquals(ImmutableList.of("2015-07-21", "2015-07-22"), status.getPendingDates());
+        assertFalse(status.isRunning());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void startAfterEnd() {
+        svc.getExportStatus(DATE, DATE.minusDays(1));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void rangeTooLong() {
+        svc.getExportStatus(DATE, DATE.plusDays(HealthDataExportService.MAX_EXPORT_DAYS));
+    }
+
+    @Test
+    public void maxRange() {
+        HealthDataExportStatus status = svc.getExportStatus(DATE,
+                DATE.plusDays(HealthDataExportService.MAX_EXPORT_DAYS - 1));
+        assertEquals(HealthDataExportService.MAX_EXPORT_DAYS, status.getPendingDates().size());
+        assertTrue(status.getCompletedDates().isEmpty());
+    }
+
+    private static HealthDataRecord makeRecord(String schemaId, int rev, SharingScope sharingScope, String data)
+            throws IOException {
+        return DAO.getRecordBuilder().withHealthCode("healthCode").withStudyId("api").withSchemaId(schemaId)
+                .withSchemaRevision(rev).withUploadDate(DATE).withUserSharingScope(sharingScope)
+                .withData(BridgeObjectMapper.get().readTree(data)).build();
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                new FileInputStream(file)), Charsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,131 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.dao.ParticipantOption;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.dao.ParticipantOptionsDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+public class ParticipantOptionsServiceImplMockTest {
+    private static final String HEALTH_CODE = "healthCode";
+    private static final String VERSION = "version";
+
+    private ParticipantOptionsDao mockDao;
+    private CacheProvider mockCacheProvider;
+    private ParticipantOptionsServiceImpl service;
+
+    @Before
+    public void before() {
+        mockDao = mock(ParticipantOptionsDao.class);
+        mockCacheProvider = mock(CacheProvider.class);
+        service = new ParticipantOptionsServiceImpl();
+        service.setParticipantOptionsDao(mockDao);
+        when(mockCacheProvider.getParticipantOptionsVersion(HEALTH_CODE)).thenReturn(VERSION);
+        service.setCacheProvider(mockCacheProvider);
+    }
+
+    @Test
+    public void cachedOptionsAreNotReadFromDao() {
+        Map<ParticipantOption,String> options = ImmutableMap.of(ParticipantOption.SHARING_SCOPE,
+                SharingScope.SPONSORS_AND_PARTNERS.name());
+        when(mockCacheProvider.getParticipantOptions(HEALTH_CODE, VERSION)).thenReturn(options);
+
+        assertSame(options, service.getAllParticipantOptions(HEALTH_CODE));
+        assertEquals(SharingScope.SPONSORS_AND_PARTNERS, service.getSharingScope(HEALTH_CODE));
+        verifyZeroInteractions(mockDao);
+    }
+
+    @Test
+    public void missingOptionsAreReadFromDaoAndCached() {
+        Map<ParticipantOption,String> options = Maps.newHashMap();
+        options.put(ParticipantOption.EXTERNAL_IDENTIFIER, "ext-id");
+        when(mockCacheProvider.getParticipantOptions(HEALTH_CODE, VERSION)).thenReturn(null);
+        when(mockDao.getAllParticipantOptions(HEALTH_CODE)).thenReturn(options);
+
+        assertEquals("ext-id", service.getOption(HEALTH_CODE, ParticipantOption.EXTERNAL_IDENTIFIER));
+        verify(mockCacheProvider).setParticipantOptions(HEALTH_CODE, VERSION, options);
+    }
+
+    @Test
+    public void participantWithoutOptionsGetsDefaults() {
+        when(mockCacheProvider.getParticipantOptions(HEALTH_CODE, VERSION)).thenReturn(
+                Maps.<ParticipantOption,String>newHashMap());
+
+        assertEquals("true", service.getOption(HEALTH_CODE, ParticipantOption.EMAIL_NOTIFICATIONS));
+        assertEquals(SharingScope.NO_SHARING, service.getSharingScope(HEALTH_CODE));
+    }
+
+    @Test
+    public void changesRemoveOptionsFromCache() {
+        service.setOption(TestConstants.TEST_STUDY, HEALTH_CODE, SharingScope.ALL_QUALIFIED_RESEARCHERS);
+        verify(mockDao).setOption(TestConstants.TEST_STUDY, HEALTH_CODE, ParticipantOption.SHARING_SCOPE,
+                SharingScope.ALL_QUALIFIED_RESEARCHERS.name());
+
+        service.deleteOption(HEALTH_CODE, ParticipantOption.SHARING_SCOPE);
+        verify(mockDao).deleteOption(HEALTH_CODE, ParticipantOption.SHARING_SCOPE);
+
+        service.deleteAllParticipantOptions(HEALTH_CODE);
+        verify(mockDao).deleteAllParticipantOptions(HEALTH_CODE);
+
+        verify(mockCacheProvider, times(3)).removeParticipantOptions(HEALTH_CODE);
+    }
+
+    @Test
+    public void redisErrorReadsOptionsFromDao() {
+        Map<ParticipantOption,String> options = ImmutableMap.of(ParticipantOption.SHARING_SCOPE,
+                SharingScope.NO_SHARING.name());
+        when(mockCacheProvider.getParticipantOptionsVersion(HEALTH_CODE)).thenThrow(
+                new BridgeServiceException("test exception"));
+        when(mockDao.getAllParticipantOptions(HEALTH_CODE)).thenReturn(options);
+
+        assertEquals(SharingScope.NO_SHARING, service.getSharingScope(HEALTH_CODE));
+        verify(mockCacheProvider, never()).setParticipantOptions(anyString(), anyString(), anyMapOf(
+                ParticipantOption.class, String.class));
+    }
+
+    @Test
+    public void redisErrorCachingOptionsStillReturnsThem() {
+        Map<ParticipantOption,String> options = ImmutableMap.of(ParticipantOption.SHARING_SCOPE,
+                SharingScope.NO_SHARING.name());
+        when(mockCacheProvider.getParticipantOptions(HEALTH_CODE, VERSION)).thenReturn(null);
+        when(mockDao.getAllParticipantOptions(HEALTH_CODE)).thenReturn(options);
+        doThrow(new BridgeServiceException("test exception")).when(mockCacheProvider)
+                .setParticipantOptions(HEALTH_CODE, VERSION, options);
+
+        assertSame(options, service.getAllParticipantOptions(HEALTH_CODE));
+    }
+
+    @Test
+    public void redisErrorRemovingOptionsStillSavesChange() {
+        doThrow(new BridgeServiceException("test exception")).when(mockCacheProvider)
+                .removeParticipantOptions(HEALTH_CODE);
+
+        service.setOption(TestConstants.TEST_STUDY, HEALTH_CODE, SharingScope.NO_SHARING);
+        service.deleteAllParticipantOptions(HEALTH_CODE);
+
+        verify(mockDao).setOption(TestConstants.TEST_STUDY, HEALTH_CODE, ParticipantOption.SHARING_SCOPE,
+                SharingScope.NO_SHARING.name());
+        verify(mockDao).deleteAllParticipantOptions(HEALTH_CODE);
+    }
+}
@@ -5,8 +5,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyListOf;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -16,6 +19,7 @@ import java.util.List;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurveyDao;
@@ -25,11 +29,14 @@ import org.sagebionetworks.bridge.dynamodb.DynamoSurveyResponseDao;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 import org.sagebionetworks.bridge.models.surveys.IntegerConstraints;
+import org.sagebionetworks.bridge.models.surveys.StringConstraints;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
 import org.sagebionetworks.bridge.models.surveys.SurveyElement;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponse;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponseView;
+import org.sagebionetworks.bridge.models.surveys.SurveyRule;
+import org.sagebionetworks.bridge.models.surveys.SurveyRule.Operator;
 
 import com.google.common.collect.Lists;
 
@@ -65,7 +72,8 @@ public class SurveyResponseServiceImplTest {
         response.setSurveyKey(survey);
         
         surveyResponseDao = mock(DynamoSurveyResponseDao.class);
-        when(surveyResponseDao.appendSurveyAnswers(any(SurveyResponse.class), any(List.class))).thenReturn(response);
+        when(surveyResponseDao.appendSurveyAnswers(any(SurveyResponse.class), any(Survey.class), any(List.class),
+                anyString())).thenReturn(response);
         when(surveyResponseDao.getSurveyResponse(anyString(), anyString())).thenReturn(response);
         
         service.setSurveyResponseDao(surveyResponseDao);
@@ -152,7 +160,7 @@ public class SurveyResponseServiceImplTest {
     public void canCreateSurveyResponse() throws Exception {
         
         when(surveyResponseDao.createSurveyResponse(
-            any(GuidCreatedOnVersionHolder.class), any(String.class), any(List.class), any(String.class))).thenReturn(getSurveyResponse());
+            any(Survey.class), any(String.class), any(List.class), any(String.class))).thenReturn(getSurveyResponse());
         
         SurveyResponseView response = service.createSurveyResponse(survey, "healthCode", getAnswers());
         
@@ -163,11 +171,11 @@ public class SurveyResponseServiceImplTest {
         assertEquals("healthCode", response.getResponse().getHealthCode());
         assertEquals((Long)2L, (Long)response.getVersion());
         
-        verify(taskEventService).publishEvent(any(String.class), any(SurveyAnswer.class));
+        verifyAnswerEventsPublished(1);
         verifyNoMoreInteractions(taskEventService);
         verify(surveyDao).getSurvey(any(GuidCreatedOnVersionHolder.class));
         verify(surveyResponseDao).createSurveyResponse(
-            any(GuidCreatedOnVersionHolder.class), any(String.class), any(List.class), any(String.class));
+            any(Survey.class), any(String.class), any(List.class), any(String.class));
         verifyNoMoreInteractions(surveyDao);
         verifyNoMoreInteractions(surveyResponseDao);
     }
@@ -176,7 +184,7 @@ public class SurveyResponseServiceImplTest {
     @Test
     public void canCreateSurveyResponseWithIdentifier() throws Exception {
         when(surveyResponseDao.createSurveyResponse(
-            any(GuidCreatedOnVersionHolder.class), any(String.class), any(List.class), any(String.class))).thenReturn(getSurveyResponse());
+            any(Survey.class), any(String.class), any(List.class), any(String.class))).thenReturn(getSurveyResponse());
         
         SurveyResponseView response = service.createSurveyResponse(survey, "healthCode", getAnswers(), "belgium");
         
@@ -188,11 +196,11 @@ public class SurveyResponseServiceImplTest {
         assertEquals("belgium", response.getIdentifier());
         assertEquals((Long)2L, (Long)response.getVersion());
 
-        verify(taskEventService).publishEvent(any(String.class), any(SurveyAnswer.class));
+        verifyAnswerEventsPublished(1);
         verifyNoMoreInteractions(taskEventService);
         verify(surveyDao).getSurvey(any(GuidCreatedOnVersionHolder.class));
         verify(surveyResponseDao).createSurveyResponse(
-            any(GuidCreatedOnVersionHolder.class), any(String.class), any(List.class), any(String.class));
+            any(Survey.class), any(String.class), any(List.class), any(String.class));
         verifyNoMoreInteractions(surveyDao);
         verifyNoMoreInteractions(surveyResponseDao);
     }
@@ -277,14 +285,85 @@ public class SurveyResponseServiceImplTest {
         
         service.appendSurveyAnswers(response, answers);
         
-        verify(surveyResponseDao).appendSurveyAnswers(response, answers);
+        verify(surveyResponseDao).appendSurveyAnswers(response, survey, answers, null);
         verify(surveyDao).getSurvey(any(GuidCreatedOnVersionHolder.class));
-        verify(taskEventService).publishEvent(any(String.class), any(SurveyAnswer.class));
+        verifyAnswerEventsPublished(1);
         verifyNoMoreInteractions(taskEventService);
         verifyNoMoreInteractions(surveyDao);
         verifyNoMoreInteractions(surveyResponseDao);
     }
     
+    @Test
+    public void appendSurveyAnswersWithAppliedKeyIsNotWrittenAgain() {
+        DynamoSurveyResponse response = getSurveyResponse();
+        response.setAppliedKeys(Lists.newArrayList("batch-1"));
+        when(surveyResponseDao.getSurveyResponse("healthCode", "belgium")).thenReturn(response);
+        
+        SurveyResponse result = service.appendSurveyAnswers("healthCode", "belgium", getAnswers(), "batch-1");
+        
+        assertEquals(response, result);
+        verify(surveyResponseDao).getSurveyResponse("healthCode", "belgium");
+        verifyNoMoreInteractions(surveyResponseDao);
+        verifyNoMoreInteractions(surveyDao);
+        verifyNoMoreInteractions(taskEventService);
+    }
+    
+    @Test
+    public void publishedSurveyIsOnlyReadOnce() {
+        DynamoSurveyResponse response = getSurveyResponse();
+        response.setSurveyKey(survey);
+        service.appendSurveyAnswers(response, response.getAnswers());
+        service.appendSurveyAnswers("healthCode", "belgium", getAnswers(), "batch-2");
+        service.getNextUnansweredQuestion("healthCode", "belgium");
+        
+        verify(surveyDao).getSurvey(any(GuidCreatedOnVersionHolder.class));
+        verifyNoMoreInteractions(surveyDao);
+        verify(taskEventService, times(2)).publishEvents(any(SurveyResponse.class), anyListOf(SurveyAnswer.class));
+    }
+    
+    @Test
+    public void unpublishedSurveyIsReadEachTime() {
+        survey.setPublished(false);
+        DynamoSurveyResponse response = getSurveyResponse();
+        response.setSurveyKey(survey);
+        service.appendSurveyAnswers(response, response.getAnswers());
+        service.appendSurveyAnswers(response, response.getAnswers());
+        
+        verify(surveyDao, times(2)).getSurvey(any(GuidCreatedOnVersionHolder.class));
+    }
+    
+    @Test
+    public void answersToSkippedQuestionsAreSaved() {
+        // Answering 24 to the age question skips the detail question
+        DynamoSurveyQuestion age = (DynamoSurveyQuestion)survey.getElements().get(0);
+        age.getConstraints().getRules().add(new SurveyRule(Operator.LE, 30, "end"));
+        DynamoSurveyQuestion detail = new DynamoSurveyQuestion();
+        detail.setConstraints(new StringConstraints());
+        detail.setIdentifier("detail");
+        detail.setGuid(BridgeUtils.generateGuid());
+        detail.setPrompt("Anything else?");
+        detail.setType("SurveyQuestion");
+        DynamoSurveyQuestion end = new DynamoSurveyQuestion();
+        end.setConstraints(new StringConstraints());
+        end.setIdentifier("end");
+        end.setGuid(BridgeUtils.generateGuid());
+        end.setPrompt("Last question?");
+        end.setType("SurveyQuestion");
+        survey.setElements(Lists.<SurveyElement>newArrayList(age, detail, end));
+        
+        SurveyResponse response = getSurveyResponse();
+        List<SurveyAnswer> answers = getAnswers();
+        SurveyAnswer detailAnswer = new SurveyAnswer();
+        detailAnswer.setQuestionGuid(detail.getGuid());
+        detailAnswer.setAnsweredOn(timeOfSurveyAnswer);
+        detailAnswer.setAnswers(Lists.newArrayList("x"));
+        detailAnswer.setClient("mobile");
+        answers.add(detailAnswer);
+        
+        service.appendSurveyAnswers(response, answers);
+        verify(surveyResponseDao).appendSurveyAnswers(response, survey, answers, null);
+    }
+    
     @Test
     public void deleteSurveyResponses() {
         service.deleteSurveyResponses("healthCode");
@@ -314,15 +393,23 @@ public class SurveyResponseServiceImplTest {
         DynamoSurveyResponse response = new DynamoSurveyResponse();
         response.setSurveyKey(survey);
         response.setCompletedOn(DateTime.now().getMillis());
-        when(surveyResponseDao.appendSurveyAnswers(any(SurveyResponse.class), any(List.class))).thenReturn(response);
+        when(surveyResponseDao.appendSurveyAnswers(any(SurveyResponse.class), any(Survey.class), any(List.class),
+                anyString())).thenReturn(response);
         
         List<SurveyAnswer> answers = response.getAnswers();
         
         service.appendSurveyAnswers(response, answers);
-        verify(taskEventService).publishEvent(any(SurveyResponse.class));
+        verify(taskEventService).publishEvents(eq(response), anyListOf(SurveyAnswer.class));
         verifyNoMoreInteractions(taskEventService);
     }
     
+    @SuppressWarnings("unchecked")
+    private void verifyAnswerEventsPublished(int count) {
+        ArgumentCaptor<List> answersCaptor = ArgumentCaptor.forClass(List.class);
+        verify(taskEventService).publishEvents(any(SurveyResponse.class), answersCaptor.capture());
+        assertEquals(count, answersCaptor.getValue().size());
+    }
+    
     private DynamoSurveyResponse getSurveyResponse() {
         DynamoSurveyResponse response = new DynamoSurveyResponse();
         response.setHealthCode("healthCode");
@@ -358,6 +445,7 @@ public class SurveyResponseServiceImplTest {
         return survey;
     }
     
+    
     private List<SurveyAnswer> getAnswers() {
         List<SurveyAnswer> answers = Lists.newArrayList();
         
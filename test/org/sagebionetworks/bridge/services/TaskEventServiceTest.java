@@ -8,6 +8,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
@@ -32,12 +33,17 @@ public class TaskEventServiceTest {
     
     private TaskEventDao taskEventDao;
     
+    private TaskMaterializer taskMaterializer;
+    
     @Before
     public void before() {
         service = new TaskEventService();
         
         taskEventDao = mock(TaskEventDao.class);
         service.setTaskEventDao(taskEventDao);
+        
+        taskMaterializer = mock(TaskMaterializer.class);
+        service.setTaskMaterializer(taskMaterializer);
     }
     
     @Test
@@ -49,6 +55,7 @@ public class TaskEventServiceTest {
         
         verify(taskEventDao).publishEvent(eq(event));
         verifyNoMoreInteractions(taskEventDao);
+        verify(taskMaterializer).requestMaterialization("BBB");
     }
     
     @Test
@@ -159,6 +166,40 @@ public class TaskEventServiceTest {
         assertEquals(new Long(now.getMillis()), argument.getValue().getTimestamp());
         assertEquals("healthCode", argument.getValue().getHealthCode());
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void canPublishSurveyAnswersAndResponseInOneCall() {
+        DateTime now = DateTime.now();
+        
+        DynamoSurveyResponse response = new DynamoSurveyResponse();
+        response.setCompletedOn(now.getMillis());
+        response.setHealthCode("healthCode");
+        response.setSurveyKey("BBB-CCC-DDD:123123123");
+        
+        SurveyAnswer answer = new SurveyAnswer();
+        answer.setAnsweredOn(now.getMillis());
+        answer.setQuestionGuid("EEE-FFF-GGG");
+        answer.setAnswers(Lists.newArrayList("belgium"));
+        
+        service.publishEvents(response, Lists.newArrayList(answer));
+        
+        ArgumentCaptor<List> argument = ArgumentCaptor.forClass(List.class);
+        verify(taskEventDao).publishEvents(argument.capture());
+        verifyNoMoreInteractions(taskEventDao);
+        
+        List<TaskEvent> events = argument.getValue();
+        assertEquals(2, events.size());
+        assertEquals("question:EEE-FFF-GGG:answered", events.get(0).getEventId());
+        assertEquals("survey:BBB-CCC-DDD:finished", events.get(1).getEventId());
+        
+        // Both events are for one participant, whose tasks are materialized once
+        verify(taskMaterializer).requestMaterialization("healthCode");
+    }
     
-    
+    @Test
+    public void publishingNoEventsDoesntCallDao() {
+        service.publishEvents(Lists.<TaskEvent>newArrayList());
+        verifyNoMoreInteractions(taskEventDao, taskMaterializer);
+    }
 }
@@ -0,0 +1,197 @@
+package org.sagebionetworks.bridge.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.dao.DistributedLockDao;
+import org.sagebionetworks.bridge.dao.HealthCodeDao;
+import org.sagebionetworks.bridge.dao.UserConsentDao;
+import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
+import org.sagebionetworks.bridge.dynamodb.DynamoTask;
+import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
+import org.sagebionetworks.bridge.models.accounts.User;
+import org.sagebionetworks.bridge.models.schedules.Task;
+import org.sagebionetworks.bridge.models.studies.Study;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class TaskMaterializerTest {
+    private static final String HEALTH_CODE = "health-code";
+    private static final String LOCK = "test-lock";
+    private static final String STUDY_ID = "test-study";
+
+    private DistributedLockDao mockLockDao;
+    private HealthCodeDao mockHealthCodeDao;
+    private StudyService mockStudyService;
+    private TaskService mockTaskService;
+    private UserConsentDao mockUserConsentDao;
+    private TaskMaterializer materializer;
+
+    @Before
+    public void setup() {
+        mockLockDao = mock(DistributedLockDao.class);
+        when(mockLockDao.acquireLock(eq(TaskMaterializer.class), anyString(), anyInt())).thenReturn(LOCK);
+        mockHealthCodeDao = mock(HealthCodeDao.class);
+        when(mockHealthCodeDao.getStudyIdentifier(HEALTH_CODE)).thenReturn(STUDY_ID);
+        mockStudyService = mock(StudyService.class);
+        mockTaskService = mock(TaskService.class);
+        mockUserConsentDao = mock(UserConsentDao.class);
+
+        materializer = new TaskMaterializer();
+        materializer.setDistributedLockDao(mockLockDao);
+        materializer.setHealthCodeDao(mockHealthCodeDao);
+        materializer.setStudyService(mockStudyService);
+        materializer.setTaskService(mockTaskService);
+        materializer.setUserConsentDao(mockUserConsentDao);
+
+        // Queued with a delay, so the tests materialize the participant themselves
+        materializer.queue(HEALTH_CODE, 600);
+    }
+
+    @After
+    public void after() {
+        materializer.stop();
+    }
+
+    @Test
+    public void materializesTasksOfParticipant() {
+        DateTime now = DateTime.now();
+        materializer.materialize(HEALTH_CODE);
+
+        ArgumentCaptor<User> userCaptor = ArgumentCaptor.forClass(User.class);
+        ArgumentCaptor<DateTime> endsOnCaptor = ArgumentCaptor.forClass(DateTime.class);
+        verify(mockTaskService).materializeTasks(userCaptor.capture(), endsOnCaptor.capture());
+        assertEquals(HEALTH_CODE, userCaptor.getValue().getHealthCode());
+        assertEquals(STUDY_ID, userCaptor.getValue().getStudyKey());
+        assertTrue(endsOnCaptor.getValue().isAfter(now.plusDays(TaskService.MAX_EXPIRES_ON_DAYS)));
+
+        verify(mockLockDao).releaseLock(TaskMaterializer.class, HEALTH_CODE, LOCK);
+    }
+
+    @Test
+    public void skipsDeletedParticipant() {
+        when(mockHealthCodeDao.getStudyIdentifier(HEALTH_CODE)).thenReturn(null);
+        materializer.materialize(HEALTH_CODE);
+
+        verifyZeroInteractions(mockTaskService);
+        verify(mockLockDao).releaseLock(TaskMaterializer.class, HEALTH_CODE, LOCK);
+    }
+
+    @Test
+    public void requeuesParticipantLockedByAnotherServer() {
+        when(mockLockDao.acquireLock(eq(TaskMaterializer.class), eq(HEALTH_CODE), anyInt())).thenThrow(
+                new ConcurrentModificationException("Lock already set."));
+        materializer.materialize(HEALTH_CODE);
+
+        verifyZeroInteractions(mockTaskService);
+        assertTrue(materializer.isQueued(HEALTH_CODE));
+    }
+
+    @Test
+    public void errorReleasesLock() {
+        when(mockTaskService.materializeTasks(any(User.class), any(DateTime.class))).thenThrow(
+                new IllegalStateException("test exception"));
+        materializer.materialize(HEALTH_CODE);
+
+        verify(mockLockDao).releaseLock(TaskMaterializer.class, HEALTH_CODE, LOCK);
+        assertFalse(materializer.isQueued(HEALTH_CODE));
+    }
+
+    @Test
+    public void sweepQueuesParticipantsOfEveryStudy() {
+        Study study1 = new DynamoStudy();
+        study1.setIdentifier("study1");
+        Study study2 = new DynamoStudy();
+        study2.setIdentifier("study2");
+        when(mockStudyService.getStudies()).thenReturn(Lists.newArrayList(study1, study2));
+        when(mockUserConsentDao.getParticipantHealthCodes(study1)).thenReturn(Sets.newHashSet("health-code-1"));
+        when(mockUserConsentDao.getParticipantHealthCodes(study2)).thenReturn(Sets.newHashSet("health-code-2"));
+
+        materializer.sweep();
+
+        // Participants are materialized by the partition workers.
+        verify(mockHealthCodeDao, timeout(5000)).getStudyIdentifier("health-code-1");
+        verify(mockHealthCodeDao, timeout(5000)).getStudyIdentifier("health-code-2");
+    }
+
+    @Test
+    public void skipsSweepIfAnotherServerHasSwept() {
+        when(mockLockDao.acquireLock(eq(TaskMaterializer.class), eq("sweep"), anyInt()))
+                .thenThrow(new ConcurrentModificationException("Lock already set."));
+        materializer.sweep();
+
+        verifyZeroInteractions(mockStudyService, mockUserConsentDao);
+    }
+
+    @Test
+    public void materializesNowUnderLock() {
+        User user = new User();
+        user.setHealthCode(HEALTH_CODE);
+        user.setStudyKey(STUDY_ID);
+        List<Task> tasks = Lists.<Task>newArrayList(new DynamoTask());
+        when(mockTaskService.materializeTasks(eq(user), any(DateTime.class))).thenReturn(tasks);
+
+        assertSame(tasks, materializer.materializeNow(user));
+        verify(mockLockDao).releaseLock(TaskMaterializer.class, HEALTH_CODE, LOCK);
+    }
+
+    @Test
+    public void materializeNowQueuesParticipantBeingMaterialized() {
+        when(mockLockDao.acquireLock(eq(TaskMaterializer.class), eq(HEALTH_CODE), anyInt())).thenThrow(
+                new ConcurrentModificationException("Lock already set."));
+        User user = new User();
+        user.setHealthCode(HEALTH_CODE);
+        user.setStudyKey(STUDY_ID);
+
+        assertTrue(materializer.materializeNow(user).isEmpty());
+        verifyZeroInteractions(mockTaskService);
+        assertTrue(materializer.isQueued(HEALTH_CODE));
+    }
+
+    @Test
+    public void materializeNowQueuesParticipantOnError() {
+        when(mockTaskService.materializeTasks(any(User.class), any(DateTime.class))).thenThrow(
+                new IllegalStateException("test exception"));
+        User user = new User();
+        user.setHealthCode(HEALTH_CODE);
+        user.setStudyKey(STUDY_ID);
+
+        assertTrue(materializer.materializeNow(user).isEmpty());
+        verify(mockLockDao).releaseLock(TaskMaterializer.class, HEALTH_CODE, LOCK);
+        assertTrue(materializer.isQueued(HEALTH_CODE));
+    }
+
+    @Test
+    public void materializeNowTakesParticipantOutOfQueue() {
+        User user = new User();
+        user.setHealthCode(HEALTH_CODE);
+        user.setStudyKey(STUDY_ID);
+        materializer.materializeNow(user);
+        assertFalse(materializer.isQueued(HEALTH_CODE));
+
+        // The queued request finds the participant already materialized
+        materializer.materialize(HEALTH_CODE);
+        verify(mockTaskService).materializeTasks(eq(user), any(DateTime.class));
+        verifyZeroInteractions(mockHealthCodeDao);
+    }
+}
@@ -1,9 +1,13 @@
 package org.sagebionetworks.bridge.services;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -25,6 +29,7 @@ import org.sagebionetworks.bridge.dynamodb.DynamoTaskDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoUserConsent2;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.accounts.UserConsent;
 import org.sagebionetworks.bridge.models.schedules.Task;
@@ -33,6 +38,7 @@ import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponse;
 import org.sagebionetworks.bridge.models.surveys.SurveyResponseView;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class TaskServiceTest {
@@ -53,6 +59,8 @@ public class TaskServiceTest {
     
     private TaskDao taskDao;
     
+    private TaskEventService taskEventService;
+    
     private DateTime endsOn;
     
     @SuppressWarnings("unchecked")
@@ -75,7 +83,7 @@ public class TaskServiceTest {
         when(userConsentDao.getUserConsent(HEALTH_CODE, STUDY_IDENTIFIER)).thenReturn(consent);
         
         Map<String,DateTime> map = Maps.newHashMap();
-        TaskEventService taskEventService = mock(TaskEventService.class);
+        taskEventService = mock(TaskEventService.class);
         when(taskEventService.getTaskEventMap(anyString())).thenReturn(map);
         
         List<Task> tasks = TestUtils.runSchedulerForTasks(user, endsOn);
@@ -153,7 +161,7 @@ public class TaskServiceTest {
     @SuppressWarnings({"unchecked","rawtypes"})
     @Test
     public void changePublishedAndAbsoluteSurveyActivity() {
-        service.getTasks(user, endsOn.plusDays(2));
+        service.materializeTasks(user, endsOn.plusDays(2));
         
         ArgumentCaptor<List> argument = ArgumentCaptor.forClass(List.class);
         verify(taskDao).saveTasks(anyString(), argument.capture());
@@ -171,4 +179,75 @@ public class TaskServiceTest {
         assertTrue("Found task with task:task3 ref", foundTask3);
     }
     
+    @Test
+    public void getTasksOnlyReadsTasks() {
+        List<Task> tasks = TestUtils.runSchedulerForTasks(user, endsOn);
+        when(taskDao.getTasks(HEALTH_CODE, endsOn)).thenReturn(tasks);
+        
+        assertSame(tasks, service.getTasks(user, endsOn));
+        verify(taskDao).getTasks(HEALTH_CODE, endsOn);
+        verifyNoMoreInteractions(taskDao);
+        verify(taskEventService, never()).getTaskEventMap(anyString());
+    }
+    
+    @Test
+    public void getTasksPageOnlyReadsTasks() {
+        List<Task> tasks = TestUtils.runSchedulerForTasks(user, endsOn);
+        PagedResourceList<Task> page = new PagedResourceList<>(tasks, null);
+        when(taskDao.getTasks(HEALTH_CODE, endsOn, null, TaskService.DEFAULT_PAGE_SIZE)).thenReturn(page);
+        when(taskDao.getTasks(HEALTH_CODE, endsOn, "offsetKey", 10)).thenReturn(page);
+        
+        assertSame(page, service.getTasks(user, endsOn, null, null));
+        assertSame(page, service.getTasks(user, endsOn, "offsetKey", 10));
+        verify(taskDao).getTasks(HEALTH_CODE, endsOn, null, TaskService.DEFAULT_PAGE_SIZE);
+        verify(taskDao).getTasks(HEALTH_CODE, endsOn, "offsetKey", 10);
+        verifyNoMoreInteractions(taskDao);
+    }
+    
+    @Test
+    public void getTasksPageReturnsPageFilteredToNothing() {
+        // A first page whose tasks are all scheduled after the end timestamp isn't the last page
+        PagedResourceList<Task> emptyPage = new PagedResourceList<>(Lists.<Task>newArrayList(), "offsetKey");
+        when(taskDao.getTasks(HEALTH_CODE, endsOn, null, 2)).thenReturn(emptyPage);
+        
+        PagedResourceList<Task> page = service.getTasks(user, endsOn, null, 2);
+        assertTrue(page.getItems().isEmpty());
+        assertEquals("offsetKey", page.getOffsetKey());
+        verify(taskDao).getTasks(HEALTH_CODE, endsOn, null, 2);
+        verifyNoMoreInteractions(taskDao);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getTasksPageRejectsPageSizeTooLarge() {
+        service.getTasks(user, endsOn, null, TaskService.MAX_PAGE_SIZE+1);
+    }
+    
+    @Test
+    public void materializeTasksSavesEachRunThatHasNotOccurred() {
+        List<Task> allTasks = service.materializeTasks(user, endsOn);
+        assertFalse(allTasks.isEmpty());
+        
+        // One run has been saved since, so only the other runs are saved
+        String savedRunKey = allTasks.get(allTasks.size()-1).getRunKey();
+        when(taskDao.taskRunHasNotOccurred(HEALTH_CODE, savedRunKey)).thenReturn(false);
+        int savedRunSize = 0;
+        for (Task task : allTasks) {
+            if (task.getRunKey().equals(savedRunKey)) {
+                savedRunSize++;
+            }
+        }
+        
+        List<Task> newTasks = service.materializeTasks(user, endsOn);
+        assertEquals(allTasks.size() - savedRunSize, newTasks.size());
+        for (Task task : newTasks) {
+            assertFalse(task.getRunKey().equals(savedRunKey));
+        }
+    }
+    
+    @Test
+    public void materializeTasksReadsEvents() {
+        service.materializeTasks(user, endsOn);
+        verify(taskEventService).getTaskEventMap(HEALTH_CODE);
+    }
+    
 }
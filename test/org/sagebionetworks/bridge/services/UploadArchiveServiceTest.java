@@ -15,6 +15,7 @@ import java.security.cert.X509Certificate;
 import java.util.Map;
 
 import com.google.common.base.Charsets;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import org.junit.Before;
@@ -43,6 +44,7 @@ public class UploadArchiveServiceTest {
         // mock encryptor cache
         LoadingCache<String, CmsEncryptor> mockEncryptorCache = mock(LoadingCache.class);
         when(mockEncryptorCache.get(notNull(String.class))).thenReturn(encryptor);
+        when(mockEncryptorCache.stats()).thenReturn(new CacheStats(90, 10, 10, 1, 22000000, 3));
 
         // archive service
         archiveService = new UploadArchiveService();
@@ -65,6 +67,12 @@ public class UploadArchiveServiceTest {
         assertEquals(inputStr, new String(decryptedData, Charsets.UTF_8));
     }
 
+    @Test
+    public void cacheStatsMessage() {
+        assertEquals("CMS encryptor cache: 90 hits, 10 misses, 10 loads, 1 failed loads, 2.0 ms average load, "
+                + "3 evictions", archiveService.getCacheStatsMessage());
+    }
+
     @Test(expected = BridgeServiceException.class)
     public void decryptGarbageData() {
         String garbageStr = "This is not encrypted data.";
@@ -3,20 +3,40 @@ package org.sagebionetworks.bridge.services;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.net.URL;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableList;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Test;
 import org.sagebionetworks.bridge.dao.UploadDao;
+import org.sagebionetworks.bridge.dao.UploadDedupeDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.models.accounts.User;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadRequest;
+import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
+import org.sagebionetworks.bridge.validators.UploadValidator;
 
 @SuppressWarnings("unchecked")
 public class UploadServiceMockTest {
@@ -185,6 +205,142 @@ public class UploadServiceMockTest {
         assertEquals("getStatusRecordIdWithNoRecord - message", status.getMessageList().get(0));
     }
 
+    @Test
+    public void createUploadRegistersNewUpload() throws Exception {
+        UploadRequest request = makeUploadRequest();
+        DynamoUpload2 created = new DynamoUpload2(request, "createNew");
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.createUpload(request, "createNew")).thenReturn(created);
+        UploadDedupeDao mockDedupeDao = mock(UploadDedupeDao.class);
+        UploadService svc = makeServiceForCreate(mockDao, mockDedupeDao);
+
+        UploadSession session = svc.createUpload(makeUser("createNew"), request);
+        assertEquals(created.getUploadId(), session.getId());
+        assertEquals(UploadStatus.REQUESTED, session.getStatus());
+        verify(mockDedupeDao).registerUpload(eq("createNew"), eq(request.getContentMd5()), eq(request.getName()),
+                eq(created.getUploadId()), anyLong());
+    }
+
+    @Test
+    public void createUploadReturnsDuplicate() throws Exception {
+        UploadRequest request = makeUploadRequest();
+        DynamoUpload2 earlier = new DynamoUpload2(request, "createDuplicate");
+        earlier.setStatus(UploadStatus.SUCCEEDED);
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.getUpload(earlier.getUploadId())).thenReturn(earlier);
+        UploadDedupeDao mockDedupeDao = mock(UploadDedupeDao.class);
+        when(mockDedupeDao.getDuplicateUploadId(eq("createDuplicate"), eq(request.getContentMd5()),
+                eq(request.getName()), anyLong())).thenReturn(earlier.getUploadId());
+        UploadService svc = makeServiceForCreate(mockDao, mockDedupeDao);
+
+        UploadSession session = svc.createUpload(makeUser("createDuplicate"), request);
+        assertEquals(earlier.getUploadId(), session.getId());
+        assertEquals(UploadStatus.SUCCEEDED, session.getStatus());
+        // The file was already uploaded, so there's no URL to upload it to again
+        assertNull(session.getUrl());
+        assertNull(session.getExpires());
+        verify(mockDao, never()).createUpload(any(UploadRequest.class), anyString());
+    }
+
+    @Test
+    public void createUploadIgnoresDuplicateThatFailedValidation() throws Exception {
+        UploadRequest request = makeUploadRequest();
+        DynamoUpload2 earlier = new DynamoUpload2(request, "createRetry");
+        earlier.setStatus(UploadStatus.VALIDATION_FAILED);
+        DynamoUpload2 created = new DynamoUpload2(request, "createRetry");
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.getUpload(earlier.getUploadId())).thenReturn(earlier);
+        when(mockDao.createUpload(request, "createRetry")).thenReturn(created);
+        UploadDedupeDao mockDedupeDao = mock(UploadDedupeDao.class);
+        when(mockDedupeDao.getDuplicateUploadId(eq("createRetry"), eq(request.getContentMd5()),
+                eq(request.getName()), anyLong())).thenReturn(earlier.getUploadId());
+        UploadService svc = makeServiceForCreate(mockDao, mockDedupeDao);
+
+        UploadSession session = svc.createUpload(makeUser("createRetry"), request);
+        assertEquals(created.getUploadId(), session.getId());
+        assertEquals(UploadStatus.REQUESTED, session.getStatus());
+        assertEquals("https://example.com/upload", session.getUrl());
+    }
+
+    @Test
+    public void uploadCompleteReturnsCompletedDuplicate() {
+        UploadRequest request = makeUploadRequest();
+        DynamoUpload2 earlier = new DynamoUpload2(request, "completeDuplicate");
+        earlier.setStatus(UploadStatus.VALIDATION_IN_PROGRESS);
+        DynamoUpload2 upload = new DynamoUpload2(request, "completeDuplicate");
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.getUpload(earlier.getUploadId())).thenReturn(earlier);
+        UploadDedupeDao mockDedupeDao = mock(UploadDedupeDao.class);
+        when(mockDedupeDao.getDuplicateUploadId(eq("completeDuplicate"), eq(request.getContentMd5()),
+                eq(request.getName()), anyLong())).thenReturn(earlier.getUploadId());
+        AmazonS3 mockS3Client = mock(AmazonS3.class);
+
+        UploadService svc = new UploadService();
+        svc.setUploadDao(mockDao);
+        svc.setUploadDedupeDao(mockDedupeDao);
+        svc.setS3Client(mockS3Client);
+
+        assertSame(earlier, svc.uploadComplete(upload));
+        assertEquals(UploadStatus.REQUESTED, upload.getStatus());
+        verify(mockDao, never()).uploadComplete(any(Upload.class));
+        verifyZeroInteractions(mockS3Client);
+    }
+
+    @Test
+    public void uploadCompleteReplacesDuplicateThatWasNeverCompleted() {
+        UploadRequest request = makeUploadRequest();
+        DynamoUpload2 earlier = new DynamoUpload2(request, "completeFirst");
+        DynamoUpload2 upload = new DynamoUpload2(request, "completeFirst");
+
+        UploadDao mockDao = mock(UploadDao.class);
+        when(mockDao.getUpload(earlier.getUploadId())).thenReturn(earlier);
+        UploadDedupeDao mockDedupeDao = mock(UploadDedupeDao.class);
+        when(mockDedupeDao.getDuplicateUploadId(eq("completeFirst"), eq(request.getContentMd5()),
+                eq(request.getName()), anyLong())).thenReturn(earlier.getUploadId());
+        AmazonS3 mockS3Client = mock(AmazonS3.class);
+        when(mockS3Client.getObjectMetadata(anyString(), eq(upload.getObjectId()))).thenReturn(new ObjectMetadata());
+
+        UploadService svc = new UploadService();
+        svc.setUploadDao(mockDao);
+        svc.setUploadDedupeDao(mockDedupeDao);
+        svc.setS3Client(mockS3Client);
+
+        assertNull(svc.uploadComplete(upload));
+        verify(mockDao).uploadComplete(upload);
+        verify(mockDedupeDao).registerUpload(eq("completeFirst"), eq(request.getContentMd5()),
+                eq(request.getName()), eq(upload.getUploadId()), anyLong());
+    }
+
+    private static UploadService makeServiceForCreate(UploadDao uploadDao, UploadDedupeDao uploadDedupeDao)
+            throws Exception {
+        AmazonS3 mockS3UploadClient = mock(AmazonS3.class);
+        when(mockS3UploadClient.generatePresignedUrl(any(GeneratePresignedUrlRequest.class))).thenReturn(
+                new URL("https://example.com/upload"));
+        UploadSessionCredentialsService mockCredentialsService = mock(UploadSessionCredentialsService.class);
+
+        UploadService svc = new UploadService();
+        svc.setUploadDao(uploadDao);
+        svc.setUploadDedupeDao(uploadDedupeDao);
+        svc.setS3UploadClient(mockS3UploadClient);
+        svc.setUploadSessionCredentialsService(mockCredentialsService);
+        svc.setValidator(new UploadValidator());
+        return svc;
+    }
+
+    private static UploadRequest makeUploadRequest() {
+        final String text = "test upload service";
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("name", "test-upload-service-filename");
+        node.put("contentType", "text/plain");
+        node.put("contentLength", text.getBytes().length);
+        node.put("contentMd5", Base64.encodeBase64String(DigestUtils.md5(text)));
+        return UploadRequest.fromJson(node);
+    }
+
     // Helper method for creating users. UploadService only cares about healthCode, so that's the only thing we set.
     private static User makeUser(String healthCode) {
         User user = new User();
@@ -0,0 +1,172 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadFieldDefinition;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadFieldType;
+
+public class ColumnProjectionHandlerTest {
+    private static final long CREATED_ON = 1444924800000L;
+
+    private ColumnProjectionWriter mockWriter;
+    private ColumnProjectionHandler handler;
+    private UploadValidationContext context;
+    private HealthDataRecordBuilder recordBuilder;
+
+    @Before
+    public void setup() {
+        mockWriter = mock(ColumnProjectionWriter.class);
+        handler = new ColumnProjectionHandler();
+        handler.setColumnProjectionWriter(mockWriter);
+
+        DynamoUploadSchema schema = new DynamoUploadSchema();
+        schema.setStudyId("test-study");
+        schema.setSchemaId("test-schema");
+        schema.setRevision(3);
+        schema.setFieldDefinitions(ImmutableList.<UploadFieldDefinition>of(
+                new DynamoUploadFieldDefinition.Builder().withName("count").withType(UploadFieldType.INT).build(),
+                new DynamoUploadFieldDefinition.Builder().withName("score").withType(UploadFieldType.FLOAT).build(),
+                new DynamoUploadFieldDefinition.Builder().withName("done").withType(UploadFieldType.BOOLEAN).build(),
+                new DynamoUploadFieldDefinition.Builder().withName("blob").withType(UploadFieldType.INLINE_JSON_BLOB)
+                        .build(),
+                new DynamoUploadFieldDefinition.Builder().withName("missing").withType(UploadFieldType.STRING)
+                        .withRequired(false).build()));
+
+        ObjectNode data = BridgeObjectMapper.get().createObjectNode();
+        data.put("count", "not a number");
+        data.put("score", 2.5);
+        data.put("done", true);
+        data.set("blob", BridgeObjectMapper.get().createArrayNode().add(1).add(2));
+
+        recordBuilder = new DynamoHealthDataRecord.Builder().withHealthCode("test-health-code")
+                .withCreatedOn(CREATED_ON).withStudyId("test-study").withUploadDate(new LocalDate(2015, 10, 15))
+                .withUserSharingScope(SharingScope.ALL_QUALIFIED_RESEARCHERS).withData(data);
+
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId("test-upload");
+
+        context = new UploadValidationContext();
+        context.setUpload(upload);
+        context.setSchema(schema);
+        context.setHealthDataRecordBuilder(recordBuilder);
+        context.setRecordId("test-record");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void projectsTypedRow() {
+        handler.handle(context);
+
+        ArgumentCaptor<List> headerCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List> rowCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockWriter).addRow(eq("test-study/test-schema-v3/uploadDate=2015-10-15"),
+                headerCaptor.capture(), rowCaptor.capture());
+
+        assertEquals(ImmutableList.of("recordId:STRING", "healthCode:STRING", "createdOn:TIMESTAMP", "count:INT",
+                "score:FLOAT", "done:BOOLEAN", "blob:INLINE_JSON_BLOB", "missing:STRING"), headerCaptor.getValue());
+
+        List<Object> row = rowCaptor.getValue();
+        assertEquals(8, row.size());
+        assertEquals("test-record", row.get(0));
+        assertEquals("test-health-code", row.get(1));
+        assertEquals("2015-10-15T16:00:00.000Z", row.get(2));
+        assertNull(row.get(3));
+        assertEquals(2.5, row.get(4));
+        assertEquals(true, row.get(5));
+        assertEquals("[1,2]", row.get(6));
+        assertNull(row.get(7));
+
+        // the value that couldn't be converted is reported, but doesn't fail the upload
+        assertEquals(1, context.getMessageList().size());
+        assertEquals(true, context.getSuccess());
+    }
+
+    @Test
+    public void skipsRecordsNotShared() {
+        recordBuilder.withUserSharingScope(SharingScope.NO_SHARING);
+        handler.handle(context);
+        verifyZeroInteractions(mockWriter);
+    }
+
+    @Test
+    public void skipsUploadsWithoutSchema() {
+        context.setSchema(null);
+        handler.handle(context);
+        verifyZeroInteractions(mockWriter);
+    }
+
+    @Test
+    public void writerErrorDoesNotFailUpload() {
+        doThrow(new IllegalStateException("test exception")).when(mockWriter).addRow(
+                anyString(), anyListOf(String.class), anyListOf(Object.class));
+        handler.handle(context);
+        assertEquals(true, context.getSuccess());
+        assertEquals(2, context.getMessageList().size());
+    }
+
+    @Test
+    public void convertValue() {
+        assertEquals(42L, ColumnProjectionHandler.convertValue(UploadFieldType.INT, json("42")));
+        assertEquals(42L, ColumnProjectionHandler.convertValue(UploadFieldType.INT, json("\"42\"")));
+        assertEquals(1.5, ColumnProjectionHandler.convertValue(UploadFieldType.FLOAT, json("1.5")));
+        assertEquals(false, ColumnProjectionHandler.convertValue(UploadFieldType.BOOLEAN, json("\"false\"")));
+        assertEquals("2015-10-15", ColumnProjectionHandler.convertValue(UploadFieldType.CALENDAR_DATE,
+                json("\"2015-10-15\"")));
+        assertEquals("2015-10-15T07:00:00.000Z", ColumnProjectionHandler.convertValue(UploadFieldType.TIMESTAMP,
+                json("\"2015-10-15T00:00:00.000-07:00\"")));
+        assertEquals("2015-10-15T16:00:00.000Z", ColumnProjectionHandler.convertValue(UploadFieldType.TIMESTAMP,
+                json(Long.toString(CREATED_ON))));
+        assertEquals("attachment-id", ColumnProjectionHandler.convertValue(UploadFieldType.ATTACHMENT_BLOB,
+                json("\"attachment-id\"")));
+        assertNull(ColumnProjectionHandler.convertValue(UploadFieldType.STRING, json("null")));
+        assertNull(ColumnProjectionHandler.convertValue(UploadFieldType.STRING, null));
+
+        try {
+            ColumnProjectionHandler.convertValue(UploadFieldType.INT, json("1.5"));
+            fail("expected exception");
+        } catch (IllegalArgumentException ex) {
+            // expected exception
+        }
+        try {
+            ColumnProjectionHandler.convertValue(UploadFieldType.STRING, json("{\"a\":1}"));
+            fail("expected exception");
+        } catch (IllegalArgumentException ex) {
+            // expected exception
+        }
+    }
+
+    private static JsonNode json(String text) {
+        try {
+            return BridgeObjectMapper.get().readTree(text);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ColumnProjectionWriterTest {
+    private static final String PARTITION = "test-study/test-schema-v1/uploadDate=2015-10-15";
+    private static final List<String> HEADER = ImmutableList.of("recordId:STRING", "count:INT");
+
+    private File dir;
+    private ColumnProjectionWriter writer;
+
+    @Before
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("projection").toFile();
+        writer = new ColumnProjectionWriter();
+        writer.setProjectionDir(dir.getAbsolutePath());
+        writer.setFlushRows(2);
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void flushesFullPartition() throws IOException {
+        writer.addRow(PARTITION, HEADER, Arrays.<Object>asList("record-1", 1L));
+        assertEquals(0, listFiles().length);
+
+        writer.addRow(PARTITION, HEADER, Arrays.<Object>asList("record-2", null));
+        File[] files = listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().endsWith(".tsv.gz"));
+        assertEquals("recordId:STRING\tcount:INT\nrecord-1\t1\nrecord-2\t\\N\n", read(files[0]));
+    }
+
+    @Test
+    public void flushAll() throws IOException {
+        writer.addRow(PARTITION, HEADER, Arrays.<Object>asList("record-1", 1L));
+        writer.flushAll();
+        assertEquals(1, listFiles().length);
+
+        // nothing left to flush
+        writer.flushAll();
+        assertEquals(1, listFiles().length);
+    }
+
+    @Test
+    public void escapesCells() {
+        assertEquals("\\N", ColumnProjectionWriter.toCell(null));
+        assertEquals("a\\tb\\nc\\\\d\\re", ColumnProjectionWriter.toCell("a\tb\nc\\d\re"));
+        assertEquals("2.5", ColumnProjectionWriter.toCell(2.5));
+    }
+
+    private File[] listFiles() {
+        File[] files = new File(dir, PARTITION).listFiles();
+        return (files == null) ? new File[0] : files;
+    }
+
+    private static String read(File file) throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(
+                Files.readAllBytes(file.toPath()))), Charsets.UTF_8)) {
+            return CharStreams.toString(reader);
+        }
+    }
+}
@@ -1,16 +1,29 @@
 package org.sagebionetworks.bridge.upload;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadFieldDefinition;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.upload.UploadFieldDefinition;
+import org.sagebionetworks.bridge.models.upload.UploadFieldType;
+import org.sagebionetworks.bridge.models.upload.UploadSchemaType;
+import org.sagebionetworks.bridge.services.UploadSchemaService;
 
 @SuppressWarnings("unchecked")
 public class ParseJsonHandlerTest {
@@ -37,4 +50,87 @@ public class ParseJsonHandlerTest {
         assertEquals(1, jsonInnerMap.size());
         assertTrue((boolean) jsonInnerMap.get("isJson"));
     }
+
+    @Test
+    public void binaryEntriesAreNotParsed() {
+        Map<String, byte[]> inputMap = new HashMap<>();
+        inputMap.put("audio.m4a", "{\"looksLike\":\"json\"}".getBytes(Charsets.UTF_8));
+        inputMap.put("audio", new byte[] { 0, 0, 0, 0x20, 'f', 't', 'y', 'p', 'M', '4', 'A', ' ' });
+        inputMap.put("image", new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n' });
+        inputMap.put("data.csv", "a,b\n1,2\n".getBytes(Charsets.UTF_8));
+
+        UploadValidationContext ctx = new UploadValidationContext();
+        ctx.setUnzippedDataMap(inputMap);
+        new ParseJsonHandler().handle(ctx);
+
+        assertEquals(4, ctx.getUnzippedDataMap().size());
+        assertTrue(ctx.getJsonDataMap().isEmpty());
+    }
+
+    @Test
+    public void schemaDecidesWhatIsParsed() {
+        DynamoUploadSchema schema = new DynamoUploadSchema();
+        schema.setSchemaId("test-schema");
+        schema.setRevision(1);
+        schema.setSchemaType(UploadSchemaType.IOS_DATA);
+        schema.setFieldDefinitions(ImmutableList.<UploadFieldDefinition>of(
+                new DynamoUploadFieldDefinition.Builder().withName("data.json.foo").withType(UploadFieldType.INT)
+                        .build(),
+                new DynamoUploadFieldDefinition.Builder().withName("table.json")
+                        .withType(UploadFieldType.ATTACHMENT_JSON_TABLE).build(),
+                new DynamoUploadFieldDefinition.Builder().withName("bad-table.json")
+                        .withType(UploadFieldType.ATTACHMENT_JSON_TABLE).build(),
+                new DynamoUploadFieldDefinition.Builder().withName("blob.json")
+                        .withType(UploadFieldType.ATTACHMENT_BLOB).build()));
+
+        UploadSchemaService mockSchemaService = mock(UploadSchemaService.class);
+        when(mockSchemaService.getUploadSchema(TestConstants.TEST_STUDY, "test-schema")).thenReturn(schema);
+
+        Map<String, byte[]> inputMap = new HashMap<>();
+        inputMap.put("info.json", "{\"item\":\"test-schema\"}".getBytes(Charsets.UTF_8));
+        inputMap.put("data-12345678.json", "{\"foo\":42}".getBytes(Charsets.UTF_8));
+        inputMap.put("table.json", "[{\"x\":1},{\"x\":2}]".getBytes(Charsets.UTF_8));
+        inputMap.put("bad-table.json", "[{\"x\":1},".getBytes(Charsets.UTF_8));
+        inputMap.put("blob.json", "{\"blob\":true}".getBytes(Charsets.UTF_8));
+        inputMap.put("extra.json", "{\"extra\":true}".getBytes(Charsets.UTF_8));
+
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId("test-upload");
+
+        UploadValidationContext ctx = new UploadValidationContext();
+        ctx.setStudy(TestConstants.TEST_STUDY);
+        ctx.setUpload(upload);
+        ctx.setUnzippedDataMap(inputMap);
+
+        ParseJsonHandler handler = new ParseJsonHandler();
+        handler.setUploadSchemaService(mockSchemaService);
+        handler.handle(ctx);
+
+        assertSame(schema, ctx.getSchema());
+
+        Map<String, JsonNode> jsonDataMap = ctx.getJsonDataMap();
+        assertEquals(2, jsonDataMap.size());
+        assertEquals("test-schema", jsonDataMap.get("info.json").get("item").textValue());
+        assertEquals(42, jsonDataMap.get("data-12345678.json").get("foo").intValue());
+
+        // the tables, the blob attachment and the unreferenced file stay as bytes
+        Map<String, byte[]> byteMap = ctx.getUnzippedDataMap();
+        assertEquals(4, byteMap.size());
+        assertTrue(byteMap.containsKey("table.json"));
+        assertTrue(byteMap.containsKey("bad-table.json"));
+        assertTrue(byteMap.containsKey("blob.json"));
+        assertTrue(byteMap.containsKey("extra.json"));
+
+        // only the malformed table is reported
+        assertEquals(1, ctx.getMessageList().size());
+        assertTrue(ctx.getMessageList().get(0).contains("bad-table.json"));
+    }
+
+    @Test
+    public void isBinary() {
+        assertTrue(ParseJsonHandler.isBinary("voice.M4A", new byte[0]));
+        assertTrue(ParseJsonHandler.isBinary("file", new byte[] { 0x1F, (byte) 0x8B, 8 }));
+        assertFalse(ParseJsonHandler.isBinary("file.json", "{}".getBytes(Charsets.UTF_8)));
+        assertFalse(ParseJsonHandler.isBinary("file", new byte[0]));
+    }
 }
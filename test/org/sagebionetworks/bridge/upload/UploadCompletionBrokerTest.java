@@ -0,0 +1,102 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.bridge.redis.JedisOps;
+
+import com.google.common.collect.Lists;
+
+import play.libs.F;
+
+public class UploadCompletionBrokerTest {
+    private static final long TIMEOUT_MILLIS = 10000L;
+
+    private UploadCompletionBroker broker;
+
+    @Before
+    public void before() {
+        broker = new UploadCompletionBroker();
+    }
+
+    @After
+    public void after() {
+        broker.stop();
+    }
+
+    @Test
+    public void completionRedeemsWaitersOfTheUpload() {
+        F.Promise<Boolean> waiter1 = broker.waitForCompletion("upload-1", TIMEOUT_MILLIS);
+        F.Promise<Boolean> waiter2 = broker.waitForCompletion("upload-1", TIMEOUT_MILLIS);
+        F.Promise<Boolean> other = broker.waitForCompletion("upload-2", TIMEOUT_MILLIS);
+
+        broker.publishCompletion("upload-1");
+
+        assertTrue(waiter1.get(1000L));
+        assertTrue(waiter2.get(1000L));
+        assertEquals(1, broker.getWaiterCount());
+
+        broker.cancel("upload-2", other);
+        assertFalse(other.get(1000L));
+        assertEquals(0, broker.getWaiterCount());
+    }
+
+    @Test
+    public void completionIsPublishedToOtherServers() {
+        JedisOps mockJedisOps = mock(JedisOps.class);
+        broker.setJedisOps(mockJedisOps);
+
+        broker.publishCompletion("upload-1");
+
+        verify(mockJedisOps).publish(UploadCompletionBroker.CHANNEL, "upload-1");
+    }
+
+    @Test
+    public void releasedWaitersCancelTheirTimeouts() {
+        F.Promise<Boolean> completed = broker.waitForCompletion("upload-1", TIMEOUT_MILLIS);
+        F.Promise<Boolean> cancelled = broker.waitForCompletion("upload-2", TIMEOUT_MILLIS);
+        assertEquals(2, broker.getScheduledTimeoutCount());
+
+        broker.notifyWaiters("upload-1");
+        broker.cancel("upload-2", cancelled);
+
+        assertTrue(completed.get(1000L));
+        assertFalse(cancelled.get(1000L));
+        assertEquals(0, broker.getScheduledTimeoutCount());
+    }
+
+    @Test
+    public void waitTimesOut() {
+        F.Promise<Boolean> waiter = broker.waitForCompletion("upload-1", 50L);
+
+        assertFalse(waiter.get(1000L));
+        assertEquals(0, broker.getWaiterCount());
+
+        // A completion after the timeout is harmless
+        broker.notifyWaiters("upload-1");
+    }
+
+    @Test
+    public void waitersAreCapped() {
+        List<F.Promise<Boolean>> waiters = Lists.newArrayList();
+        for (int i = 0; i < UploadCompletionBroker.MAX_WAITERS; i++) {
+            waiters.add(broker.waitForCompletion("upload-" + i, TIMEOUT_MILLIS));
+        }
+        assertNull(broker.waitForCompletion("one-too-many", TIMEOUT_MILLIS));
+
+        // Once a waiter is released, there's room for another
+        broker.notifyWaiters("upload-0");
+        assertTrue(waiters.get(0).get(1000L));
+        assertNotNull(broker.waitForCompletion("one-more", TIMEOUT_MILLIS));
+    }
+}
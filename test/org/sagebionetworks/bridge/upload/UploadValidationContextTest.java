@@ -14,10 +14,12 @@ import org.junit.Test;
 import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.dynamodb.DynamoUploadSchema;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.models.upload.UploadSchema;
 
 public class UploadValidationContextTest {
     @Test
@@ -30,6 +32,7 @@ public class UploadValidationContextTest {
         Map<String, byte[]> unzippedDataMap = ImmutableMap.of("nonJsonFile.txt", "test text".getBytes(Charsets.UTF_8));
         Map<String, JsonNode> jsonDataMap = ImmutableMap.<String, JsonNode>of("json.json",
                 BridgeObjectMapper.get().createObjectNode());
+        UploadSchema schema = new DynamoUploadSchema();
         HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
         Map<String, byte[]> attachmentMap = ImmutableMap.of("test-field", "test attachment".getBytes(Charsets.UTF_8));
 
@@ -43,6 +46,7 @@ public class UploadValidationContextTest {
         original.setDecryptedData(decryptedData);
         original.setUnzippedDataMap(unzippedDataMap);
         original.setJsonDataMap(jsonDataMap);
+        original.setSchema(schema);
         original.setHealthDataRecordBuilder(recordBuilder);
         original.setAttachmentsByFieldName(attachmentMap);
         original.setRecordId("test-record");
@@ -56,6 +60,7 @@ public class UploadValidationContextTest {
         assertSame(decryptedData, copy.getDecryptedData());
         assertSame(unzippedDataMap, copy.getUnzippedDataMap());
         assertSame(jsonDataMap, copy.getJsonDataMap());
+        assertSame(schema, copy.getSchema());
         assertSame(recordBuilder, copy.getHealthDataRecordBuilder());
         assertSame(attachmentMap, copy.getAttachmentsByFieldName());
         assertEquals("test-record", copy.getRecordId());
@@ -17,11 +17,13 @@ public class UploadValidationTaskFactoryTest {
         // test dao and handlers
         List<UploadValidationHandler> handlerList = Collections.emptyList();
         DynamoUploadDao dao = new DynamoUploadDao();
+        UploadCompletionBroker broker = new UploadCompletionBroker();
 
         // set up task factory
         UploadValidationTaskFactory taskFactory = new UploadValidationTaskFactory();
         taskFactory.setHandlerList(handlerList);
         taskFactory.setUploadDao(dao);
+        taskFactory.setCompletionBroker(broker);
 
         // inputs
         DynamoStudy study = TestUtils.getValidStudy();
@@ -33,5 +35,6 @@ public class UploadValidationTaskFactoryTest {
         assertSame(upload2, task.getContext().getUpload());
         assertSame(handlerList, task.getHandlerList());
         assertSame(dao, task.getUploadDao());
+        assertSame(broker, task.getCompletionBroker());
     }
 }
@@ -101,11 +101,13 @@ public class UploadValidationTaskTest {
 
         // mock dao
         UploadDao mockDao = mock(UploadDao.class);
+        UploadCompletionBroker mockBroker = mock(UploadCompletionBroker.class);
 
         // set up validation task
         UploadValidationTask task = new UploadValidationTask(ctx);
         task.setHandlerList(handlerList);
         task.setUploadDao(mockDao);
+        task.setCompletionBroker(mockBroker);
 
         // execute
         task.run();
@@ -113,6 +115,9 @@ public class UploadValidationTaskTest {
         // validate the upload dao write validation status call
         verify(mockDao).writeValidationStatus(upload2, expectedStatus, ctx.getMessageList(), expectedRecordId);
 
+        // waiting requests are told the upload is complete
+        verify(mockBroker).publishCompletion("test-upload");
+
         return ctx;
     }
 
@@ -0,0 +1,137 @@
+package org.sagebionetworks.bridge.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.s3.LocalS3Helper;
+import org.sagebionetworks.bridge.services.UploadArchiveService;
+import org.sagebionetworks.bridge.upload.DecryptHandler;
+import org.sagebionetworks.bridge.upload.ParseJsonHandler;
+import org.sagebionetworks.bridge.upload.S3DownloadHandler;
+import org.sagebionetworks.bridge.upload.UnzipHandler;
+import org.sagebionetworks.bridge.upload.UploadValidationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+public class BulkDownloadUtilTest {
+    private static final String UPLOAD_BUCKET = BridgeConfigFactory.getConfig().getProperty("upload.bucket");
+
+    private File tmpDir;
+    private LocalS3Helper s3Helper;
+    private BulkDownloadUtil util;
+
+    @Before
+    public void setup() {
+        tmpDir = Files.createTempDir();
+        s3Helper = new LocalS3Helper();
+
+        S3DownloadHandler s3DownloadHandler = new S3DownloadHandler();
+        s3DownloadHandler.setS3Helper(s3Helper);
+
+        // Test uploads aren't encrypted. Decrypt passes the data through.
+        DecryptHandler decryptHandler = mock(DecryptHandler.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                UploadValidationContext ctx = (UploadValidationContext) invocation.getArguments()[0];
+                ctx.setDecryptedData(ctx.getData());
+                return null;
+            }
+        }).when(decryptHandler).handle(any(UploadValidationContext.class));
+
+        UnzipHandler unzipHandler = new UnzipHandler();
+        unzipHandler.setUploadArchiveService(new UploadArchiveService());
+
+        util = new BulkDownloadUtil();
+        util.setS3DownloadHandler(s3DownloadHandler);
+        util.setDecryptHandler(decryptHandler);
+        util.setUnzipHandler(unzipHandler);
+        util.setParseJsonHandler(new ParseJsonHandler());
+        util.setOutputDir(tmpDir);
+        util.setManifestFile(new File(tmpDir, BulkDownloadUtil.DEFAULT_MANIFEST_NAME));
+        util.setThreadCount(2);
+    }
+
+    @After
+    public void cleanup() {
+        for (File file : tmpDir.listFiles()) {
+            file.delete();
+        }
+        tmpDir.delete();
+    }
+
+    @Test
+    public void downloadsInParallelAndRecordsManifest() throws Exception {
+        // two uploads with JSON, one with a non-JSON file, and one that's missing from S3
+        UploadArchiveService archiveService = new UploadArchiveService();
+        byte[] zippedJson = archiveService.zip(ImmutableMap.of("info.json",
+                "{\"foo\":\"bar\"}".getBytes(Charsets.UTF_8)));
+        byte[] zippedCsv = archiveService.zip(ImmutableMap.of("data.csv", "a,b\n1,2".getBytes(Charsets.UTF_8)));
+        s3Helper.writeBytesToS3(UPLOAD_BUCKET, "upload-1", zippedJson);
+        s3Helper.writeBytesToS3(UPLOAD_BUCKET, "upload-2", zippedJson);
+        s3Helper.writeBytesToS3(UPLOAD_BUCKET, "upload-3", zippedCsv);
+
+        List<BulkDownloadUtil.UploadObject> uploads = ImmutableList.of(makeUpload("upload-1"),
+                makeUpload("upload-2"), makeUpload("upload-3"), makeUpload("missing"));
+
+        // execute
+        BulkDownloadUtil.Summary summary = util.downloadUploads(uploads);
+
+        // validate summary
+        assertEquals(3, summary.getSucceeded());
+        Map<String, String> failures = summary.getFailures();
+        assertEquals(ImmutableSet.of("missing"), failures.keySet());
+        assertTrue(failures.get("missing").startsWith("Error downloading file"));
+
+        // validate files
+        JsonNode jsonBundle = BridgeObjectMapper.get().readTree(new File(tmpDir, "api-test.zip-upload-1.json"));
+        assertEquals("bar", jsonBundle.get("info.json").get("foo").textValue());
+        assertTrue(new File(tmpDir, "api-test.zip-upload-2.json").exists());
+        assertEquals("a,b\n1,2", Files.toString(new File(tmpDir, "api-test.zip-upload-3.data.csv"),
+                Charsets.UTF_8));
+        assertFalse(new File(tmpDir, "api-test.zip-missing.json").exists());
+
+        // failed uploads aren't in the manifest, so they're retried the next run
+        Set<String> manifest = util.readManifest();
+        assertEquals(ImmutableSet.of("upload-1", "upload-2", "upload-3"), manifest);
+    }
+
+    @Test
+    public void noManifest() throws Exception {
+        util.setManifestFile(new File(tmpDir, "does-not-exist.txt"));
+        assertTrue(util.readManifest().isEmpty());
+    }
+
+    private static BulkDownloadUtil.UploadObject makeUpload(String uploadId) {
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(uploadId);
+        upload.setFilename("test.zip");
+        upload.setHealthCode("healthCode");
+        upload.setUploadDate(new LocalDate(2015, 7, 20));
+        return new BulkDownloadUtil.UploadObject(upload, "api");
+    }
+}
@@ -0,0 +1,114 @@
+package org.sagebionetworks.bridge.validators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
+import org.sagebionetworks.bridge.dynamodb.DynamoSurveyQuestion;
+import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.json.DateUtils;
+import org.sagebionetworks.bridge.models.surveys.BooleanConstraints;
+import org.sagebionetworks.bridge.models.surveys.Constraints;
+import org.sagebionetworks.bridge.models.surveys.StringConstraints;
+import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
+import org.sagebionetworks.bridge.models.surveys.SurveyElement;
+import org.sagebionetworks.bridge.models.surveys.SurveyRule;
+import org.sagebionetworks.bridge.models.surveys.SurveyRule.Operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class SurveyAnswerValidationPlanTest {
+
+    private DynamoSurveyQuestion phoneQuestion;
+    private DynamoSurveyQuestion booleanQuestion;
+    private SurveyAnswerValidationPlan plan;
+
+    @Before
+    public void before() {
+        StringConstraints phoneConstraints = new StringConstraints();
+        phoneConstraints.setPattern("\\d{3}-\\d{3}-\\d{4}");
+        phoneQuestion = createQuestion("AAA", "phone", phoneConstraints);
+        booleanQuestion = createQuestion("BBB", "agree", new BooleanConstraints());
+
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setGuid("survey-guid");
+        survey.setCreatedOn(DateUtils.getCurrentMillisFromEpoch());
+        survey.setElements(Lists.<SurveyElement>newArrayList(phoneQuestion, booleanQuestion));
+        plan = new SurveyAnswerValidationPlan(survey);
+    }
+
+    @Test
+    public void looksUpQuestions() {
+        assertSame(phoneQuestion, plan.getQuestionByGuid("AAA"));
+        assertSame(booleanQuestion, plan.getQuestionByIdentifier("agree"));
+        assertNull(plan.getQuestionByGuid("CCC"));
+        assertNull(plan.getQuestionByIdentifier(null));
+    }
+
+    @Test
+    public void validAnswers() {
+        // the same compiled pattern is used for every answer to a question
+        plan.validate(Lists.newArrayList(createAnswer("AAA", "123-456-7890"), createAnswer("BBB", "true"),
+                createAnswer("AAA", "098-765-4321")));
+    }
+
+    @Test
+    public void reportsEveryInvalidAnswer() {
+        List<SurveyAnswer> answers = Lists.newArrayList(createAnswer("AAA", "123-a67-9870"),
+                createAnswer("BBB", "true"), createAnswer("BBB", "not a boolean"), createAnswer("ZZZ", "true"));
+        try {
+            plan.validate(answers);
+            fail("Should have thrown exception");
+        } catch (InvalidEntityException e) {
+            String message = e.getMessage();
+            assertTrue(message.contains("does not match the regular expression"));
+            assertTrue(message.contains("is not a boolean"));
+            assertTrue(message.contains("Answer does not match a question with the GUID of: ZZZ"));
+        }
+    }
+
+    @Test
+    public void findsAnswersToSkippedQuestions() {
+        BooleanConstraints agreeConstraints = new BooleanConstraints();
+        agreeConstraints.getRules().add(new SurveyRule(Operator.EQ, false, "end"));
+        DynamoSurvey survey = new DynamoSurvey();
+        survey.setGuid("survey-guid");
+        survey.setCreatedOn(DateUtils.getCurrentMillisFromEpoch());
+        survey.setElements(Lists.<SurveyElement>newArrayList(createQuestion("AAA", "agree", agreeConstraints),
+                createQuestion("BBB", "detail", new StringConstraints()),
+                createQuestion("CCC", "end", new StringConstraints())));
+        SurveyAnswerValidationPlan skipPlan = new SurveyAnswerValidationPlan(survey);
+
+        assertEquals(ImmutableList.of("detail"), skipPlan.getSkippedQuestionIdentifiers(Lists.newArrayList(
+                createAnswer("AAA", "false"), createAnswer("BBB", "x"), createAnswer("CCC", "x"))));
+        assertTrue(skipPlan.getSkippedQuestionIdentifiers(Lists.newArrayList(createAnswer("AAA", "true"),
+                createAnswer("BBB", "x"))).isEmpty());
+    }
+
+    private static DynamoSurveyQuestion createQuestion(String guid, String identifier, Constraints constraints) {
+        DynamoSurveyQuestion question = new DynamoSurveyQuestion();
+        question.setGuid(guid);
+        question.setIdentifier(identifier);
+        question.setPrompt("This is a test question?");
+        question.setUiHint(constraints.getSupportedHints().iterator().next());
+        question.setConstraints(constraints);
+        return question;
+    }
+
+    private static SurveyAnswer createAnswer(String questionGuid, String value) {
+        SurveyAnswer answer = new SurveyAnswer();
+        answer.setAnswers(Lists.newArrayList(value));
+        answer.setClient("mobile");
+        answer.setAnsweredOn(DateUtils.getCurrentMillisFromEpoch());
+        answer.setQuestionGuid(questionGuid);
+        return answer;
+    }
+}